@@ -97,9 +97,52 @@ tasks.register("generateDocs") {
 }
 
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+        excludeTags("load")
+    }
+    workingDir = project.projectDir
+    testLogging {
+        events("passed", "skipped", "failed")
+    }
+}
+
+// Сквозной нагрузочный прогон на поддельном Bot API: ./gradlew loadTest -Dloadtest.chats=5000
+tasks.register<Test>("loadTest") {
+    group = "verification"
+    description = "Runs the end-to-end load test against the fake Bot API"
+    testClassesDirs = sourceSets["test"].output.classesDirs
+    classpath = sourceSets["test"].runtimeClasspath
+    useJUnitPlatform {
+        includeTags("load")
+    }
     workingDir = project.projectDir
+    maxHeapSize = "2g"
+    systemProperties(System.getProperties()
+        .filterKeys { it.toString().startsWith("loadtest.") }
+        .mapKeys { it.key.toString() })
     testLogging {
         events("passed", "skipped", "failed")
+        showStandardStreams = true
     }
-}
\ No newline at end of file
+    outputs.upToDateWhen { false }
+}
+// Микробенчмарки JMH без плагина: ./gradlew jmh -Pjmh.include=DomainDecoding
+val jmh by sourceSets.creating {
+    compileClasspath += sourceSets["main"].output + sourceSets["main"].compileClasspath
+    runtimeClasspath += sourceSets["main"].output + sourceSets["main"].runtimeClasspath
+}
+
+dependencies {
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "verification"
+    description = "Runs JMH microbenchmarks"
+    classpath = jmh.runtimeClasspath
+    mainClass.set("org.openjdk.jmh.Main")
+    args = listOfNotNull(project.findProperty("jmh.include")?.toString()) +
+        (project.findProperty("jmh.args")?.toString()?.split(" ")?.filter { it.isNotBlank() } ?: emptyList()) +
+        listOf("-rf", "json", "-rff", layout.buildDirectory.file("jmh-result.json").get().asFile.path)
+}
@@ -0,0 +1,90 @@
+package org.tripplanner.modules.dialog;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.tripplanner.modules.dialog.DialogState.Command;
+import org.tripplanner.modules.dialog.DialogState.Step;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Разбор входящего текста роутером: команда, команда с аргументом, неизвестный текст и
+ * шаг диалога. Обработчики отдают готовый Mono, так что меряется только сам роутер и
+ * локальное хранилище сессий. Аллокации: ./gradlew jmh -Pjmh.include=CommandRouter -Pjmh.args="-prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CommandRouterBenchmark {
+
+    private static final long CHAT = 42L;
+    private static final Mono<String> OK = Mono.just("ok");
+
+    private CommandRouter router;
+    private DialogState.CommandState state;
+
+    @Setup
+    public void setUp() {
+        DialogState dialogState = new DialogState(
+                new DialogSessionStore(1_800_000, 100_000, 60_000, 16, DialogSessionBackend.LOCAL, 0, 2000));
+        // Тот же набор команд, что у бота, с обработчиками-заглушками
+        CommandModule commands = registry -> {
+            for (String name : List.of("/start", "/showplanned", "/showongoingtrip", "/triphistory",
+                    "/finisheddetails", "/track", "/help")) {
+                registry.command(name, (chatId, text, args) -> OK);
+            }
+            registry.dialog("/plantrip", Command.PLAN_TRIP, (chatId, dialog) -> OK,
+                    Step.WAITING_NAME, Step.WAITING_START_DATE, Step.WAITING_END_DATE);
+            registry.dialog("/addpoint", Command.ADD_POINT, (chatId, dialog) -> OK,
+                    Step.WAITING_TRIP_NAME, Step.WAITING_POINT_NAME, Step.WAITING_LATITUDE, Step.WAITING_LONGITUDE);
+            registry.dialog("/addnote", Command.ADD_NOTE, (chatId, dialog) -> OK,
+                    Step.WAITING_TRIP_NAME, Step.WAITING_NOTE);
+            registry.dialog("/ratefinished", Command.RATE_FINISHED, (chatId, dialog) -> OK,
+                    Step.WAITING_TRIP_NAME, Step.WAITING_RATING);
+        };
+        router = new CommandRouter(List.of(commands), dialogState);
+        state = new DialogState.CommandState(Command.PLAN_TRIP, Step.WAITING_NAME);
+    }
+
+    @Benchmark
+    public Mono<String> routeCommand() {
+        return router.route(CHAT, "/showplanned");
+    }
+
+    @Benchmark
+    public Mono<String> routeCommandWithArgument() {
+        return router.route(CHAT, "  /FinishedDetails Rome 2025");
+    }
+
+    @Benchmark
+    public Mono<String> routeUnknown() {
+        return router.route(CHAT, "/showplannedtrips");
+    }
+
+    @Benchmark
+    public Mono<String> continueDialog() {
+        // Шаг возвращаем назад, чтобы каждый вызов проходил один и тот же переход
+        state.currentStep = Step.WAITING_NAME;
+        return router.continueDialog(CHAT, state, "Paris");
+    }
+
+    @Benchmark
+    public Mono<String> continueDialogInvalidInput() {
+        state.currentStep = Step.WAITING_NAME;
+        return router.continueDialog(CHAT, state, "Париж");
+    }
+}
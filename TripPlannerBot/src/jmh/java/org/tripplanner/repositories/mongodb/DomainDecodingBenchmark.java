@@ -0,0 +1,122 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.tripplanner.domain.Point;
+import org.tripplanner.domain.Trip;
+
+/**
+ * Декодирование поездки и точки из BSON: прежний путь (Document -> MappingMongoConverter -> маппер)
+ * против кодеков. Байты те же, что пишет Spring Data. Смотреть стоит и на время, и на
+ * gc.alloc.rate.norm: ./gradlew jmh -Pjmh.include=DomainDecoding -Pjmh.args="-prof gc"
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class DomainDecodingBenchmark {
+
+    private final DecoderContext decoderContext = DecoderContext.builder().build();
+    private final DocumentCodec documentCodec = new DocumentCodec();
+    private final TripCodec tripCodec = new TripCodec();
+    private final PointCodec pointCodec = new PointCodec();
+    private final PointMapper pointMapper = new PointMapper();
+    private final TripMapper tripMapper = new TripMapper(pointMapper, null, null);
+
+    private MappingMongoConverter converter;
+    private byte[] tripBytes;
+    private byte[] pointBytes;
+
+    @Setup
+    public void setUp() {
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext context = new MongoMappingContext();
+        context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        context.afterPropertiesSet();
+        converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+
+        // Типичная поездка: десяток точек и маршрутов, пара заметок
+        List<ObjectId> points = new ArrayList<>();
+        List<ObjectId> routes = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            points.add(new ObjectId());
+            routes.add(new ObjectId());
+        }
+        TripDBO trip = new TripDBO("Рим", LocalDate.of(2025, 6, 1), LocalDate.of(2025, 6, 10), 4,
+                points.get(0), points, routes);
+        trip.setId(new ObjectId());
+        trip.setOwnerChatId(42L);
+        trip.setStatus("PLANNED");
+        trip.setNotes(List.of("билеты", "отель"));
+        tripBytes = bytes(trip);
+
+        PointDBO point = new PointDBO("Колизей", 41.89, 12.49, false, List.of("рано утром"));
+        point.setId(new ObjectId());
+        point.setTripId(trip.getId());
+        pointBytes = bytes(point);
+    }
+
+    @Benchmark
+    public Trip tripViaConverter() {
+        Document document = documentCodec.decode(reader(tripBytes), decoderContext);
+        return tripMapper.fromDbo(converter.read(TripDBO.class, document));
+    }
+
+    @Benchmark
+    public Trip tripViaCodec() {
+        return tripCodec.decode(reader(tripBytes), decoderContext);
+    }
+
+    @Benchmark
+    public Point pointViaConverter() {
+        Document document = documentCodec.decode(reader(pointBytes), decoderContext);
+        return pointMapper.fromDbo(converter.read(PointDBO.class, document));
+    }
+
+    @Benchmark
+    public Point pointViaCodec() {
+        return pointCodec.decode(reader(pointBytes), decoderContext);
+    }
+
+    private byte[] bytes(Object dbo) {
+        Document document = new Document();
+        converter.write(dbo, document);
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        documentCodec.encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+        return buffer.toByteArray();
+    }
+
+    private static BsonBinaryReader reader(byte[] bytes) {
+        return new BsonBinaryReader(ByteBuffer.wrap(bytes));
+    }
+}
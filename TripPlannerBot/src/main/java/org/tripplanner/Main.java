@@ -10,6 +10,7 @@ import org.springframework.web.server.adapter.WebHttpHandlerBuilder;
 import org.tripplanner.config.MongoConfig;
 import org.tripplanner.config.SecurityConfig;
 import org.tripplanner.config.WebConfig;
+import org.tripplanner.util.DrainCoordinator;
 
 import reactor.netty.DisposableServer;
 import reactor.netty.http.server.HttpServer;
@@ -38,11 +39,8 @@ public class Main {
 
         Runtime.getRuntime().addShutdownHook(new Thread(() -> {
             System.out.println("Завершение работы");
-            try {
-                Thread.sleep(5000);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
-            }
+            // Ждём только реально незавершённую работу, но не дольше shutdown.drain.deadline-ms
+            context.getBean(DrainCoordinator.class).drain();
             server.dispose();
             context.close();
             System.out.println("остановлено");
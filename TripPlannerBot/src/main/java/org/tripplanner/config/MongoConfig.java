@@ -1,15 +1,23 @@
 package org.tripplanner.config;
 
 import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistries;
+import org.bson.codecs.configuration.CodecRegistry;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
 import org.springframework.data.mongodb.config.AbstractReactiveMongoConfiguration;
 import org.springframework.data.mongodb.repository.config.EnableReactiveMongoRepositories;
+import org.tripplanner.repositories.mongodb.PointCodec;
+import org.tripplanner.repositories.mongodb.TripCodec;
+import org.tripplanner.repositories.mongodb.UserCodec;
 
 import com.mongodb.ConnectionString;
 import com.mongodb.MongoClientSettings;
+import com.mongodb.event.CommandListener;
 import com.mongodb.reactivestreams.client.MongoClient;
 import com.mongodb.reactivestreams.client.MongoClients;
 
@@ -29,11 +37,40 @@ public class MongoConfig extends AbstractReactiveMongoConfiguration {
     @Value("${spring.data.mongodb.database}")
     private String database;
 
+    @Autowired
+    private MongoWriteTracker writeTracker;
+
     @Override
     protected String getDatabaseName() {
         return database;
     }
 
+    /**
+     * Кодеки для горячих чтений (см. DomainReads). В настройки клиента не добавляются,
+     * чтобы не менять то, как Spring Data читает и пишет DBO. Кодеки только читают, encode
+     * у них бросает исключение; голого Decoder реестр не принимает. То, что реестр не попадает
+     * на путь записи, проверяет DomainReadsTest.
+     */
+    @Bean
+    public CodecRegistry domainCodecRegistry() {
+        return CodecRegistries.fromRegistries(
+                CodecRegistries.fromCodecs(new PointCodec(), new TripCodec(), new UserCodec()),
+                MongoClientSettings.getDefaultCodecRegistry());
+    }
+
+    /**
+     * Настройки клиента, через который идут все записи Spring Data. Реестр кодеков здесь
+     * стандартный: доменные кодеки только читают и сюда попадать не должны.
+     */
+    public static MongoClientSettings clientSettings(String uri, CommandListener listener) {
+        return MongoClientSettings.builder()
+            .applyConnectionString(new ConnectionString(uri))
+            .retryWrites(true)
+            .retryReads(true)
+            .addCommandListener(listener)
+            .build();
+    }
+
     @Override
     public MongoClient reactiveMongoClient() {
         if (mongoUri == null || mongoUri.isEmpty()) {
@@ -42,14 +79,7 @@ public class MongoConfig extends AbstractReactiveMongoConfiguration {
         
         logger.info("Using MongoDB URI: {}", mongoUri);
         
-        ConnectionString connectionString = new ConnectionString(mongoUri);
-        MongoClientSettings settings = MongoClientSettings.builder()
-            .applyConnectionString(connectionString)
-            .retryWrites(true)
-            .retryReads(true)
-            .build();
-            
-        MongoClient client = MongoClients.create(settings);
+        MongoClient client = MongoClients.create(clientSettings(mongoUri, writeTracker));
         
         // Test connection with retries
         final int[] retryCount = {0};
@@ -0,0 +1,59 @@
+package org.tripplanner.config;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.springframework.stereotype.Component;
+import org.tripplanner.util.DrainCoordinator;
+
+import com.mongodb.event.CommandFailedEvent;
+import com.mongodb.event.CommandListener;
+import com.mongodb.event.CommandStartedEvent;
+import com.mongodb.event.CommandSucceededEvent;
+
+import jakarta.annotation.PostConstruct;
+
+/**
+ * Считает записи в Mongo, ушедшие драйверу и ещё не получившие ответа.
+ * Подключается к клиенту в {@link MongoConfig}.
+ */
+@Component
+public class MongoWriteTracker implements CommandListener {
+
+    private static final Set<String> WRITE_COMMANDS = Set.of(
+        "insert", "update", "delete", "findAndModify", "bulkWrite");
+
+    private final Set<Integer> inFlight = ConcurrentHashMap.newKeySet();
+    private final DrainCoordinator drainCoordinator;
+
+    public MongoWriteTracker(DrainCoordinator drainCoordinator) {
+        this.drainCoordinator = drainCoordinator;
+    }
+
+    // Не из конструктора: ссылка на недостроенный объект не должна уходить наружу
+    @PostConstruct
+    public void register() {
+        drainCoordinator.registerPending(DrainCoordinator.MONGO_WRITES, this::getInFlight);
+    }
+
+    @Override
+    public void commandStarted(CommandStartedEvent event) {
+        if (WRITE_COMMANDS.contains(event.getCommandName())) {
+            inFlight.add(event.getRequestId());
+        }
+    }
+
+    @Override
+    public void commandSucceeded(CommandSucceededEvent event) {
+        inFlight.remove(event.getRequestId());
+    }
+
+    @Override
+    public void commandFailed(CommandFailedEvent event) {
+        inFlight.remove(event.getRequestId());
+    }
+
+    public int getInFlight() {
+        return inFlight.size();
+    }
+}
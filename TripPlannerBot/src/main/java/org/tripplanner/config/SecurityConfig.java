@@ -22,6 +22,8 @@ public class SecurityConfig {
             .httpBasic(basic -> {})
             .authorizeExchange(exchange -> exchange
                 .pathMatchers("/healthcheck").permitAll()
+                // Telegram не умеет basic auth, вебхук защищён секретным заголовком
+                .pathMatchers("/telegram/webhook").permitAll()
                 .pathMatchers("/admin/**").authenticated()
                 .anyExchange().authenticated()
             );
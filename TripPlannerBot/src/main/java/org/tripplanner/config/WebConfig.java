@@ -9,6 +9,7 @@ import org.springframework.web.reactive.function.server.RouterFunction;
 import org.springframework.web.reactive.function.server.RouterFunctions;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import org.tripplanner.modules.admin.AdminController;
+import org.tripplanner.modules.connections.WebhookController;
 import org.tripplanner.modules.healthcheck.HealthCheckController;
 
 @Configuration
@@ -21,10 +22,13 @@ public class WebConfig implements WebFluxConfigurer {
 
     @Bean
     public RouterFunction<ServerResponse> routes(HealthCheckController healthCheckController,
-                                               AdminController adminController) {
+                                               AdminController adminController,
+                                               WebhookController webhookController) {
         return RouterFunctions.route()
                 .GET("/healthcheck", healthCheckController::healthCheck)
                 .GET("/admin/users", adminController::getUsers)
+                .GET("/admin/metrics", adminController::getMetrics)
+                .POST("/telegram/webhook", webhookController::handleUpdate)
                 .build();
     }
 } 
\ No newline at end of file
@@ -0,0 +1,68 @@
+package org.tripplanner.domain;
+
+import java.time.Instant;
+import java.util.Map;
+
+/**
+ * Снимок незавершённого диалога для общего хранилища. Значения шагов — строки
+ * или числа, ключи совпадают с ключами слотов диалога.
+ */
+public class DialogSession {
+
+    private long chatId;
+    private String command;
+    private String step;
+    private Map<String, Object> data;
+    private Instant expiresAt;
+
+    public DialogSession() {
+    }
+
+    public DialogSession(long chatId, String command, String step, Map<String, Object> data, Instant expiresAt) {
+        this.chatId = chatId;
+        this.command = command;
+        this.step = step;
+        this.data = data;
+        this.expiresAt = expiresAt;
+    }
+
+    public long getChatId() {
+        return chatId;
+    }
+
+    public void setChatId(long chatId) {
+        this.chatId = chatId;
+    }
+
+    public String getCommand() {
+        return command;
+    }
+
+    public void setCommand(String command) {
+        this.command = command;
+    }
+
+    public String getStep() {
+        return step;
+    }
+
+    public void setStep(String step) {
+        this.step = step;
+    }
+
+    public Map<String, Object> getData() {
+        return data;
+    }
+
+    public void setData(Map<String, Object> data) {
+        this.data = data;
+    }
+
+    public Instant getExpiresAt() {
+        return expiresAt;
+    }
+
+    public void setExpiresAt(Instant expiresAt) {
+        this.expiresAt = expiresAt;
+    }
+}
@@ -4,6 +4,7 @@ import java.time.LocalDate;
 
 public class Route {
 
+    private String id;
     private LocalDate startDate;
     private LocalDate endDate;
     private Point pointTo;
@@ -17,6 +18,14 @@ public class Route {
         this.pointTo = pointTo;
     }
 
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
     public LocalDate getStartDate() {
         return startDate;
     }
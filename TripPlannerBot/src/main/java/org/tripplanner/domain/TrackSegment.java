@@ -0,0 +1,12 @@
+package org.tripplanner.domain;
+
+import java.time.Instant;
+
+/**
+ * Кусок трека поездки за один час: точки в сжатом виде (дельты целых координат и времени,
+ * см. TrackEncoding). Обычно один на поездку в час, но после перезапуска или переполнения
+ * час может оказаться разбит на несколько кусков.
+ */
+public record TrackSegment(String tripId, long chatId, Instant hour, Instant start, Instant end,
+                           int count, byte[] points) {
+}
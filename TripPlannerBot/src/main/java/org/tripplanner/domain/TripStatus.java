@@ -0,0 +1,13 @@
+package org.tripplanner.domain;
+
+/**
+ * Статус поездки в документе trips. Дублирует, в каком списке пользователя лежит поездка,
+ * чтобы искать её по владельцу и имени одним индексным запросом.
+ */
+public enum TripStatus {
+    PLANNED,
+    ONGOING,
+    FINISHED,
+    // Удалена из планов: документ остаётся, но в поиске по имени не участвует
+    DELETED
+}
@@ -0,0 +1,43 @@
+package org.tripplanner.domain;
+
+import java.time.LocalDate;
+
+/**
+ * Поездка для списков: только то, что показывается в строке списка. Без заметок,
+ * точек и маршрутов, которые у длинной поездки могут быть большими.
+ */
+public class TripSummary {
+
+    private final String id;
+    private final String name;
+    private final LocalDate startDate;
+    private final LocalDate endDate;
+
+    public TripSummary(String id, String name, LocalDate startDate, LocalDate endDate) {
+        this.id = id;
+        this.name = name;
+        this.startDate = startDate;
+        this.endDate = endDate;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    @Override
+    public String toString() {
+        return "TripSummary{id='" + id + "', name='" + name + "', " + startDate + " - " + endDate + "}";
+    }
+}
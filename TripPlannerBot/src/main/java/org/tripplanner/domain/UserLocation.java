@@ -0,0 +1,7 @@
+package org.tripplanner.domain;
+
+/**
+ * Последняя известная геопозиция пользователя.
+ */
+public record UserLocation(long chatId, double latitude, double longitude) {
+}
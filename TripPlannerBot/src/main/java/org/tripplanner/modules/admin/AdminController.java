@@ -1,11 +1,16 @@
 package org.tripplanner.modules.admin;
 
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
 import org.tripplanner.repositories.mongodb.UserDBO;
 import org.tripplanner.repositories.mongodb.UserMapper;
+import org.tripplanner.util.StatsSource;
 
 import reactor.core.publisher.Mono;
 
@@ -13,10 +18,13 @@ import reactor.core.publisher.Mono;
 public class AdminController {
     private final ReactiveMongoTemplate mongoTemplate;
     private final UserMapper userMapper;
+    private final ObjectProvider<StatsSource> statsSources;
 
-    public AdminController(ReactiveMongoTemplate mongoTemplate, UserMapper userMapper) {
+    public AdminController(ReactiveMongoTemplate mongoTemplate, UserMapper userMapper,
+                           ObjectProvider<StatsSource> statsSources) {
         this.mongoTemplate = mongoTemplate;
         this.userMapper = userMapper;
+        this.statsSources = statsSources;
     }
 
     public Mono<ServerResponse> getUsers(ServerRequest request) {
@@ -25,4 +33,10 @@ public class AdminController {
                 .collectList()
                 .flatMap(users -> ServerResponse.ok().bodyValue(users));
     }
-} 
\ No newline at end of file
+
+    public Mono<ServerResponse> getMetrics(ServerRequest request) {
+        Map<String, Object> metrics = new LinkedHashMap<>();
+        statsSources.orderedStream().forEach(source -> metrics.put(source.statsName(), source.stats()));
+        return ServerResponse.ok().bodyValue(metrics);
+    }
+}
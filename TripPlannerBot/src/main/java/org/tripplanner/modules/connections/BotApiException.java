@@ -0,0 +1,37 @@
+package org.tripplanner.modules.connections;
+
+/**
+ * Ошибка Bot API: ответ с ok=false или сбой транспорта. retryAfter в секундах,
+ * 0 — если Telegram не просил подождать.
+ */
+public class BotApiException extends RuntimeException {
+
+    private static final long serialVersionUID = 1L;
+
+    private final int errorCode;
+    private final int retryAfter;
+
+    public BotApiException(int errorCode, String description, int retryAfter) {
+        super(description);
+        this.errorCode = errorCode;
+        this.retryAfter = retryAfter;
+    }
+
+    public BotApiException(String description, Throwable cause) {
+        super(description, cause);
+        this.errorCode = 0;
+        this.retryAfter = 0;
+    }
+
+    public int getErrorCode() {
+        return errorCode;
+    }
+
+    public int getRetryAfter() {
+        return retryAfter;
+    }
+
+    public boolean isRateLimited() {
+        return errorCode == 429 && retryAfter > 0;
+    }
+}
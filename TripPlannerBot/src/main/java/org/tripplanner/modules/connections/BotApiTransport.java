@@ -0,0 +1,18 @@
+package org.tripplanner.modules.connections;
+
+import java.util.List;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Исходящие вызовы Telegram Bot API. Ошибки API приходят как {@link BotApiException}.
+ * Получение апдейтов — в {@link UpdateSource}.
+ */
+public interface BotApiTransport {
+
+    Mono<Void> sendMessage(long chatId, String text);
+
+    Mono<Void> setWebhook(String url, String secretToken, List<String> allowedUpdates);
+
+    Mono<Void> deleteWebhook(boolean dropPendingUpdates);
+}
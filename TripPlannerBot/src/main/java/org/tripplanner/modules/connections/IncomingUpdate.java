@@ -0,0 +1,46 @@
+package org.tripplanner.modules.connections;
+
+import org.telegram.telegrambots.meta.api.objects.Message;
+import org.telegram.telegrambots.meta.api.objects.Update;
+
+/**
+ * Только те поля апдейта Telegram, которые нужны боту. Одинаково приходит из long polling,
+ * вебхука и реактивного транспорта.
+ */
+public record IncomingUpdate(long updateId, long chatId, String text,
+                             boolean hasLocation, double latitude, double longitude,
+                             boolean edited) {
+
+    public boolean hasText() {
+        return text != null;
+    }
+
+    public static IncomingUpdate text(long updateId, long chatId, String text) {
+        return new IncomingUpdate(updateId, chatId, text, false, 0, 0, false);
+    }
+
+    public static IncomingUpdate location(long updateId, long chatId, double latitude, double longitude, boolean edited) {
+        return new IncomingUpdate(updateId, chatId, null, true, latitude, longitude, edited);
+    }
+
+    /**
+     * Преобразует апдейт из библиотеки telegrambots. Возвращает null, если в апдейте нет
+     * ни текста, ни геопозиции.
+     */
+    public static IncomingUpdate from(Update update) {
+        boolean edited = !update.hasMessage() && update.hasEditedMessage();
+        Message message = update.hasMessage() ? update.getMessage() : update.getEditedMessage();
+        if (message == null) {
+            return null;
+        }
+        long updateId = update.getUpdateId() != null ? update.getUpdateId() : 0;
+        if (message.hasText()) {
+            return new IncomingUpdate(updateId, message.getChatId(), message.getText(), false, 0, 0, edited);
+        }
+        if (message.hasLocation()) {
+            return location(updateId, message.getChatId(),
+                message.getLocation().getLatitude(), message.getLocation().getLongitude(), edited);
+        }
+        return null;
+    }
+}
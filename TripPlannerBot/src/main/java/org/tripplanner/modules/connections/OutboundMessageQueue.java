@@ -0,0 +1,439 @@
+package org.tripplanner.modules.connections;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.DelayQueue;
+import java.util.concurrent.Delayed;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.tripplanner.util.DrainCoordinator;
+import org.tripplanner.util.LatencyRecorder;
+import org.tripplanner.util.StatsSource;
+import org.tripplanner.util.TokenBucket;
+
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Mono;
+
+/**
+ * Асинхронная очередь исходящих сообщений. Ограничивает скорость глобально (~30 msg/s)
+ * и на чат (~1 msg/s), соблюдает retry_after при 429 и, если включено, склеивает
+ * подряд идущие сообщения одному чату.
+ * <p>
+ * Воркеры только раздают чаты: отправка — неблокирующий Mono, и чат возвращается в очередь
+ * готовых из колбэка, когда ответ получен. Пока отправка не завершилась, чат не в очереди,
+ * так что порядок сообщений одного чата сохраняется.
+ * <p>
+ * Одновременных отправок не больше max-in-flight: без этого каждый чат с ответом держит свой
+ * запрос, и при всплеске входящих пул соединений транспорта переполняет очередь ожидающих —
+ * отправка падает, не дойдя до Telegram. Лимит держат ниже числа соединений, чтобы long poll
+ * всегда находил свободное.
+ */
+@Component
+public class OutboundMessageQueue implements StatsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(OutboundMessageQueue.class);
+    private static final int TELEGRAM_MAX_TEXT_LENGTH = 4096;
+    private static final long IDLE_CHAT_EVICT_NANOS = TimeUnit.SECONDS.toNanos(30);
+
+    private final int capacity;
+    private final int workerCount;
+    private final double perChatRate;
+    private final double perChatBurst;
+    private final boolean coalesce;
+    private final int maxAttempts;
+    private final int maxInFlight;
+    private final Semaphore inFlight;
+    private final LongSupplier clock;
+    private final TokenBucket global;
+
+    private final Map<Long, ChatQueue> chats = new ConcurrentHashMap<>();
+    private final DelayQueue<ChatQueue> ready = new DelayQueue<>();
+    private final AtomicInteger size = new AtomicInteger();
+
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder droppedQueueFull = new LongAdder();
+    private final LongAdder droppedAfterRetries = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rateLimited = new LongAdder();
+    private final LatencyRecorder sendLatency = new LatencyRecorder();
+    private final LatencyRecorder apiLatency = new LatencyRecorder();
+
+    private volatile BotApiTransport transport;
+    private volatile boolean running;
+    private ExecutorService workers;
+
+    @Autowired
+    public OutboundMessageQueue(@Value("${telegram.bot.outbound.capacity:10000}") int capacity,
+                                @Value("${telegram.bot.outbound.workers:8}") int workerCount,
+                                @Value("${telegram.bot.outbound.global-rate:30}") double globalRate,
+                                @Value("${telegram.bot.outbound.per-chat-rate:1}") double perChatRate,
+                                @Value("${telegram.bot.outbound.per-chat-burst:3}") double perChatBurst,
+                                @Value("${telegram.bot.outbound.coalesce:false}") boolean coalesce,
+                                @Value("${telegram.bot.outbound.max-attempts:3}") int maxAttempts,
+                                @Value("${telegram.bot.outbound.max-in-flight:15}") int maxInFlight,
+                                DrainCoordinator drainCoordinator) {
+        this(capacity, workerCount, globalRate, perChatRate, perChatBurst, coalesce, maxAttempts, maxInFlight,
+            drainCoordinator, System::nanoTime);
+    }
+
+    OutboundMessageQueue(int capacity, int workerCount, double globalRate, double perChatRate, double perChatBurst,
+                         boolean coalesce, int maxAttempts, int maxInFlight, DrainCoordinator drainCoordinator,
+                         LongSupplier clock) {
+        this.capacity = capacity;
+        this.workerCount = workerCount;
+        this.perChatRate = perChatRate;
+        this.perChatBurst = perChatBurst;
+        this.coalesce = coalesce;
+        this.maxAttempts = maxAttempts;
+        this.maxInFlight = maxInFlight;
+        this.inFlight = new Semaphore(maxInFlight);
+        this.clock = clock;
+        this.global = new TokenBucket(globalRate, globalRate, clock);
+        drainCoordinator.registerPending(DrainCoordinator.OUTBOUND, size::get);
+    }
+
+    public synchronized void start(BotApiTransport transport) {
+        if (running) {
+            return;
+        }
+        this.transport = transport;
+        this.running = true;
+        this.workers = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tg-outbound-", 0).factory());
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::workerLoop);
+        }
+        logger.info("Outbound queue started: workers={}, coalesce={}", workerCount, coalesce);
+    }
+
+    /**
+     * Ставит сообщение в очередь. Возвращает false, если очередь переполнена и сообщение отброшено.
+     */
+    public boolean enqueue(long chatId, String text) {
+        if (size.incrementAndGet() > capacity) {
+            size.decrementAndGet();
+            droppedQueueFull.increment();
+            logger.warn("Outbound queue is full ({}), message to chat {} dropped", capacity, chatId);
+            return false;
+        }
+        OutboundMessage message = new OutboundMessage(chatId, text, clock.getAsLong());
+        chats.compute(chatId, (id, current) -> {
+            ChatQueue queue = current != null ? current : new ChatQueue(id, perChatRate, perChatBurst, clock);
+            synchronized (queue) {
+                queue.messages.add(message);
+                queue.lastActivity = message.enqueuedAt;
+                if (!queue.scheduled) {
+                    queue.scheduled = true;
+                    queue.readyAt = message.enqueuedAt;
+                    ready.add(queue);
+                }
+            }
+            return queue;
+        });
+        enqueued.increment();
+        return true;
+    }
+
+    private void workerLoop() {
+        long lastSweep = clock.getAsLong();
+        while (running || size.get() > 0) {
+            ChatQueue queue;
+            try {
+                queue = ready.poll(500, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+            if (queue == null) {
+                if (!running) {
+                    return;
+                }
+                if (clock.getAsLong() - lastSweep > IDLE_CHAT_EVICT_NANOS) {
+                    evictIdleChats();
+                    lastSweep = clock.getAsLong();
+                }
+                continue;
+            }
+            process(queue);
+        }
+    }
+
+    /**
+     * Берёт один готовый чат без ожидания. Возвращает false, если готовых нет. Для тестов
+     * с ненастоящими часами, где воркеров нет.
+     */
+    boolean processReady() {
+        ChatQueue queue = ready.poll();
+        if (queue == null) {
+            return false;
+        }
+        process(queue);
+        return true;
+    }
+
+    private void process(ChatQueue queue) {
+        // Ждёт воркер (виртуальный поток), а не event loop: колбэки только отпускают
+        try {
+            inFlight.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            reschedule(queue, 0);
+            return;
+        }
+        if (!send(queue)) {
+            inFlight.release();
+        }
+    }
+
+    // true, если отправка ушла: тогда разрешение отпустит её колбэк
+    private boolean send(ChatQueue queue) {
+        long now = clock.getAsLong();
+        long chatWait = queue.bucket.nanosUntilAvailable(now);
+        if (chatWait > 0) {
+            reschedule(queue, chatWait);
+            return false;
+        }
+        // Нет глобального токена — ждёт чат в очереди готовых, а не воркер
+        long globalWait = global.tryAcquire(now);
+        if (globalWait > 0) {
+            reschedule(queue, globalWait);
+            return false;
+        }
+        queue.bucket.tryAcquire(now);
+
+        List<OutboundMessage> batch = takeBatch(queue);
+        if (batch.isEmpty()) {
+            finish(queue);
+            return false;
+        }
+
+        String text = batch.size() == 1 ? batch.get(0).text : join(batch);
+
+        long started = clock.getAsLong();
+        Mono<Void> send;
+        try {
+            send = transport.sendMessage(queue.chatId, text);
+        } catch (RuntimeException e) {
+            onError(queue, batch, started, e);
+            return false;
+        }
+        send.subscribe(ignored -> { },
+            error -> {
+                inFlight.release();
+                onError(queue, batch, started, error);
+            },
+            () -> {
+                inFlight.release();
+                onSent(queue, batch, started);
+            });
+        return true;
+    }
+
+    private void onSent(ChatQueue queue, List<OutboundMessage> batch, long started) {
+        long now = clock.getAsLong();
+        apiLatency.recordNanos(now - started);
+        for (OutboundMessage message : batch) {
+            sendLatency.recordNanos(now - message.enqueuedAt);
+        }
+        sent.add(batch.size());
+        if (batch.size() > 1) {
+            coalesced.add(batch.size() - 1);
+        }
+        size.addAndGet(-batch.size());
+        queue.attempts = 0;
+        finish(queue);
+    }
+
+    private void onError(ChatQueue queue, List<OutboundMessage> batch, long started, Throwable error) {
+        apiLatency.recordNanos(clock.getAsLong() - started);
+        if (error instanceof BotApiException e && e.isRateLimited()) {
+            rateLimited.increment();
+            retryLater(queue, batch, TimeUnit.SECONDS.toNanos(e.getRetryAfter()));
+        } else {
+            fail(queue, batch, error);
+        }
+    }
+
+    private List<OutboundMessage> takeBatch(ChatQueue queue) {
+        List<OutboundMessage> batch = new ArrayList<>(1);
+        synchronized (queue) {
+            OutboundMessage first = queue.messages.poll();
+            if (first == null) {
+                return batch;
+            }
+            batch.add(first);
+            if (coalesce) {
+                int length = first.text.length();
+                OutboundMessage next;
+                while ((next = queue.messages.peek()) != null
+                        && length + 2 + next.text.length() <= TELEGRAM_MAX_TEXT_LENGTH) {
+                    batch.add(queue.messages.poll());
+                    length += 2 + next.text.length();
+                }
+            }
+        }
+        return batch;
+    }
+
+    private void retryLater(ChatQueue queue, List<OutboundMessage> batch, long retryAfterNanos) {
+        logger.warn("Telegram returned 429 for chat {}, retry after {} ms",
+            queue.chatId, TimeUnit.NANOSECONDS.toMillis(retryAfterNanos));
+        // Пауза для чата на весь retry_after; глобальное ведро обнуляем, чтобы притормозить общий поток
+        queue.bucket.pauseFor(retryAfterNanos);
+        global.pauseFor(0);
+        if (++queue.attempts >= maxAttempts) {
+            droppedAfterRetries.add(batch.size());
+            size.addAndGet(-batch.size());
+            queue.attempts = 0;
+            logger.error("Dropping {} message(s) to chat {} after {} attempts", batch.size(), queue.chatId, maxAttempts);
+            finish(queue);
+            return;
+        }
+        synchronized (queue) {
+            for (int i = batch.size() - 1; i >= 0; i--) {
+                queue.messages.addFirst(batch.get(i));
+            }
+        }
+        reschedule(queue, retryAfterNanos);
+    }
+
+    private void fail(ChatQueue queue, List<OutboundMessage> batch, Throwable e) {
+        failed.add(batch.size());
+        size.addAndGet(-batch.size());
+        logger.error("Error sending message to chat {}: {}", queue.chatId, e.getMessage());
+        finish(queue);
+    }
+
+    private void reschedule(ChatQueue queue, long delayNanos) {
+        queue.readyAt = clock.getAsLong() + delayNanos;
+        ready.add(queue);
+    }
+
+    private void finish(ChatQueue queue) {
+        synchronized (queue) {
+            if (queue.messages.isEmpty()) {
+                queue.scheduled = false;
+                return;
+            }
+        }
+        reschedule(queue, queue.bucket.nanosUntilAvailable(clock.getAsLong()));
+    }
+
+    private void evictIdleChats() {
+        long now = clock.getAsLong();
+        for (Long chatId : chats.keySet()) {
+            chats.computeIfPresent(chatId, (id, queue) -> {
+                synchronized (queue) {
+                    boolean idle = !queue.scheduled && queue.messages.isEmpty()
+                            && now - queue.lastActivity > IDLE_CHAT_EVICT_NANOS;
+                    return idle ? null : queue;
+                }
+            });
+        }
+    }
+
+    private static String join(List<OutboundMessage> batch) {
+        StringBuilder sb = new StringBuilder();
+        for (OutboundMessage message : batch) {
+            if (sb.length() > 0) {
+                sb.append("\n\n");
+            }
+            sb.append(message.text);
+        }
+        return sb.toString();
+    }
+
+    public int getQueueDepth() {
+        return size.get();
+    }
+
+    @Override
+    public String statsName() {
+        return "outbound";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueDepth", size.get());
+        stats.put("capacity", capacity);
+        stats.put("chats", chats.size());
+        stats.put("inFlight", maxInFlight - inFlight.availablePermits());
+        stats.put("enqueued", enqueued.sum());
+        stats.put("sent", sent.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("rateLimited", rateLimited.sum());
+        stats.put("droppedQueueFull", droppedQueueFull.sum());
+        stats.put("droppedAfterRetries", droppedAfterRetries.sum());
+        stats.put("failed", failed.sum());
+        stats.put("sendLatency", sendLatency.snapshot());
+        stats.put("apiLatency", apiLatency.snapshot());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        workers.shutdown();
+        try {
+            if (!workers.awaitTermination(5, TimeUnit.SECONDS)) {
+                logger.warn("Outbound queue stopped with {} unsent message(s)", size.get());
+                workers.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            workers.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private record OutboundMessage(long chatId, String text, long enqueuedAt) {
+    }
+
+    private static final class ChatQueue implements Delayed {
+        private final long chatId;
+        private final TokenBucket bucket;
+        // messages, scheduled и lastActivity защищены монитором очереди
+        private final ArrayDeque<OutboundMessage> messages = new ArrayDeque<>();
+        private boolean scheduled;
+        private long lastActivity;
+        private volatile long readyAt;
+        // Меняется только тем, кто держит чат: воркером или колбэком его отправки
+        private int attempts;
+        private final LongSupplier clock;
+
+        private ChatQueue(long chatId, double rate, double burst, LongSupplier clock) {
+            this.chatId = chatId;
+            this.bucket = new TokenBucket(rate, burst, clock);
+            this.clock = clock;
+        }
+
+        @Override
+        public long getDelay(TimeUnit unit) {
+            return unit.convert(readyAt - clock.getAsLong(), TimeUnit.NANOSECONDS);
+        }
+
+        @Override
+        public int compareTo(Delayed other) {
+            return Long.compare(getDelay(TimeUnit.NANOSECONDS), other.getDelay(TimeUnit.NANOSECONDS));
+        }
+    }
+}
@@ -0,0 +1,147 @@
+package org.tripplanner.modules.connections;
+
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.handler.codec.http.HttpHeaderNames;
+import io.netty.handler.codec.http.HttpHeaderValues;
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Mono;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.client.HttpClientResponse;
+import reactor.netty.resources.ConnectionProvider;
+
+/**
+ * Неблокирующий транспорт Bot API на Reactor Netty. Соединения держатся в пуле с
+ * keep-alive, ответы разбираются потоковым декодером прямо из сетевых буферов.
+ * Бин и его пул соединений создаются, только если выбран telegram.bot.transport=reactor-netty.
+ */
+@Component
+@ConditionalOnProperty(name = "telegram.bot.transport", havingValue = "reactor-netty")
+public class ReactorNettyBotApiTransport implements BotApiTransport, UpdateSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ReactorNettyBotApiTransport.class);
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    // Запас поверх long-poll таймаута, чтобы не рвать соединение раньше Telegram
+    private static final Duration POLL_TIMEOUT_MARGIN = Duration.ofSeconds(10);
+
+    private final TelegramUpdateDecoder decoder;
+    private final ConnectionProvider connectionProvider;
+    private final HttpClient client;
+    private final HttpClient pollingClient;
+    private final int pollTimeoutSeconds;
+    private final int pollLimit;
+    private final List<String> allowedUpdates;
+
+    public ReactorNettyBotApiTransport(TelegramUpdateDecoder decoder,
+                                       @Value("${telegram.bot.token}") String botToken,
+                                       @Value("${telegram.bot.api.base-url:https://api.telegram.org}") String baseUrl,
+                                       @Value("${telegram.bot.api.max-connections:16}") int maxConnections,
+                                       @Value("${telegram.bot.connection.timeout:5000}") long requestTimeoutMs,
+                                       @Value("${telegram.bot.polling.timeout-seconds:50}") int pollTimeoutSeconds,
+                                       @Value("${telegram.bot.polling.limit:100}") int pollLimit,
+                                       @Value("${telegram.bot.allowed-updates:message,edited_message}") String[] allowedUpdates) {
+        this.decoder = decoder;
+        this.pollTimeoutSeconds = pollTimeoutSeconds;
+        this.pollLimit = pollLimit;
+        this.allowedUpdates = List.copyOf(Arrays.asList(allowedUpdates));
+        this.connectionProvider = ConnectionProvider.builder("telegram-bot-api")
+                .maxConnections(maxConnections)
+                .pendingAcquireTimeout(Duration.ofMillis(requestTimeoutMs))
+                .maxIdleTime(Duration.ofSeconds(pollTimeoutSeconds).plus(POLL_TIMEOUT_MARGIN))
+                .build();
+        HttpClient base = HttpClient.create(connectionProvider)
+                .baseUrl(baseUrl + "/bot" + botToken)
+                .keepAlive(true)
+                .headers(headers -> headers.set(HttpHeaderNames.CONTENT_TYPE, HttpHeaderValues.APPLICATION_JSON));
+        this.client = base.responseTimeout(Duration.ofMillis(requestTimeoutMs));
+        this.pollingClient = base.responseTimeout(Duration.ofSeconds(pollTimeoutSeconds).plus(POLL_TIMEOUT_MARGIN));
+    }
+
+    @Override
+    public Mono<UpdateBatch> getUpdates(long offset) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("offset", offset);
+        body.put("limit", pollLimit);
+        body.put("timeout", pollTimeoutSeconds);
+        body.put("allowed_updates", allowedUpdates);
+        return pollingClient.post()
+                .uri("/getUpdates")
+                .send(json(body))
+                .response((response, content) -> decoder.decodeGetUpdates(content.asByteBuffer())
+                        .onErrorMap(UncheckedIOException.class, e -> malformed(response, e)))
+                .singleOrEmpty()
+                .defaultIfEmpty(UpdateBatch.EMPTY)
+                .onErrorMap(e -> !(e instanceof BotApiException), e -> new BotApiException("getUpdates failed", e));
+    }
+
+    @Override
+    public Mono<Void> sendMessage(long chatId, String text) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("chat_id", chatId);
+        body.put("text", text);
+        return call("/sendMessage", body);
+    }
+
+    @Override
+    public Mono<Void> setWebhook(String url, String secretToken, List<String> allowedUpdates) {
+        Map<String, Object> body = new LinkedHashMap<>();
+        body.put("url", url);
+        if (secretToken != null && !secretToken.isBlank()) {
+            body.put("secret_token", secretToken);
+        }
+        body.put("allowed_updates", allowedUpdates);
+        return call("/setWebhook", body);
+    }
+
+    @Override
+    public Mono<Void> deleteWebhook(boolean dropPendingUpdates) {
+        return call("/deleteWebhook", Map.of("drop_pending_updates", dropPendingUpdates));
+    }
+
+    private Mono<Void> call(String method, Map<String, Object> body) {
+        return client.post()
+                .uri(method)
+                .send(json(body))
+                .response((response, content) -> decoder.decodeResponse(content.asByteBuffer())
+                        .onErrorMap(UncheckedIOException.class, e -> malformed(response, e)))
+                .then()
+                .onErrorMap(e -> !(e instanceof BotApiException), e -> new BotApiException(method + " failed", e));
+    }
+
+    private static Mono<ByteBuf> json(Object body) {
+        return Mono.fromCallable(() -> {
+            try {
+                return Unpooled.wrappedBuffer(objectMapper.writeValueAsBytes(body));
+            } catch (JsonProcessingException e) {
+                throw new IllegalArgumentException("Cannot serialize Bot API request", e);
+            }
+        });
+    }
+
+    private static BotApiException malformed(HttpClientResponse response, Throwable cause) {
+        return new BotApiException(response.status().code(),
+            "Malformed Bot API response (HTTP " + response.status().code() + "): " + cause.getMessage(), 0);
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        connectionProvider.disposeLater().block(Duration.ofSeconds(5));
+        logger.debug("Bot API connection pool disposed");
+    }
+}
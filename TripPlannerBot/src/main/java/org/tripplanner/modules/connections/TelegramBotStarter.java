@@ -1,15 +1,17 @@
 package org.tripplanner.modules.connections;
 
+import java.time.Duration;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.ObjectProvider;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Component;
 import org.telegram.telegrambots.meta.TelegramBotsApi;
-import org.telegram.telegrambots.meta.api.methods.updates.DeleteWebhook;
 import org.telegram.telegrambots.updatesreceivers.DefaultBotSession;
-import org.tripplanner.modules.dialog.TelegramBotController;
+import org.tripplanner.util.DrainCoordinator;
 
 import jakarta.annotation.PostConstruct;
 import jakarta.annotation.PreDestroy;
@@ -20,7 +22,6 @@ public class TelegramBotStarter {
     private static final Logger logger = LoggerFactory.getLogger(TelegramBotStarter.class);
     private static final int MAX_RETRIES = 3;
     private static final int RETRY_DELAY_SECONDS = 2;
-    private static final int SHUTDOWN_DELAY_SECONDS = 3;
 
     @Value("${telegram.bot.token}")
     private String botToken;
@@ -31,14 +32,46 @@ public class TelegramBotStarter {
     @Value("${project.authors}")
     private String authors;
 
-    private final TelegramBotController controller;
+    @Value("${telegram.bot.webhook.enabled:false}")
+    private boolean webhookEnabled;
+
+    @Value("${telegram.bot.webhook.url:}")
+    private String webhookUrl;
+
+    @Value("${telegram.bot.webhook.secret-token:}")
+    private String webhookSecretToken;
+
+    // telegrambots — блокирующий клиент библиотеки, reactor-netty — неблокирующий транспорт
+    @Value("${telegram.bot.transport:telegrambots}")
+    private String transportType;
+
+    @Value("${telegram.bot.connection.timeout:5000}")
+    private long requestTimeoutMs;
+
+    @Value("${telegram.bot.allowed-updates:message,edited_message}")
+    private String[] allowedUpdates;
+
+    private final UpdateProcessor processor;
+    private final OutboundMessageQueue outbound;
+    // Бин есть, только если выбран reactor-netty
+    private final ObjectProvider<ReactorNettyBotApiTransport> reactorTransport;
+    private final UpdatePoller poller;
+    private final UpdateCheckpointer checkpointer;
+    private BotApiTransport transport;
     private TelegramBotsApi botsApi;
     private TripPlannerBot bot;
     private DefaultBotSession session;
     private final AtomicBoolean isRunning = new AtomicBoolean(false);
 
-    public TelegramBotStarter(TelegramBotController controller) {
-        this.controller = controller;
+    public TelegramBotStarter(UpdateProcessor processor, OutboundMessageQueue outbound,
+                              ObjectProvider<ReactorNettyBotApiTransport> reactorTransport, UpdatePoller poller,
+                              UpdateCheckpointer checkpointer, DrainCoordinator drainCoordinator) {
+        this.processor = processor;
+        this.outbound = outbound;
+        this.reactorTransport = reactorTransport;
+        this.poller = poller;
+        this.checkpointer = checkpointer;
+        drainCoordinator.onStopIntake(this::stopIntake);
     }
 
     @PostConstruct
@@ -57,22 +90,36 @@ public class TelegramBotStarter {
                     Thread.sleep(RETRY_DELAY_SECONDS * 1000L);
                 }
 
-                bot = new TripPlannerBot(botToken, botUsername, controller);
-                botsApi = new TelegramBotsApi(DefaultBotSession.class);
+                bot = new TripPlannerBot(botToken, botUsername, processor);
+                transport = isReactorTransport() ? reactorTransport.getObject() : new TelegramBotsTransport(bot);
+                outbound.start(transport);
+                long offset = checkpointer.restoreOffset();
 
+                if (webhookEnabled) {
+                    registerWebhook();
+                    logger.info("Bot started in webhook mode by: {}", authors);
+                    return;
+                }
+
+                // Накопившиеся за время простоя апдейты не выбрасываем: продолжаем с чекпоинта,
+                // уже обработанные отсеет UpdateCheckpointer
                 try {
-                    DeleteWebhook deleteWebhook = new DeleteWebhook();
-                    deleteWebhook.setDropPendingUpdates(true);
-                    bot.execute(deleteWebhook);
-                    logger.info("Deleted webhook with dropPendingUpdates=true");
-                    Thread.sleep(1000); // Wait a bit after deleting webhook
+                    transport.deleteWebhook(false).block(requestTimeout());
+                    logger.info("Deleted webhook, pending updates kept");
                 } catch (Exception e) {
                     logger.warn("Failed to delete webhook: {}", e.getMessage());
                 }
 
-                session = (DefaultBotSession) botsApi.registerBot(bot);
-                
-                logger.info("Bot started by: {}", authors);
+                if (isReactorTransport()) {
+                    poller.start(reactorTransport.getObject(), offset);
+                } else {
+                    // DefaultBotSession ведёт offset сам и подтверждает апдейт, как только его получил:
+                    // чекпоинт здесь только отсеивает повторы, упавшие в работе апдейты не вернутся
+                    botsApi = new TelegramBotsApi(DefaultBotSession.class);
+                    session = (DefaultBotSession) botsApi.registerBot(bot);
+                }
+
+                logger.info("Bot started by: {} (transport: {})", authors, transportType);
                 return;
             } catch (Exception e) {
                 retryCount++;
@@ -86,6 +133,32 @@ public class TelegramBotStarter {
         }
     }
 
+    private void registerWebhook() {
+        if (webhookUrl == null || webhookUrl.isBlank()) {
+            throw new IllegalStateException("telegram.bot.webhook.url must be set when webhook mode is enabled");
+        }
+        transport.setWebhook(webhookUrl, webhookSecretToken, List.of(allowedUpdates))
+                .block(requestTimeout());
+        logger.info("Registered webhook {}", webhookUrl);
+    }
+
+    private boolean isReactorTransport() {
+        return "reactor-netty".equalsIgnoreCase(transportType);
+    }
+
+    private Duration requestTimeout() {
+        return Duration.ofMillis(requestTimeoutMs);
+    }
+
+    // Вызывается DrainCoordinator до ожидания незавершённой работы
+    private synchronized void stopIntake() {
+        if (session != null && session.isRunning()) {
+            session.stop();
+            logger.info("Stopped bot session");
+        }
+        poller.stop();
+    }
+
     @PreDestroy
     public void stop() {
         if (!isRunning.get()) {
@@ -94,22 +167,9 @@ public class TelegramBotStarter {
 
         logger.info("Stopping Telegram bot...");
         try {
-            if (session != null) {
-                session.stop();
-                logger.info("Stopped bot session");
-                Thread.sleep(SHUTDOWN_DELAY_SECONDS * 1000L);
-            }
-
-            if (bot != null) {
-                try {
-                    DeleteWebhook deleteWebhook = new DeleteWebhook();
-                    deleteWebhook.setDropPendingUpdates(true);
-                    bot.execute(deleteWebhook);
-                    logger.info("Final webhook cleanup completed");
-                } catch (Exception e) {
-                    logger.warn("Final webhook cleanup failed: {}", e.getMessage());
-                }
-            }
+            stopIntake();
+            outbound.stop();
+            checkpointer.stop();
         } catch (Exception e) {
             logger.error("Error stopping bot: {}", e.getMessage());
         } finally {
@@ -0,0 +1,68 @@
+package org.tripplanner.modules.connections;
+
+import java.util.List;
+import java.util.concurrent.Callable;
+
+import org.telegram.telegrambots.meta.api.methods.send.SendMessage;
+import org.telegram.telegrambots.meta.api.methods.updates.DeleteWebhook;
+import org.telegram.telegrambots.meta.api.methods.updates.SetWebhook;
+import org.telegram.telegrambots.meta.bots.AbsSender;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiException;
+import org.telegram.telegrambots.meta.exceptions.TelegramApiRequestException;
+
+import reactor.core.publisher.Mono;
+import reactor.core.scheduler.Schedulers;
+
+/**
+ * Транспорт поверх блокирующего клиента telegrambots. Вызовы уходят на boundedElastic,
+ * а long polling в этом режиме делает DefaultBotSession, поэтому {@link UpdateSource} здесь нет.
+ */
+public class TelegramBotsTransport implements BotApiTransport {
+
+    private final AbsSender sender;
+
+    public TelegramBotsTransport(AbsSender sender) {
+        this.sender = sender;
+    }
+
+    @Override
+    public Mono<Void> sendMessage(long chatId, String text) {
+        SendMessage request = new SendMessage();
+        request.setChatId(Long.toString(chatId));
+        request.setText(text);
+        return execute(() -> sender.execute(request));
+    }
+
+    @Override
+    public Mono<Void> setWebhook(String url, String secretToken, List<String> allowedUpdates) {
+        SetWebhook request = new SetWebhook(url);
+        request.setAllowedUpdates(allowedUpdates);
+        if (secretToken != null && !secretToken.isBlank()) {
+            request.setSecretToken(secretToken);
+        }
+        return execute(() -> sender.execute(request));
+    }
+
+    @Override
+    public Mono<Void> deleteWebhook(boolean dropPendingUpdates) {
+        DeleteWebhook request = new DeleteWebhook();
+        request.setDropPendingUpdates(dropPendingUpdates);
+        return execute(() -> sender.execute(request));
+    }
+
+    private static Mono<Void> execute(Callable<?> call) {
+        return Mono.fromCallable(call)
+                .subscribeOn(Schedulers.boundedElastic())
+                .onErrorMap(TelegramApiException.class, TelegramBotsTransport::toBotApiException)
+                .then();
+    }
+
+    private static BotApiException toBotApiException(TelegramApiException e) {
+        if (e instanceof TelegramApiRequestException request) {
+            int code = request.getErrorCode() != null ? request.getErrorCode() : 0;
+            Integer retryAfter = request.getParameters() != null ? request.getParameters().getRetryAfter() : null;
+            return new BotApiException(code, request.getApiResponse(), retryAfter != null ? retryAfter : 0);
+        }
+        return new BotApiException(e.getMessage(), e);
+    }
+}
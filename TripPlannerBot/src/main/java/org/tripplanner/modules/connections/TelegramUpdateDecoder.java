@@ -0,0 +1,319 @@
+package org.tripplanner.modules.connections;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.stereotype.Component;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.async.ByteBufferFeeder;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Потоковый декодер апдейтов Telegram на неблокирующем парсере Jackson. Байты читаются
+ * прямо из DataBuffer по мере прихода, дерево JSON не строится, все поля кроме нужных
+ * пропускаются.
+ */
+@Component
+public class TelegramUpdateDecoder {
+
+    // Вебхук: сам апдейт — корневой объект
+    static final int WEBHOOK_UPDATE_LEVEL = 1;
+    // getUpdates: {"ok":true,"result":[{апдейт}, ...]}
+    static final int GET_UPDATES_LEVEL = 3;
+    // Прочие методы API: нужен только конверт ok/error_code/parameters
+    static final int ENVELOPE_ONLY_LEVEL = 1000;
+
+    private final JsonFactory jsonFactory = new JsonFactory();
+
+    public Flux<IncomingUpdate> decodeWebhook(Flux<DataBuffer> body) {
+        return decode(body, WEBHOOK_UPDATE_LEVEL);
+    }
+
+    public List<IncomingUpdate> decodeWebhook(byte[] json) {
+        StreamingUpdateParser parser = newParser(WEBHOOK_UPDATE_LEVEL);
+        List<IncomingUpdate> updates = new ArrayList<>(parser.feed(ByteBuffer.wrap(json)));
+        updates.addAll(parser.finish());
+        return updates;
+    }
+
+    /**
+     * Разбирает ответ getUpdates. Если Telegram ответил ok=false, Mono завершается
+     * {@link BotApiException}.
+     */
+    public Mono<UpdateBatch> decodeGetUpdates(Flux<ByteBuffer> body) {
+        return Mono.defer(() -> {
+            StreamingUpdateParser parser = newParser(GET_UPDATES_LEVEL);
+            List<IncomingUpdate> updates = new ArrayList<>();
+            return body.doOnNext(chunk -> updates.addAll(parser.feed(chunk)))
+                    .then(Mono.fromCallable(() -> {
+                        updates.addAll(parser.finish());
+                        parser.checkEnvelope();
+                        return new UpdateBatch(updates, parser.lastUpdateId());
+                    }));
+        });
+    }
+
+    /**
+     * Проверяет конверт ответа любого другого метода, содержимое result пропускается.
+     */
+    public Mono<Void> decodeResponse(Flux<ByteBuffer> body) {
+        return Mono.defer(() -> {
+            StreamingUpdateParser parser = newParser(ENVELOPE_ONLY_LEVEL);
+            return body.doOnNext(parser::feed)
+                    .then(Mono.fromRunnable(() -> {
+                        parser.finish();
+                        parser.checkEnvelope();
+                    }));
+        });
+    }
+
+    Flux<IncomingUpdate> decode(Flux<DataBuffer> body, int updateLevel) {
+        return Flux.defer(() -> {
+            StreamingUpdateParser parser = newParser(updateLevel);
+            return body.concatMapIterable(buffer -> {
+                        try (DataBuffer.ByteBufferIterator chunks = buffer.readableByteBuffers()) {
+                            List<IncomingUpdate> decoded = List.of();
+                            while (chunks.hasNext()) {
+                                List<IncomingUpdate> chunk = parser.feed(chunks.next());
+                                if (!chunk.isEmpty()) {
+                                    decoded = decoded.isEmpty() ? chunk : concat(decoded, chunk);
+                                }
+                            }
+                            return decoded;
+                        } finally {
+                            DataBufferUtils.release(buffer);
+                        }
+                    })
+                    .concatWith(Flux.defer(() -> Flux.fromIterable(parser.finish())));
+        });
+    }
+
+    StreamingUpdateParser newParser(int updateLevel) {
+        try {
+            return new StreamingUpdateParser(jsonFactory.createNonBlockingByteBufferParser(), updateLevel);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static List<IncomingUpdate> concat(List<IncomingUpdate> a, List<IncomingUpdate> b) {
+        List<IncomingUpdate> result = new ArrayList<>(a.size() + b.size());
+        result.addAll(a);
+        result.addAll(b);
+        return result;
+    }
+
+    /**
+     * Конечный автомат поверх токенов. Помнит имя поля на каждом уровне вложенности и
+     * собирает апдейт, пока не закроется его объект на уровне updateLevel. Для ответов
+     * Bot API дополнительно читает конверт: ok, error_code, description, retry_after.
+     */
+    static final class StreamingUpdateParser {
+        private static final int MAX_DEPTH = 32;
+        private static final int NONE = 0;
+        private static final int MESSAGE = 1;
+        private static final int EDITED_MESSAGE = 2;
+
+        private final JsonParser parser;
+        private final ByteBufferFeeder feeder;
+        private final int base;
+        private final boolean envelope;
+        private final String[] names = new String[MAX_DEPTH + 1];
+        private int level;
+        private boolean collecting;
+        private long lastUpdateId;
+
+        private boolean ok;
+        private int errorCode;
+        private String description;
+        private int retryAfter;
+
+        private long updateId;
+        private long chatId;
+        private boolean hasChat;
+        private String text;
+        private double latitude;
+        private double longitude;
+        private boolean hasLatitude;
+        private boolean hasLongitude;
+        private int messageKind;
+
+        StreamingUpdateParser(JsonParser parser, int updateLevel) {
+            this.parser = parser;
+            this.feeder = (ByteBufferFeeder) parser.getNonBlockingInputFeeder();
+            this.base = updateLevel;
+            this.envelope = updateLevel != WEBHOOK_UPDATE_LEVEL;
+        }
+
+        long lastUpdateId() {
+            return lastUpdateId;
+        }
+
+        void checkEnvelope() {
+            if (!ok) {
+                throw new BotApiException(errorCode,
+                    description != null ? description : "Bot API response without ok=true", retryAfter);
+            }
+        }
+
+        List<IncomingUpdate> feed(ByteBuffer chunk) {
+            try {
+                feeder.feedInput(chunk);
+                return drain();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        List<IncomingUpdate> finish() {
+            try {
+                feeder.endOfInput();
+                List<IncomingUpdate> updates = drain();
+                parser.close();
+                return updates;
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+
+        private List<IncomingUpdate> drain() throws IOException {
+            List<IncomingUpdate> updates = null;
+            JsonToken token;
+            while ((token = parser.nextToken()) != null && token != JsonToken.NOT_AVAILABLE) {
+                IncomingUpdate update = onToken(token);
+                if (update != null) {
+                    if (updates == null) {
+                        updates = new ArrayList<>(2);
+                    }
+                    updates.add(update);
+                }
+            }
+            return updates != null ? updates : List.of();
+        }
+
+        private IncomingUpdate onToken(JsonToken token) throws IOException {
+            switch (token) {
+                case START_OBJECT, START_ARRAY -> {
+                    if (++level > MAX_DEPTH) {
+                        throw new IOException("JSON nesting is too deep");
+                    }
+                    names[level] = null;
+                    if (level == base && token == JsonToken.START_OBJECT) {
+                        // В ответе getUpdates апдейты лежат только в массиве result
+                        collecting = !envelope || "result".equals(names[1]);
+                        reset();
+                    }
+                }
+                case END_OBJECT, END_ARRAY -> {
+                    IncomingUpdate update = level == base && token == JsonToken.END_OBJECT ? build() : null;
+                    level--;
+                    return update;
+                }
+                case FIELD_NAME -> names[level] = parser.currentName();
+                default -> onValue(token);
+            }
+            return null;
+        }
+
+        private void onValue(JsonToken token) throws IOException {
+            if (envelope && level <= 2) {
+                onEnvelopeValue(token);
+            }
+            if (level < base || level > base + 2 || !collecting) {
+                return;
+            }
+            String field = names[level];
+            if (level == base) {
+                if ("update_id".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                    updateId = parser.getLongValue();
+                    lastUpdateId = Math.max(lastUpdateId, updateId);
+                }
+                return;
+            }
+            int kind = messageKind(names[base]);
+            if (kind == NONE) {
+                return;
+            }
+            messageKind = kind;
+            if (level == base + 1) {
+                if ("text".equals(field) && token == JsonToken.VALUE_STRING) {
+                    text = parser.getText();
+                }
+                return;
+            }
+            String parent = names[base + 1];
+            if ("chat".equals(parent) && "id".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                chatId = parser.getLongValue();
+                hasChat = true;
+            } else if ("location".equals(parent) && token.isNumeric()) {
+                if ("latitude".equals(field)) {
+                    latitude = parser.getDoubleValue();
+                    hasLatitude = true;
+                } else if ("longitude".equals(field)) {
+                    longitude = parser.getDoubleValue();
+                    hasLongitude = true;
+                }
+            }
+        }
+
+        private void onEnvelopeValue(JsonToken token) throws IOException {
+            String field = names[level];
+            if (level == 1) {
+                if ("ok".equals(field)) {
+                    ok = token == JsonToken.VALUE_TRUE;
+                } else if ("error_code".equals(field) && token == JsonToken.VALUE_NUMBER_INT) {
+                    errorCode = parser.getIntValue();
+                } else if ("description".equals(field) && token == JsonToken.VALUE_STRING) {
+                    description = parser.getText();
+                }
+            } else if ("parameters".equals(names[1]) && "retry_after".equals(field)
+                    && token == JsonToken.VALUE_NUMBER_INT) {
+                retryAfter = parser.getIntValue();
+            }
+        }
+
+        private static int messageKind(String field) {
+            if ("message".equals(field)) {
+                return MESSAGE;
+            }
+            if ("edited_message".equals(field)) {
+                return EDITED_MESSAGE;
+            }
+            return NONE;
+        }
+
+        private IncomingUpdate build() {
+            if (!collecting || !hasChat || messageKind == NONE) {
+                return null;
+            }
+            boolean edited = messageKind == EDITED_MESSAGE;
+            if (text != null) {
+                return new IncomingUpdate(updateId, chatId, text, false, 0, 0, edited);
+            }
+            if (hasLatitude && hasLongitude) {
+                return IncomingUpdate.location(updateId, chatId, latitude, longitude, edited);
+            }
+            return null;
+        }
+
+        private void reset() {
+            updateId = 0;
+            chatId = 0;
+            hasChat = false;
+            text = null;
+            hasLatitude = false;
+            hasLongitude = false;
+            messageKind = NONE;
+        }
+    }
+}
@@ -0,0 +1,16 @@
+package org.tripplanner.modules.connections;
+
+import java.util.List;
+
+/**
+ * Ответ getUpdates. lastUpdateId учитывает и апдейты, которые бот не обрабатывает,
+ * чтобы offset сдвигался и Telegram не присылал их снова.
+ */
+public record UpdateBatch(List<IncomingUpdate> updates, long lastUpdateId) {
+
+    public static final UpdateBatch EMPTY = new UpdateBatch(List.of(), 0);
+
+    public boolean isEmpty() {
+        return lastUpdateId == 0;
+    }
+}
@@ -0,0 +1,218 @@
+package org.tripplanner.modules.connections;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListSet;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.tripplanner.repositories.BotStateDAO;
+import org.tripplanner.util.StatsSource;
+
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Чекпоинт последнего обработанного update_id в Mongo и дедупликация повторно
+ * доставленных апдейтов.
+ *
+ * Апдейты разных чатов завершаются не по порядку, поэтому сохраняется не максимальный
+ * завершённый id, а водяной знак: всё, что меньше самого старого апдейта в работе.
+ * Пишем пачками — раз в batchSize апдейтов или раз в interval, что наступит раньше.
+ */
+@Component
+public class UpdateCheckpointer implements StatsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpdateCheckpointer.class);
+    private static final Duration IO_TIMEOUT = Duration.ofSeconds(5);
+
+    private final BotStateDAO botStateDAO;
+    private final String botId;
+    private final int batchSize;
+    private final Duration interval;
+
+    // Кольцо последних id: слот id & mask хранит последний попавший в него id
+    private final AtomicLongArray recent;
+    private final int mask;
+
+    private final ConcurrentSkipListSet<Long> inFlight = new ConcurrentSkipListSet<>();
+    private final AtomicLong maxSeen = new AtomicLong();
+    private final AtomicLong lastSaved = new AtomicLong();
+    private final AtomicInteger sinceFlush = new AtomicInteger();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    private volatile long restored;
+
+    private final LongAdder duplicates = new LongAdder();
+    private final LongAdder checkpoints = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    private Disposable timer;
+
+    public UpdateCheckpointer(BotStateDAO botStateDAO,
+                              @Value("${telegram.bot.username}") String botUsername,
+                              @Value("${telegram.bot.checkpoint.batch-size:100}") int batchSize,
+                              @Value("${telegram.bot.checkpoint.interval-ms:1000}") long intervalMs,
+                              @Value("${telegram.bot.dedup.capacity:4096}") int dedupCapacity) {
+        this.botStateDAO = botStateDAO;
+        this.botId = "updates:" + botUsername;
+        this.batchSize = batchSize;
+        this.interval = Duration.ofMillis(intervalMs);
+        int capacity = Integer.highestOneBit(Math.max(2, dedupCapacity - 1)) << 1;
+        this.recent = new AtomicLongArray(capacity);
+        this.mask = capacity - 1;
+    }
+
+    /**
+     * Читает сохранённый чекпоинт и запускает периодическую запись. Возвращает offset,
+     * с которого нужно продолжить getUpdates (0 — если чекпоинта нет).
+     */
+    public synchronized long restoreOffset() {
+        if (timer == null) {
+            try {
+                Long saved = botStateDAO.getLastUpdateId(botId).block(IO_TIMEOUT);
+                if (saved != null) {
+                    restored = saved;
+                    lastSaved.set(saved);
+                    maxSeen.accumulateAndGet(saved, Math::max);
+                    logger.info("Restored update checkpoint {} for {}", saved, botId);
+                }
+            } catch (Exception e) {
+                logger.error("Failed to read update checkpoint, starting from pending updates: {}", e.getMessage());
+            }
+            timer = Flux.interval(interval)
+                    .onBackpressureDrop()
+                    .concatMap(tick -> flush())
+                    .subscribe();
+        }
+        return restored > 0 ? restored + 1 : 0;
+    }
+
+    /**
+     * Регистрирует апдейт перед обработкой. Возвращает false для дубликата — такой апдейт
+     * обрабатывать не нужно. id <= 0 означает, что id неизвестен, и не проверяется.
+     */
+    public boolean begin(long updateId) {
+        if (updateId <= 0) {
+            return true;
+        }
+        if (updateId <= restored || !remember(updateId)) {
+            duplicates.increment();
+            logger.debug("Skipping duplicate update {}", updateId);
+            return false;
+        }
+        inFlight.add(updateId);
+        maxSeen.accumulateAndGet(updateId, Math::max);
+        return true;
+    }
+
+    /**
+     * Апдейт обработан (успешно или нет — повторять его всё равно не будем).
+     */
+    public void complete(long updateId) {
+        if (updateId <= 0) {
+            return;
+        }
+        inFlight.remove(updateId);
+        countAndMaybeFlush();
+    }
+
+    /**
+     * Апдейт, который бот не обрабатывает, но offset за него сдвигать нужно.
+     */
+    public void observe(long updateId) {
+        if (updateId <= 0) {
+            return;
+        }
+        maxSeen.accumulateAndGet(updateId, Math::max);
+        countAndMaybeFlush();
+    }
+
+    public Mono<Void> flush() {
+        return Mono.defer(() -> {
+            if (!flushing.compareAndSet(false, true)) {
+                return Mono.empty();
+            }
+            sinceFlush.set(0);
+            long watermark = watermark();
+            if (watermark <= lastSaved.get()) {
+                flushing.set(false);
+                return Mono.empty();
+            }
+            return botStateDAO.saveLastUpdateId(botId, watermark)
+                    .doOnSuccess(ignored -> {
+                        lastSaved.accumulateAndGet(watermark, Math::max);
+                        checkpoints.increment();
+                    })
+                    .onErrorResume(e -> {
+                        failures.increment();
+                        logger.error("Failed to save update checkpoint {}: {}", watermark, e.getMessage());
+                        return Mono.empty();
+                    })
+                    .doFinally(signal -> flushing.set(false));
+        });
+    }
+
+    // maxSeen читаем раньше inFlight: begin() сначала добавляет id в inFlight, потом двигает maxSeen
+    long watermark() {
+        long seen = maxSeen.get();
+        Long oldest = inFlight.ceiling(Long.MIN_VALUE);
+        return oldest == null ? seen : Math.min(seen, oldest - 1);
+    }
+
+    private boolean remember(long updateId) {
+        int slot = (int) (updateId & mask);
+        while (true) {
+            long current = recent.get(slot);
+            if (current == updateId) {
+                return false;
+            }
+            if (recent.compareAndSet(slot, current, updateId)) {
+                return true;
+            }
+        }
+    }
+
+    private void countAndMaybeFlush() {
+        if (sinceFlush.incrementAndGet() >= batchSize) {
+            flush().subscribe();
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "checkpoint";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("lastSaved", lastSaved.get());
+        stats.put("watermark", watermark());
+        stats.put("inFlight", inFlight.size());
+        stats.put("duplicates", duplicates.sum());
+        stats.put("checkpoints", checkpoints.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (timer == null) {
+            return;
+        }
+        timer.dispose();
+        timer = null;
+        flush().block(IO_TIMEOUT);
+        logger.info("Final update checkpoint {}", lastSaved.get());
+    }
+}
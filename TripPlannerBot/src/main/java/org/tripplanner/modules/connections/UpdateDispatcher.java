@@ -0,0 +1,219 @@
+package org.tripplanner.modules.connections;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.tripplanner.util.DrainCoordinator;
+import org.tripplanner.util.LatencyRecorder;
+import org.tripplanner.util.StatsSource;
+
+import jakarta.annotation.PreDestroy;
+import reactor.core.publisher.Mono;
+
+/**
+ * Раскладывает апдейты по чатам в последовательные "полосы": сообщения одного чата
+ * обрабатываются строго по порядку, разные чаты — параллельно на виртуальных потоках,
+ * но не больше maxConcurrency одновременно.
+ */
+@Component
+public class UpdateDispatcher implements StatsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpdateDispatcher.class);
+
+    private final int maxQueuePerChat;
+    private final Duration taskTimeout;
+    private final Semaphore permits;
+    private final ExecutorService executor;
+    private final DrainCoordinator drainCoordinator;
+    private final Map<Long, Lane> lanes = new ConcurrentHashMap<>();
+
+    private final AtomicInteger queued = new AtomicInteger();
+    private final AtomicInteger running = new AtomicInteger();
+    private final LongAdder processed = new LongAdder();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LatencyRecorder waitTime = new LatencyRecorder();
+    private final LatencyRecorder runTime = new LatencyRecorder();
+
+    public UpdateDispatcher(@Value("${telegram.bot.dispatcher.max-concurrency:64}") int maxConcurrency,
+                            @Value("${telegram.bot.dispatcher.max-queue-per-chat:50}") int maxQueuePerChat,
+                            @Value("${telegram.bot.dispatcher.task-timeout-ms:30000}") long taskTimeoutMs,
+                            DrainCoordinator drainCoordinator) {
+        this.maxQueuePerChat = maxQueuePerChat;
+        this.taskTimeout = Duration.ofMillis(taskTimeoutMs);
+        this.permits = new Semaphore(maxConcurrency, true);
+        this.executor = Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name("tg-lane-", 0).factory());
+        this.drainCoordinator = drainCoordinator;
+        // running снимается только после onResult, так что ответ к этому моменту уже в очереди исходящих
+        drainCoordinator.registerPending(DrainCoordinator.UPDATES, () -> queued.get() + running.get());
+    }
+
+    /**
+     * Ставит обработку апдейта в полосу чата. Результат пайплайна передается в onResult
+     * на потоке полосы. Возвращает false, если очередь чата переполнена.
+     */
+    public <T> boolean dispatch(long chatId, Supplier<Mono<T>> work, Consumer<? super T> onResult) {
+        // Пайплайн и доставка результата разделены: processed считается до onResult,
+        // чтобы тот, кто ждёт результата, уже видел задачу посчитанной
+        Task task = new Task(() -> {
+            T result = work.get().block(taskTimeout);
+            return result != null ? () -> onResult.accept(result) : () -> { };
+        }, System.nanoTime());
+        boolean[] accepted = {false};
+        boolean[] startLane = {false};
+        Lane lane = lanes.compute(chatId, (id, current) -> {
+            Lane l = current != null ? current : new Lane(id);
+            if (l.tasks.size() >= maxQueuePerChat) {
+                return l;
+            }
+            l.tasks.add(task);
+            accepted[0] = true;
+            if (!l.active) {
+                l.active = true;
+                startLane[0] = true;
+            }
+            return l;
+        });
+
+        if (!accepted[0]) {
+            rejected.increment();
+            logger.warn("Dispatcher queue for chat {} is full ({}), update dropped", chatId, maxQueuePerChat);
+            return false;
+        }
+        queued.incrementAndGet();
+        if (startLane[0]) {
+            executor.execute(() -> drain(lane));
+        }
+        return true;
+    }
+
+    private void drain(Lane lane) {
+        Task task;
+        while ((task = nextTask(lane)) != null) {
+            try {
+                permits.acquire();
+            } catch (InterruptedException e) {
+                // Прерывают только при остановке: флаг оставляем, и остаток полосы сбрасывается
+                // тем же путём, не дожидаясь разрешений
+                Thread.currentThread().interrupt();
+                queued.decrementAndGet();
+                failed.increment();
+                continue;
+            }
+            // Сначала running, потом queued: задача не должна выпадать из обоих счётчиков
+            running.incrementAndGet();
+            queued.decrementAndGet();
+            long started = System.nanoTime();
+            waitTime.recordNanos(started - task.enqueuedAt);
+            try {
+                Runnable deliver;
+                try {
+                    deliver = task.work.get();
+                    processed.increment();
+                } catch (Exception e) {
+                    failed.increment();
+                    logger.error("Error processing update for chat {}: {}", lane.chatId, e.getMessage());
+                    continue;
+                }
+                try {
+                    deliver.run();
+                } catch (Exception e) {
+                    logger.error("Error delivering result for chat {}: {}", lane.chatId, e.getMessage());
+                }
+            } finally {
+                runTime.recordNanos(System.nanoTime() - started);
+                running.decrementAndGet();
+                permits.release();
+            }
+        }
+    }
+
+    // Забираем следующую задачу под блокировкой ключа, чтобы пустая полоса удалялась атомарно
+    private Task nextTask(Lane lane) {
+        Task[] next = new Task[1];
+        lanes.compute(lane.chatId, (id, current) -> {
+            next[0] = lane.tasks.poll();
+            if (next[0] == null) {
+                lane.active = false;
+                return null;
+            }
+            return current;
+        });
+        return next[0];
+    }
+
+    public int getQueueDepth() {
+        return queued.get();
+    }
+
+    public int getRunning() {
+        return running.get();
+    }
+
+    @Override
+    public String statsName() {
+        return "dispatcher";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("queueDepth", queued.get());
+        stats.put("running", running.get());
+        stats.put("activeLanes", lanes.size());
+        stats.put("availablePermits", permits.availablePermits());
+        stats.put("processed", processed.sum());
+        stats.put("failed", failed.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("waitTime", waitTime.snapshot());
+        stats.put("runTime", runTime.snapshot());
+        return stats;
+    }
+
+    // Ждём не дольше остатка общего дедлайна остановки: DrainCoordinator уже потратил свою часть
+    @PreDestroy
+    public void shutdown() {
+        executor.shutdown();
+        long waitMillis = Math.min(taskTimeout.toMillis(), drainCoordinator.remaining().toMillis());
+        try {
+            if (!executor.awaitTermination(waitMillis, TimeUnit.MILLISECONDS)) {
+                logger.warn("Dispatcher did not finish in {} ms, interrupting {} running and {} queued updates",
+                        waitMillis, running.get(), queued.get());
+                executor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            executor.shutdownNow();
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static final class Lane {
+        private final long chatId;
+        // Доступ только внутри lanes.compute для этого chatId
+        private final ArrayDeque<Task> tasks = new ArrayDeque<>();
+        private boolean active;
+
+        private Lane(long chatId) {
+            this.chatId = chatId;
+        }
+    }
+
+    // work выполняет пайплайн и возвращает доставку его результата
+    private record Task(Supplier<Runnable> work, long enqueuedAt) {
+    }
+}
@@ -0,0 +1,165 @@
+package org.tripplanner.modules.connections;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.tripplanner.util.StatsSource;
+
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Mono;
+
+/**
+ * Цикл long polling поверх {@link UpdateSource}: следующий getUpdates уходит сразу
+ * после разбора предыдущего ответа, ни один поток при этом не блокируется.
+ * <p>
+ * offset берётся из водяного знака {@link UpdateCheckpointer}, а не из последнего
+ * полученного id: getUpdates с offset подтверждает Telegram всё, что до него, и апдейт,
+ * который ещё обрабатывается, при падении был бы потерян. Поэтому ещё не завершённые
+ * апдейты приходят повторно, и их отсеивает дедупликация чекпоинтера. Если в ответе не
+ * оказалось ничего нового, следующий запрос уходит с небольшой паузой, чтобы не крутить
+ * пустой цикл, пока медленный апдейт дорабатывает.
+ * <p>
+ * Повторы занимают место в ответе: если уже полученных, но не подтверждённых апдейтов
+ * набралось на целый limit, ответ состоял бы из одних повторов, и один зависший апдейт или
+ * длинная полоса одного чата остановили бы приём для всех. Тогда offset уходит за последний
+ * полученный id. Прочным остаётся водяной знак чекпоинтера, а не offset: после перезапуска
+ * опрос продолжится с него, но апдейты, которые Telegram уже считает подтверждёнными,
+ * при падении в этот момент не вернутся — за пропускную способность под нагрузкой платим
+ * доставкой «не больше одного раза» для них.
+ */
+@Component
+public class UpdatePoller implements StatsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpdatePoller.class);
+    private static final Duration ERROR_BACKOFF = Duration.ofSeconds(1);
+    private static final Duration MAX_ERROR_BACKOFF = Duration.ofSeconds(30);
+    private static final Duration REPEAT_BACKOFF = Duration.ofMillis(100);
+
+    private final UpdateProcessor processor;
+    private final UpdateCheckpointer checkpointer;
+    private final LongAdder polls = new LongAdder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder errors = new LongAdder();
+    private final LongAdder repeats = new LongAdder();
+    private final LongAdder aheadOfWatermark = new LongAdder();
+    private final int pollLimit;
+
+    private volatile long offset;
+    // Самый большой id, уже отданный процессору; меняется только в цикле опроса
+    private long lastSeen;
+    private volatile boolean running;
+    private int consecutiveErrors;
+    private Disposable subscription;
+
+    public UpdatePoller(UpdateProcessor processor, UpdateCheckpointer checkpointer,
+                        @Value("${telegram.bot.polling.limit:100}") int pollLimit) {
+        this.processor = processor;
+        this.checkpointer = checkpointer;
+        this.pollLimit = pollLimit;
+    }
+
+    public synchronized void start(UpdateSource source, long initialOffset) {
+        if (running) {
+            return;
+        }
+        running = true;
+        offset = initialOffset;
+        lastSeen = initialOffset - 1;
+        subscription = Mono.defer(() -> source.getUpdates(nextOffset()))
+                .flatMap(this::handle)
+                .onErrorResume(this::backoff)
+                .repeat(() -> running)
+                .subscribe();
+        logger.info("Reactive long polling started from offset {}", initialOffset);
+    }
+
+    // Подтверждаем Telegram только то, что обработано целиком, пока повторы не забивают весь ответ
+    private long nextOffset() {
+        long next = checkpointer.watermark() + 1;
+        if (lastSeen + 1 - next >= pollLimit) {
+            next = lastSeen + 1;
+            aheadOfWatermark.increment();
+        }
+        offset = Math.max(offset, next);
+        return offset;
+    }
+
+    private Mono<UpdateBatch> handle(UpdateBatch batch) {
+        polls.increment();
+        consecutiveErrors = 0;
+        if (batch.isEmpty()) {
+            return Mono.empty();
+        }
+        for (IncomingUpdate update : batch.updates()) {
+            if (update.updateId() > lastSeen) {
+                received.increment();
+            }
+            processor.process(update);
+        }
+        // Покрывает и апдейты, которые декодер отбросил
+        processor.skip(batch.lastUpdateId());
+        if (batch.lastUpdateId() <= lastSeen) {
+            // Только повторы ещё не завершённых апдейтов
+            repeats.increment();
+            return Mono.delay(REPEAT_BACKOFF).then(Mono.empty());
+        }
+        lastSeen = batch.lastUpdateId();
+        return Mono.empty();
+    }
+
+    private Mono<UpdateBatch> backoff(Throwable error) {
+        errors.increment();
+        Duration delay;
+        if (error instanceof BotApiException api && api.getRetryAfter() > 0) {
+            delay = Duration.ofSeconds(api.getRetryAfter());
+        } else {
+            long factor = 1L << Math.min(++consecutiveErrors - 1, 5);
+            delay = ERROR_BACKOFF.multipliedBy(factor);
+            if (delay.compareTo(MAX_ERROR_BACKOFF) > 0) {
+                delay = MAX_ERROR_BACKOFF;
+            }
+        }
+        logger.warn("getUpdates failed, retrying in {} ms: {}", delay.toMillis(), error.getMessage());
+        return Mono.delay(delay).then(Mono.empty());
+    }
+
+    public long getOffset() {
+        return offset;
+    }
+
+    @Override
+    public String statsName() {
+        return "poller";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("running", running);
+        stats.put("offset", offset);
+        stats.put("polls", polls.sum());
+        stats.put("received", received.sum());
+        stats.put("errors", errors.sum());
+        stats.put("repeats", repeats.sum());
+        stats.put("aheadOfWatermark", aheadOfWatermark.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (!running) {
+            return;
+        }
+        running = false;
+        // Висящий long poll просто отменяется, соединение вернётся в пул
+        subscription.dispose();
+        logger.info("Reactive long polling stopped at offset {}", offset);
+    }
+}
@@ -0,0 +1,103 @@
+package org.tripplanner.modules.connections;
+
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+import org.tripplanner.modules.dialog.TelegramBotController;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Общая точка входа для апдейтов из любого источника (long polling, вебхук).
+ * Ставит обработку в полосу чата и отправляет ответ через очередь исходящих сообщений.
+ */
+@Component
+public class UpdateProcessor {
+
+    private static final Logger logger = LoggerFactory.getLogger(UpdateProcessor.class);
+
+    private final TelegramBotController controller;
+    private final UpdateDispatcher dispatcher;
+    private final OutboundMessageQueue outbound;
+    private final UpdateCheckpointer checkpointer;
+
+    public UpdateProcessor(TelegramBotController controller, UpdateDispatcher dispatcher,
+                           OutboundMessageQueue outbound, UpdateCheckpointer checkpointer) {
+        this.controller = controller;
+        this.dispatcher = dispatcher;
+        this.outbound = outbound;
+        this.checkpointer = checkpointer;
+    }
+
+    public void process(IncomingUpdate update) {
+        if (update == null) {
+            return;
+        }
+        long updateId = update.updateId();
+        if (!checkpointer.begin(updateId)) {
+            return;
+        }
+        long chatId = update.chatId();
+
+        boolean accepted = false;
+        if (update.edited()) {
+            // Правкой приходит живая геопозиция; правки текста не обрабатываем
+            if (update.hasLocation()) {
+                controller.handleLiveLocation(chatId, update.latitude(), update.longitude());
+            }
+        } else if (update.hasText()) {
+            String text = update.text();
+            logger.debug("Received message from chat {}: {}", chatId, text);
+            accepted = dispatcher.dispatch(chatId,
+                    () -> tracked(updateId, () -> handleText(chatId, text)),
+                    response -> sendReply(chatId, response));
+        } else if (update.hasLocation()) {
+            logger.debug("Received location from chat {}: lat={}, lon={}",
+                chatId, update.latitude(), update.longitude());
+            accepted = dispatcher.dispatch(chatId,
+                    () -> tracked(updateId, () -> handleLocation(chatId, update.latitude(), update.longitude())),
+                    response -> sendReply(chatId, response));
+        }
+        if (!accepted) {
+            checkpointer.complete(updateId);
+        }
+    }
+
+    /**
+     * Апдейт, который бот не разбирает (стикер, фото и т.п.): обрабатывать нечего,
+     * но offset должен сдвинуться.
+     */
+    public void skip(long updateId) {
+        checkpointer.observe(updateId);
+    }
+
+    // Апдейт считается обработанным, когда пайплайн завершился любым способом
+    private Mono<String> tracked(long updateId, Supplier<Mono<String>> work) {
+        return Mono.defer(work).doFinally(signal -> checkpointer.complete(updateId));
+    }
+
+    private Mono<String> handleText(Long chatId, String text) {
+        return controller.handleCommand(chatId, text)
+                .onErrorResume(error -> {
+                    logger.error("Error handling command for chat {}: {}", chatId, error.getMessage());
+                    return Mono.just("Произошла ошибка при обработке команды. Пожалуйста, попробуйте позже.");
+                });
+    }
+
+    private Mono<String> handleLocation(Long chatId, double latitude, double longitude) {
+        return controller.handleLocation(chatId, latitude, longitude)
+                .onErrorResume(error -> {
+                    logger.error("Error handling location for chat {}: {}", chatId, error.getMessage());
+                    return Mono.just("Произошла ошибка при обработке геопозиции. Пожалуйста, попробуйте позже.");
+                });
+    }
+
+    // Ответ уходит через очередь исходящих сообщений, поток полосы не блокируется на HTTP
+    private void sendReply(long chatId, String response) {
+        if (outbound.enqueue(chatId, response)) {
+            logger.debug("Queued response to chat {}: {}", chatId, response);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package org.tripplanner.modules.connections;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Источник апдейтов для long polling. Отдельно от {@link BotApiTransport}: отправлять умеют
+ * все транспорты, а сами опрашивать getUpdates — только неблокирующий.
+ */
+public interface UpdateSource {
+
+    Mono<UpdateBatch> getUpdates(long offset);
+}
@@ -0,0 +1,80 @@
+package org.tripplanner.modules.connections;
+
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.springframework.web.reactive.function.BodyExtractors;
+import org.springframework.web.reactive.function.server.ServerRequest;
+import org.springframework.web.reactive.function.server.ServerResponse;
+import org.tripplanner.util.DrainCoordinator;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Приём апдейтов в режиме вебхука. Тело разбирается потоково, апдейт уходит в полосу
+ * чата, а Telegram сразу получает 200 — обработка идёт асинхронно.
+ * <p>
+ * Доставка в этом режиме «не больше одного раза»: после 200 Telegram апдейт не повторит,
+ * и если инстанс упадёт, пока апдейт ждёт в полосе, он потерян. Пропуск апдейтов
+ * при падении здесь считается допустимым; кому это важно — long polling с чекпоинтом.
+ * <p>
+ * Эндпоинт открыт без авторизации, поэтому без секрета вебхук не запускается.
+ */
+@Component
+public class WebhookController {
+
+    private static final Logger logger = LoggerFactory.getLogger(WebhookController.class);
+    static final String SECRET_HEADER = "X-Telegram-Bot-Api-Secret-Token";
+
+    private final TelegramUpdateDecoder decoder;
+    private final UpdateProcessor processor;
+    private final DrainCoordinator drainCoordinator;
+    private final boolean enabled;
+    private final byte[] secretToken;
+
+    public WebhookController(TelegramUpdateDecoder decoder, UpdateProcessor processor,
+                             DrainCoordinator drainCoordinator,
+                             @Value("${telegram.bot.webhook.enabled:false}") boolean enabled,
+                             @Value("${telegram.bot.webhook.secret-token:}") String secretToken) {
+        this.decoder = decoder;
+        this.processor = processor;
+        this.drainCoordinator = drainCoordinator;
+        if (enabled && (secretToken == null || secretToken.isBlank())) {
+            throw new IllegalStateException(
+                    "telegram.bot.webhook.secret-token (TELEGRAM_WEBHOOK_SECRET) must be set when webhook mode is enabled");
+        }
+        this.enabled = enabled;
+        this.secretToken = enabled ? secretToken.getBytes(StandardCharsets.UTF_8) : null;
+    }
+
+    public Mono<ServerResponse> handleUpdate(ServerRequest request) {
+        if (!enabled) {
+            return ServerResponse.notFound().build();
+        }
+        if (!secretMatches(request.headers().firstHeader(SECRET_HEADER))) {
+            logger.warn("Rejected webhook call with invalid secret token");
+            return ServerResponse.status(401).build();
+        }
+        if (!drainCoordinator.isAccepting()) {
+            // Инстанс останавливается: Telegram повторит доставку, возможно уже на другой инстанс
+            return ServerResponse.status(503).build();
+        }
+        return decoder.decodeWebhook(request.body(BodyExtractors.toDataBuffers()))
+                .doOnNext(processor::process)
+                .then(ServerResponse.ok().build())
+                .onErrorResume(UncheckedIOException.class, e -> {
+                    logger.warn("Malformed webhook body: {}", e.getMessage());
+                    return ServerResponse.badRequest().build();
+                });
+    }
+
+    // Сравнение за постоянное время, чтобы не подбирать токен по времени ответа
+    private boolean secretMatches(String header) {
+        return header != null && MessageDigest.isEqual(secretToken, header.getBytes(StandardCharsets.UTF_8));
+    }
+}
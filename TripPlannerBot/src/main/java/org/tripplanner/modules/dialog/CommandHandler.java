@@ -0,0 +1,13 @@
+package org.tripplanner.modules.dialog;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Обработчик команды без диалога. argsFrom — позиция в тексте сразу после имени команды;
+ * аргументы разбираются только теми обработчиками, которым они нужны.
+ */
+@FunctionalInterface
+public interface CommandHandler {
+
+    Mono<String> handle(Long chatId, String text, int argsFrom);
+}
@@ -0,0 +1,10 @@
+package org.tripplanner.modules.dialog;
+
+/**
+ * Бин, который сам объявляет свои команды и диалоги. {@link CommandRouter} собирает все
+ * такие бины при старте, так что новая команда добавляется в одном месте — в своём модуле.
+ */
+public interface CommandModule {
+
+    void register(CommandRegistry registry);
+}
@@ -0,0 +1,59 @@
+package org.tripplanner.modules.dialog;
+
+import java.util.ArrayList;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Сюда модули складывают свои команды и диалоги; {@link CommandRouter} компилирует всё
+ * собранное в дерево команд и таблицу переходов.
+ */
+public class CommandRegistry {
+
+    record Entry(String name, CommandHandler handler, DialogState.Command dialog) {
+    }
+
+    record Flow(DialogState.Step[] steps, DialogCompletion completion) {
+    }
+
+    private final List<Entry> entries = new ArrayList<>();
+    private final Map<DialogState.Command, Flow> flows = new EnumMap<>(DialogState.Command.class);
+
+    public CommandRegistry command(String name, CommandHandler handler) {
+        entries.add(new Entry(name, handler, null));
+        return this;
+    }
+
+    /**
+     * Команда, открывающая диалог: шаги идут строго по порядку, после последнего
+     * вызывается completion. В ответ на команду — подсказка первого шага.
+     */
+    public CommandRegistry dialog(String name, DialogState.Command command, DialogCompletion completion,
+                                  DialogState.Step... steps) {
+        if (steps.length == 0) {
+            throw new IllegalArgumentException("Dialog " + command + " has no steps");
+        }
+        if (flows.putIfAbsent(command, new Flow(steps.clone(), completion)) != null) {
+            throw new IllegalArgumentException("Dialog " + command + " is declared twice");
+        }
+        entries.add(new Entry(name, null, command));
+        return this;
+    }
+
+    /**
+     * Ещё одна команда для уже объявленного диалога, но со своим ответом вместо подсказки.
+     */
+    public CommandRegistry startDialog(String name, DialogState.Command command, CommandHandler reply) {
+        entries.add(new Entry(name, reply, command));
+        return this;
+    }
+
+    List<Entry> entries() {
+        return entries;
+    }
+
+    Map<DialogState.Command, Flow> flows() {
+        return flows;
+    }
+}
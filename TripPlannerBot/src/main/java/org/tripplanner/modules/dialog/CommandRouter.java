@@ -0,0 +1,143 @@
+package org.tripplanner.modules.dialog;
+
+import java.util.List;
+import java.util.Map;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Маршрутизация сообщений по командам и ведение диалогов. Команды и диалоги собираются
+ * из всех {@link CommandModule} и компилируются один раз при старте: имена — в
+ * {@link CommandTrie}, диалоги — в таблицу переходов [команда][шаг] -> следующий шаг.
+ * На каждое сообщение — только проход по символам и чтение из массивов.
+ */
+@Component
+public class CommandRouter {
+
+    private static final Logger logger = LoggerFactory.getLogger(CommandRouter.class);
+    private static final DialogState.Command[] COMMANDS = DialogState.Command.values();
+    private static final int STEPS = DialogState.Step.values().length;
+
+    private final DialogState dialogState;
+    private final CommandTrie<CommandRegistry.Entry> commands = new CommandTrie<>();
+    private final DialogState.Step[] firstSteps = new DialogState.Step[COMMANDS.length];
+    private final DialogState.Step[][] nextSteps = new DialogState.Step[COMMANDS.length][STEPS];
+    private final boolean[][] knownSteps = new boolean[COMMANDS.length][STEPS];
+    private final DialogCompletion[] completions = new DialogCompletion[COMMANDS.length];
+    private int commandCount;
+
+    public CommandRouter(List<CommandModule> modules, DialogState dialogState) {
+        this.dialogState = dialogState;
+        CommandRegistry registry = new CommandRegistry();
+        modules.forEach(module -> module.register(registry));
+        compileFlows(registry.flows());
+        for (CommandRegistry.Entry entry : registry.entries()) {
+            if (entry.dialog() != null && firstSteps[entry.dialog().ordinal()] == null) {
+                throw new IllegalStateException("Command " + entry.name() + " starts undeclared dialog " + entry.dialog());
+            }
+            commands.put(entry.name(), entry);
+            commandCount++;
+        }
+        logger.info("Compiled {} commands ({} trie nodes) and {} dialogs from {} modules",
+                commandCount, commands.size(), registry.flows().size(), modules.size());
+    }
+
+    private void compileFlows(Map<DialogState.Command, CommandRegistry.Flow> flows) {
+        flows.forEach((command, flow) -> {
+            int c = command.ordinal();
+            DialogState.Step[] steps = flow.steps();
+            firstSteps[c] = steps[0];
+            completions[c] = flow.completion();
+            for (int i = 0; i < steps.length; i++) {
+                int s = steps[i].ordinal();
+                if (knownSteps[c][s]) {
+                    throw new IllegalStateException("Step " + steps[i] + " repeats in dialog " + command);
+                }
+                knownSteps[c][s] = true;
+                // У последнего шага следующего нет: null означает «завершить диалог»
+                nextSteps[c][s] = i + 1 < steps.length ? steps[i + 1] : null;
+            }
+        });
+    }
+
+    /**
+     * Ответ на команду. Текст приходит как есть: пробелы по краям и регистр не важны.
+     */
+    public Mono<String> route(Long chatId, String text) {
+        int length = text.length();
+        int from = 0;
+        while (from < length && text.charAt(from) <= ' ') {
+            from++;
+        }
+        int to = from;
+        while (to < length && text.charAt(to) > ' ') {
+            to++;
+        }
+        CommandRegistry.Entry entry = commands.get(text, from, to);
+        if (entry == null) {
+            return Mono.just("Неизвестная команда: " + text.substring(from, to).toLowerCase());
+        }
+        if (entry.dialog() == null) {
+            return entry.handler().handle(chatId, text, to);
+        }
+        DialogState.Step first = firstSteps[entry.dialog().ordinal()];
+        dialogState.startDialog(chatId, entry.dialog(), first);
+        return entry.handler() == null ? Mono.just(first.prompt) : entry.handler().handle(chatId, text, to);
+    }
+
+    /**
+     * Очередной ввод в открытом диалоге: проверка, запись в слот шага и переход по таблице.
+     */
+    public Mono<String> continueDialog(Long chatId, DialogState.CommandState state, String input) {
+        DialogState.Step step = state.currentStep;
+        int c = state.command.ordinal();
+        if (!knownSteps[c][step.ordinal()]) {
+            // Сессия из старой версии бота, где диалог был устроен иначе
+            dialogState.endDialog(chatId);
+            return Mono.just("Нет активного диалога. Используйте команды для начала работы.");
+        }
+        String validationError = step.input.validate(input);
+        if (validationError != null) {
+            return Mono.just(validationError);
+        }
+        if (step.slot != null) {
+            state.set(step.slot, step.input.parse(input));
+        }
+        DialogState.Step next = nextSteps[c][step.ordinal()];
+        if (next == null) {
+            DialogCompletion completion = completions[c];
+            return Mono.defer(() -> completion.complete(chatId, state))
+                    .doFinally(signalType -> dialogState.endDialog(chatId));
+        }
+        state.currentStep = next;
+        dialogState.update(chatId, state);
+        return Mono.just(next.prompt);
+    }
+
+    public DialogState.Step nextStep(DialogState.Command command, DialogState.Step step) {
+        return nextSteps[command.ordinal()][step.ordinal()];
+    }
+
+    public int commandCount() {
+        return commandCount;
+    }
+
+    /**
+     * Первый аргумент после команды или null, если его нет.
+     */
+    public static String firstArgument(String text, int from) {
+        int length = text.length();
+        while (from < length && text.charAt(from) <= ' ') {
+            from++;
+        }
+        int to = from;
+        while (to < length && text.charAt(to) > ' ') {
+            to++;
+        }
+        return from < to ? text.substring(from, to) : null;
+    }
+}
@@ -0,0 +1,86 @@
+package org.tripplanner.modules.dialog;
+
+import java.util.Arrays;
+
+/**
+ * Префиксное дерево имён команд над маленьким алфавитом (a-z, 0-9, '_', '/').
+ * Узлы лежат в одном плоском массиве, поиск идёт прямо по символам сообщения
+ * без split, toLowerCase и промежуточных строк. Регистр латиницы не важен.
+ */
+final class CommandTrie<T> {
+
+    private static final int ALPHABET = 38;
+    private static final int NONE = 0;
+
+    // next[node * ALPHABET + symbol] -> дочерний узел, 0 — нет перехода (корень — узел 0)
+    private int[] next = new int[16 * ALPHABET];
+    private Object[] values = new Object[16];
+    private int nodes = 1;
+
+    void put(String name, T value) {
+        int node = 0;
+        for (int i = 0; i < name.length(); i++) {
+            int symbol = symbol(name.charAt(i));
+            if (symbol < 0) {
+                throw new IllegalArgumentException("Unsupported character in command " + name);
+            }
+            int child = next[node * ALPHABET + symbol];
+            if (child == NONE) {
+                child = newNode();
+                next[node * ALPHABET + symbol] = child;
+            }
+            node = child;
+        }
+        if (values[node] != null) {
+            throw new IllegalArgumentException("Command " + name + " is registered twice");
+        }
+        values[node] = value;
+    }
+
+    /**
+     * Ищет команду в text[from, to). Пустой результат, если такой команды нет.
+     */
+    @SuppressWarnings("unchecked")
+    T get(CharSequence text, int from, int to) {
+        int node = 0;
+        for (int i = from; i < to; i++) {
+            int symbol = symbol(text.charAt(i));
+            if (symbol < 0) {
+                return null;
+            }
+            node = next[node * ALPHABET + symbol];
+            if (node == NONE) {
+                return null;
+            }
+        }
+        return (T) values[node];
+    }
+
+    int size() {
+        return nodes;
+    }
+
+    private int newNode() {
+        if (nodes == values.length) {
+            values = Arrays.copyOf(values, nodes * 2);
+            next = Arrays.copyOf(next, nodes * 2 * ALPHABET);
+        }
+        return nodes++;
+    }
+
+    private static int symbol(char c) {
+        if (c >= 'a' && c <= 'z') {
+            return c - 'a';
+        }
+        if (c >= 'A' && c <= 'Z') {
+            return c - 'A';
+        }
+        if (c >= '0' && c <= '9') {
+            return 26 + c - '0';
+        }
+        if (c == '_') {
+            return 36;
+        }
+        return c == '/' ? 37 : -1;
+    }
+}
@@ -0,0 +1,12 @@
+package org.tripplanner.modules.dialog;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Завершает диалог, когда все его шаги заполнены: слоты уже проверены и приведены к своим типам.
+ */
+@FunctionalInterface
+public interface DialogCompletion {
+
+    Mono<String> complete(Long chatId, DialogState.CommandState state);
+}
@@ -0,0 +1,54 @@
+package org.tripplanner.modules.dialog;
+
+import org.tripplanner.domain.DialogSession;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Общее для всех реплик хранилище диалогов за локальным near-cache {@link DialogSessionStore}.
+ * Запись асинхронная: save/delete только ставят изменение в очередь.
+ */
+public interface DialogSessionBackend {
+
+    /**
+     * Только локальная память: сессии не переживают рестарт и не видны другим репликам.
+     */
+    DialogSessionBackend LOCAL = new DialogSessionBackend() {
+        @Override
+        public boolean isShared() {
+            return false;
+        }
+
+        @Override
+        public Mono<DialogSession> load(long chatId) {
+            return Mono.empty();
+        }
+
+        @Override
+        public void save(DialogSession session) {
+        }
+
+        @Override
+        public void delete(long chatId) {
+        }
+
+        @Override
+        public boolean hasPending(long chatId) {
+            return false;
+        }
+    };
+
+    boolean isShared();
+
+    Mono<DialogSession> load(long chatId);
+
+    void save(DialogSession session);
+
+    void delete(long chatId);
+
+    /**
+     * Есть ли по чату изменения, ещё не дошедшие до хранилища. Такую сессию нельзя
+     * перечитывать — получим устаревшую версию.
+     */
+    boolean hasPending(long chatId);
+}
@@ -0,0 +1,191 @@
+package org.tripplanner.modules.dialog;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.tripplanner.util.ExpiringLongMap;
+import org.tripplanner.util.StatsSource;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Хранилище незавершённых диалогов по chatId. Брошенный на середине диалог живёт не
+ * дольше idle TTL, а общее число сессий ограничено — лишние вытесняются, начиная
+ * с давно неактивных.
+ * <p>
+ * Если включён общий {@link DialogSessionBackend}, сессия перечитывается из базы без
+ * блокировки, кроме случая, когда у этой реплики есть свои ещё не записанные изменения.
+ * По умолчанию near-cache выключен: запись свежее near-cache-ms отдавалась бы без похода
+ * в базу, и реплика видела бы старый шаг, даже когда чужая запись уже в базе.
+ * <p>
+ * Изменения уходят в бэкенд с задержкой write-behind, поэтому и без near-cache другая
+ * реплика видит предыдущий шаг, пока запись не сброшена (до write-behind.interval-ms).
+ * Два сообщения одного чата подряд на разные реплики в этом окне увидят расхождение.
+ */
+@Component
+public class DialogSessionStore implements StatsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(DialogSessionStore.class);
+    // Оценка на сессию: CommandState, массив слотов и пара коротких строк
+    private static final int ESTIMATED_SESSION_BYTES = 192;
+
+    private final ExpiringLongMap<Cached> sessions;
+    private final DialogSessionBackend backend;
+    private final Duration ttl;
+    private final Duration sweepInterval;
+    private final Duration loadTimeout;
+    private final long nearCacheNanos;
+    private final int maxEntries;
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder loadFailures = new LongAdder();
+    private Disposable sweeper;
+
+    public DialogSessionStore(@Value("${dialog.session.ttl-ms:1800000}") long ttlMs,
+                              @Value("${dialog.session.max-entries:100000}") int maxEntries,
+                              @Value("${dialog.session.sweep-interval-ms:60000}") long sweepIntervalMs,
+                              @Value("${dialog.session.stripes:16}") int stripes,
+                              DialogSessionBackend backend,
+                              @Value("${dialog.session.near-cache-ms:0}") long nearCacheMs,
+                              @Value("${dialog.session.load-timeout-ms:2000}") long loadTimeoutMs) {
+        this.ttl = Duration.ofMillis(ttlMs);
+        this.sweepInterval = Duration.ofMillis(sweepIntervalMs);
+        this.maxEntries = maxEntries;
+        this.sessions = new ExpiringLongMap<>(stripes, maxEntries, ttl.toNanos());
+        this.backend = backend;
+        this.nearCacheNanos = Duration.ofMillis(nearCacheMs).toNanos();
+        this.loadTimeout = Duration.ofMillis(loadTimeoutMs);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (sweeper == null) {
+            sweeper = Flux.interval(sweepInterval)
+                    .onBackpressureDrop()
+                    .subscribe(tick -> {
+                        int expired = sessions.sweep();
+                        if (expired > 0) {
+                            logger.debug("Expired {} idle dialog sessions", expired);
+                        }
+                    });
+        }
+    }
+
+    /**
+     * Сессия чата; пусто — диалога нет. В общем режиме может сходить в базу, но поток
+     * не блокирует: это путь каждого сообщения.
+     */
+    public Mono<DialogState.CommandState> load(long chatId) {
+        Cached cached = sessions.get(chatId);
+        if (!backend.isShared()) {
+            return Mono.justOrEmpty(cached != null ? cached.state : null);
+        }
+        // Пока наша запись не дошла до базы, перечитывать нельзя — получим старую версию
+        if (cached != null && (System.nanoTime() - cached.loadedAt < nearCacheNanos || backend.hasPending(chatId))) {
+            hits.increment();
+            return Mono.justOrEmpty(cached.state);
+        }
+        misses.increment();
+        return backend.load(chatId)
+                .timeout(loadTimeout)
+                .map(DialogState.CommandState::fromSession)
+                .singleOptional()
+                .doOnNext(state -> {
+                    // Отсутствие тоже запоминаем: пригодится, если база потом не ответит
+                    sessions.put(chatId, new Cached(state.orElse(null), System.nanoTime()));
+                })
+                .onErrorResume(e -> {
+                    loadFailures.increment();
+                    logger.warn("Failed to load dialog session for chat {}, using local copy: {}", chatId, e.getMessage());
+                    return Mono.just(Optional.ofNullable(cached != null ? cached.state : null));
+                })
+                .flatMap(Mono::justOrEmpty);
+    }
+
+    /**
+     * Блокирующий вариант {@link #load} — для тестов и кода вне пути апдейтов.
+     */
+    public DialogState.CommandState get(long chatId) {
+        return load(chatId).block();
+    }
+
+    public void put(long chatId, DialogState.CommandState state) {
+        sessions.put(chatId, new Cached(state, System.nanoTime()));
+        if (backend.isShared()) {
+            backend.save(state.toSession(chatId, Instant.now().plus(ttl)));
+        }
+    }
+
+    public void remove(long chatId) {
+        if (backend.isShared()) {
+            sessions.put(chatId, new Cached(null, System.nanoTime()));
+            backend.delete(chatId);
+        } else {
+            sessions.remove(chatId);
+        }
+    }
+
+    /**
+     * Сессию изменила другая реплика: следующий get перечитает её из базы. Локальную копию
+     * не выкидываем — она пригодится, если база не ответит.
+     */
+    public void invalidate(long chatId) {
+        if (!backend.isShared() || backend.hasPending(chatId)) {
+            return;
+        }
+        Cached cached = sessions.get(chatId);
+        if (cached != null) {
+            sessions.put(chatId, new Cached(cached.state, System.nanoTime() - nearCacheNanos));
+        }
+    }
+
+    public int size() {
+        return sessions.size();
+    }
+
+    @Override
+    public String statsName() {
+        return "dialogSessions";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        int live = sessions.size();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("live", live);
+        stats.put("shared", backend.isShared());
+        stats.put("maxEntries", maxEntries);
+        stats.put("ttlMs", ttl.toMillis());
+        stats.put("expired", sessions.getExpirations());
+        stats.put("evicted", sessions.getEvictions());
+        stats.put("bytesEstimate", sessions.tableBytes() + (long) live * ESTIMATED_SESSION_BYTES);
+        stats.put("nearCacheHits", hits.sum());
+        stats.put("nearCacheMisses", misses.sum());
+        stats.put("loadFailures", loadFailures.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (sweeper != null) {
+            sweeper.dispose();
+            sweeper = null;
+        }
+    }
+
+    // state == null: сессии нет (закэшированное отсутствие)
+    private record Cached(DialogState.CommandState state, long loadedAt) {
+    }
+}
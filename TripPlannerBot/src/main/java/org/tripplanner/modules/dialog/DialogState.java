@@ -1,13 +1,13 @@
 package org.tripplanner.modules.dialog;
 
-import java.time.LocalDate;
-import java.time.format.DateTimeFormatter;
-import java.time.format.DateTimeParseException;
+import java.time.Instant;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.regex.Pattern;
 
 import org.springframework.stereotype.Component;
+import org.tripplanner.domain.DialogSession;
+
+import reactor.core.publisher.Mono;
 
 @Component
 public class DialogState {
@@ -23,239 +23,175 @@ public class DialogState {
         SET_ONGOING
     }
 
+    // Шаг диалога: в какой слот пишется ввод, как он проверяется и что спросить у пользователя
     public enum Step {
-        WAITING_NAME,
-        WAITING_START_DATE,
-        WAITING_END_DATE,
-        WAITING_POINT_NAME,
-        WAITING_LATITUDE,
-        WAITING_LONGITUDE,
-        WAITING_TRIP_NAME,
-        WAITING_ROUTE_DATE,
-        WAITING_NOTE,
-        WAITING_RATING,
-        WAITING_LOCATION
+        WAITING_NAME(Slot.NAME, StepInput.LATIN_NAME, "Как Вы хотите назвать поездку? (только латиница)"),
+        WAITING_START_DATE(Slot.START_DATE, StepInput.DATE, "Когда Вы планируете начать поездку? (Ввод YYYY-MM-DD)"),
+        WAITING_END_DATE(Slot.END_DATE, StepInput.DATE, "Когда Вы планируете завершить поездку? (Ввод YYYY-MM-DD)"),
+        WAITING_POINT_NAME(Slot.POINT_NAME, StepInput.LATIN_NAME, "Введите название точки (только латиница):"),
+        WAITING_LATITUDE(Slot.LATITUDE, StepInput.LATITUDE, "Введите широту (-90 до 90):"),
+        WAITING_LONGITUDE(Slot.LONGITUDE, StepInput.LONGITUDE, "Введите долготу (-180 до 180):"),
+        WAITING_TRIP_NAME(Slot.TRIP_NAME, StepInput.TRIP_NAME, "Введите название поездки:"),
+        WAITING_ROUTE_DATE(Slot.ROUTE_DATE, StepInput.DATE, "Введите дату маршрута (формат: YYYY-MM-DD):"),
+        WAITING_NOTE(Slot.NOTE, StepInput.NOTE, "Введите заметку:"),
+        WAITING_RATING(Slot.RATING, StepInput.RATING, "Введите оценку (от 1 до 5):"),
+        WAITING_LOCATION(null, StepInput.LOCATION, "Отправьте свою геопозицию:");
+
+        public final Slot slot;
+        public final StepInput input;
+        public final String prompt;
+
+        Step(Slot slot, StepInput input, String prompt) {
+            this.slot = slot;
+            this.input = input;
+            this.prompt = prompt;
+        }
+    }
+
+    // Всё, что диалог может запомнить. Хранится в массиве по ordinal, а не в HashMap
+    public enum Slot {
+        NAME("name", String.class),
+        START_DATE("startDate", String.class),
+        END_DATE("endDate", String.class),
+        TRIP_NAME("tripName", String.class),
+        POINT_NAME("pointName", String.class),
+        LATITUDE("latitude", Double.class),
+        LONGITUDE("longitude", Double.class),
+        ROUTE_DATE("routeDate", String.class),
+        NOTE("note", String.class),
+        RATING("rating", Integer.class);
+
+        private static final Slot[] VALUES = values();
+
+        public final String key;
+        public final Class<?> type;
+
+        Slot(String key, Class<?> type) {
+            this.key = key;
+            this.type = type;
+        }
+
+        public static Slot ofKey(String key) {
+            for (Slot slot : VALUES) {
+                if (slot.key.equals(key)) {
+                    return slot;
+                }
+            }
+            return null;
+        }
+
+        // Из общего хранилища числа могут вернуться другим типом (Long вместо Integer и т.п.)
+        Object coerce(Object value) {
+            if (value instanceof Number number) {
+                if (type == Double.class) {
+                    return number.doubleValue();
+                }
+                if (type == Integer.class) {
+                    return number.intValue();
+                }
+            }
+            return value;
+        }
     }
 
     public static class CommandState {
         public final Command command;
         public Step currentStep;
-        private final Map<String, Object> data;
+        private final Object[] slots = new Object[Slot.VALUES.length];
 
-        public CommandState(Command command) {
+        public CommandState(Command command, Step firstStep) {
             this.command = command;
-            this.currentStep = getInitialStep(command);
-            this.data = new HashMap<>();
+            this.currentStep = firstStep;
         }
 
-        private Step getInitialStep(Command command) {
-            return switch (command) {
-                case PLAN_TRIP -> Step.WAITING_NAME;
-                case ADD_POINT -> Step.WAITING_TRIP_NAME;
-                case ADD_ROUTE -> Step.WAITING_TRIP_NAME;
-                case FINISH_PLANNING -> Step.WAITING_TRIP_NAME;
-                case ADD_NOTE -> Step.WAITING_TRIP_NAME;
-                case MARK_POINT -> Step.WAITING_TRIP_NAME;
-                case RATE_FINISHED -> Step.WAITING_TRIP_NAME;
-                case DELETE_PLANNED -> Step.WAITING_TRIP_NAME;
-                case SET_ONGOING -> Step.WAITING_TRIP_NAME;
-            };
+        // Снимок для общего хранилища: слоты по их строковым ключам
+        DialogSession toSession(long chatId, Instant expiresAt) {
+            Map<String, Object> data = new HashMap<>();
+            for (Slot slot : Slot.VALUES) {
+                Object value = slots[slot.ordinal()];
+                if (value != null) {
+                    data.put(slot.key, value);
+                }
+            }
+            return new DialogSession(chatId, command.name(),
+                    currentStep != null ? currentStep.name() : null, data, expiresAt);
         }
-    }
 
-    private final Map<Long, CommandState> states = new HashMap<>();
-    private static final Pattern LATIN_PATTERN = Pattern.compile("^[a-zA-Z0-9\\s]+$");
-    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
-    private static final Pattern COORDINATES_PATTERN = Pattern.compile("^(-?\\d+(\\.\\d+)?),\\s*(-?\\d+(\\.\\d+)?)$");
+        static CommandState fromSession(DialogSession session) {
+            Step step = session.getStep() != null ? Step.valueOf(session.getStep()) : null;
+            CommandState state = new CommandState(Command.valueOf(session.getCommand()), step);
+            if (session.getData() != null) {
+                session.getData().forEach((key, value) -> {
+                    Slot slot = Slot.ofKey(key);
+                    if (slot != null) {
+                        state.set(slot, slot.coerce(value));
+                    }
+                });
+            }
+            return state;
+        }
 
-    public void startDialog(Long chatId, Command command) {
-        states.put(chatId, new CommandState(command));
-    }
+        public Object get(Slot slot) {
+            return slots[slot.ordinal()];
+        }
 
-    public void endDialog(Long chatId) {
-        states.remove(chatId);
-    }
+        public void set(Slot slot, Object value) {
+            slots[slot.ordinal()] = value;
+        }
 
-    public boolean isInDialog(Long chatId) {
-        return states.containsKey(chatId);
-    }
+        public String text(Slot slot) {
+            return (String) slots[slot.ordinal()];
+        }
 
-    public CommandState getState(Long chatId) {
-        return states.get(chatId);
-    }
+        public double number(Slot slot) {
+            return (Double) slots[slot.ordinal()];
+        }
 
-    public void setData(Long chatId, String key, Object value) {
-        CommandState state = states.get(chatId);
-        if (state != null) {
-            state.data.put(key, value);
+        public int integer(Slot slot) {
+            return (Integer) slots[slot.ordinal()];
         }
     }
 
-    public Object getData(Long chatId, String key) {
-        CommandState state = states.get(chatId);
-        return state != null ? state.data.get(key) : null;
-    }
+    private final DialogSessionStore states;
 
-    public void nextStep(Long chatId) {
-        CommandState state = states.get(chatId);
-        if (state != null) {
-            state.currentStep = getNextStep(state.command, state.currentStep);
-        }
+    public DialogState(DialogSessionStore states) {
+        this.states = states;
     }
 
-    public Step getNextStep(Command command, Step currentStep) {
-        return switch (command) {
-            case PLAN_TRIP -> switch (currentStep) {
-                case WAITING_NAME -> Step.WAITING_START_DATE;
-                case WAITING_START_DATE -> Step.WAITING_END_DATE;
-                case WAITING_END_DATE -> null;
-                default -> null;
-            };
-            case ADD_POINT -> switch (currentStep) {
-                case WAITING_TRIP_NAME -> Step.WAITING_POINT_NAME;
-                case WAITING_POINT_NAME -> Step.WAITING_LATITUDE;
-                case WAITING_LATITUDE -> Step.WAITING_LONGITUDE;
-                case WAITING_LONGITUDE -> null;
-                default -> null;
-            };
-            case ADD_ROUTE -> switch (currentStep) {
-                case WAITING_TRIP_NAME -> Step.WAITING_POINT_NAME;
-                case WAITING_POINT_NAME -> Step.WAITING_ROUTE_DATE;
-                case WAITING_ROUTE_DATE -> null;
-                default -> null;
-            };
-            case FINISH_PLANNING -> switch (currentStep) {
-                case WAITING_TRIP_NAME -> null;
-                default -> null;
-            };
-            case ADD_NOTE -> switch (currentStep) {
-                case WAITING_TRIP_NAME -> Step.WAITING_NOTE;
-                case WAITING_NOTE -> null;
-                default -> null;
-            };
-            case MARK_POINT -> switch (currentStep) {
-                case WAITING_TRIP_NAME -> Step.WAITING_POINT_NAME;
-                case WAITING_POINT_NAME -> null;
-                default -> null;
-            };
-            case RATE_FINISHED -> switch (currentStep) {
-                case WAITING_TRIP_NAME -> Step.WAITING_RATING;
-                case WAITING_RATING -> null;
-                default -> null;
-            };
-            case DELETE_PLANNED -> switch (currentStep) {
-                case WAITING_TRIP_NAME -> null;
-                default -> null;
-            };
-            case SET_ONGOING -> switch (currentStep) {
-                case WAITING_TRIP_NAME -> Step.WAITING_LOCATION;
-                case WAITING_LOCATION -> null;
-                default -> null;
-            };
-        };
+    public void startDialog(Long chatId, Command command, Step firstStep) {
+        states.put(chatId, new CommandState(command, firstStep));
     }
 
-    public String getPrompt(Long chatId) {
-        CommandState state = states.get(chatId);
-        if (state == null) return null;
-
-        return switch (state.currentStep) {
-            case WAITING_NAME -> "Как Вы хотите назвать поездку? (только латиница)";
-            case WAITING_START_DATE -> "Когда Вы планируете начать поездку? (Ввод YYYY-MM-DD)";
-            case WAITING_END_DATE -> "Когда Вы планируете завершить поездку? (Ввод YYYY-MM-DD)";
-            case WAITING_TRIP_NAME -> "Введите название поездки:";
-            case WAITING_POINT_NAME -> "Введите название точки (только латиница):";
-            case WAITING_LATITUDE -> "Введите широту (-90 до 90):";
-            case WAITING_LONGITUDE -> "Введите долготу (-180 до 180):";
-            case WAITING_ROUTE_DATE -> "Введите дату маршрута (формат: YYYY-MM-DD):";
-            case WAITING_NOTE -> "Введите заметку:";
-            case WAITING_RATING -> "Введите оценку (от 1 до 5):";
-            case WAITING_LOCATION -> "Отправьте свою геопозицию:";
-        };
+    public void endDialog(Long chatId) {
+        states.remove(chatId);
     }
 
-    public String validateInput(Long chatId, String input) {
-        CommandState state = states.get(chatId);
-        if (state == null) return null;
-
-        return switch (state.currentStep) {
-            case WAITING_NAME -> validateName(input);
-            case WAITING_START_DATE -> validateDate(input);
-            case WAITING_END_DATE -> validateDate(input);
-            case WAITING_TRIP_NAME -> !input.trim().isEmpty() ? null : "Название поездки не может быть пустым";
-            case WAITING_POINT_NAME -> validateName(input);
-            case WAITING_LATITUDE -> validateLatitude(input);
-            case WAITING_LONGITUDE -> validateLongitude(input);
-            case WAITING_NOTE -> !input.trim().isEmpty() ? null : "Заметка не может быть пустой";
-            case WAITING_RATING -> {
-                try {
-                    int rating = Integer.parseInt(input);
-                    if (rating < 1 || rating > 5) {
-                        yield "Ошибка: оценка должна быть от 1 до 5";
-                    }
-                    yield null;
-                } catch (NumberFormatException e) {
-                    yield "Ошибка: введите число от 1 до 5";
-                }
-            }
-            case WAITING_LOCATION -> null;
-            case WAITING_ROUTE_DATE -> validateDate(input);
-        };
+    public boolean isInDialog(Long chatId) {
+        return states.get(chatId) != null;
     }
 
-    private String validateName(String input) {
-        if (input == null || input.trim().isEmpty()) {
-            return "Название не может быть пустым";
-        }
-        if (!input.matches("[a-zA-Z0-9\\s]+")) {
-            return "Название должно содержать только латинские буквы, цифры и пробелы";
-        }
-        return null;
+    public CommandState getState(Long chatId) {
+        return states.get(chatId);
     }
 
-    private String validateDate(String input) {
-        try {
-            LocalDate.parse(input, DATE_FORMATTER);
-            return null;
-        } catch (DateTimeParseException e) {
-            return "Неверный формат даты. Используйте формат YYYY-MM-DD";
-        }
+    // Для пути апдейта: в общем режиме сессия читается из базы без блокировки
+    public Mono<CommandState> loadState(Long chatId) {
+        return states.load(chatId);
     }
 
-    private String validateLatitude(String input) {
-        try {
-            double lat = Double.parseDouble(input);
-            if (lat < -90 || lat > 90) {
-                return "Широта должна быть от -90 до 90 градусов";
-            }
-            return null;
-        } catch (NumberFormatException e) {
-            return "Введите корректное число";
-        }
+    // После изменения шага или слотов: в общем режиме сессия уходит в хранилище
+    public void update(Long chatId, CommandState state) {
+        states.put(chatId, state);
     }
 
-    private String validateLongitude(String input) {
-        try {
-            double lon = Double.parseDouble(input);
-            if (lon < -180 || lon > 180) {
-                return "Долгота должна быть от -180 до 180 градусов";
-            }
-            return null;
-        } catch (NumberFormatException e) {
-            return "Введите корректное число";
-        }
+    public String getPrompt(Long chatId) {
+        CommandState state = states.get(chatId);
+        return state != null ? state.currentStep.prompt : null;
     }
 
-    private String validateCoordinates(String input) {
-        String[] parts = input.split(",");
-        if (parts.length != 2) {
-            return "Введите координаты в формате 'широта, долгота'";
-        }
-        String latError = validateLatitude(parts[0].trim());
-        if (latError != null) {
-            return latError;
-        }
-        return validateLongitude(parts[1].trim());
+    public String validateInput(Long chatId, String input) {
+        CommandState state = states.get(chatId);
+        return state != null ? state.currentStep.input.validate(input) : null;
     }
 
     public String getErrorMessage(Long chatId) {
@@ -0,0 +1,34 @@
+package org.tripplanner.modules.dialog;
+
+import org.springframework.stereotype.Component;
+
+import reactor.core.publisher.Mono;
+
+@Component
+public class HelpCommands implements CommandModule {
+
+    private static final String HELP = "Доступные команды:\n" +
+            "\n📍 Планирование:\n" +
+            "/showplanned — показать запланированные поездки\n" +
+            "/plantrip — создать поездку\n" +
+            "/addpoint — добавить точку\n" +
+            "/addroute — добавить маршрут\n" +
+            "/finishplanning — завершить планирование\n" +
+            "/deleteplanned — удалить поездку\n" +
+            "\n🗺 Помощник в поездке:\n" +
+            "/showongoingtrip — сегодняшняя поездка\n" +
+            "/addnote — добавить заметку к поездке\n" +
+            "/markpoint — отметить точку посещённой\n" +
+            "/setongoing — начать отслеживание геопозиции\n" +
+            "/track — пройденный путь (можно указать поездку или дату ГГГГ-ММ-ДД)\n" +
+            "\n📖 История:\n" +
+            "/triphistory — завершённые поездки\n" +
+            "/finisheddetails — подробности поездок\n" +
+            "/ratefinished — оценить завершенную поездку";
+
+    @Override
+    public void register(CommandRegistry registry) {
+        Mono<String> help = Mono.just(HELP);
+        registry.command("/help", (chatId, text, args) -> help);
+    }
+}
@@ -0,0 +1,116 @@
+package org.tripplanner.modules.dialog;
+
+import java.time.LocalDate;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.regex.Pattern;
+
+/**
+ * Что ждёт шаг диалога: как проверить ввод и во что его превратить перед записью в слот.
+ */
+public enum StepInput {
+    LATIN_NAME {
+        @Override
+        public String validate(String input) {
+            if (input == null || input.trim().isEmpty()) {
+                return "Название не может быть пустым";
+            }
+            if (!LATIN_PATTERN.matcher(input).matches()) {
+                return "Название должно содержать только латинские буквы, цифры и пробелы";
+            }
+            return null;
+        }
+    },
+    DATE {
+        @Override
+        public String validate(String input) {
+            try {
+                LocalDate.parse(input, DATE_FORMATTER);
+                return null;
+            } catch (DateTimeParseException e) {
+                return "Неверный формат даты. Используйте формат YYYY-MM-DD";
+            }
+        }
+    },
+    TRIP_NAME {
+        @Override
+        public String validate(String input) {
+            return !input.trim().isEmpty() ? null : "Название поездки не может быть пустым";
+        }
+    },
+    NOTE {
+        @Override
+        public String validate(String input) {
+            return !input.trim().isEmpty() ? null : "Заметка не может быть пустой";
+        }
+    },
+    LATITUDE {
+        @Override
+        public String validate(String input) {
+            return validateRange(input, 90, "Широта должна быть от -90 до 90 градусов");
+        }
+
+        @Override
+        public Object parse(String input) {
+            return Double.parseDouble(input);
+        }
+    },
+    LONGITUDE {
+        @Override
+        public String validate(String input) {
+            return validateRange(input, 180, "Долгота должна быть от -180 до 180 градусов");
+        }
+
+        @Override
+        public Object parse(String input) {
+            return Double.parseDouble(input);
+        }
+    },
+    RATING {
+        @Override
+        public String validate(String input) {
+            try {
+                int rating = Integer.parseInt(input);
+                return rating < 1 || rating > 5 ? "Ошибка: оценка должна быть от 1 до 5" : null;
+            } catch (NumberFormatException e) {
+                return "Ошибка: введите число от 1 до 5";
+            }
+        }
+
+        @Override
+        public Object parse(String input) {
+            return Integer.parseInt(input);
+        }
+    },
+    // Геопозиция приходит отдельным апдейтом, текст на этом шаге не проверяем
+    LOCATION {
+        @Override
+        public String validate(String input) {
+            return null;
+        }
+    };
+
+    private static final Pattern LATIN_PATTERN = Pattern.compile("[a-zA-Z0-9\\s]+");
+    private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
+
+    /**
+     * Текст ошибки для пользователя или null, если ввод подходит.
+     */
+    public abstract String validate(String input);
+
+    /**
+     * Значение для слота; вызывается только после успешной проверки.
+     */
+    public Object parse(String input) {
+        return input;
+    }
+
+    private static String validateRange(String input, double limit, String error) {
+        try {
+            double value = Double.parseDouble(input);
+            return value < -limit || value > limit ? error : null;
+        } catch (NumberFormatException e) {
+            return "Введите корректное число";
+        }
+    }
+}
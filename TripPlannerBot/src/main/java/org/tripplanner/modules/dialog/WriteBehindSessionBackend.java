@@ -0,0 +1,198 @@
+package org.tripplanner.modules.dialog;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.tripplanner.domain.DialogSession;
+import org.tripplanner.repositories.DialogSessionDAO;
+import org.tripplanner.util.DrainCoordinator;
+import org.tripplanner.util.StatsSource;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Сессии диалогов в Mongo (dialog_sessions) с отложенной записью. Изменения копятся по
+ * чату — пишется только последнее — и уходят одной bulk-операцией по таймеру или при
+ * наборе пачки. При ошибке записи изменения возвращаются в очередь, если их ещё не
+ * перекрыли более новые.
+ */
+@Component
+public class WriteBehindSessionBackend implements DialogSessionBackend, StatsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(WriteBehindSessionBackend.class);
+    private static final Duration IO_TIMEOUT = Duration.ofSeconds(5);
+    private static final int MAX_FINAL_FLUSHES = 5;
+
+    private final DialogSessionDAO dialogSessionDAO;
+    private final boolean shared;
+    private final int batchSize;
+    private final Duration interval;
+
+    // chatId -> последнее изменение; session == null означает удаление
+    private final Map<Long, Change> dirty = new ConcurrentHashMap<>();
+    private final Map<Long, Change> writing = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+
+    private final LongAdder changes = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private Disposable timer;
+
+    public WriteBehindSessionBackend(DialogSessionDAO dialogSessionDAO,
+                                     @Value("${dialog.session.shared:false}") boolean shared,
+                                     @Value("${dialog.session.write-behind.batch-size:200}") int batchSize,
+                                     @Value("${dialog.session.write-behind.interval-ms:200}") long intervalMs,
+                                     DrainCoordinator drainCoordinator) {
+        this.dialogSessionDAO = dialogSessionDAO;
+        this.shared = shared;
+        this.batchSize = batchSize;
+        this.interval = Duration.ofMillis(intervalMs);
+        drainCoordinator.registerPending(DrainCoordinator.DIALOG_SESSIONS, () -> dirty.size() + writing.size());
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (shared && timer == null) {
+            timer = Flux.interval(interval)
+                    .onBackpressureDrop()
+                    .concatMap(tick -> flush())
+                    .subscribe();
+            logger.info("Dialog sessions are shared via Mongo, write-behind every {} ms", interval.toMillis());
+        }
+    }
+
+    @Override
+    public boolean isShared() {
+        return shared;
+    }
+
+    @Override
+    public Mono<DialogSession> load(long chatId) {
+        return shared ? dialogSessionDAO.find(chatId) : Mono.empty();
+    }
+
+    @Override
+    public void save(DialogSession session) {
+        enqueue(session.getChatId(), new Change(session));
+    }
+
+    @Override
+    public void delete(long chatId) {
+        enqueue(chatId, new Change(null));
+    }
+
+    @Override
+    public boolean hasPending(long chatId) {
+        return dirty.containsKey(chatId) || writing.containsKey(chatId);
+    }
+
+    private void enqueue(long chatId, Change change) {
+        if (!shared) {
+            return;
+        }
+        changes.increment();
+        if (dirty.put(chatId, change) != null) {
+            coalesced.increment();
+        }
+        if (dirty.size() >= batchSize) {
+            flush().subscribe();
+        }
+    }
+
+    /**
+     * Записывает всё накопленное. Одновременно идёт не больше одной записи.
+     */
+    public Mono<Void> flush() {
+        return Mono.defer(this::writeDirty);
+    }
+
+    private Mono<Void> writeDirty() {
+        if (dirty.isEmpty() || !flushing.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        List<DialogSession> upserts = new ArrayList<>();
+        List<Long> deletes = new ArrayList<>();
+        for (Map.Entry<Long, Change> entry : dirty.entrySet()) {
+            Long chatId = entry.getKey();
+            Change change = entry.getValue();
+            // remove(key, value): изменение, пришедшее прямо сейчас, останется на следующий раз
+            if (!dirty.remove(chatId, change)) {
+                continue;
+            }
+            writing.put(chatId, change);
+            if (change.session == null) {
+                deletes.add(chatId);
+            } else {
+                upserts.add(change.session);
+            }
+        }
+        return dialogSessionDAO.writeBatch(upserts, deletes)
+                .doOnSuccess(v -> {
+                    batches.increment();
+                    written.add(upserts.size() + deletes.size());
+                })
+                .onErrorResume(e -> {
+                    failures.increment();
+                    logger.error("Failed to write {} dialog sessions, will retry: {}",
+                            upserts.size() + deletes.size(), e.getMessage());
+                    writing.forEach(dirty::putIfAbsent);
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    writing.clear();
+                    flushing.set(false);
+                });
+    }
+
+    @Override
+    public String statsName() {
+        return "dialogWriteBehind";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("shared", shared);
+        stats.put("dirty", dirty.size());
+        stats.put("changes", changes.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("written", written.sum());
+        stats.put("batches", batches.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (timer == null) {
+            return;
+        }
+        timer.dispose();
+        timer = null;
+        for (int i = 0; i < MAX_FINAL_FLUSHES && !dirty.isEmpty(); i++) {
+            flush().block(IO_TIMEOUT);
+        }
+        if (!dirty.isEmpty()) {
+            logger.warn("{} dialog sessions were not written on shutdown", dirty.size());
+        }
+    }
+
+    private record Change(DialogSession session) {
+    }
+}
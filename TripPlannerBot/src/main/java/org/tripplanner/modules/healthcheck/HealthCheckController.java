@@ -4,9 +4,11 @@ import java.util.HashMap;
 import java.util.Map;
 
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Component;
 import org.springframework.web.reactive.function.server.ServerRequest;
 import org.springframework.web.reactive.function.server.ServerResponse;
+import org.tripplanner.repositories.mongodb.IndexBootstrapper;
 import org.tripplanner.repositories.mongodb.UserDBO;
 
 import reactor.core.publisher.Mono;
@@ -14,9 +16,11 @@ import reactor.core.publisher.Mono;
 @Component
 public class HealthCheckController {
     private final ReactiveMongoTemplate mongoTemplate;
+    private final IndexBootstrapper indexBootstrapper;
 
-    public HealthCheckController(ReactiveMongoTemplate mongoTemplate) {
+    public HealthCheckController(ReactiveMongoTemplate mongoTemplate, IndexBootstrapper indexBootstrapper) {
         this.mongoTemplate = mongoTemplate;
+        this.indexBootstrapper = indexBootstrapper;
     }
 
     public Mono<ServerResponse> healthCheck(ServerRequest request) {
@@ -26,7 +30,16 @@ public class HealthCheckController {
         
         return mongoTemplate.findAll(UserDBO.class)
                 .take(1)
-                .then(ServerResponse.ok().bodyValue(response))
+                .then(indexBootstrapper.currentReport())
+                .flatMap(report -> {
+                    response.put("indexes", report.toMap());
+                    if (!indexBootstrapper.isReady(report)) {
+                        // Без критичных индексов бот работает, но каждый запрос — сканирование коллекции
+                        response.put("status", "NOT_READY");
+                        return ServerResponse.status(HttpStatus.SERVICE_UNAVAILABLE).bodyValue(response);
+                    }
+                    return ServerResponse.ok().bodyValue(response);
+                })
                 .onErrorResume(e -> {
                     response.put("status", "ERROR");
                     response.put("error", e.getMessage());
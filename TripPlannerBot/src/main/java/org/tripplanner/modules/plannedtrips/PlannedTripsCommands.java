@@ -0,0 +1,68 @@
+package org.tripplanner.modules.plannedtrips;
+
+import org.springframework.stereotype.Component;
+import org.tripplanner.modules.dialog.CommandModule;
+import org.tripplanner.modules.dialog.CommandRegistry;
+import org.tripplanner.modules.dialog.DialogState.Command;
+import org.tripplanner.modules.dialog.DialogState.CommandState;
+import org.tripplanner.modules.dialog.DialogState.Slot;
+import org.tripplanner.modules.dialog.DialogState.Step;
+import org.tripplanner.repositories.UserDAO;
+
+import reactor.core.publisher.Mono;
+
+@Component
+public class PlannedTripsCommands implements CommandModule {
+
+    private static final String NO_SUCH_TRIP = "Такой поездки нет! Если хотите создать поездку воспользуйтесь: /plantrip или просмотрите свои поездки с помощью: /showplanned";
+
+    private final PlannedTripsController plannedTrips;
+    private final UserDAO userDAO;
+
+    public PlannedTripsCommands(PlannedTripsController plannedTrips, UserDAO userDAO) {
+        this.plannedTrips = plannedTrips;
+        this.userDAO = userDAO;
+    }
+
+    @Override
+    public void register(CommandRegistry registry) {
+        registry.command("/start", (chatId, text, args) -> plannedTrips.handleStartCommand(chatId))
+                .command("/showplanned", (chatId, text, args) -> plannedTrips.handleShowPlanned(chatId))
+                .dialog("/plantrip", Command.PLAN_TRIP,
+                        (chatId, state) -> plannedTrips.handlePlanTrip(chatId,
+                                state.text(Slot.NAME), state.text(Slot.START_DATE), state.text(Slot.END_DATE)),
+                        Step.WAITING_NAME, Step.WAITING_START_DATE, Step.WAITING_END_DATE)
+                .dialog("/addpoint", Command.ADD_POINT,
+                        (chatId, state) -> plannedTrips.handleAddPoint(chatId, state.text(Slot.TRIP_NAME),
+                                state.text(Slot.POINT_NAME), state.number(Slot.LATITUDE), state.number(Slot.LONGITUDE)),
+                        Step.WAITING_TRIP_NAME, Step.WAITING_POINT_NAME, Step.WAITING_LATITUDE, Step.WAITING_LONGITUDE)
+                .dialog("/addroute", Command.ADD_ROUTE,
+                        (chatId, state) -> plannedTrips.handleAddRoute(chatId, state.text(Slot.TRIP_NAME),
+                                state.text(Slot.POINT_NAME), state.text(Slot.ROUTE_DATE)),
+                        Step.WAITING_TRIP_NAME, Step.WAITING_POINT_NAME, Step.WAITING_ROUTE_DATE)
+                .dialog("/finishplanning", Command.FINISH_PLANNING,
+                        (chatId, state) -> plannedTrips.handleFinishPlanningWithName(chatId, state.text(Slot.TRIP_NAME))
+                                .then(Mono.just("Рад что Вы отдохнули! Если желаете напишите заметку о своем путешествии с помощью /addnote")),
+                        Step.WAITING_TRIP_NAME)
+                .dialog("/deleteplanned", Command.DELETE_PLANNED,
+                        (chatId, state) -> plannedTrips.handleDeletePlanned(chatId, state.text(Slot.TRIP_NAME)),
+                        Step.WAITING_TRIP_NAME)
+                .dialog("/setongoing", Command.SET_ONGOING, this::setOngoing,
+                        Step.WAITING_TRIP_NAME, Step.WAITING_LOCATION)
+                .startDialog("/startontrip", Command.SET_ONGOING, (chatId, text, args) ->
+                        plannedTrips.handleFinishPlanning(chatId)
+                                .flatMap(response -> {
+                                    if (response.contains("нет запланированных поездок")) {
+                                        return Mono.just("У вас нет запланированных поездок. Сначала создайте поездку с помощью /plantrip");
+                                    }
+                                    return Mono.just("Выберите поездку из списка выше, чтобы начать отслеживание геопозиции. После выбора поездки отправьте свою геопозицию.");
+                                }));
+    }
+
+    private Mono<String> setOngoing(Long chatId, CommandState state) {
+        return plannedTrips.handleFinishPlanningWithName(chatId, state.text(Slot.TRIP_NAME))
+                .flatMap(trip -> userDAO.setOngoingTrip(chatId, trip.getId())
+                        .then(Mono.just("Поездка \"" + trip.getName() + "\" установлена как активная. Теперь вы можете делиться своей геопозицией, нажав на кнопку 'Отправить геопозицию'.")))
+                .switchIfEmpty(Mono.just(NO_SUCH_TRIP));
+    }
+}
@@ -7,7 +7,8 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.tripplanner.domain.Trip;
-import org.tripplanner.repositories.mongodb.TripDAOImpl;
+import org.tripplanner.domain.TripSummary;
+import org.tripplanner.repositories.TripDAO;
 
 import reactor.core.publisher.Mono;
 
@@ -15,11 +16,11 @@ import reactor.core.publisher.Mono;
 public class PlannedTripsController {
 
     private final PlannedTripsService service;
-    private final TripDAOImpl tripDAO;
+    private final TripDAO tripDAO;
     private static final DateTimeFormatter DATE_FORMATTER = DateTimeFormatter.ofPattern("yyyy-MM-dd");
     private static final Logger logger = LoggerFactory.getLogger(PlannedTripsController.class);
 
-    public PlannedTripsController(PlannedTripsService service, TripDAOImpl tripDAO) {
+    public PlannedTripsController(PlannedTripsService service, TripDAO tripDAO) {
         this.service = service;
         this.tripDAO = tripDAO;
     }
@@ -30,36 +31,22 @@ public class PlannedTripsController {
     }
 
     public Mono<String> handleShowPlanned(Long chatId) {
-        System.out.println("Handling show planned trips for chatId: " + chatId);
-        
         return service.getAllPlannedTrips(chatId)
-                .doOnNext(trip -> System.out.println("Received trip in controller: " + trip.getName() + " with ID: " + trip.getId() + 
-                        ", dates: " + trip.getStartDate() + " - " + trip.getEndDate()))
                 .collectList()
-                .doOnNext(trips -> {
-                    System.out.println("Collected " + trips.size() + " trips");
-                    trips.forEach(trip -> System.out.println("Trip in list: " + trip.getName() + " with ID: " + trip.getId() + 
-                            ", dates: " + trip.getStartDate() + " - " + trip.getEndDate()));
-                })
-                .flatMap(trips -> {
+                .map(trips -> {
+                    logger.debug("Showing {} planned trips for chatId {}", trips.size(), chatId);
                     if (trips.isEmpty()) {
-                        System.out.println("No trips to display");
-                        return Mono.just("У вас нет запланированных поездок.");
+                        return "У вас нет запланированных поездок.";
                     }
                     StringBuilder sb = new StringBuilder("Запланированные поездки:\n");
-                    for (Trip trip : trips) {
+                    for (TripSummary trip : trips) {
                         sb.append("• ").append(trip.getName())
                                 .append(" (").append(trip.getStartDate())
                                 .append(" — ").append(trip.getEndDate()).append(")\n");
                     }
-                    String response = sb.toString();
-                    System.out.println("Generated response: " + response);
-                    return Mono.just(response);
+                    return sb.toString();
                 })
-                .doOnError(e -> {
-                    System.out.println("Error in handleShowPlanned: " + e.getMessage());
-                    e.printStackTrace();
-                });
+                .doOnError(e -> logger.error("Error in handleShowPlanned for chatId {}: {}", chatId, e.getMessage()));
     }
 
     public Mono<String> handlePlanTrip(Long chatId, String name, String startDate, String endDate) {
@@ -89,18 +76,14 @@ public class PlannedTripsController {
     }
 
     public Mono<String> handleAddPoint(Long chatId, String tripName, String name, double lat, double lon) {
-        return service.getAllPlannedTrips(chatId)
-                .filter(trip -> trip.getName().equals(tripName))
-                .next()
+        return service.findPlannedTrip(chatId, tripName)
                 .flatMap(trip -> service.createPoint(trip.getId(), name, lat, lon)
                         .map(point -> "Точка \"" + point.getName() + "\" добавлена."))
                 .switchIfEmpty(Mono.just("Такой поездки нет! Если хотите создать поездку воспользуйтесь: /plantrip или просмотрите свои поездки с помощью: /showplanned"));
     }
 
     public Mono<String> handleAddRoute(Long chatId, String tripName, String pointName, String routeDate) {
-        return service.getAllPlannedTrips(chatId)
-                .filter(trip -> trip.getName().equals(tripName))
-                .next()
+        return service.findPlannedTrip(chatId, tripName)
                 .flatMap(trip -> service.addRoute(trip.getId(), pointName, routeDate)
                         .map(route -> "Маршрут добавлен на " + routeDate + "."))
                 .switchIfEmpty(Mono.just("Такой поездки нет! Если хотите создать поездку воспользуйтесь: /plantrip или просмотрите свои поездки с помощью: /showplanned"));
@@ -117,7 +100,7 @@ public class PlannedTripsController {
                     }
 
                     StringBuilder sb = new StringBuilder("Выберите поездку для завершения планирования:\n");
-                    for (Trip trip : trips) {
+                    for (TripSummary trip : trips) {
                         sb.append("• ").append(trip.getName())
                                 .append(" (").append(trip.getStartDate())
                                 .append(" — ").append(trip.getEndDate()).append(")\n");
@@ -143,9 +126,7 @@ public class PlannedTripsController {
     }
 
     public Mono<String> handleDeletePlanned(Long chatId, String tripName) {
-        return service.getAllPlannedTrips(chatId)
-                .filter(trip -> trip.getName().equals(tripName))
-                .next()
+        return service.findPlannedTrip(chatId, tripName)
                 .flatMap(trip -> service.deletePlannedTrip(chatId, trip.getId())
                         .then(Mono.just("Поездка \"" + tripName + "\" успешно удалена.")))
                 .switchIfEmpty(Mono.just("Такой поездки нет! Если хотите создать поездку воспользуйтесь: /plantrip или просмотрите свои поездки с помощью: /showplanned"));
@@ -1,6 +1,8 @@
 package org.tripplanner.modules.plannedtrips;
 
 import java.time.LocalDate;
+import java.util.EnumSet;
+import java.util.Set;
 
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
@@ -9,6 +11,8 @@ import org.springframework.stereotype.Service;
 import org.tripplanner.domain.Point;
 import org.tripplanner.domain.Route;
 import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.TripStatus;
+import org.tripplanner.domain.TripSummary;
 import org.tripplanner.domain.User;
 import org.tripplanner.repositories.PointDAO;
 import org.tripplanner.repositories.RouteDAO;
@@ -26,6 +30,7 @@ public class PlannedTripsService {
     private final PointDAO pointDAO;
     private final RouteDAO routeDAO;
     private static final Logger logger = LoggerFactory.getLogger(PlannedTripsService.class);
+    private static final Set<TripStatus> PLANNED = EnumSet.of(TripStatus.PLANNED);
 
     public PlannedTripsService(UserDAO userDAO, TripDAO tripDAO,
                                PointDAO pointDAO, RouteDAO routeDAO) {
@@ -39,8 +44,12 @@ public class PlannedTripsService {
         return userDAO.getOrCreateUser(chatId);
     }
 
-    public Flux<Trip> getAllPlannedTrips(Long chatId) {
-        return userDAO.getAllPlannedTrips(chatId);
+    public Flux<TripSummary> getAllPlannedTrips(Long chatId) {
+        return userDAO.getPlannedTripSummaries(chatId);
+    }
+
+    public Mono<Trip> findPlannedTrip(Long chatId, String tripName) {
+        return tripDAO.findByOwnerAndName(chatId, tripName, PLANNED);
     }
 
     public Mono<Trip> planTrip(Long chatId, String name, LocalDate startDate, LocalDate endDate) {
@@ -59,36 +68,17 @@ public class PlannedTripsService {
 
     public Mono<Point> createRoute(String tripId, String pointToId, LocalDate date) {
         return routeDAO.createRoute(pointToId, date.toString(), date.toString())
-                .flatMap(route -> tripDAO.addRoute(tripId, extractIdFromRoute(route)).thenReturn(route.getPointTo()));
+                .flatMap(route -> tripDAO.addRoute(tripId, route.getId()).thenReturn(route.getPointTo()));
     }
 
     public Mono<Trip> finishPlanning(Long chatId, String tripName) {
-        return userDAO.getUserByChatId(chatId)
-                .flatMap(user -> {
-                    if (user.getPlannedTrips() == null || user.getPlannedTrips().isEmpty()) {
-                        return Mono.error(new RuntimeException("У вас нет запланированных поездок. Сначала создайте поездку с помощью /plantrip"));
-                    }
-                    // Получаем все запланированные поездки
-                    return Flux.fromIterable(user.getPlannedTrips())
-                            .flatMap(trip -> tripDAO.getTrip(trip.getId()))
-                            .collectList()
-                            .flatMap(trips -> {
-                                if (trips.isEmpty()) {
-                                    return Mono.error(new RuntimeException("Не удалось загрузить запланированные поездки. Попробуйте позже"));
-                                }
-                                // Ищем поездку по названию
-                                return Flux.fromIterable(trips)
-                                        .filter(trip -> trip.getName().equals(tripName))
-                                        .next()
-                                        .switchIfEmpty(Mono.error(new RuntimeException("Поездка с названием '" + tripName + "' не найдена. Проверьте название и попробуйте снова")))
-                                        .flatMap(trip -> {
-                                            String tripId = trip.getId();
-                                            // Добавляем поездку в историю и удаляем из запланированных
-                                            return userDAO.addToTripHistory(chatId, tripId)
-                                                    .then(userDAO.removeFromPlannedTrips(chatId, tripId))
-                                                    .thenReturn(trip);
-                                        });
-                            });
+        return findPlannedTrip(chatId, tripName)
+                .switchIfEmpty(Mono.error(new RuntimeException("Поездка с названием '" + tripName + "' не найдена. Проверьте название и попробуйте снова")))
+                .flatMap(trip -> {
+                    String tripId = trip.getId();
+                    // Добавляем поездку в историю и удаляем из запланированных
+                    return userDAO.moveToTripHistory(chatId, tripId)
+                            .thenReturn(trip);
                 })
                 .onErrorResume(e -> {
                     logger.error("Error in finishPlanning for user {} and trip {}: {}", chatId, tripName, e.getMessage());
@@ -114,10 +104,8 @@ public class PlannedTripsService {
                                 // Берем первую поездку
                                 Trip trip = trips.get(0);
                                 String tripId = trip.getId();
-                                // Добавляем поездку в историю
-                                return userDAO.addToTripHistory(chatId, tripId)
-                                        // Удаляем поездку из запланированных
-                                        .then(userDAO.removeFromPlannedTrips(chatId, tripId))
+                                // Переносим поездку из запланированных в историю
+                                return userDAO.moveToTripHistory(chatId, tripId)
                                         .thenReturn(trip);
                             });
                 });
@@ -135,15 +123,9 @@ public class PlannedTripsService {
         return new ObjectId().toHexString();
     }
 
-    private String extractIdFromRoute(Object route) {
-        return new ObjectId().toHexString();
-    }
-
     public Mono<Route> addRoute(String tripId, String pointName, String routeDate) {
         return tripDAO.getTrip(tripId)
-                .flatMap(trip -> pointDAO.getPointsByTripId(tripId)
-                        .filter(point -> point.getName().equals(pointName))
-                        .next()
+                .flatMap(trip -> pointDAO.findByTripAndName(tripId, pointName)
                         .switchIfEmpty(Mono.error(new RuntimeException("Точка с таким названием не найдена в поездке.")))
                         .flatMap(point -> {
                             logger.debug("Found point: {}", point);
@@ -152,7 +134,7 @@ public class PlannedTripsService {
                                         if (route.getPointTo() == null) {
                                             return Mono.error(new RuntimeException("Не удалось создать маршрут: точка назначения не найдена"));
                                         }
-                                        return tripDAO.addRoute(tripId, route.getPointTo().getId())
+                                        return tripDAO.addRoute(tripId, route.getId())
                                                 .thenReturn(route);
                                     });
                         })
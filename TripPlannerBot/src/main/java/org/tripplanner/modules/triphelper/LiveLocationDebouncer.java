@@ -0,0 +1,246 @@
+package org.tripplanner.modules.triphelper;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.tripplanner.util.DrainCoordinator;
+import org.tripplanner.util.ExpiringLongMap;
+import org.tripplanner.util.GeoDistance;
+import org.tripplanner.util.StatsSource;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Живая геопозиция: Telegram присылает её правками сообщения каждые несколько секунд.
+ * По каждому чату за окно window проверяется только последняя точка, а точки, сдвинувшиеся
+ * от предыдущей проверенной меньше чем на min-distance, отбрасываются. Запись геопозиции
+ * отделена от проверки близости: не чаще раза в persist-interval, последняя позиция всегда
+ * доезжает до базы. При остановке отложенные записи не ждут своего таймера: с началом
+ * остановки они уходят сразу, а DrainCoordinator ждёт, пока они дойдут до буфера записи.
+ */
+@Component
+public class LiveLocationDebouncer implements StatsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(LiveLocationDebouncer.class);
+    private static final int STRIPES = 16;
+
+    private final TripHelperService service;
+    private final Duration window;
+    private final double minDistanceMeters;
+    private final Duration persistInterval;
+    private final ExpiringLongMap<ChatPings> chats;
+    private final Duration sweepInterval;
+    private final DrainCoordinator drainCoordinator;
+    // Чаты с отложенной записью; держим отдельно, чтобы их не потерял sweep и нашла остановка
+    private final Map<Long, ChatPings> unsaved = new ConcurrentHashMap<>();
+    private final AtomicInteger saving = new AtomicInteger();
+    private volatile boolean stopping;
+
+    private final LongAdder received = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder tooClose = new LongAdder();
+    private final LongAdder checked = new LongAdder();
+    private final LongAdder persisted = new LongAdder();
+    private Disposable sweeper;
+
+    // Всё состояние чата меняется под его монитором
+    private static final class ChatPings {
+        boolean pending;
+        double pendingLat;
+        double pendingLon;
+        boolean checkScheduled;
+        boolean checking;
+
+        boolean hasChecked;
+        double checkedLat;
+        double checkedLon;
+
+        boolean unsaved;
+        double unsavedLat;
+        double unsavedLon;
+        boolean saveScheduled;
+    }
+
+    public LiveLocationDebouncer(TripHelperService service,
+                                 @Value("${location.live.window-ms:3000}") long windowMs,
+                                 @Value("${location.live.min-distance-meters:20}") double minDistanceMeters,
+                                 @Value("${location.live.persist-interval-ms:30000}") long persistIntervalMs,
+                                 @Value("${location.live.idle-ttl-ms:1800000}") long idleTtlMs,
+                                 @Value("${location.live.max-chats:100000}") int maxChats,
+                                 DrainCoordinator drainCoordinator) {
+        this.service = service;
+        this.window = Duration.ofMillis(windowMs);
+        this.minDistanceMeters = minDistanceMeters;
+        this.persistInterval = Duration.ofMillis(persistIntervalMs);
+        this.chats = new ExpiringLongMap<>(STRIPES, maxChats, Duration.ofMillis(idleTtlMs).toNanos());
+        this.sweepInterval = Duration.ofMillis(Math.max(1000, idleTtlMs / 4));
+        this.drainCoordinator = drainCoordinator;
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (sweeper == null) {
+            drainCoordinator.registerPending(DrainCoordinator.LIVE_LOCATIONS, () -> unsaved.size() + saving.get());
+            drainCoordinator.onStopIntake(() -> flushUnsaved().subscribe());
+            sweeper = Flux.interval(sweepInterval)
+                    .onBackpressureDrop()
+                    .subscribe(tick -> chats.sweep());
+        }
+    }
+
+    /**
+     * Принимает точку живой геопозиции. Не блокирует и ничего не ждёт: проверка пойдёт
+     * по таймеру окна.
+     */
+    public void offer(long chatId, double latitude, double longitude) {
+        received.increment();
+        ChatPings pings = chats.computeIfAbsent(chatId, id -> new ChatPings());
+        boolean schedule;
+        synchronized (pings) {
+            if (pings.pending) {
+                coalesced.increment();
+            }
+            pings.pending = true;
+            pings.pendingLat = latitude;
+            pings.pendingLon = longitude;
+            schedule = !pings.checkScheduled;
+            pings.checkScheduled = true;
+        }
+        if (schedule) {
+            Mono.delay(window).subscribe(tick -> check(chatId, pings));
+        }
+    }
+
+    private void check(long chatId, ChatPings pings) {
+        double latitude;
+        double longitude;
+        boolean scheduleSave = false;
+        synchronized (pings) {
+            if (pings.checking) {
+                // Прошлая проверка ещё идёт — эта точка подождёт следующего окна
+                Mono.delay(window).subscribe(tick -> check(chatId, pings));
+                return;
+            }
+            pings.checkScheduled = false;
+            if (!pings.pending) {
+                return;
+            }
+            pings.pending = false;
+            latitude = pings.pendingLat;
+            longitude = pings.pendingLon;
+            if (pings.hasChecked
+                    && GeoDistance.meters(pings.checkedLat, pings.checkedLon, latitude, longitude) < minDistanceMeters) {
+                tooClose.increment();
+                return;
+            }
+            pings.hasChecked = true;
+            pings.checkedLat = latitude;
+            pings.checkedLon = longitude;
+            pings.checking = true;
+
+            pings.unsaved = true;
+            pings.unsavedLat = latitude;
+            pings.unsavedLon = longitude;
+            if (!pings.saveScheduled) {
+                pings.saveScheduled = true;
+                unsaved.put(chatId, pings);
+                scheduleSave = true;
+            }
+        }
+        if (scheduleSave) {
+            // Во время остановки ждать persist-interval некогда
+            Mono.delay(stopping ? Duration.ZERO : persistInterval).subscribe(tick -> save(chatId, pings).subscribe());
+        }
+        checked.increment();
+        service.checkProximity(chatId, latitude, longitude)
+                .doFinally(signal -> {
+                    synchronized (pings) {
+                        pings.checking = false;
+                    }
+                })
+                .subscribe(null, e -> logger.error("Live location check failed for chat {}: {}", chatId, e.getMessage()));
+    }
+
+    // Вызывается и таймером, и остановкой: кто пришёл вторым, ничего не пишет
+    private Mono<Void> save(long chatId, ChatPings pings) {
+        double latitude;
+        double longitude;
+        synchronized (pings) {
+            pings.saveScheduled = false;
+            unsaved.remove(chatId, pings);
+            if (!pings.unsaved) {
+                return Mono.empty();
+            }
+            pings.unsaved = false;
+            latitude = pings.unsavedLat;
+            longitude = pings.unsavedLon;
+            saving.incrementAndGet();
+        }
+        persisted.increment();
+        return service.saveLocation(chatId, latitude, longitude)
+                .doOnError(e -> logger.error("Live location save failed for chat {}: {}", chatId, e.getMessage()))
+                .onErrorResume(e -> Mono.empty())
+                .doFinally(signal -> saving.decrementAndGet());
+    }
+
+    /**
+     * Сразу пишет все отложенные позиции, не дожидаясь persist-interval. Позиции, проверенные
+     * после этого, тоже пишутся без задержки.
+     */
+    Mono<Void> flushUnsaved() {
+        stopping = true;
+        return Flux.fromIterable(List.copyOf(unsaved.entrySet()))
+                .flatMap(entry -> save(entry.getKey(), entry.getValue()))
+                .then();
+    }
+
+
+    @Override
+    public String statsName() {
+        return "liveLocations";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("chats", chats.size());
+        stats.put("received", received.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("tooClose", tooClose.sum());
+        stats.put("checked", checked.sum());
+        stats.put("persisted", persisted.sum());
+        stats.put("unsaved", unsaved.size());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (sweeper != null) {
+            sweeper.dispose();
+            sweeper = null;
+        }
+        // Обычно всё записано ещё на drain; здесь — если контекст закрывают без него.
+        // Буфер записи останавливается позже: он зависимость этого бина
+        try {
+            flushUnsaved().block(drainCoordinator.remaining());
+        } catch (RuntimeException e) {
+            logger.warn("Live locations were not flushed on shutdown: {}", e.getMessage());
+        }
+        if (!unsaved.isEmpty()) {
+            logger.warn("{} live locations were not saved on shutdown", unsaved.size());
+        }
+    }
+}
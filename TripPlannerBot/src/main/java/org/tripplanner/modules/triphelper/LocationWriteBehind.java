@@ -0,0 +1,268 @@
+package org.tripplanner.modules.triphelper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.tripplanner.domain.UserLocation;
+import org.tripplanner.repositories.UserDAO;
+import org.tripplanner.util.DrainCoordinator;
+import org.tripplanner.util.LatencyRecorder;
+import org.tripplanner.util.StatsSource;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Отложенная запись геопозиций, как у сессий диалогов: по чату хранится только последняя
+ * позиция, пачка уходит одной неупорядоченной bulk-операцией по таймеру или при наборе
+ * batch-size. Перед тем как попасть в буфер, позиция дописывается в {@link MappedJournal};
+ * после падения процесса журнал проигрывается при старте. Журнал обнуляется, когда всё
+ * записано, а при переполнении переписывается содержимым буфера — по позиции на чат.
+ */
+@Component
+public class LocationWriteBehind implements StatsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(LocationWriteBehind.class);
+    private static final Duration IO_TIMEOUT = Duration.ofSeconds(5);
+    private static final int MAX_FINAL_FLUSHES = 5;
+
+    // chatId, широта, долгота и эпоха журнала
+    static final MappedJournal.Format<UserLocation> JOURNAL_FORMAT = new MappedJournal.Format<>() {
+        @Override
+        public int magic() {
+            return 0x4C4F434A;
+        }
+
+        @Override
+        public int recordBytes() {
+            return 32;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int offset, UserLocation location) {
+            buffer.putLong(offset, location.chatId());
+            buffer.putDouble(offset + 8, location.latitude());
+            buffer.putDouble(offset + 16, location.longitude());
+        }
+
+        @Override
+        public UserLocation read(ByteBuffer buffer, int offset) {
+            return new UserLocation(buffer.getLong(offset), buffer.getDouble(offset + 8), buffer.getDouble(offset + 16));
+        }
+    };
+
+    private final UserDAO userDAO;
+    private final int batchSize;
+    private final Duration interval;
+    private final String journalPath;
+    private final int journalCapacity;
+
+    private final Map<Long, UserLocation> dirty = new ConcurrentHashMap<>();
+    private final Map<Long, UserLocation> writing = new ConcurrentHashMap<>();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    // Запись в журнал и в буфер — под одним локом, иначе обнуление журнала могло бы потерять позицию
+    private final Object journalLock = new Object();
+    private MappedJournal<UserLocation> journal;
+
+    private final LatencyRecorder flushLatency = new LatencyRecorder();
+    private final LongAdder enqueued = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder unjournaled = new LongAdder();
+    private Disposable timer;
+
+    public LocationWriteBehind(UserDAO userDAO,
+                               @Value("${location.write-behind.batch-size:500}") int batchSize,
+                               @Value("${location.write-behind.interval-ms:1000}") long intervalMs,
+                               @Value("${location.write-behind.journal-path:data/locations.journal}") String journalPath,
+                               @Value("${location.write-behind.journal-capacity:65536}") int journalCapacity,
+                               DrainCoordinator drainCoordinator) {
+        this.userDAO = userDAO;
+        this.batchSize = batchSize;
+        this.interval = Duration.ofMillis(intervalMs);
+        this.journalPath = journalPath;
+        this.journalCapacity = journalCapacity;
+        drainCoordinator.registerPending(DrainCoordinator.LOCATIONS, () -> dirty.size() + writing.size());
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (timer != null) {
+            return;
+        }
+        openJournal();
+        timer = Flux.interval(interval)
+                .onBackpressureDrop()
+                .concatMap(tick -> flush())
+                .subscribe();
+    }
+
+    private void openJournal() {
+        if (journalPath == null || journalPath.isBlank()) {
+            return;
+        }
+        try {
+            MappedJournal<UserLocation> opened = MappedJournal.open(Path.of(journalPath), journalCapacity, JOURNAL_FORMAT);
+            List<UserLocation> pending = opened.replay();
+            synchronized (journalLock) {
+                journal = opened;
+                // Записи уже в журнале: в буфер кладём напрямую, последняя позиция чата побеждает
+                pending.forEach(location -> dirty.put(location.chatId(), location));
+            }
+            replayed.add(pending.size());
+            if (!pending.isEmpty()) {
+                logger.info("Replayed {} unsaved locations ({} chats) from {}", pending.size(), dirty.size(), journalPath);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Location journal {} is unavailable, locations are buffered in memory only: {}",
+                    journalPath, e.getMessage());
+        }
+    }
+
+    public void enqueue(long chatId, double latitude, double longitude) {
+        UserLocation location = new UserLocation(chatId, latitude, longitude);
+        enqueued.increment();
+        synchronized (journalLock) {
+            journal(location);
+            if (dirty.put(chatId, location) != null) {
+                coalesced.increment();
+            }
+        }
+        if (dirty.size() >= batchSize) {
+            flush().subscribe();
+        }
+    }
+
+    private void journal(UserLocation location) {
+        if (journal == null || journal.append(location)) {
+            return;
+        }
+        // Журнал полон: в нём много старых позиций тех же чатов — оставляем по одной
+        Map<Long, UserLocation> latest = new LinkedHashMap<>(writing);
+        latest.putAll(dirty);
+        latest.put(location.chatId(), location);
+        int dropped = journal.rewrite(latest.values());
+        compactions.increment();
+        if (dropped > 0) {
+            unjournaled.add(dropped);
+            logger.warn("Location journal is full even after compaction, {} positions are kept in memory only", dropped);
+        }
+    }
+
+    /**
+     * Записывает всё накопленное. Одновременно идёт не больше одной записи.
+     */
+    public Mono<Void> flush() {
+        return Mono.defer(this::writeDirty);
+    }
+
+    private Mono<Void> writeDirty() {
+        if (dirty.isEmpty() || !flushing.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        List<UserLocation> batch = new ArrayList<>();
+        for (Map.Entry<Long, UserLocation> entry : dirty.entrySet()) {
+            // remove(key, value): позиция, пришедшая прямо сейчас, останется на следующий раз
+            if (dirty.remove(entry.getKey(), entry.getValue())) {
+                writing.put(entry.getKey(), entry.getValue());
+                batch.add(entry.getValue());
+            }
+        }
+        long startedAt = System.nanoTime();
+        return userDAO.updateUserLocations(batch)
+                .doOnSuccess(v -> {
+                    flushLatency.recordNanos(System.nanoTime() - startedAt);
+                    batches.increment();
+                    written.add(batch.size());
+                    synchronized (journalLock) {
+                        if (journal != null && dirty.isEmpty()) {
+                            journal.reset();
+                        }
+                    }
+                })
+                .onErrorResume(e -> {
+                    failures.increment();
+                    logger.error("Failed to write {} locations, will retry: {}", batch.size(), e.getMessage());
+                    writing.forEach(dirty::putIfAbsent);
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    writing.clear();
+                    flushing.set(false);
+                });
+    }
+
+    @Override
+    public String statsName() {
+        return "locationWriteBehind";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("depth", dirty.size());
+        stats.put("writing", writing.size());
+        stats.put("enqueued", enqueued.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("written", written.sum());
+        stats.put("batches", batches.sum());
+        stats.put("failures", failures.sum());
+        stats.put("flushLatency", flushLatency.snapshot());
+        Map<String, Object> journalStats = new LinkedHashMap<>();
+        synchronized (journalLock) {
+            journalStats.put("enabled", journal != null);
+            journalStats.put("records", journal != null ? journal.size() : 0);
+            journalStats.put("capacity", journal != null ? journal.capacity() : 0);
+        }
+        journalStats.put("replayed", replayed.sum());
+        journalStats.put("compactions", compactions.sum());
+        journalStats.put("unjournaled", unjournaled.sum());
+        stats.put("journal", journalStats);
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (timer == null) {
+            return;
+        }
+        timer.dispose();
+        timer = null;
+        for (int i = 0; i < MAX_FINAL_FLUSHES && !dirty.isEmpty(); i++) {
+            flush().block(IO_TIMEOUT);
+        }
+        if (!dirty.isEmpty()) {
+            logger.warn("{} locations were not written on shutdown, they stay in the journal", dirty.size());
+        }
+        synchronized (journalLock) {
+            if (journal != null) {
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    logger.error("Failed to close location journal: {}", e.getMessage());
+                }
+                journal = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,164 @@
+package org.tripplanner.modules.triphelper;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Журнал ещё не записанных в Mongo данных в отображённом в память файле. Запись —
+ * это несколько put в страницу: данные переживают падение процесса без fsync, потому что
+ * страницы уже принадлежат ядру. Падение всей машины переживает только то, что успело
+ * уйти на диск при {@link #force()}.
+ * <p>
+ * Формат: заголовок (magic, версия, эпоха) и записи фиксированной длины, раскладку которых
+ * задаёт {@link Format}. Эпоха пишется в последние 8 байт записи последней, поэтому
+ * недописанная запись при чтении отбрасывается. {@link #reset()} не чистит файл, а
+ * увеличивает эпоху: записи прошлых эпох считаются пустым местом.
+ * Не потокобезопасен, вызывающий держит свой лок.
+ */
+final class MappedJournal<T> implements Closeable {
+
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+
+    /**
+     * Раскладка записи. Последние 8 байт из recordBytes заняты эпохой, их пишет журнал.
+     */
+    interface Format<T> {
+        int magic();
+
+        int recordBytes();
+
+        void write(ByteBuffer buffer, int offset, T value);
+
+        T read(ByteBuffer buffer, int offset);
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final Format<T> format;
+    private final int capacity;
+    private final int epochOffset;
+    private long epoch;
+    private int size;
+
+    private MappedJournal(FileChannel channel, MappedByteBuffer buffer, Format<T> format, int capacity) {
+        this.channel = channel;
+        this.buffer = buffer;
+        this.format = format;
+        this.capacity = capacity;
+        this.epochOffset = format.recordBytes() - Long.BYTES;
+    }
+
+    static <T> MappedJournal<T> open(Path path, int capacity, Format<T> format) throws IOException {
+        if (path.getParent() != null) {
+            Files.createDirectories(path.getParent());
+        }
+        FileChannel channel = FileChannel.open(path,
+                StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0,
+                    HEADER_BYTES + (long) capacity * format.recordBytes());
+            MappedJournal<T> journal = new MappedJournal<>(channel, buffer, format, capacity);
+            if (buffer.getInt(0) != format.magic() || buffer.getInt(4) != VERSION) {
+                // Новый файл или чужой формат: начинаем с чистой эпохи
+                journal.epoch = buffer.getLong(8) + 1;
+                journal.writeHeader();
+            } else {
+                journal.epoch = buffer.getLong(8);
+            }
+            return journal;
+        } catch (IOException | RuntimeException e) {
+            channel.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Записи текущей эпохи по порядку. Ставит позицию записи за последней из них.
+     */
+    List<T> replay() {
+        List<T> records = new ArrayList<>();
+        int index = 0;
+        while (index < capacity) {
+            int offset = offset(index);
+            if (buffer.getLong(offset + epochOffset) != epoch) {
+                break;
+            }
+            records.add(format.read(buffer, offset));
+            index++;
+        }
+        size = index;
+        return records;
+    }
+
+    /**
+     * false — журнал заполнен, нужен {@link #rewrite}.
+     */
+    boolean append(T value) {
+        if (size >= capacity) {
+            return false;
+        }
+        int offset = offset(size);
+        format.write(buffer, offset, value);
+        buffer.putLong(offset + epochOffset, epoch);
+        size++;
+        return true;
+    }
+
+    /**
+     * Начинает журнал заново с переданными записями. Возвращает, сколько не поместилось.
+     */
+    int rewrite(Collection<T> values) {
+        reset();
+        int dropped = 0;
+        for (T value : values) {
+            if (!append(value)) {
+                dropped++;
+            }
+        }
+        return dropped;
+    }
+
+    void reset() {
+        epoch++;
+        size = 0;
+        writeHeader();
+    }
+
+    int size() {
+        return size;
+    }
+
+    int capacity() {
+        return capacity;
+    }
+
+    void force() {
+        buffer.force();
+    }
+
+    @Override
+    public void close() throws IOException {
+        force();
+        channel.close();
+    }
+
+    private void writeHeader() {
+        buffer.putInt(0, format.magic());
+        buffer.putInt(4, VERSION);
+        buffer.putLong(8, epoch);
+    }
+
+    private int offset(int index) {
+        return HEADER_BYTES + index * format.recordBytes();
+    }
+}
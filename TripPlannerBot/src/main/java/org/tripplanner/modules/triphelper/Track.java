@@ -0,0 +1,104 @@
+package org.tripplanner.modules.triphelper;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import org.tripplanner.domain.TrackSegment;
+import org.tripplanner.util.GeoDistance;
+
+/**
+ * Пройденный путь: точки по времени и посчитанные по ним расстояние и время в движении.
+ * Отрезок считается движением, если средняя скорость на нём не меньше {@link #MOVING_SPEED}:
+ * стоянки упрощение трека сохраняет как пары точек с большим промежутком времени.
+ */
+public final class Track {
+
+    static final double MOVING_SPEED = 0.5;
+
+    private final TrackEncoding.Points points;
+    private final double distanceMeters;
+    private final long movingSeconds;
+
+    private Track(TrackEncoding.Points points) {
+        this.points = points;
+        double distance = 0;
+        long moving = 0;
+        for (int i = 1; i < points.size; i++) {
+            double meters = GeoDistance.meters(
+                    latitude(i - 1), longitude(i - 1), latitude(i), longitude(i));
+            long seconds = points.seconds[i] - points.seconds[i - 1];
+            distance += meters;
+            if (seconds > 0 && meters / seconds >= MOVING_SPEED) {
+                moving += seconds;
+            }
+        }
+        this.distanceMeters = distance;
+        this.movingSeconds = moving;
+    }
+
+    /**
+     * Склеивает куски по времени и оставляет точки из [fromSecond, toSecond). Куски одного
+     * часа могут пересекаться (тот же кусок из базы и из ещё не сброшенного буфера), поэтому
+     * точки не новее уже взятых отбрасываются.
+     */
+    static Track of(List<TrackSegment> segments, long fromSecond, long toSecond) {
+        List<TrackSegment> ordered = new ArrayList<>(segments);
+        ordered.sort(Comparator.comparing(TrackSegment::start));
+        TrackEncoding.Points decoded = new TrackEncoding.Points(64);
+        for (TrackSegment segment : ordered) {
+            TrackEncoding.decode(segment.points(), segment.count(), segment.hour().getEpochSecond(), decoded);
+        }
+        TrackEncoding.Points points = new TrackEncoding.Points(decoded.size);
+        for (int i = 0; i < decoded.size; i++) {
+            long second = decoded.seconds[i];
+            if (second < fromSecond || second >= toSecond
+                    || (points.size > 0 && second <= points.seconds[points.size - 1])) {
+                continue;
+            }
+            points.add(second, decoded.latitudes[i], decoded.longitudes[i]);
+        }
+        return new Track(points);
+    }
+
+    static Track of(List<TrackSegment> segments) {
+        return of(segments, Long.MIN_VALUE, Long.MAX_VALUE);
+    }
+
+    public int size() {
+        return points.size;
+    }
+
+    public boolean isEmpty() {
+        return points.size == 0;
+    }
+
+    public Instant time(int index) {
+        return Instant.ofEpochSecond(points.seconds[index]);
+    }
+
+    public double latitude(int index) {
+        return TrackEncoding.toDegrees(points.latitudes[index]);
+    }
+
+    public double longitude(int index) {
+        return TrackEncoding.toDegrees(points.longitudes[index]);
+    }
+
+    public Instant start() {
+        return isEmpty() ? null : time(0);
+    }
+
+    public Instant end() {
+        return isEmpty() ? null : time(points.size - 1);
+    }
+
+    public double distanceMeters() {
+        return distanceMeters;
+    }
+
+    public long movingSeconds() {
+        return movingSeconds;
+    }
+}
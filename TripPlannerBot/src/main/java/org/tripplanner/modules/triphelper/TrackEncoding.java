@@ -0,0 +1,151 @@
+package org.tripplanner.modules.triphelper;
+
+import java.util.Arrays;
+
+/**
+ * Сжатие точек трека. Координаты — целые миллионные доли градуса (около 11 см), время —
+ * секунды. Каждая точка записывается разницей с предыдущей тремя zigzag-varint: соседние
+ * точки близки, поэтому на точку уходит обычно 4–7 байт вместо 24. Первая точка куска
+ * отсчитывается от начала его часа и нулевых координат.
+ */
+final class TrackEncoding {
+
+    static final double SCALE = 1_000_000;
+
+    private TrackEncoding() {
+    }
+
+    static int toFixed(double degrees) {
+        return (int) Math.round(degrees * SCALE);
+    }
+
+    static double toDegrees(int fixed) {
+        return fixed / SCALE;
+    }
+
+    /**
+     * Точки в примитивных массивах, растущих по мере добавления.
+     */
+    static final class Points {
+        long[] seconds;
+        int[] latitudes;
+        int[] longitudes;
+        int size;
+
+        Points(int capacity) {
+            seconds = new long[capacity];
+            latitudes = new int[capacity];
+            longitudes = new int[capacity];
+        }
+
+        void add(long second, int latitude, int longitude) {
+            if (size == seconds.length) {
+                int capacity = Math.max(8, size * 2);
+                seconds = Arrays.copyOf(seconds, capacity);
+                latitudes = Arrays.copyOf(latitudes, capacity);
+                longitudes = Arrays.copyOf(longitudes, capacity);
+            }
+            seconds[size] = second;
+            latitudes[size] = latitude;
+            longitudes[size] = longitude;
+            size++;
+        }
+
+        void clear() {
+            size = 0;
+        }
+    }
+
+    /**
+     * Дописывает точки в растущий массив байт.
+     */
+    static final class Writer {
+        private final long baseSecond;
+        private byte[] bytes;
+        private int length;
+        private int count;
+        private long lastSecond;
+        private int lastLatitude;
+        private int lastLongitude;
+
+        Writer(long baseSecond, int capacity) {
+            this.baseSecond = baseSecond;
+            this.bytes = new byte[capacity];
+            this.lastSecond = baseSecond;
+        }
+
+        void append(long second, int latitude, int longitude) {
+            // Три varint по 10 байт максимум
+            if (length + 30 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(64, bytes.length * 2));
+            }
+            writeVarint(second - lastSecond);
+            writeVarint((long) latitude - lastLatitude);
+            writeVarint((long) longitude - lastLongitude);
+            lastSecond = second;
+            lastLatitude = latitude;
+            lastLongitude = longitude;
+            count++;
+        }
+
+        Writer copy() {
+            Writer copy = new Writer(baseSecond, 0);
+            copy.bytes = Arrays.copyOf(bytes, Math.max(length, 64));
+            copy.length = length;
+            copy.count = count;
+            copy.lastSecond = lastSecond;
+            copy.lastLatitude = lastLatitude;
+            copy.lastLongitude = lastLongitude;
+            return copy;
+        }
+
+        int count() {
+            return count;
+        }
+
+        long lastSecond() {
+            return lastSecond;
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private void writeVarint(long value) {
+            long zigzag = (value << 1) ^ (value >> 63);
+            while ((zigzag & ~0x7FL) != 0) {
+                bytes[length++] = (byte) ((zigzag & 0x7F) | 0x80);
+                zigzag >>>= 7;
+            }
+            bytes[length++] = (byte) zigzag;
+        }
+    }
+
+    /**
+     * Раскодирует count точек куска, начавшегося в baseSecond, и дописывает их в points.
+     */
+    static void decode(byte[] bytes, int count, long baseSecond, Points points) {
+        int[] position = {0};
+        long second = baseSecond;
+        int latitude = 0;
+        int longitude = 0;
+        for (int i = 0; i < count && position[0] < bytes.length; i++) {
+            second += readVarint(bytes, position);
+            latitude += (int) readVarint(bytes, position);
+            longitude += (int) readVarint(bytes, position);
+            points.add(second, latitude, longitude);
+        }
+    }
+
+    private static long readVarint(byte[] bytes, int[] position) {
+        long zigzag = 0;
+        int shift = 0;
+        byte b;
+        do {
+            b = bytes[position[0]++];
+            zigzag |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while (b < 0);
+        return (zigzag >>> 1) ^ -(zigzag & 1);
+    }
+}
@@ -0,0 +1,544 @@
+package org.tripplanner.modules.triphelper;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedDeque;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Predicate;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.tripplanner.domain.TrackSegment;
+import org.tripplanner.repositories.TrackDAO;
+import org.tripplanner.util.DrainCoordinator;
+import org.tripplanner.util.LatencyRecorder;
+import org.tripplanner.util.StatsSource;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Запись пройденного пути активных поездок. По каждой поездке копится текущий час: точки
+ * упрощаются на лету ({@link TrackSimplifier}) и сразу сжимаются дельтами ({@link TrackEncoding}),
+ * так что в памяти — массив байт, а не объекты на точку. Когда час кончается, кусок закрывается
+ * и одной пачкой с другими уходит в time-series коллекцию trip_tracks. Обычно это документ на
+ * поездку в час, но час бывает разбит на несколько документов: кусок закрывается досрочно на
+ * {@link #MAX_SEGMENT_POINTS} точках, а после падения процесса час дописывается новым куском.
+ * Дописывать в уже записанный документ time-series коллекция не даёт, поэтому чтение
+ * склеивает куски по времени (см. {@link Track#of}).
+ * <p>
+ * Каждая принятая точка дописывается в {@link MappedJournal}, как геопозиции в
+ * {@link LocationWriteBehind}; после падения журнал проигрывается при старте, так что
+ * незакрытый час не теряется. Журнал сжимается до ещё не записанных точек (уже упрощённых),
+ * когда заполнен наполовину, и обнуляется при штатной остановке, если всё записано. Куски,
+ * записанные после последнего сжатия, при проигрывании попадут в базу второй раз; чтение
+ * отбрасывает повторные точки. Чтение трека склеивает записанные куски с ещё не записанными.
+ */
+@Component
+public class TrackRecorder implements StatsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackRecorder.class);
+    private static final long HOUR_SECONDS = 3600;
+    // Кусок с таким числом точек закрывается досрочно, чтобы документ оставался небольшим (~100 КБ).
+    // После упрощения это больше пяти точек в секунду — на живой геопозиции час так не разбивается
+    static final int MAX_SEGMENT_POINTS = 20_000;
+    private static final int FLUSH_BATCH = 1000;
+    private static final Duration IO_TIMEOUT = Duration.ofSeconds(5);
+    private static final int MAX_FINAL_FLUSHES = 5;
+    // ObjectId в hex — 24 символа; у поездки с более длинным id точки в журнал не попадают
+    private static final int MAX_JOURNAL_TRIP_ID = 31;
+
+    // Точка в журнале: всё, что нужно, чтобы заново пропустить её через record
+    private record JournaledPoint(String tripId, long chatId, long second, int latitude, int longitude) {
+    }
+
+    // chatId, секунда, координаты, длина и байты id поездки, эпоха журнала
+    private static final MappedJournal.Format<JournaledPoint> JOURNAL_FORMAT = new MappedJournal.Format<>() {
+        @Override
+        public int magic() {
+            return 0x54524B4A;
+        }
+
+        @Override
+        public int recordBytes() {
+            return 64;
+        }
+
+        @Override
+        public void write(ByteBuffer buffer, int offset, JournaledPoint point) {
+            byte[] tripId = point.tripId().getBytes(StandardCharsets.US_ASCII);
+            buffer.putLong(offset, point.chatId());
+            buffer.putLong(offset + 8, point.second());
+            buffer.putInt(offset + 16, point.latitude());
+            buffer.putInt(offset + 20, point.longitude());
+            buffer.put(offset + 24, (byte) tripId.length);
+            buffer.put(offset + 25, tripId);
+        }
+
+        @Override
+        public JournaledPoint read(ByteBuffer buffer, int offset) {
+            byte[] tripId = new byte[buffer.get(offset + 24)];
+            buffer.get(offset + 25, tripId);
+            return new JournaledPoint(new String(tripId, StandardCharsets.US_ASCII), buffer.getLong(offset),
+                    buffer.getLong(offset + 8), buffer.getInt(offset + 16), buffer.getInt(offset + 20));
+        }
+    };
+
+    private final TrackDAO trackDAO;
+    private final boolean enabled;
+    private final double toleranceMeters;
+    private final int windowPoints;
+    private final Duration flushInterval;
+    private final int maxPendingSegments;
+    private final String journalPath;
+    private final int journalCapacity;
+
+    private final Map<String, TripBuffer> buffers = new ConcurrentHashMap<>();
+    private final ConcurrentLinkedDeque<TrackSegment> sealed = new ConcurrentLinkedDeque<>();
+    // size() у ConcurrentLinkedDeque обходит всю очередь, поэтому считаем сами
+    private final AtomicInteger sealedCount = new AtomicInteger();
+    private volatile List<TrackSegment> writing = List.of();
+    private final AtomicBoolean flushing = new AtomicBoolean();
+    // Порядок локов: сначала журнал, потом буфер поездки
+    private final Object journalLock = new Object();
+    private MappedJournal<JournaledPoint> journal;
+
+    private final LatencyRecorder flushLatency = new LatencyRecorder();
+    private final LongAdder received = new LongAdder();
+    private final LongAdder outOfOrder = new LongAdder();
+    private final LongAdder kept = new LongAdder();
+    private final LongAdder segments = new LongAdder();
+    private final LongAdder written = new LongAdder();
+    private final LongAdder bytesWritten = new LongAdder();
+    private final LongAdder batches = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final LongAdder replayed = new LongAdder();
+    private final LongAdder compactions = new LongAdder();
+    private final LongAdder unjournaled = new LongAdder();
+    private Disposable timer;
+
+    // Текущий час поездки; всё меняется под монитором буфера
+    private final class TripBuffer {
+        final String tripId;
+        final long chatId;
+        final TrackSimplifier simplifier = new TrackSimplifier(toleranceMeters, windowPoints);
+        TrackEncoding.Writer writer;
+        long hourSecond;
+        long startSecond;
+        long lastSecond = Long.MIN_VALUE;
+        boolean retired;
+
+        TripBuffer(String tripId, long chatId) {
+            this.tripId = tripId;
+            this.chatId = chatId;
+        }
+
+        boolean open() {
+            return writer != null;
+        }
+
+        // Незакрытый час вместе с ещё не упрощённым хвостом окна, буфер не меняется
+        TrackSegment snapshot() {
+            TrackEncoding.Writer copy = writer.copy();
+            simplifier.peek(copy);
+            return segment(copy);
+        }
+
+        TrackSegment segment(TrackEncoding.Writer points) {
+            return new TrackSegment(tripId, chatId, Instant.ofEpochSecond(hourSecond), Instant.ofEpochSecond(startSecond),
+                    Instant.ofEpochSecond(points.lastSecond()), points.count(), points.toByteArray());
+        }
+    }
+
+    public TrackRecorder(TrackDAO trackDAO,
+                         @Value("${track.enabled:true}") boolean enabled,
+                         @Value("${track.tolerance-meters:10}") double toleranceMeters,
+                         @Value("${track.window-points:64}") int windowPoints,
+                         @Value("${track.flush-interval-ms:60000}") long flushIntervalMs,
+                         @Value("${track.max-pending-segments:10000}") int maxPendingSegments,
+                         @Value("${track.journal-path:data/tracks.journal}") String journalPath,
+                         @Value("${track.journal-capacity:262144}") int journalCapacity,
+                         DrainCoordinator drainCoordinator) {
+        this.trackDAO = trackDAO;
+        this.enabled = enabled;
+        this.toleranceMeters = toleranceMeters;
+        this.windowPoints = windowPoints;
+        this.flushInterval = Duration.ofMillis(flushIntervalMs);
+        this.maxPendingSegments = maxPendingSegments;
+        this.journalPath = journalPath;
+        this.journalCapacity = journalCapacity;
+        drainCoordinator.registerPending(DrainCoordinator.TRACKS, () -> sealedCount.get() + writing.size());
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (enabled && timer == null) {
+            openJournal();
+            timer = Flux.interval(flushInterval)
+                    .onBackpressureDrop()
+                    .concatMap(tick -> {
+                        sealFinishedHours(Instant.now().getEpochSecond());
+                        return flush();
+                    })
+                    .subscribe();
+        }
+    }
+
+    private void openJournal() {
+        if (journalPath == null || journalPath.isBlank()) {
+            return;
+        }
+        try {
+            MappedJournal<JournaledPoint> opened = MappedJournal.open(Path.of(journalPath), journalCapacity, JOURNAL_FORMAT);
+            List<JournaledPoint> points = opened.replay();
+            synchronized (journalLock) {
+                journal = opened;
+                // Точки пройдут через record заново и снова попадут в журнал
+                journal.reset();
+                for (JournaledPoint point : points) {
+                    if (add(point.tripId(), point.chatId(), point.second(), point.latitude(), point.longitude())) {
+                        journal(point);
+                    }
+                }
+            }
+            replayed.add(points.size());
+            if (!points.isEmpty()) {
+                logger.info("Replayed {} unsaved track points ({} trips) from {}", points.size(), buffers.size(), journalPath);
+            }
+        } catch (IOException | RuntimeException e) {
+            logger.error("Track journal {} is unavailable, open hours are kept in memory only: {}",
+                    journalPath, e.getMessage());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * Добавляет точку в трек поездки. Точки не новее последней записанной отбрасываются:
+     * упрощение и дельты рассчитаны на движение вперёд по времени.
+     */
+    public void record(String tripId, long chatId, double latitude, double longitude, long epochMillis) {
+        if (!enabled) {
+            return;
+        }
+        received.increment();
+        long second = Math.floorDiv(epochMillis, 1000);
+        int fixedLatitude = TrackEncoding.toFixed(latitude);
+        int fixedLongitude = TrackEncoding.toFixed(longitude);
+        synchronized (journalLock) {
+            if (add(tripId, chatId, second, fixedLatitude, fixedLongitude)) {
+                journal(new JournaledPoint(tripId, chatId, second, fixedLatitude, fixedLongitude));
+            }
+        }
+    }
+
+    // false — точка не новее последней принятой и отброшена
+    private boolean add(String tripId, long chatId, long second, int fixedLatitude, int fixedLongitude) {
+        long hour = second - Math.floorMod(second, HOUR_SECONDS);
+        while (true) {
+            TripBuffer buffer = buffers.computeIfAbsent(tripId, id -> new TripBuffer(id, chatId));
+            synchronized (buffer) {
+                if (buffer.retired) {
+                    // Буфер только что убрали как простаивающий — берём новый
+                    continue;
+                }
+                if (second <= buffer.lastSecond) {
+                    outOfOrder.increment();
+                    return false;
+                }
+                if (buffer.open() && buffer.hourSecond != hour) {
+                    seal(buffer);
+                }
+                if (!buffer.open()) {
+                    buffer.writer = new TrackEncoding.Writer(hour, 256);
+                    buffer.hourSecond = hour;
+                    buffer.startSecond = second;
+                }
+                buffer.simplifier.add(second, fixedLatitude, fixedLongitude, buffer.writer);
+                buffer.lastSecond = second;
+                if (buffer.writer.count() >= MAX_SEGMENT_POINTS) {
+                    seal(buffer);
+                }
+                return true;
+            }
+        }
+    }
+
+    // Под журнальным локом
+    private void journal(JournaledPoint point) {
+        if (journal == null) {
+            return;
+        }
+        if (point.tripId().length() > MAX_JOURNAL_TRIP_ID) {
+            unjournaled.increment();
+            return;
+        }
+        if (!journal.append(point)) {
+            // Сама точка уже в буфере поездки, сжатие её сохранит
+            compact();
+        }
+    }
+
+    /**
+     * Переписывает журнал ещё не записанными точками: записанные куски из него уходят,
+     * а открытые часы остаются уже упрощёнными. Под журнальным локом.
+     */
+    private void compact() {
+        List<TrackSegment> pending = unflushed(segment -> true);
+        pending.sort(Comparator.comparing(TrackSegment::start));
+        List<JournaledPoint> points = new ArrayList<>();
+        TrackEncoding.Points decoded = new TrackEncoding.Points(64);
+        for (TrackSegment segment : pending) {
+            if (segment.tripId().length() > MAX_JOURNAL_TRIP_ID) {
+                continue;
+            }
+            decoded.clear();
+            TrackEncoding.decode(segment.points(), segment.count(), segment.hour().getEpochSecond(), decoded);
+            for (int i = 0; i < decoded.size; i++) {
+                points.add(new JournaledPoint(segment.tripId(), segment.chatId(), decoded.seconds[i],
+                        decoded.latitudes[i], decoded.longitudes[i]));
+            }
+        }
+        int lost = journal.rewrite(points);
+        compactions.increment();
+        if (lost > 0) {
+            unjournaled.add(lost);
+            logger.warn("Track journal is full even after compaction, {} points are kept in memory only", lost);
+        }
+    }
+
+    private void compactIfHalfFull() {
+        synchronized (journalLock) {
+            if (journal != null && journal.size() > journal.capacity() / 2) {
+                compact();
+            }
+        }
+    }
+
+    // Под монитором буфера
+    private void seal(TripBuffer buffer) {
+        buffer.simplifier.finish(buffer.writer);
+        if (buffer.writer.count() > 0) {
+            TrackSegment segment = buffer.segment(buffer.writer);
+            kept.add(segment.count());
+            segments.increment();
+            sealed.addLast(segment);
+            // База долго недоступна: старые куски выбрасываем, чтобы не кончилась память
+            while (sealedCount.incrementAndGet() > maxPendingSegments && sealed.pollFirst() != null) {
+                sealedCount.decrementAndGet();
+                dropped.increment();
+            }
+        }
+        buffer.writer = null;
+    }
+
+    /**
+     * Закрывает куски прошедших часов и убирает буферы поездок, по которым точек больше нет.
+     */
+    void sealFinishedHours(long nowSecond) {
+        long currentHour = nowSecond - Math.floorMod(nowSecond, HOUR_SECONDS);
+        for (TripBuffer buffer : buffers.values()) {
+            synchronized (buffer) {
+                if (buffer.open() && buffer.hourSecond < currentHour) {
+                    seal(buffer);
+                } else if (!buffer.open() && buffer.lastSecond < currentHour) {
+                    buffer.retired = true;
+                    buffers.remove(buffer.tripId, buffer);
+                }
+            }
+        }
+    }
+
+    private void sealAll() {
+        for (TripBuffer buffer : buffers.values()) {
+            synchronized (buffer) {
+                if (buffer.open()) {
+                    seal(buffer);
+                }
+            }
+        }
+    }
+
+    /**
+     * Записывает закрытые куски пачкой. Одновременно идёт не больше одной записи.
+     */
+    public Mono<Void> flush() {
+        return Mono.defer(this::writeSealed);
+    }
+
+    private Mono<Void> writeSealed() {
+        if (sealed.isEmpty() || !flushing.compareAndSet(false, true)) {
+            return Mono.empty();
+        }
+        List<TrackSegment> batch = new ArrayList<>();
+        TrackSegment segment;
+        while (batch.size() < FLUSH_BATCH && (segment = sealed.pollFirst()) != null) {
+            sealedCount.decrementAndGet();
+            batch.add(segment);
+        }
+        writing = List.copyOf(batch);
+        long startedAt = System.nanoTime();
+        return trackDAO.insertSegments(batch)
+                .doOnSuccess(v -> {
+                    flushLatency.recordNanos(System.nanoTime() - startedAt);
+                    batches.increment();
+                    written.add(batch.size());
+                    batch.forEach(s -> bytesWritten.add(s.points().length));
+                    // Пачка уже в базе: сжатие журнала не должно её сохранять
+                    writing = List.of();
+                    compactIfHalfFull();
+                })
+                .onErrorResume(e -> {
+                    failures.increment();
+                    logger.error("Failed to write {} track segments, will retry: {}", batch.size(), e.getMessage());
+                    for (int i = batch.size() - 1; i >= 0; i--) {
+                        sealed.addFirst(batch.get(i));
+                        sealedCount.incrementAndGet();
+                    }
+                    return Mono.empty();
+                })
+                .doFinally(signal -> {
+                    writing = List.of();
+                    flushing.set(false);
+                });
+    }
+
+    /**
+     * Трек поездки целиком.
+     */
+    public Mono<Track> tripTrack(String tripId) {
+        return Mono.defer(() -> {
+            // Незаписанное снимаем до запроса: кусок, записанный между ними, попадёт в оба и склеится
+            List<TrackSegment> pending = unflushed(segment -> segment.tripId().equals(tripId));
+            return trackDAO.findByTrip(tripId)
+                    .collectList()
+                    .map(stored -> Track.of(merge(stored, pending)));
+        });
+    }
+
+    /**
+     * Все треки пользователя за календарный день в поясе zone.
+     */
+    public Mono<Track> dayTrack(long chatId, LocalDate day, ZoneId zone) {
+        Instant from = day.atStartOfDay(zone).toInstant();
+        Instant to = day.plusDays(1).atStartOfDay(zone).toInstant();
+        return Mono.defer(() -> {
+            List<TrackSegment> pending = unflushed(segment -> segment.chatId() == chatId);
+            // В поясах со сдвигом не на целый час кусок начинается ещё до полуночи
+            return trackDAO.findByChat(chatId, from.minusSeconds(HOUR_SECONDS), to)
+                    .collectList()
+                    .map(stored -> Track.of(merge(stored, pending), from.getEpochSecond(), to.getEpochSecond()));
+        });
+    }
+
+    private List<TrackSegment> unflushed(Predicate<TrackSegment> filter) {
+        List<TrackSegment> result = new ArrayList<>();
+        writing.stream().filter(filter).forEach(result::add);
+        sealed.stream().filter(filter).forEach(result::add);
+        for (TripBuffer buffer : buffers.values()) {
+            synchronized (buffer) {
+                if (buffer.open()) {
+                    TrackSegment open = buffer.snapshot();
+                    if (filter.test(open)) {
+                        result.add(open);
+                    }
+                }
+            }
+        }
+        return result;
+    }
+
+    private static List<TrackSegment> merge(List<TrackSegment> stored, List<TrackSegment> pending) {
+        List<TrackSegment> all = new ArrayList<>(stored.size() + pending.size());
+        all.addAll(stored);
+        all.addAll(pending);
+        return all;
+    }
+
+    @Override
+    public String statsName() {
+        return "tracks";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        long receivedPoints = received.sum();
+        long keptPoints = kept.sum();
+        stats.put("enabled", enabled);
+        stats.put("activeTrips", buffers.size());
+        stats.put("received", receivedPoints);
+        stats.put("outOfOrder", outOfOrder.sum());
+        stats.put("keptPoints", keptPoints);
+        stats.put("segments", segments.sum());
+        stats.put("pendingSegments", sealedCount.get() + writing.size());
+        stats.put("written", written.sum());
+        stats.put("bytesWritten", bytesWritten.sum());
+        stats.put("batches", batches.sum());
+        stats.put("failures", failures.sum());
+        stats.put("dropped", dropped.sum());
+        stats.put("flushLatency", flushLatency.snapshot());
+        Map<String, Object> journalStats = new LinkedHashMap<>();
+        synchronized (journalLock) {
+            journalStats.put("enabled", journal != null);
+            journalStats.put("records", journal != null ? journal.size() : 0);
+            journalStats.put("capacity", journal != null ? journal.capacity() : 0);
+        }
+        journalStats.put("replayed", replayed.sum());
+        journalStats.put("compactions", compactions.sum());
+        journalStats.put("unjournaled", unjournaled.sum());
+        stats.put("journal", journalStats);
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (timer == null) {
+            return;
+        }
+        timer.dispose();
+        timer = null;
+        sealAll();
+        for (int i = 0; i < MAX_FINAL_FLUSHES && !sealed.isEmpty(); i++) {
+            flush().block(IO_TIMEOUT);
+        }
+        if (!sealed.isEmpty()) {
+            logger.warn("{} track segments were not written on shutdown, they stay in the journal", sealedCount.get());
+        }
+        synchronized (journalLock) {
+            if (journal != null) {
+                if (sealed.isEmpty()) {
+                    journal.reset();
+                }
+                try {
+                    journal.close();
+                } catch (IOException e) {
+                    logger.error("Failed to close track journal: {}", e.getMessage());
+                }
+                journal = null;
+            }
+        }
+    }
+}
@@ -0,0 +1,138 @@
+package org.tripplanner.modules.triphelper;
+
+import org.tripplanner.util.GeoDistance;
+
+/**
+ * Упрощение трека Дугласом–Пекером на скользящем окне, чтобы не держать в памяти весь час
+ * сырых точек. Отклонение меряется не до отрезка, а до точки, где пользователь был бы в тот же
+ * момент при равномерном движении по отрезку (synchronized Euclidean distance): так остановки
+ * и смена скорости переживают упрощение, и время в движении по упрощённому треку не врёт.
+ * <p>
+ * Когда окно заполнено, выбранные точки, кроме последней, уходят в {@link TrackEncoding.Writer},
+ * а последняя начинает следующее окно. Не потокобезопасен.
+ */
+final class TrackSimplifier {
+
+    private static final double METERS_PER_UNIT = GeoDistance.METERS_PER_DEGREE / TrackEncoding.SCALE;
+
+    private final double toleranceSquared;
+    private final int windowSize;
+    private final TrackEncoding.Points window;
+    private final boolean[] keep;
+    private final int[] stack;
+
+    TrackSimplifier(double toleranceMeters, int windowSize) {
+        if (windowSize < 3) {
+            throw new IllegalArgumentException("Window must hold at least 3 points: " + windowSize);
+        }
+        this.toleranceSquared = toleranceMeters * toleranceMeters;
+        this.windowSize = windowSize;
+        this.window = new TrackEncoding.Points(windowSize);
+        this.keep = new boolean[windowSize];
+        this.stack = new int[windowSize * 2];
+    }
+
+    void add(long second, int latitude, int longitude, TrackEncoding.Writer out) {
+        window.add(second, latitude, longitude);
+        if (window.size < windowSize) {
+            return;
+        }
+        simplify();
+        int last = window.size - 1;
+        for (int i = 0; i < last; i++) {
+            if (keep[i]) {
+                out.append(window.seconds[i], window.latitudes[i], window.longitudes[i]);
+            }
+        }
+        long lastSecond = window.seconds[last];
+        int lastLatitude = window.latitudes[last];
+        int lastLongitude = window.longitudes[last];
+        window.clear();
+        window.add(lastSecond, lastLatitude, lastLongitude);
+    }
+
+    /**
+     * Упрощает и выписывает остаток окна целиком; симплификатор готов к новому куску.
+     */
+    void finish(TrackEncoding.Writer out) {
+        if (window.size > 0) {
+            simplify();
+            for (int i = 0; i < window.size; i++) {
+                if (keep[i]) {
+                    out.append(window.seconds[i], window.latitudes[i], window.longitudes[i]);
+                }
+            }
+            window.clear();
+        }
+    }
+
+    /**
+     * Дописывает ещё не упрощённые точки окна как есть, не трогая окно: для чтения
+     * незакрытого куска.
+     */
+    void peek(TrackEncoding.Writer out) {
+        for (int i = 0; i < window.size; i++) {
+            out.append(window.seconds[i], window.latitudes[i], window.longitudes[i]);
+        }
+    }
+
+    int pending() {
+        return window.size;
+    }
+
+    long lastSecond() {
+        return window.size > 0 ? window.seconds[window.size - 1] : Long.MIN_VALUE;
+    }
+
+    // Итеративно, на своём стеке пар (from, to): рекурсия на длинном окне не нужна
+    private void simplify() {
+        int n = window.size;
+        for (int i = 0; i < n; i++) {
+            keep[i] = false;
+        }
+        keep[0] = true;
+        keep[n - 1] = true;
+        int top = 0;
+        if (n > 2) {
+            stack[top++] = 0;
+            stack[top++] = n - 1;
+        }
+        while (top > 0) {
+            int to = stack[--top];
+            int from = stack[--top];
+            int farthest = -1;
+            double farthestSquared = toleranceSquared;
+            for (int i = from + 1; i < to; i++) {
+                double squared = synchronizedDistanceSquared(from, to, i);
+                if (squared > farthestSquared) {
+                    farthestSquared = squared;
+                    farthest = i;
+                }
+            }
+            if (farthest < 0) {
+                continue;
+            }
+            keep[farthest] = true;
+            if (farthest - from > 1) {
+                stack[top++] = from;
+                stack[top++] = farthest;
+            }
+            if (to - farthest > 1) {
+                stack[top++] = farthest;
+                stack[top++] = to;
+            }
+        }
+    }
+
+    // Плоская проекция вокруг начала отрезка: на отрезках трека ошибка меньше сантиметров
+    private double synchronizedDistanceSquared(int from, int to, int i) {
+        long span = window.seconds[to] - window.seconds[from];
+        double ratio = span > 0 ? (double) (window.seconds[i] - window.seconds[from]) / span : 0.5;
+        double expectedLatitude = window.latitudes[from] + ratio * (window.latitudes[to] - window.latitudes[from]);
+        double expectedLongitude = window.longitudes[from] + ratio * (window.longitudes[to] - window.longitudes[from]);
+        double cos = Math.cos(Math.toRadians(TrackEncoding.toDegrees(window.latitudes[from])));
+        double dy = (window.latitudes[i] - expectedLatitude) * METERS_PER_UNIT;
+        double dx = (window.longitudes[i] - expectedLongitude) * METERS_PER_UNIT * cos;
+        return dx * dx + dy * dy;
+    }
+}
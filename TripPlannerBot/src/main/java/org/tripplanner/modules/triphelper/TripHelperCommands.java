@@ -0,0 +1,45 @@
+package org.tripplanner.modules.triphelper;
+
+import org.springframework.stereotype.Component;
+import org.tripplanner.modules.dialog.CommandModule;
+import org.tripplanner.modules.dialog.CommandRegistry;
+import org.tripplanner.modules.dialog.DialogState.Command;
+import org.tripplanner.modules.dialog.DialogState.CommandState;
+import org.tripplanner.modules.dialog.DialogState.Slot;
+import org.tripplanner.modules.dialog.DialogState.Step;
+
+import reactor.core.publisher.Mono;
+
+@Component
+public class TripHelperCommands implements CommandModule {
+
+    private final TripHelperController tripHelper;
+
+    public TripHelperCommands(TripHelperController tripHelper) {
+        this.tripHelper = tripHelper;
+    }
+
+    @Override
+    public void register(CommandRegistry registry) {
+        registry.command("/showongoingtrip", (chatId, text, args) -> tripHelper.handleShowOngoingTrip(chatId))
+                .command("/track", (chatId, text, args) -> tripHelper.handleTrack(chatId, text.substring(args)))
+                .dialog("/addnote", Command.ADD_NOTE,
+                        (chatId, state) -> tripHelper.handleAddNote(chatId, state.text(Slot.TRIP_NAME), state.text(Slot.NOTE)),
+                        Step.WAITING_TRIP_NAME, Step.WAITING_NOTE)
+                .dialog("/markpoint", Command.MARK_POINT, this::markPoint,
+                        Step.WAITING_TRIP_NAME, Step.WAITING_POINT_NAME);
+    }
+
+    private Mono<String> markPoint(Long chatId, CommandState state) {
+        return tripHelper.markPointVisited(chatId, state.text(Slot.TRIP_NAME), state.text(Slot.POINT_NAME))
+                .map(point -> "Точка '" + point.getName() + "' отмечена как посещенная")
+                .onErrorResume(e -> {
+                    if (e.getMessage().contains("Поездка с названием")) {
+                        return Mono.just("Упс! Не нашлось такой поездки. Для просмотра поездок: /showplanned");
+                    } else if (e.getMessage().contains("Точка с названием")) {
+                        return Mono.just("Упс! Не нашлось такой точки. Если хотите создать точку: /addpoint");
+                    }
+                    return Mono.just("Ошибка: " + e.getMessage());
+                });
+    }
+}
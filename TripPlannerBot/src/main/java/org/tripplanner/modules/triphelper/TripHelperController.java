@@ -1,10 +1,16 @@
 package org.tripplanner.modules.triphelper;
 
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.Locale;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.tripplanner.domain.Point;
-import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.TripSummary;
 
 import reactor.core.publisher.Mono;
 
@@ -12,11 +18,14 @@ import reactor.core.publisher.Mono;
 public class TripHelperController {
 
     private static final Logger logger = LoggerFactory.getLogger(TripHelperController.class);
+    private static final DateTimeFormatter TRACK_TIME = DateTimeFormatter.ofPattern("dd.MM HH:mm");
 
     private final TripHelperService service;
+    private final LiveLocationDebouncer liveLocations;
 
-    public TripHelperController(TripHelperService service) {
+    public TripHelperController(TripHelperService service, LiveLocationDebouncer liveLocations) {
         this.service = service;
+        this.liveLocations = liveLocations;
     }
 
     public Mono<String> handleShowOngoingTrip(Long chatId) {
@@ -31,7 +40,7 @@ public class TripHelperController {
                     }
 
                     StringBuilder sb = new StringBuilder("Активные поездки на сегодня:\n");
-                    for (Trip trip : trips) {
+                    for (TripSummary trip : trips) {
                         sb.append("• ").append(trip.getName())
                                 .append(" (").append(trip.getStartDate())
                                 .append(" — ").append(trip.getEndDate()).append(")\n");
@@ -64,6 +73,61 @@ public class TripHelperController {
         return service.updateUserLocation(chatId, latitude, longitude);
     }
 
+    // Живая геопозиция: без ответа пользователю, проверка и запись — по таймерам дебаунсера
+    public void handleLiveLocation(Long chatId, double latitude, double longitude) {
+        liveLocations.offer(chatId, latitude, longitude);
+    }
+
+    /**
+     * Без аргумента — трек активной поездки, с датой ГГГГ-ММ-ДД — все треки за день,
+     * иначе аргумент — название поездки.
+     */
+    public Mono<String> handleTrack(Long chatId, String argument) {
+        Mono<Track> track;
+        String title;
+        if (argument == null || argument.isBlank()) {
+            track = service.ongoingTrack(chatId);
+            title = "Трек активной поездки";
+        } else {
+            LocalDate day = parseDate(argument.trim());
+            if (day != null) {
+                track = service.dayTrack(chatId, day);
+                title = "Трек за " + day;
+            } else {
+                track = service.tripTrack(chatId, argument.trim());
+                title = "Трек поездки '" + argument.trim() + "'";
+            }
+        }
+        return track
+                .map(found -> describeTrack(title, found))
+                .defaultIfEmpty("У вас нет активной поездки. Укажите название поездки или дату: /track 2025-05-01")
+                .onErrorResume(e -> {
+                    logger.error("Ошибка при получении трека для пользователя {}: {}", chatId, e.getMessage());
+                    return Mono.just("Ошибка: " + e.getMessage());
+                });
+    }
+
+    private static LocalDate parseDate(String text) {
+        try {
+            return LocalDate.parse(text);
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
+
+    private static String describeTrack(String title, Track track) {
+        if (track.isEmpty()) {
+            return title + ": пока пусто. Трек пишется, пока вы делитесь геопозицией в активной поездке.";
+        }
+        ZoneId zone = ZoneId.systemDefault();
+        long minutes = track.movingSeconds() / 60;
+        return title + ":\n" +
+                "Пройдено: " + String.format(Locale.ROOT, "%.1f", track.distanceMeters() / 1000) + " км\n" +
+                "В движении: " + (minutes / 60) + " ч " + (minutes % 60) + " мин\n" +
+                "С " + TRACK_TIME.format(track.start().atZone(zone)) +
+                " до " + TRACK_TIME.format(track.end().atZone(zone)) + ", точек: " + track.size();
+    }
+
     public Mono<Point> markPointVisited(Long chatId, String tripName, String pointName) {
         return service.markPointVisited(chatId, tripName, pointName);
     }
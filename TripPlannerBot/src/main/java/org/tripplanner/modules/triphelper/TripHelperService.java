@@ -1,7 +1,10 @@
 package org.tripplanner.modules.triphelper;
 
 import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.EnumSet;
 import java.util.List;
+import java.util.Set;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -9,9 +12,12 @@ import org.springframework.scheduling.annotation.Scheduled;
 import org.springframework.stereotype.Service;
 import org.tripplanner.domain.Point;
 import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.TripStatus;
+import org.tripplanner.domain.TripSummary;
 import org.tripplanner.repositories.PointDAO;
 import org.tripplanner.repositories.TripDAO;
 import org.tripplanner.repositories.UserDAO;
+import org.tripplanner.repositories.cache.ActivePointIndex;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -21,43 +27,34 @@ public class TripHelperService {
 
     private static final Logger logger = LoggerFactory.getLogger(TripHelperService.class);
 
-    private static final double NOTIFICATION_RADIUS_KM = 0.1; // 100 meters radius
+    private static final double NOTIFICATION_RADIUS_METERS = 100;
+    // Заметки и отметки точек доступны в любой поездке пользователя, кроме удалённых
+    private static final Set<TripStatus> ANY_LIVE = EnumSet.of(TripStatus.PLANNED, TripStatus.ONGOING, TripStatus.FINISHED);
 
     private final UserDAO userDAO;
     private final TripDAO tripDAO;
     private final PointDAO pointDAO;
+    private final ActivePointIndex activePoints;
+    private final LocationWriteBehind locations;
+    private final TrackRecorder tracks;
 
-    public TripHelperService(UserDAO userDAO, TripDAO tripDAO, PointDAO pointDAO) {
+    public TripHelperService(UserDAO userDAO, TripDAO tripDAO, PointDAO pointDAO, ActivePointIndex activePoints,
+                             LocationWriteBehind locations, TrackRecorder tracks) {
         this.userDAO = userDAO;
         this.tripDAO = tripDAO;
         this.pointDAO = pointDAO;
+        this.activePoints = activePoints;
+        this.locations = locations;
+        this.tracks = tracks;
     }
 
-    public Flux<Trip> getOngoingTrips(Long chatId) {
+    public Flux<TripSummary> getOngoingTrips(Long chatId) {
         LocalDate today = LocalDate.now();
         logger.info("Получение активных поездок для пользователя {} на дату {}", chatId, today);
 
-        return userDAO.getUserByChatId(chatId)
-                .flatMapMany(user -> {
-                    logger.info("Найдены поездки пользователя {}: planned={}, current={}", 
-                        chatId, user.getPlannedTrips(), user.getCurrentTrips());
-
-                    return Flux.fromIterable(user.getPlannedTrips())
-                            .flatMap(tripId -> tripDAO.getTrip(tripId.toString())
-                                    .doOnNext(trip -> logger.info("Проверка поездки {}: startDate={}, endDate={}", 
-                                        trip.getName(), trip.getStartDate(), trip.getEndDate()))
-                                    .onErrorResume(e -> {
-                                        logger.error("Ошибка при получении поездки {}: {}", 
-                                            tripId, e.getMessage());
-                                        return Mono.empty();
-                                    }))
-                            .filter(trip -> {
-                                boolean isOngoing = !trip.getStartDate().isAfter(today) && 
-                                                  !trip.getEndDate().isBefore(today);
-                                logger.info("Поездка {} активна: {}", trip.getName(), isOngoing);
-                                return isOngoing;
-                            });
-                })
+        // Активные — запланированные поездки, в даты которых попадает сегодня
+        return userDAO.getPlannedTripSummaries(chatId)
+                .filter(trip -> !trip.getStartDate().isAfter(today) && !trip.getEndDate().isBefore(today))
                 .onErrorResume(e -> {
                     logger.error("Ошибка при получении активных поездок для пользователя {}: {}", 
                         chatId, e.getMessage());
@@ -71,43 +68,16 @@ public class TripHelperService {
 
     public Mono<Point> markPointVisited(Long chatId, String tripName, String pointName) {
         logger.info("Marking point {} as visited in trip {} for user {}", pointName, tripName, chatId);
-        return userDAO.getUserByChatId(chatId)
-                .flatMap(user -> {
-                    logger.info("Checking user's trips for trip: {}", tripName);
-                    return Flux.concat(
-                            Flux.fromIterable(user.getPlannedTrips()),
-                            Flux.fromIterable(user.getCurrentTrips()),
-                            Flux.fromIterable(user.getTripHistory())
-                        )
-                        .flatMap(trip -> {
-                            logger.info("Looking for trip with ID: {}", trip.getId());
-                            return tripDAO.getTrip(trip.getId());
-                        })
-                        .doOnNext(trip -> {
-                            logger.info("Found trip in DB: \"{}\" with ID: {}", trip.getName(), trip.getId());
-                        })
-                        .filter(trip -> trip.getName().equals(tripName))
-                        .next()
-                        .switchIfEmpty(Mono.error(new RuntimeException("Поездка с названием '" + tripName + "' не найдена")))
-                        .flatMap(trip -> {
-                            logger.info("Found trip {}, getting points", trip.getName());
-                            return pointDAO.getPointsByTripId(trip.getId())
-                                    .doOnNext(point -> {
-                                        logger.info("Found point in trip: name={}, id={}", point.getName(), point.getId());
-                                    })
-                                    .filter(point -> {
-                                        boolean matches = point.getName().equals(pointName);
-                                        logger.info("Comparing point names: '{}' with '{}', matches: {}", 
-                                            point.getName(), pointName, matches);
-                                        return matches;
-                                    })
-                                    .next()
-                                    .switchIfEmpty(Mono.error(new RuntimeException("Точка с названием '" + pointName + "' не найдена")))
-                                    .flatMap(point -> {
-                                        logger.info("Found matching point {}, marking as visited", point.getName());
-                                        return pointDAO.markPointVisited(point.getId());
-                                    });
-                        });
+        return tripDAO.findByOwnerAndName(chatId, tripName, ANY_LIVE)
+                .switchIfEmpty(Mono.error(new RuntimeException("Поездка с названием '" + tripName + "' не найдена")))
+                .flatMap(trip -> {
+                    logger.info("Found trip {}, getting points", trip.getName());
+                    return pointDAO.findByTripAndName(trip.getId(), pointName)
+                            .switchIfEmpty(Mono.error(new RuntimeException("Точка с названием '" + pointName + "' не найдена")))
+                            .flatMap(point -> {
+                                logger.info("Found matching point {}, marking as visited", point.getName());
+                                return pointDAO.markPointVisited(point.getId());
+                            });
                 });
     }
 
@@ -143,58 +113,89 @@ public class TripHelperService {
     }
 
     public Mono<Void> updateUserLocation(Long chatId, double latitude, double longitude) {
-        logger.info("Получено обновление геопозиции для пользователя {}: широта={}, долгота={}", 
+        // Геопозиция приходит часто, поэтому на каждое обновление — только debug
+        logger.debug("Получено обновление геопозиции для пользователя {}: широта={}, долгота={}",
             chatId, latitude, longitude);
 
-        return userDAO.getUserByChatId(chatId)
-                .flatMap(user -> {
-                    if (user.getOngoingTrip() == null) {
-                        logger.info("У пользователя {} нет активной поездки", chatId);
-                        return Mono.empty();
-                    }
-
-                    String tripId = user.getOngoingTrip().getId();
-                    logger.info("Проверка точек для активной поездки {} пользователя {}", tripId, chatId);
-                    
-                    return tripDAO.getAllPoints(tripId)
-                            .filter(point -> !point.isVisited())
-                            .filter(point -> {
-                                double distance = calculateDistance(latitude, longitude, point.getLatitude(), point.getLongitude());
-                                logger.info("Расстояние до точки {}: {} км", point.getName(), distance);
-                                return distance <= NOTIFICATION_RADIUS_KM;
-                            })
-                            .collectList()
-                            .flatMap(points -> {
-                                if (!points.isEmpty()) {
-                                    Point nearestPoint = points.get(0);
-                                    logger.info("Пользователь {} достиг точки {}", chatId, nearestPoint.getName());
-                                    return tripDAO.markPointVisited(tripId, nearestPoint.getId())
-                                            .then(Mono.just(nearestPoint))
-                                            .doOnNext(point -> notifyUser(chatId, "Вы достигли точки: " + point.getName()));
-                                }
-                                return Mono.empty();
-                            })
-                            .then(userDAO.updateUserLocation(chatId, latitude, longitude))
-                            .onErrorResume(e -> {
-                                logger.error("Ошибка при обновлении геопозиции для пользователя {}: {}", chatId, e.getMessage());
-                                return Mono.empty();
-                            });
-                })
+        return ongoingTripId(chatId)
+                .switchIfEmpty(Mono.fromRunnable(() -> logger.debug("У пользователя {} нет активной поездки", chatId)))
+                .doOnNext(tripId -> recordTrack(tripId, chatId, latitude, longitude))
+                .flatMap(tripId -> reachPoint(chatId, tripId, latitude, longitude)
+                        .then(writeLocation(chatId, latitude, longitude)))
                 .then();
     }
 
-    private double calculateDistance(double lat1, double lon1, double lat2, double lon2) {
-        final int R = 6371; // Earth's radius in kilometers
+    /**
+     * Только проверка близости к точкам активной поездки, без записи геопозиции.
+     * Для живой геопозиции запись идёт отдельно и реже, см. {@link LiveLocationDebouncer}.
+     */
+    public Mono<Point> checkProximity(Long chatId, double latitude, double longitude) {
+        return ongoingTripId(chatId)
+                .doOnNext(tripId -> recordTrack(tripId, chatId, latitude, longitude))
+                .flatMap(tripId -> reachPoint(chatId, tripId, latitude, longitude));
+    }
+
+    /**
+     * Запись геопозиции; как и раньше, только для пользователей с активной поездкой.
+     */
+    public Mono<Void> saveLocation(Long chatId, double latitude, double longitude) {
+        return ongoingTripId(chatId)
+                .flatMap(tripId -> writeLocation(chatId, latitude, longitude));
+    }
+
+    private void recordTrack(String tripId, Long chatId, double latitude, double longitude) {
+        tracks.record(tripId, chatId, latitude, longitude, System.currentTimeMillis());
+    }
+
+    /**
+     * Трек активной поездки; пусто, если активной поездки нет.
+     */
+    public Mono<Track> ongoingTrack(Long chatId) {
+        return ongoingTripId(chatId).flatMap(tracks::tripTrack);
+    }
+
+    public Mono<Track> tripTrack(Long chatId, String tripName) {
+        return tripDAO.findByOwnerAndName(chatId, tripName, ANY_LIVE)
+                .switchIfEmpty(Mono.error(new RuntimeException("Поездка с названием '" + tripName + "' не найдена")))
+                .flatMap(trip -> tracks.tripTrack(trip.getId()));
+    }
+
+    // День — в поясе сервера, как и LocalDate.now() в остальном боте
+    public Mono<Track> dayTrack(Long chatId, LocalDate day) {
+        return tracks.dayTrack(chatId, day, ZoneId.systemDefault());
+    }
+
+    // В базу геопозиция уходит пачкой, ошибки записи обрабатывает LocationWriteBehind
+    private Mono<Void> writeLocation(Long chatId, double latitude, double longitude) {
+        return Mono.fromRunnable(() -> locations.enqueue(chatId, latitude, longitude));
+    }
+
+    private Mono<String> ongoingTripId(Long chatId) {
+        return activePoints.ongoingTrip(chatId, () -> userDAO.getUserByChatId(chatId)
+                .flatMap(user -> Mono.justOrEmpty(user.getOngoingTrip()).map(Trip::getId)));
+    }
 
-        double latDistance = Math.toRadians(lat2 - lat1);
-        double lonDistance = Math.toRadians(lon2 - lon1);
-        double a = Math.sin(latDistance / 2) * Math.sin(latDistance / 2)
-                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2))
-                * Math.sin(lonDistance / 2) * Math.sin(lonDistance / 2);
-        double c = 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
-        double distance = R * c;
+    private Mono<Point> reachPoint(Long chatId, String tripId, double latitude, double longitude) {
+        return nearestUnvisited(tripId, latitude, longitude)
+                .flatMap(nearestPoint -> {
+                    logger.info("Пользователь {} достиг точки {}", chatId, nearestPoint.getName());
+                    return tripDAO.markPointVisited(tripId, nearestPoint.getId())
+                            .then(Mono.just(nearestPoint))
+                            .doOnNext(point -> notifyUser(chatId, "Вы достигли точки: " + point.getName()));
+                })
+                .onErrorResume(e -> {
+                    logger.error("Ошибка при обновлении геопозиции для пользователя {}: {}", chatId, e.getMessage());
+                    return Mono.empty();
+                });
+    }
 
-        return distance;
+    // Индекс в памяти отвечает без базы; без него точки в радиусе отбирает 2dsphere-индекс
+    private Mono<Point> nearestUnvisited(String tripId, double latitude, double longitude) {
+        if (activePoints.isEnabled()) {
+            return activePoints.nearest(tripId, latitude, longitude, NOTIFICATION_RADIUS_METERS,
+                    () -> pointDAO.findUnvisitedByTrip(tripId));
+        }
+        return pointDAO.findUnvisitedNear(tripId, latitude, longitude, NOTIFICATION_RADIUS_METERS).next();
     }
 
     // Check for upcoming trips and send notifications
@@ -231,26 +232,12 @@ public class TripHelperService {
         if (note == null || note.trim().isEmpty()) {
             return Mono.just("Заметка не может быть пустой");
         }
-        return userDAO.getUserByChatId(chatId)
-                .flatMap(user -> {
-                    logger.info("Found user with planned trips: {}", user.getPlannedTrips());
-                    return Flux.concat(
-                            Flux.fromIterable(user.getPlannedTrips()),
-                            Flux.fromIterable(user.getCurrentTrips()),
-                            Flux.fromIterable(user.getTripHistory())
-                        )
-                        .flatMap(trip -> {
-                            logger.info("Checking trip: {} with ID: {}", trip.getName(), trip.getId());
-                            return tripDAO.getTrip(trip.getId());
-                        })
-                        .filter(trip -> trip.getName().equals(tripName))
-                        .next()
-                        .switchIfEmpty(Mono.error(new RuntimeException("Поездка с названием '" + tripName + "' не найдена")))
-                        .flatMap(trip -> {
-                            logger.info("Found trip with ID: {}", trip.getId());
-                            return tripDAO.addNoteToTrip(trip.getId(), note)
-                                    .thenReturn("Заметка успешно добавлена к поездке '" + tripName + "'");
-                        });
+        return tripDAO.findByOwnerAndName(chatId, tripName, ANY_LIVE)
+                .switchIfEmpty(Mono.error(new RuntimeException("Поездка с названием '" + tripName + "' не найдена")))
+                .flatMap(trip -> {
+                    logger.info("Found trip with ID: {}", trip.getId());
+                    return tripDAO.addNoteToTrip(trip.getId(), note)
+                            .thenReturn("Заметка успешно добавлена к поездке '" + tripName + "'");
                 })
                 .onErrorResume(e -> {
                     logger.error("Error adding note to trip {} for user {}: {}", tripName, chatId, e.getMessage());
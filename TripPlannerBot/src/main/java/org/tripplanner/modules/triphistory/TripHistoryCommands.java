@@ -0,0 +1,30 @@
+package org.tripplanner.modules.triphistory;
+
+import org.springframework.stereotype.Component;
+import org.tripplanner.modules.dialog.CommandModule;
+import org.tripplanner.modules.dialog.CommandRegistry;
+import org.tripplanner.modules.dialog.CommandRouter;
+import org.tripplanner.modules.dialog.DialogState.Command;
+import org.tripplanner.modules.dialog.DialogState.Slot;
+import org.tripplanner.modules.dialog.DialogState.Step;
+
+@Component
+public class TripHistoryCommands implements CommandModule {
+
+    private final TripHistoryController tripHistory;
+
+    public TripHistoryCommands(TripHistoryController tripHistory) {
+        this.tripHistory = tripHistory;
+    }
+
+    @Override
+    public void register(CommandRegistry registry) {
+        registry.command("/triphistory", (chatId, text, args) -> tripHistory.handleTripHistory(chatId))
+                .command("/finisheddetails", (chatId, text, args) ->
+                        tripHistory.handleFinishedDetails(chatId, CommandRouter.firstArgument(text, args)))
+                .dialog("/ratefinished", Command.RATE_FINISHED,
+                        (chatId, state) -> tripHistory.handleRateFinished(chatId,
+                                state.text(Slot.TRIP_NAME), state.integer(Slot.RATING)),
+                        Step.WAITING_TRIP_NAME, Step.WAITING_RATING);
+    }
+}
@@ -5,6 +5,7 @@ import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Component;
 import org.tripplanner.domain.Point;
 import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.TripSummary;
 
 import reactor.core.publisher.Mono;
 
@@ -24,7 +25,7 @@ public class TripHistoryController {
                 .map(trips -> {
                     if (trips.isEmpty()) return "У вас нет завершённых поездок.";
                     StringBuilder sb = new StringBuilder("Завершённые поездки:\n");
-                    for (Trip trip : trips) {
+                    for (TripSummary trip : trips) {
                         sb.append("• ").append(trip.getName())
                                 .append(" (").append(trip.getStartDate())
                                 .append(" — ").append(trip.getEndDate()).append(")\n");
@@ -1,10 +1,15 @@
 package org.tripplanner.modules.triphistory;
 
+import java.util.EnumSet;
+import java.util.Set;
+
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.stereotype.Service;
 import org.tripplanner.domain.Point;
 import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.TripStatus;
+import org.tripplanner.domain.TripSummary;
 import org.tripplanner.repositories.TripDAO;
 import org.tripplanner.repositories.UserDAO;
 
@@ -17,14 +22,15 @@ public class TripHistoryService {
     private final UserDAO userDAO;
     private final TripDAO tripDAO;
     private static final Logger logger = LoggerFactory.getLogger(TripHistoryService.class);
+    private static final Set<TripStatus> FINISHED = EnumSet.of(TripStatus.FINISHED);
 
     public TripHistoryService(UserDAO userDAO, TripDAO tripDAO) {
         this.userDAO = userDAO;
         this.tripDAO = tripDAO;
     }
 
-    public Flux<Trip> getFinishedTrips(Long userId) {
-        return userDAO.getFinishedTrips(userId);
+    public Flux<TripSummary> getFinishedTrips(Long userId) {
+        return userDAO.getFinishedTripSummaries(userId);
     }
 
     public Mono<Trip> getFinishedTrip(String tripId) {
@@ -33,14 +39,9 @@ public class TripHistoryService {
 
     public Mono<Trip> setFinishedTripRating(String tripId, int rating) {
         logger.info("Setting rating {} for trip {}", rating, tripId);
-        return tripDAO.getTrip(tripId)
-                .flatMap(trip -> {
-                    if (trip == null) {
-                        return Mono.error(new RuntimeException("Поездка не найдена"));
-                    }
-                    return tripDAO.setTripRating(tripId, rating)
-                            .doOnNext(t -> logger.info("Rating {} set for trip {}", rating, tripId));
-                });
+        return tripDAO.setTripRating(tripId, rating)
+                .switchIfEmpty(Mono.error(new RuntimeException("Поездка не найдена")))
+                .doOnNext(t -> logger.info("Rating {} set for trip {}", rating, tripId));
     }
 
     public Flux<Trip> getAllFinishedTrips(Long chatId) {
@@ -58,9 +59,7 @@ public class TripHistoryService {
     }
 
     public Mono<Trip> findFinishedTripByName(Long chatId, String tripName) {
-        return getAllFinishedTrips(chatId)
-                .filter(trip -> trip.getName().equals(tripName))
-                .next()
+        return tripDAO.findByOwnerAndName(chatId, tripName, FINISHED)
                 .doOnNext(trip -> logger.info("Found finished trip by name {}: {}", tripName, trip.getId()))
                 .doOnError(e -> logger.error("Error finding finished trip by name {}: {}", tripName, e.getMessage()));
     }
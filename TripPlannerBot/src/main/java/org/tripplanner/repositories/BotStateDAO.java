@@ -0,0 +1,23 @@
+package org.tripplanner.repositories;
+
+import reactor.core.publisher.Mono;
+
+public interface BotStateDAO {
+
+    /**
+     * Последний обработанный update_id бота, пусто — если чекпоинта ещё нет.
+     */
+    Mono<Long> getLastUpdateId(String botId);
+
+    /**
+     * Сохраняет update_id, если он больше сохранённого. Значение никогда не уменьшается.
+     */
+    Mono<Void> saveLastUpdateId(String botId, long updateId);
+
+    /**
+     * Последняя позиция change stream (resume token в JSON), пусто — если её ещё нет.
+     */
+    Mono<String> getResumeToken(String streamId);
+
+    Mono<Void> saveResumeToken(String streamId, String resumeToken);
+}
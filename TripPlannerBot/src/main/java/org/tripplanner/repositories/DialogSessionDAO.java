@@ -0,0 +1,21 @@
+package org.tripplanner.repositories;
+
+import java.util.Collection;
+import java.util.List;
+
+import org.tripplanner.domain.DialogSession;
+
+import reactor.core.publisher.Mono;
+
+public interface DialogSessionDAO {
+
+    /**
+     * Сессия чата, пусто — если её нет или она уже истекла.
+     */
+    Mono<DialogSession> find(long chatId);
+
+    /**
+     * Одной пачкой записывает изменённые сессии и удаляет завершённые.
+     */
+    Mono<Void> writeBatch(List<DialogSession> upserts, Collection<Long> deletes);
+}
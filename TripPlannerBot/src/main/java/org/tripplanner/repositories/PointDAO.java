@@ -1,5 +1,7 @@
 package org.tripplanner.repositories;
 
+import java.util.Collection;
+
 import org.tripplanner.domain.Point;
 
 import reactor.core.publisher.Flux;
@@ -15,5 +17,19 @@ public interface PointDAO {
 
     Mono<Point> getPoint(String pointId);
 
+    /**
+     * Точки одним запросом по $in, порядок не гарантирован. Несуществующие id пропускаются.
+     */
+    Flux<Point> getPoints(Collection<String> pointIds);
+
     Flux<Point> getPointsByTripId(String tripId);
+
+    Mono<Point> findByTripAndName(String tripId, String name);
+
+    Flux<Point> findUnvisitedByTrip(String tripId);
+
+    /**
+     * Непосещённые точки поездки не дальше radiusMeters от координат, ближайшая первой.
+     */
+    Flux<Point> findUnvisitedNear(String tripId, double latitude, double longitude, double radiusMeters);
 }
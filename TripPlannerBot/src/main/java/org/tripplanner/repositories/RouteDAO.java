@@ -2,6 +2,7 @@ package org.tripplanner.repositories;
 
 import org.tripplanner.domain.Route;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 public interface RouteDAO {
@@ -11,4 +12,9 @@ public interface RouteDAO {
     Mono<Route> findById(String routeId);
 
     Mono<Route> getRoute(String routeId);
+
+    /**
+     * Маршруты поездки в порядке добавления вместе с точками назначения.
+     */
+    Flux<Route> getTripRoutes(String tripId);
 }
@@ -0,0 +1,30 @@
+package org.tripplanner.repositories;
+
+import java.time.Instant;
+import java.util.List;
+
+import org.tripplanner.domain.TrackSegment;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public interface TrackDAO {
+
+    /**
+     * Одной пачкой вставляет закрытые куски треков. Каждый кусок — отдельный документ, в уже
+     * записанные ничего не дописывается: обычно это документ на поездку в час, но час бывает
+     * разбит на несколько кусков (досрочное закрытие на TrackRecorder.MAX_SEGMENT_POINTS
+     * точках, проигрывание журнала после падения), и куски одного часа могут пересекаться.
+     */
+    Mono<Void> insertSegments(List<TrackSegment> segments);
+
+    /**
+     * Все куски трека поездки по времени; несколько кусков одного часа склеивает читающий.
+     */
+    Flux<TrackSegment> findByTrip(String tripId);
+
+    /**
+     * Куски треков всех поездок пользователя, чей час попадает в [from, to).
+     */
+    Flux<TrackSegment> findByChat(long chatId, Instant from, Instant to);
+}
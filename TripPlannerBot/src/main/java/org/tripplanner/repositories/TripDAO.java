@@ -1,9 +1,12 @@
 package org.tripplanner.repositories;
 
 import java.time.LocalDate;
+import java.util.Collection;
 
+import org.bson.types.ObjectId;
 import org.tripplanner.domain.Point;
 import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.TripStatus;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -12,6 +15,9 @@ public interface TripDAO {
 
     Mono<Trip> createTrip(Long chatId, String name, LocalDate startDate, LocalDate endDate);
 
+    // Изменения ниже возвращают новую версию поездки без notes, points и routes.
+    // Пусто, если поездки нет
+
     Mono<Trip> addPoint(String tripId, String pointId);
 
     Mono<Trip> setStartPoint(String tripId, String pointId);
@@ -24,6 +30,16 @@ public interface TripDAO {
 
     Mono<Trip> getTrip(String tripId);
 
+    /**
+     * Несколько поездок одним запросом, в порядке переданных id. Ненайденные пропускаются.
+     */
+    Flux<Trip> getTrips(Collection<ObjectId> tripIds);
+
+    /**
+     * Поездка пользователя с таким названием в одном из статусов; при совпадении имён — самая новая.
+     */
+    Mono<Trip> findByOwnerAndName(Long chatId, String name, Collection<TripStatus> statuses);
+
     Flux<Trip> getAllTrips();
 
     Mono<Trip> addNoteToTrip(String tripId, String note);
@@ -1,7 +1,11 @@
 package org.tripplanner.repositories;
 
+import java.util.Collection;
+
 import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.TripSummary;
 import org.tripplanner.domain.User;
+import org.tripplanner.domain.UserLocation;
 
 import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
@@ -25,11 +29,26 @@ public interface UserDAO {
 
     Flux<Trip> getFinishedTrips(Long chatId);
 
+    /**
+     * Для списков: только название и даты, без заметок, точек и маршрутов.
+     */
+    Flux<TripSummary> getPlannedTripSummaries(Long chatId);
+
+    Flux<TripSummary> getFinishedTripSummaries(Long chatId);
+
     Mono<Void> updateUserLocation(Long chatId, double latitude, double longitude);
 
+    /**
+     * Геопозиции пачкой, одной неупорядоченной bulk-операцией.
+     */
+    Mono<Void> updateUserLocations(Collection<UserLocation> locations);
+
     Mono<User> getUserByChatId(Long chatId);
 
-    Mono<Void> addToTripHistory(Long chatId, String tripId);
-    Mono<Void> removeFromPlannedTrips(Long chatId, String tripId);
+    /**
+     * Переносит поездку из запланированных в историю и ставит ей статус FINISHED.
+     */
+    Mono<Void> moveToTripHistory(Long chatId, String tripId);
+
     Mono<Void> setOngoingTrip(Long chatId, String tripId);
 }
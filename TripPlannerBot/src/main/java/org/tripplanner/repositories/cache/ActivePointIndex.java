@@ -0,0 +1,417 @@
+package org.tripplanner.repositories.cache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.tripplanner.domain.Point;
+import org.tripplanner.util.ExpiringCache;
+import org.tripplanner.util.GeoDistance;
+import org.tripplanner.util.StatsSource;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Непосещённые точки поездок, по которым сейчас идут пинги геопозиции, и активная поездка
+ * каждого чата. Поездка грузится одним запросом при первом пинге, дальше проверка близости
+ * идёт в памяти: сначала габаритный прямоугольник поездки, затем сетка по ячейкам
+ * {@link #CELL_DEGREES} над массивами double.
+ * <p>
+ * Сбрасывается из {@link DomainCaches} теми же инвалидациями, что и кэши: запись точки или
+ * поездки выкидывает поездку целиком, и следующий пинг перечитает её.
+ */
+@Component
+public class ActivePointIndex implements StatsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ActivePointIndex.class);
+
+    // Около 1,1 км по широте: радиус уведомления укладывается в 2x2 ячейки
+    static final double CELL_DEGREES = 0.01;
+    private static final int STRIPES = 16;
+    private static final int STAMP_STRIPES = 1024;
+    // Чат без активной поездки тоже запоминаем, иначе каждый его пинг шёл бы в базу
+    private static final String NO_TRIP = "";
+
+    private final boolean enabled;
+    private final Duration ttl;
+    private final int maxTrips;
+
+    private final ExpiringCache<Long, String> chats;
+    private final Map<String, TripPoints> trips = new ConcurrentHashMap<>();
+    // id точки -> id поездки, только для загруженных поездок
+    private final Map<String, String> pointTrips = new ConcurrentHashMap<>();
+    // Отметки инвалидаций по страйпам id поездки, как у ExpiringCache: загрузка выбрасывается,
+    // только если инвалидировали её поездку (или соседнюю по страйпу)
+    private final AtomicLongArray tripStamps = new AtomicLongArray(STAMP_STRIPES);
+    // Общая отметка: invalidateAll и точки, чья поездка ещё не загружена и потому неизвестна
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder pings = new LongAdder();
+    private final LongAdder boxRejects = new LongAdder();
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder loads = new LongAdder();
+    private final LongAdder staleLoads = new LongAdder();
+    private Disposable sweeper;
+
+    public ActivePointIndex(@Value("${cache.active-points.enabled:true}") boolean enabled,
+                            @Value("${cache.active-points.ttl-ms:600000}") long ttlMs,
+                            @Value("${cache.active-points.max-trips:50000}") int maxTrips) {
+        this.enabled = enabled;
+        this.ttl = Duration.ofMillis(ttlMs);
+        this.maxTrips = maxTrips;
+        this.chats = new ExpiringCache<>(STRIPES, maxTrips, ttl.toNanos());
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (enabled && sweeper == null) {
+            sweeper = Flux.interval(ttl)
+                    .onBackpressureDrop()
+                    .subscribe(tick -> evictExpired());
+        }
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    /**
+     * id активной поездки чата; пусто, если её нет. loader отдаёт id или пусто.
+     */
+    public Mono<String> ongoingTrip(Long chatId, Supplier<Mono<String>> loader) {
+        if (!enabled) {
+            return loader.get();
+        }
+        return Mono.defer(() -> {
+            String cached = chats.get(chatId);
+            if (cached != null) {
+                return cached.isEmpty() ? Mono.<String>empty() : Mono.just(cached);
+            }
+            long stamp = chats.stamp(chatId);
+            return loader.get()
+                    .defaultIfEmpty(NO_TRIP)
+                    .doOnNext(tripId -> chats.put(chatId, tripId, stamp))
+                    .filter(tripId -> !tripId.isEmpty());
+        });
+    }
+
+    /**
+     * Ближайшая непосещённая точка поездки не дальше radiusMeters. unvisited вызывается,
+     * только если поездки ещё нет в индексе или она устарела. У точки заполнены только
+     * id, название и координаты.
+     */
+    public Mono<Point> nearest(String tripId, double latitude, double longitude, double radiusMeters,
+                               Supplier<Flux<Point>> unvisited) {
+        return Mono.defer(() -> {
+            pings.increment();
+            TripPoints cached = trips.get(tripId);
+            if (cached != null && System.nanoTime() - cached.loadedAt <= ttl.toNanos()) {
+                return Mono.justOrEmpty(check(cached, latitude, longitude, radiusMeters));
+            }
+            LoadStamp stamp = stamp(tripId);
+            return unvisited.get()
+                    .collectList()
+                    .flatMap(points -> {
+                        loads.increment();
+                        TripPoints loaded = TripPoints.of(points, System.nanoTime());
+                        store(tripId, loaded, stamp);
+                        return Mono.justOrEmpty(check(loaded, latitude, longitude, radiusMeters));
+                    });
+        });
+    }
+
+    private Point check(TripPoints points, double latitude, double longitude, double radiusMeters) {
+        int found = points.nearest(latitude, longitude, radiusMeters);
+        if (found == TripPoints.OUTSIDE_BOX) {
+            boxRejects.increment();
+            return null;
+        }
+        if (found < 0) {
+            return null;
+        }
+        hits.increment();
+        return points.toPoint(found);
+    }
+
+    private record LoadStamp(long global, long trip) {
+    }
+
+    private LoadStamp stamp(String tripId) {
+        return new LoadStamp(generation.get(), tripStamps.get(stripe(tripId)));
+    }
+
+    private static int stripe(String tripId) {
+        int h = tripId.hashCode();
+        return (h ^ (h >>> 16)) & (STAMP_STRIPES - 1);
+    }
+
+    private void store(String tripId, TripPoints loaded, LoadStamp stamp) {
+        if (!stamp.equals(stamp(tripId))) {
+            staleLoads.increment();
+            return;
+        }
+        if (trips.size() >= maxTrips && !trips.containsKey(tripId)) {
+            evictExpired();
+            if (trips.size() >= maxTrips) {
+                // Индекс полон: ответим по загруженному, но держать не будем
+                return;
+            }
+        }
+        trips.put(tripId, loaded);
+        for (String pointId : loaded.ids) {
+            pointTrips.put(pointId, tripId);
+        }
+        // Инвалидация могла пройти между проверкой и записью — тогда загруженное уже устарело
+        if (!stamp.equals(stamp(tripId))) {
+            staleLoads.increment();
+            remove(tripId, loaded);
+        }
+    }
+
+    public void invalidateTrip(String tripId) {
+        tripStamps.incrementAndGet(stripe(tripId));
+        TripPoints current = trips.get(tripId);
+        if (current != null) {
+            remove(tripId, current);
+        }
+    }
+
+    public void invalidatePoint(String pointId) {
+        String tripId = pointTrips.get(pointId);
+        if (tripId != null) {
+            invalidateTrip(tripId);
+        } else {
+            // Поездка точки не в индексе, но может как раз загружаться — сбрасываем все загрузки
+            generation.incrementAndGet();
+        }
+    }
+
+    public void invalidateChat(Long chatId) {
+        chats.invalidate(chatId);
+    }
+
+    public void invalidateChats() {
+        chats.invalidateAll();
+    }
+
+    public void invalidateAll() {
+        generation.incrementAndGet();
+        chats.invalidateAll();
+        trips.clear();
+        pointTrips.clear();
+    }
+
+    private void remove(String tripId, TripPoints points) {
+        if (trips.remove(tripId, points)) {
+            for (String pointId : points.ids) {
+                pointTrips.remove(pointId, tripId);
+            }
+        }
+    }
+
+    void evictExpired() {
+        long now = System.nanoTime();
+        int evicted = 0;
+        for (Map.Entry<String, TripPoints> entry : trips.entrySet()) {
+            if (now - entry.getValue().loadedAt > ttl.toNanos()) {
+                remove(entry.getKey(), entry.getValue());
+                evicted++;
+            }
+        }
+        if (evicted > 0) {
+            logger.debug("Evicted {} idle trips from the active point index", evicted);
+        }
+    }
+
+    @Override
+    public String statsName() {
+        return "activePoints";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("trips", trips.size());
+        stats.put("points", pointTrips.size());
+        stats.put("pings", pings.sum());
+        stats.put("boxRejects", boxRejects.sum());
+        stats.put("hits", hits.sum());
+        stats.put("loads", loads.sum());
+        stats.put("staleLoads", staleLoads.sum());
+        stats.put("chats", chats.stats());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (sweeper != null) {
+            sweeper.dispose();
+            sweeper = null;
+        }
+    }
+
+    /**
+     * Неизменяемый снимок непосещённых точек одной поездки. Ячейки сетки отсортированы,
+     * поиск ячейки — бинарный, без боксинга ключей.
+     */
+    static final class TripPoints {
+
+        static final int NONE = -1;
+        static final int OUTSIDE_BOX = -2;
+
+        final String[] ids;
+        final String[] names;
+        final double[] latitudes;
+        final double[] longitudes;
+        final long loadedAt;
+
+        private final double minLat;
+        private final double maxLat;
+        private final double minLon;
+        private final double maxLon;
+        private final long[] cells;
+        private final int[][] cellPoints;
+
+        private TripPoints(String[] ids, String[] names, double[] latitudes, double[] longitudes,
+                           long[] cells, int[][] cellPoints, long loadedAt) {
+            this.ids = ids;
+            this.names = names;
+            this.latitudes = latitudes;
+            this.longitudes = longitudes;
+            this.cells = cells;
+            this.cellPoints = cellPoints;
+            this.loadedAt = loadedAt;
+            double minLat = Double.POSITIVE_INFINITY;
+            double maxLat = Double.NEGATIVE_INFINITY;
+            double minLon = Double.POSITIVE_INFINITY;
+            double maxLon = Double.NEGATIVE_INFINITY;
+            for (int i = 0; i < ids.length; i++) {
+                minLat = Math.min(minLat, latitudes[i]);
+                maxLat = Math.max(maxLat, latitudes[i]);
+                minLon = Math.min(minLon, longitudes[i]);
+                maxLon = Math.max(maxLon, longitudes[i]);
+            }
+            this.minLat = minLat;
+            this.maxLat = maxLat;
+            this.minLon = minLon;
+            this.maxLon = maxLon;
+        }
+
+        static TripPoints of(List<Point> points, long loadedAt) {
+            int n = points.size();
+            String[] ids = new String[n];
+            String[] names = new String[n];
+            double[] latitudes = new double[n];
+            double[] longitudes = new double[n];
+            TreeMap<Long, List<Integer>> grid = new TreeMap<>();
+            for (int i = 0; i < n; i++) {
+                Point point = points.get(i);
+                ids[i] = point.getId();
+                names[i] = point.getName();
+                latitudes[i] = point.getLatitude();
+                longitudes[i] = point.getLongitude();
+                grid.computeIfAbsent(cell(cellOf(latitudes[i]), cellOf(longitudes[i])), key -> new ArrayList<>()).add(i);
+            }
+            long[] cells = new long[grid.size()];
+            int[][] cellPoints = new int[grid.size()][];
+            int c = 0;
+            for (Map.Entry<Long, List<Integer>> entry : grid.entrySet()) {
+                cells[c] = entry.getKey();
+                cellPoints[c] = entry.getValue().stream().mapToInt(Integer::intValue).toArray();
+                c++;
+            }
+            return new TripPoints(ids, names, latitudes, longitudes, cells, cellPoints, loadedAt);
+        }
+
+        /**
+         * Индекс ближайшей точки в радиусе, {@link #NONE} или {@link #OUTSIDE_BOX}.
+         */
+        int nearest(double latitude, double longitude, double radiusMeters) {
+            if (ids.length == 0) {
+                return OUTSIDE_BOX;
+            }
+            double dLat = radiusMeters / GeoDistance.METERS_PER_DEGREE;
+            double cos = Math.cos(Math.toRadians(latitude));
+            double dLon = cos < 1e-6 ? 360 : radiusMeters / (GeoDistance.METERS_PER_DEGREE * cos);
+            boolean wraps = longitude - dLon < -180 || longitude + dLon > 180 || Math.abs(latitude) + dLat > 90;
+            if (wraps) {
+                // У антимеридиана и полюсов прямоугольник и сетка врут — честный перебор
+                return scan(latitude, longitude, radiusMeters);
+            }
+            if (latitude + dLat < minLat || latitude - dLat > maxLat
+                    || longitude + dLon < minLon || longitude - dLon > maxLon) {
+                return OUTSIDE_BOX;
+            }
+            int fromY = cellOf(latitude - dLat);
+            int toY = cellOf(latitude + dLat);
+            int fromX = cellOf(longitude - dLon);
+            int toX = cellOf(longitude + dLon);
+            if ((long) (toY - fromY + 1) * (toX - fromX + 1) > ids.length) {
+                return scan(latitude, longitude, radiusMeters);
+            }
+            int best = NONE;
+            double bestDistance = radiusMeters;
+            for (int y = fromY; y <= toY; y++) {
+                for (int x = fromX; x <= toX; x++) {
+                    int c = Arrays.binarySearch(cells, cell(y, x));
+                    if (c < 0) {
+                        continue;
+                    }
+                    for (int i : cellPoints[c]) {
+                        double distance = GeoDistance.meters(latitude, longitude, latitudes[i], longitudes[i]);
+                        if (distance <= bestDistance) {
+                            best = i;
+                            bestDistance = distance;
+                        }
+                    }
+                }
+            }
+            return best;
+        }
+
+        private int scan(double latitude, double longitude, double radiusMeters) {
+            int best = NONE;
+            double bestDistance = radiusMeters;
+            for (int i = 0; i < ids.length; i++) {
+                double distance = GeoDistance.meters(latitude, longitude, latitudes[i], longitudes[i]);
+                if (distance <= bestDistance) {
+                    best = i;
+                    bestDistance = distance;
+                }
+            }
+            return best;
+        }
+
+        Point toPoint(int i) {
+            Point point = new Point(names[i], latitudes[i], longitudes[i], false, List.of());
+            point.setId(ids[i]);
+            return point;
+        }
+
+        private static int cellOf(double degrees) {
+            return (int) Math.floor(degrees / CELL_DEGREES);
+        }
+
+        private static long cell(int y, int x) {
+            return ((long) y << 32) | (x & 0xffffffffL);
+        }
+    }
+}
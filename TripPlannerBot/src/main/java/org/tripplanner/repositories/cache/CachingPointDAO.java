@@ -0,0 +1,115 @@
+package org.tripplanner.repositories.cache;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashSet;
+import java.util.List;
+
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import org.tripplanner.domain.Point;
+import org.tripplanner.repositories.PointDAO;
+import org.tripplanner.repositories.mongodb.PointDAOImpl;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Кэширует точку по id и поиск точки по названию в поездке. Точки не переименовываются
+ * и не удаляются, поэтому найденный по названию id остаётся верным, пока жива запись.
+ */
+@Primary
+@Component
+public class CachingPointDAO implements PointDAO {
+
+    private final PointDAOImpl delegate;
+    private final DomainCaches caches;
+
+    public CachingPointDAO(PointDAOImpl delegate, DomainCaches caches) {
+        this.delegate = delegate;
+        this.caches = caches;
+    }
+
+    @Override
+    public Mono<Point> getPoint(String pointId) {
+        return caches.readThrough(caches.points, pointId, () -> delegate.getPoint(pointId));
+    }
+
+    @Override
+    public Flux<Point> getPoints(Collection<String> pointIds) {
+        if (caches.isBypassed()) {
+            return delegate.getPoints(pointIds);
+        }
+        // Что есть в кэше — сразу, остальное одним $in
+        return Flux.defer(() -> {
+            List<Point> cached = new ArrayList<>();
+            List<String> missing = new ArrayList<>();
+            for (String pointId : new LinkedHashSet<>(pointIds)) {
+                Point point = caches.points.get(pointId);
+                if (point != null) {
+                    cached.add(point);
+                } else {
+                    missing.add(pointId);
+                }
+            }
+            if (missing.isEmpty()) {
+                return Flux.fromIterable(cached);
+            }
+            long stamp = caches.points.stamp();
+            return Flux.fromIterable(cached).concatWith(delegate.getPoints(missing)
+                    .doOnNext(point -> caches.points.putUnlessInvalidated(point.getId(), point, stamp)));
+        });
+    }
+
+    @Override
+    public Mono<Point> findByTripAndName(String tripId, String name) {
+        if (caches.isBypassed()) {
+            return delegate.findByTripAndName(tripId, name);
+        }
+        String key = tripId + ':' + name;
+        return Mono.defer(() -> {
+            String pointId = caches.pointNames.get(key);
+            if (pointId != null) {
+                return getPoint(pointId);
+            }
+            long namesStamp = caches.pointNames.stamp(key);
+            long pointsStamp = caches.points.stamp();
+            return delegate.findByTripAndName(tripId, name)
+                    .doOnNext(point -> {
+                        caches.pointNames.put(key, point.getId(), namesStamp);
+                        caches.points.putUnlessInvalidated(point.getId(), point, pointsStamp);
+                    });
+        });
+    }
+
+    @Override
+    public Mono<Point> createPoint(Long chatId, String tripId, String name, double latitude, double longitude) {
+        return delegate.createPoint(chatId, tripId, name, latitude, longitude);
+    }
+
+    @Override
+    public Mono<Point> markPointVisited(String pointId) {
+        return caches.invalidating(delegate.markPointVisited(pointId), () -> caches.invalidatePoint(pointId));
+    }
+
+    @Override
+    public Mono<Point> addNoteToPoint(String pointId, String note) {
+        return caches.invalidating(delegate.addNoteToPoint(pointId, note), () -> caches.invalidatePoint(pointId));
+    }
+
+    @Override
+    public Flux<Point> getPointsByTripId(String tripId) {
+        return delegate.getPointsByTripId(tripId);
+    }
+
+    @Override
+    public Flux<Point> findUnvisitedByTrip(String tripId) {
+        return delegate.findUnvisitedByTrip(tripId);
+    }
+
+    // Геозапрос зависит от координат — кэшировать нечего
+    @Override
+    public Flux<Point> findUnvisitedNear(String tripId, double latitude, double longitude, double radiusMeters) {
+        return delegate.findUnvisitedNear(tripId, latitude, longitude, radiusMeters);
+    }
+}
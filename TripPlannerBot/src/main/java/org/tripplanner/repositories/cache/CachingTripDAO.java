@@ -0,0 +1,149 @@
+package org.tripplanner.repositories.cache;
+
+import java.time.LocalDate;
+import java.util.Collection;
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import org.tripplanner.domain.Point;
+import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.TripStatus;
+import org.tripplanner.repositories.TripDAO;
+import org.tripplanner.repositories.mongodb.TripDAOImpl;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Кэширует поездку по id и ответ findByOwnerAndName как «название -> id». Найденный по
+ * названию id ещё раз сверяется с закэшированной поездкой: если у неё сменились статус
+ * или название, это промах, а не устаревший ответ.
+ */
+@Primary
+@Component
+public class CachingTripDAO implements TripDAO {
+
+    private final TripDAOImpl delegate;
+    private final DomainCaches caches;
+
+    public CachingTripDAO(TripDAOImpl delegate, DomainCaches caches) {
+        this.delegate = delegate;
+        this.caches = caches;
+    }
+
+    @Override
+    public Mono<Trip> getTrip(String tripId) {
+        return caches.readThrough(caches.trips, tripId, () -> delegate.getTrip(tripId));
+    }
+
+    @Override
+    public Mono<Trip> findByOwnerAndName(Long chatId, String name, Collection<TripStatus> statuses) {
+        if (caches.isBypassed()) {
+            return delegate.findByOwnerAndName(chatId, name, statuses);
+        }
+        String key = nameKey(name, statuses);
+        return Mono.defer(() -> {
+            Map<String, String> names = caches.tripNames.get(chatId);
+            String tripId = names != null ? names.get(key) : null;
+            if (tripId == null) {
+                return loadByName(chatId, name, statuses, key);
+            }
+            return getTrip(tripId)
+                    .filter(trip -> name.equals(trip.getName()) && hasStatus(trip, statuses))
+                    .onErrorResume(e -> Mono.empty())
+                    .switchIfEmpty(Mono.defer(() -> loadByName(chatId, name, statuses, key)));
+        });
+    }
+
+    private Mono<Trip> loadByName(Long chatId, String name, Collection<TripStatus> statuses, String key) {
+        long namesStamp = caches.tripNames.stamp(chatId);
+        long tripsStamp = caches.trips.stamp();
+        return delegate.findByOwnerAndName(chatId, name, statuses)
+                .doOnNext(trip -> {
+                    caches.tripNames.merge(chatId, Map.of(key, trip.getId()), namesStamp, DomainCaches::mergeNames);
+                    caches.trips.putUnlessInvalidated(trip.getId(), trip, tripsStamp);
+                });
+    }
+
+    @Override
+    public Mono<Trip> createTrip(Long chatId, String name, LocalDate startDate, LocalDate endDate) {
+        // Новая поездка может перекрыть старую с тем же названием и попадает в plannedTrips пользователя
+        return caches.invalidating(delegate.createTrip(chatId, name, startDate, endDate), () -> {
+            caches.invalidateOwnerTrips(chatId);
+            caches.invalidateUser(chatId);
+        });
+    }
+
+    @Override
+    public Mono<Trip> addPoint(String tripId, String pointId) {
+        return caches.invalidating(delegate.addPoint(tripId, pointId), () -> caches.invalidateTrip(tripId));
+    }
+
+    @Override
+    public Mono<Trip> setStartPoint(String tripId, String pointId) {
+        return caches.invalidating(delegate.setStartPoint(tripId, pointId), () -> caches.invalidateTrip(tripId));
+    }
+
+    @Override
+    public Mono<Trip> addRoute(String tripId, String routeId) {
+        return caches.invalidating(delegate.addRoute(tripId, routeId), () -> caches.invalidateTrip(tripId));
+    }
+
+    @Override
+    public Mono<Trip> setTripRating(String tripId, int rating) {
+        return caches.invalidating(delegate.setTripRating(tripId, rating), () -> caches.invalidateTrip(tripId));
+    }
+
+    @Override
+    public Mono<Trip> addNoteToTrip(String tripId, String note) {
+        return caches.invalidating(delegate.addNoteToTrip(tripId, note), () -> caches.invalidateTrip(tripId));
+    }
+
+    @Override
+    public Mono<Trip> updateTripStatus(String tripId, String status) {
+        // Владелец здесь неизвестен, поэтому поиск по названиям сбрасываем у всех
+        return caches.invalidating(delegate.updateTripStatus(tripId, status), () -> {
+            caches.invalidateTrip(tripId);
+            caches.tripNames.invalidateAll();
+        });
+    }
+
+    @Override
+    public Mono<Point> markPointVisited(String tripId, String pointId) {
+        return caches.invalidating(delegate.markPointVisited(tripId, pointId), () -> caches.invalidatePoint(pointId));
+    }
+
+    @Override
+    public Flux<Point> getAllPoints(String tripId) {
+        return delegate.getAllPoints(tripId);
+    }
+
+    @Override
+    public Flux<Trip> getTrips(Collection<ObjectId> tripIds) {
+        return delegate.getTrips(tripIds);
+    }
+
+    @Override
+    public Flux<Trip> getAllTrips() {
+        return delegate.getAllTrips();
+    }
+
+    private static boolean hasStatus(Trip trip, Collection<TripStatus> statuses) {
+        for (TripStatus status : statuses) {
+            if (status.name().equals(trip.getStatus())) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String nameKey(String name, Collection<TripStatus> statuses) {
+        int mask = 0;
+        for (TripStatus status : statuses) {
+            mask |= 1 << status.ordinal();
+        }
+        return mask + ":" + name;
+    }
+}
@@ -0,0 +1,128 @@
+package org.tripplanner.repositories.cache;
+
+import java.util.Collection;
+
+import org.springframework.context.annotation.Primary;
+import org.springframework.stereotype.Component;
+import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.TripSummary;
+import org.tripplanner.domain.User;
+import org.tripplanner.domain.UserLocation;
+import org.tripplanner.repositories.UserDAO;
+import org.tripplanner.repositories.mongodb.UserDAOImpl;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Кэширует пользователя по chatId. Списки поездок — уже один $lookup, их не кэшируем.
+ * Записи, которые перекладывают поездку между списками, меняют и её статус, поэтому
+ * сбрасывают ещё поездку и поиск поездок владельца по названию.
+ */
+@Primary
+@Component
+public class CachingUserDAO implements UserDAO {
+
+    private final UserDAOImpl delegate;
+    private final DomainCaches caches;
+
+    public CachingUserDAO(UserDAOImpl delegate, DomainCaches caches) {
+        this.delegate = delegate;
+        this.caches = caches;
+    }
+
+    @Override
+    public Mono<User> getOrCreateUser(Long chatId) {
+        return caches.readThrough(caches.users, chatId, () -> delegate.getOrCreateUser(chatId));
+    }
+
+    @Override
+    public Mono<User> getUserByChatId(Long chatId) {
+        return caches.readThrough(caches.users, chatId, () -> delegate.getUserByChatId(chatId));
+    }
+
+    @Override
+    public Flux<User> getAllUsers() {
+        return delegate.getAllUsers();
+    }
+
+    @Override
+    public Flux<Trip> getAllPlannedTrips(Long chatId) {
+        return delegate.getAllPlannedTrips(chatId);
+    }
+
+    @Override
+    public Mono<Trip> getTripInPlanning(Long chatId) {
+        return delegate.getTripInPlanning(chatId);
+    }
+
+    @Override
+    public Flux<Trip> getCurrentTrips(Long chatId) {
+        return delegate.getCurrentTrips(chatId);
+    }
+
+    @Override
+    public Flux<Trip> getFinishedTrips(Long chatId) {
+        return delegate.getFinishedTrips(chatId);
+    }
+
+    @Override
+    public Flux<TripSummary> getPlannedTripSummaries(Long chatId) {
+        return delegate.getPlannedTripSummaries(chatId);
+    }
+
+    @Override
+    public Flux<TripSummary> getFinishedTripSummaries(Long chatId) {
+        return delegate.getFinishedTripSummaries(chatId);
+    }
+
+    @Override
+    public Mono<Trip> finishPlanning(Long chatId) {
+        // Какая поездка закрыта, станет известно только из ответа
+        return caches.invalidating(delegate.finishPlanning(chatId)
+                        .doOnNext(trip -> caches.invalidateTrip(trip.getId())),
+                () -> invalidateOwner(chatId));
+    }
+
+    @Override
+    public Mono<Trip> cancelPlanning(Long chatId) {
+        return caches.invalidating(delegate.cancelPlanning(chatId), () -> caches.invalidateUser(chatId));
+    }
+
+    @Override
+    public Mono<Trip> deletePlannedTrip(Long chatId, String tripId) {
+        return caches.invalidating(delegate.deletePlannedTrip(chatId, tripId), () -> invalidateMove(chatId, tripId));
+    }
+
+    @Override
+    public Mono<Void> updateUserLocation(Long chatId, double latitude, double longitude) {
+        return caches.invalidating(delegate.updateUserLocation(chatId, latitude, longitude),
+                () -> caches.invalidateUser(chatId));
+    }
+
+    // Геопозиция в User не попадает, сбрасывать кэш не нужно
+    @Override
+    public Mono<Void> updateUserLocations(Collection<UserLocation> locations) {
+        return delegate.updateUserLocations(locations);
+    }
+
+    @Override
+    public Mono<Void> moveToTripHistory(Long chatId, String tripId) {
+        return caches.invalidating(delegate.moveToTripHistory(chatId, tripId), () -> invalidateMove(chatId, tripId));
+    }
+
+    @Override
+    public Mono<Void> setOngoingTrip(Long chatId, String tripId) {
+        return caches.invalidating(delegate.setOngoingTrip(chatId, tripId), () -> invalidateMove(chatId, tripId));
+    }
+
+    private void invalidateMove(Long chatId, String tripId) {
+        invalidateOwner(chatId);
+        caches.invalidateTrip(tripId);
+    }
+
+    private void invalidateOwner(Long chatId) {
+        caches.invalidateUser(chatId);
+        caches.invalidateOwnerTrips(chatId);
+    }
+}
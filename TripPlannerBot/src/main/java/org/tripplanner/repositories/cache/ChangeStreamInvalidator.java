@@ -0,0 +1,322 @@
+package org.tripplanner.repositories.cache;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.bson.BsonDocument;
+import org.bson.BsonValue;
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.mongodb.core.ChangeStreamOptions;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+import org.tripplanner.modules.dialog.DialogSessionStore;
+import org.tripplanner.repositories.BotStateDAO;
+import org.tripplanner.util.StatsSource;
+
+import com.mongodb.MongoCommandException;
+import com.mongodb.client.model.changestream.ChangeStreamDocument;
+import com.mongodb.client.model.changestream.FullDocument;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.util.retry.Retry;
+
+/**
+ * Сбрасывает локальные кэши по изменениям, которые сделали другие реплики. Один change stream
+ * на базу следит за users, trips, points и dialog_sessions и сбрасывает ровно изменённые ключи.
+ * <p>
+ * Позиция потока (resume token) хранится в bot_state, поэтому после обрыва или рестарта
+ * события не теряются. Если сервер уже забыл позицию, кэши сбрасываются целиком и поток
+ * начинается с текущего момента. Change streams есть только у replica set, поэтому по
+ * умолчанию выключено: на одной реплике хватает инвалидации в кэширующих DAO.
+ */
+@Component
+public class ChangeStreamInvalidator implements StatsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(ChangeStreamInvalidator.class);
+    private static final Duration IO_TIMEOUT = Duration.ofSeconds(5);
+    private static final Duration MAX_BACKOFF = Duration.ofSeconds(30);
+
+    static final List<String> COLLECTIONS = List.of("users", "trips", "points", "dialog_sessions");
+
+    // ChangeStreamHistoryLost, ChangeStreamFatalError, InvalidResumeToken
+    private static final Set<Integer> HISTORY_LOST = Set.of(286, 280, 260);
+    // Standalone-сервер: $changeStream доступен только в replica set
+    private static final int NOT_A_REPLICA_SET = 40573;
+
+    // Полный документ нужен только ради chatId пользователя и владельца поездки
+    private static final Document[] PIPELINE = {
+            new Document("$match", new Document("$or", List.of(
+                    new Document("ns.coll", new Document("$in", COLLECTIONS)),
+                    new Document("operationType", new Document("$in", List.of("dropDatabase", "invalidate")))))),
+            new Document("$project", new Document("operationType", 1)
+                    .append("ns", 1)
+                    .append("documentKey", 1)
+                    .append("clusterTime", 1)
+                    .append("wallTime", 1)
+                    .append("fullDocument.chatId", 1)
+                    .append("fullDocument.ownerChatId", 1))
+    };
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final DomainCaches caches;
+    private final DialogSessionStore sessionStore;
+    private final BotStateDAO botStateDAO;
+    private final boolean enabled;
+    private final String streamId;
+    private final Duration checkpointInterval;
+
+    private final AtomicReference<String> latestToken = new AtomicReference<>();
+    private volatile String savedToken;
+    private final AtomicBoolean saving = new AtomicBoolean();
+
+    private final Map<String, LongAdder> events = new ConcurrentHashMap<>();
+    private final LongAdder restarts = new LongAdder();
+    private final LongAdder historyLost = new LongAdder();
+    private final LongAdder checkpoints = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+    private final AtomicLong maxLagMs = new AtomicLong();
+    private volatile long lastLagMs;
+    private volatile long lastEventAt;
+    private volatile String state = "disabled";
+
+    private Disposable stream;
+    private Disposable timer;
+
+    public ChangeStreamInvalidator(ReactiveMongoTemplate mongoTemplate,
+                                   DomainCaches caches,
+                                   DialogSessionStore sessionStore,
+                                   BotStateDAO botStateDAO,
+                                   @Value("${cache.invalidation.change-stream.enabled:false}") boolean enabled,
+                                   @Value("${cache.invalidation.instance-id:${HOSTNAME:local}}") String instanceId,
+                                   @Value("${cache.invalidation.checkpoint-interval-ms:1000}") long checkpointIntervalMs) {
+        this.mongoTemplate = mongoTemplate;
+        this.caches = caches;
+        this.sessionStore = sessionStore;
+        this.botStateDAO = botStateDAO;
+        this.enabled = enabled;
+        // Позиция своя у каждой реплики: поток одной реплики ничего не говорит о кэше другой
+        this.streamId = "changes:" + instanceId;
+        this.checkpointInterval = Duration.ofMillis(checkpointIntervalMs);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (!enabled || stream != null) {
+            return;
+        }
+        try {
+            String saved = botStateDAO.getResumeToken(streamId).block(IO_TIMEOUT);
+            if (saved != null) {
+                latestToken.set(saved);
+                savedToken = saved;
+                logger.info("Resuming change stream {} from saved position", streamId);
+            }
+        } catch (Exception e) {
+            logger.error("Failed to read change stream position, starting from now: {}", e.getMessage());
+        }
+        state = "starting";
+        stream = watch()
+                .doOnNext(this::onEvent)
+                // После invalidate сервер закрывает поток — открываем новый
+                .repeatWhen(completed -> completed.delayElements(Duration.ofSeconds(1)))
+                .retryWhen(Retry.backoff(Long.MAX_VALUE, Duration.ofSeconds(1))
+                        .maxBackoff(MAX_BACKOFF)
+                        // Поток, проработавший какое-то время, перезапускаем снова с короткой паузы
+                        .transientErrors(true)
+                        .filter(e -> errorCode(e) != NOT_A_REPLICA_SET)
+                        .doBeforeRetry(signal -> onRestart(signal.failure())))
+                .subscribe(null,
+                        e -> {
+                            state = "failed";
+                            logger.error("Change stream stopped, remote changes reach caches only by TTL: {}",
+                                    e.getMessage());
+                        });
+        timer = Flux.interval(checkpointInterval)
+                .onBackpressureDrop()
+                .concatMap(tick -> checkpoint())
+                .subscribe();
+    }
+
+    private Flux<ChangeStreamDocument<Document>> watch() {
+        return Flux.defer(() -> {
+            ChangeStreamOptions.ChangeStreamOptionsBuilder options = ChangeStreamOptions.builder()
+                    .filter(PIPELINE)
+                    .fullDocumentLookup(FullDocument.UPDATE_LOOKUP);
+            String token = latestToken.get();
+            if (token != null) {
+                options.resumeAfter(BsonDocument.parse(token));
+            }
+            state = "running";
+            return mongoTemplate.changeStream(null, null, options.build(), Document.class)
+                    .map(event -> event.getRaw());
+        });
+    }
+
+    private void onEvent(ChangeStreamDocument<Document> change) {
+        String collection = change.getNamespace() != null ? change.getNamespace().getCollectionName() : null;
+        BsonValue id = change.getDocumentKey() != null ? change.getDocumentKey().get("_id") : null;
+        apply(change.getOperationTypeString(), collection, id, change.getFullDocument());
+
+        long eventAt = change.getWallTime() != null
+                ? change.getWallTime().getValue()
+                : change.getClusterTime().getTime() * 1000L;
+        long now = System.currentTimeMillis();
+        lastLagMs = Math.max(0, now - eventAt);
+        maxLagMs.accumulateAndGet(lastLagMs, Math::max);
+        lastEventAt = now;
+        if ("invalidate".equals(change.getOperationTypeString())) {
+            // За invalidate продолжить нельзя, следующий поток начнём с текущего момента
+            latestToken.set(null);
+        } else if (change.getResumeToken() != null) {
+            latestToken.set(change.getResumeToken().toJson());
+        }
+    }
+
+    /**
+     * Сбрасывает то, что затронуто изменением. Свои же записи тоже приходят сюда — это лишний
+     * промах кэша на запись, но не ошибка: кэширующие DAO уже сбросили эти ключи.
+     */
+    void apply(String operation, String collection, BsonValue id, Document fullDocument) {
+        if ("dropDatabase".equals(operation) || "invalidate".equals(operation)
+                || "drop".equals(operation) || "rename".equals(operation)) {
+            count(operation);
+            caches.invalidateAll();
+            return;
+        }
+        if (collection == null || id == null) {
+            return;
+        }
+        count(collection);
+        boolean deleted = "delete".equals(operation);
+        switch (collection) {
+            case "users" -> {
+                // Документ уже удалён или update lookup его не нашёл: chatId не узнать
+                Long chatId = longField(fullDocument, "chatId");
+                if (chatId != null) {
+                    caches.invalidateUser(chatId);
+                } else {
+                    caches.users.invalidateAll();
+                }
+            }
+            case "trips" -> {
+                caches.invalidateTrip(id.asObjectId().getValue().toHexString());
+                Long owner = longField(fullDocument, "ownerChatId");
+                if (owner != null) {
+                    caches.invalidateOwnerTrips(owner);
+                } else {
+                    caches.invalidateAllOwnerTrips();
+                }
+            }
+            case "points" -> {
+                caches.invalidatePoint(id.asObjectId().getValue().toHexString());
+                if (deleted) {
+                    caches.pointNames.invalidateAll();
+                }
+            }
+            case "dialog_sessions" -> sessionStore.invalidate(id.asNumber().longValue());
+            default -> {
+            }
+        }
+    }
+
+    private void onRestart(Throwable failure) {
+        restarts.increment();
+        state = "restarting";
+        if (HISTORY_LOST.contains(errorCode(failure))) {
+            // Пропущенные события не восстановить: всё, что лежит в кэшах, могло устареть
+            historyLost.increment();
+            latestToken.set(null);
+            caches.invalidateAll();
+            logger.warn("Change stream position is lost, caches dropped: {}", failure.getMessage());
+        } else {
+            logger.warn("Change stream failed, resuming: {}", failure.getMessage());
+        }
+    }
+
+    public Mono<Void> checkpoint() {
+        return Mono.defer(() -> {
+            String token = latestToken.get();
+            if (token == null || token.equals(savedToken) || !saving.compareAndSet(false, true)) {
+                return Mono.empty();
+            }
+            return botStateDAO.saveResumeToken(streamId, token)
+                    .doOnSuccess(ignored -> {
+                        savedToken = token;
+                        checkpoints.increment();
+                    })
+                    .onErrorResume(e -> {
+                        failures.increment();
+                        logger.error("Failed to save change stream position: {}", e.getMessage());
+                        return Mono.empty();
+                    })
+                    .doFinally(signal -> saving.set(false));
+        });
+    }
+
+    private void count(String key) {
+        events.computeIfAbsent(key, k -> new LongAdder()).increment();
+    }
+
+    private static Long longField(Document document, String field) {
+        Object value = document != null ? document.get(field) : null;
+        return value instanceof Number number ? number.longValue() : null;
+    }
+
+    private static int errorCode(Throwable e) {
+        for (Throwable cause = e; cause != null; cause = cause.getCause()) {
+            if (cause instanceof MongoCommandException command) {
+                return command.getErrorCode();
+            }
+        }
+        return 0;
+    }
+
+    @Override
+    public String statsName() {
+        return "changeStream";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("state", state);
+        Map<String, Long> counts = new LinkedHashMap<>();
+        events.forEach((key, adder) -> counts.put(key, adder.sum()));
+        stats.put("events", counts);
+        stats.put("lagMs", lastLagMs);
+        stats.put("maxLagMs", maxLagMs.get());
+        stats.put("sinceLastEventMs", lastEventAt == 0 ? -1 : System.currentTimeMillis() - lastEventAt);
+        stats.put("restarts", restarts.sum());
+        stats.put("historyLost", historyLost.sum());
+        stats.put("checkpoints", checkpoints.sum());
+        stats.put("failures", failures.sum());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (stream == null) {
+            return;
+        }
+        stream.dispose();
+        timer.dispose();
+        stream = null;
+        timer = null;
+        checkpoint().block(IO_TIMEOUT);
+    }
+}
@@ -0,0 +1,155 @@
+package org.tripplanner.repositories.cache;
+
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.function.Supplier;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+import org.tripplanner.domain.Point;
+import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.User;
+import org.tripplanner.util.ExpiringCache;
+import org.tripplanner.util.StatsSource;
+
+import reactor.core.publisher.Mono;
+
+/**
+ * Кэши доменных объектов для кэширующих DAO. {@link Trip}, {@link User} и {@link Point}
+ * изменяемы, но из кэша отдаются всем читателям один и тот же экземпляр, без копии. Поэтому
+ * объект, полученный из DAO, менять нельзя: сеттер на нём виден всем, кто прочтёт ключ до
+ * истечения ttl, и не попадает в базу. Изменения идут только через методы записи DAO.
+ * <p>
+ * Объём: поездка с заметками — порядка 2 КБ, пользователь и точка — меньше 1 КБ, так что
+ * при размерах по умолчанию кэши занимают десятки мегабайт из гигабайта контейнера.
+ */
+@Component
+public class DomainCaches implements StatsSource {
+
+    private static final int STRIPES = 16;
+
+    final ExpiringCache<Long, User> users;
+    final ExpiringCache<String, Trip> trips;
+    // Владелец -> (название и набор статусов -> id поездки); сбрасывается целиком при любой смене статуса
+    final ExpiringCache<Long, Map<String, String>> tripNames;
+    final ExpiringCache<String, Point> points;
+    // id поездки + название точки -> id точки
+    final ExpiringCache<String, String> pointNames;
+
+    private final ActivePointIndex activePoints;
+    private final boolean bypass;
+    private final Duration ttl;
+
+    public DomainCaches(@Value("${cache.bypass:false}") boolean bypass,
+                        @Value("${cache.ttl-ms:60000}") long ttlMs,
+                        @Value("${cache.users.max-entries:20000}") int maxUsers,
+                        @Value("${cache.trips.max-entries:20000}") int maxTrips,
+                        @Value("${cache.points.max-entries:50000}") int maxPoints,
+                        ActivePointIndex activePoints) {
+        this.activePoints = activePoints;
+        this.bypass = bypass;
+        this.ttl = Duration.ofMillis(ttlMs);
+        long ttlNanos = ttl.toNanos();
+        this.users = new ExpiringCache<>(STRIPES, maxUsers, ttlNanos);
+        this.trips = new ExpiringCache<>(STRIPES, maxTrips, ttlNanos);
+        this.tripNames = new ExpiringCache<>(STRIPES, maxUsers, ttlNanos);
+        this.points = new ExpiringCache<>(STRIPES, maxPoints, ttlNanos);
+        this.pointNames = new ExpiringCache<>(STRIPES, maxPoints, ttlNanos);
+    }
+
+    public boolean isBypassed() {
+        return bypass;
+    }
+
+    /**
+     * Значение из кэша или из loader с записью результата. Пустой результат и ошибки не кэшируются.
+     */
+    <K, V> Mono<V> readThrough(ExpiringCache<K, V> cache, K key, Supplier<Mono<V>> loader) {
+        if (bypass) {
+            return loader.get();
+        }
+        return Mono.defer(() -> {
+            V cached = cache.get(key);
+            if (cached != null) {
+                return Mono.just(cached);
+            }
+            long stamp = cache.stamp(key);
+            return loader.get().doOnNext(value -> cache.put(key, value, stamp));
+        });
+    }
+
+    /**
+     * Запись, после которой ключ нужно сбросить. Сбрасываем и до, и после: до — чтобы чтение
+     * внутри той же цепочки не взяло старое значение, после — чтобы выкинуть то, что успели
+     * загрузить, пока запись шла.
+     */
+    <T> Mono<T> invalidating(Mono<T> write, Runnable invalidate) {
+        return Mono.defer(() -> {
+            invalidate.run();
+            return write;
+        }).doFinally(signal -> invalidate.run());
+    }
+
+    public void invalidateUser(Long chatId) {
+        users.invalidate(chatId);
+    }
+
+    public void invalidateTrip(String tripId) {
+        trips.invalidate(tripId);
+        activePoints.invalidateTrip(tripId);
+    }
+
+    // Сюда приходят и смены активной поездки: setOngoingTrip и moveToTripHistory сбрасывают владельца
+    public void invalidateOwnerTrips(Long chatId) {
+        tripNames.invalidate(chatId);
+        activePoints.invalidateChat(chatId);
+    }
+
+    /**
+     * Владелец изменённой поездки неизвестен — сбрасываем поиск по названию у всех.
+     */
+    public void invalidateAllOwnerTrips() {
+        tripNames.invalidateAll();
+        activePoints.invalidateChats();
+    }
+
+    public void invalidatePoint(String pointId) {
+        points.invalidate(pointId);
+        activePoints.invalidatePoint(pointId);
+    }
+
+    public void invalidateAll() {
+        users.invalidateAll();
+        trips.invalidateAll();
+        tripNames.invalidateAll();
+        points.invalidateAll();
+        pointNames.invalidateAll();
+        activePoints.invalidateAll();
+    }
+
+    static Map<String, String> mergeNames(Map<String, String> current, Map<String, String> added) {
+        Map<String, String> merged = new HashMap<>(current);
+        merged.putAll(added);
+        return merged;
+    }
+
+    @Override
+    public String statsName() {
+        return "domainCaches";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("bypass", bypass);
+        stats.put("ttlMs", ttl.toMillis());
+        stats.put("users", users.stats());
+        stats.put("trips", trips.stats());
+        stats.put("tripNames", tripNames.stats());
+        stats.put("points", points.stats());
+        stats.put("pointNames", pointNames.stats());
+        return stats;
+    }
+}
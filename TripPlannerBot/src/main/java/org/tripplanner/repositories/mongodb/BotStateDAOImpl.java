@@ -0,0 +1,53 @@
+package org.tripplanner.repositories.mongodb;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Repository;
+import org.tripplanner.repositories.BotStateDAO;
+
+import reactor.core.publisher.Mono;
+
+@Repository
+public class BotStateDAOImpl implements BotStateDAO {
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    public BotStateDAOImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<Long> getLastUpdateId(String botId) {
+        return mongoTemplate.findById(botId, BotStateDBO.class)
+                .mapNotNull(BotStateDBO::getLastUpdateId);
+    }
+
+    @Override
+    public Mono<Void> saveLastUpdateId(String botId, long updateId) {
+        // $max: запоздавший чекпоинт с другого инстанса не откатит offset назад
+        return mongoTemplate.upsert(
+                Query.query(Criteria.where("_id").is(botId)),
+                new Update().max("lastUpdateId", updateId).currentDate("updatedAt"),
+                BotStateDBO.class
+        ).then();
+    }
+
+    @Override
+    public Mono<String> getResumeToken(String streamId) {
+        return mongoTemplate.findById(streamId, BotStateDBO.class)
+                .mapNotNull(BotStateDBO::getResumeToken);
+    }
+
+    @Override
+    public Mono<Void> saveResumeToken(String streamId, String resumeToken) {
+        return mongoTemplate.upsert(
+                Query.query(Criteria.where("_id").is(streamId)),
+                new Update().set("resumeToken", resumeToken).currentDate("updatedAt"),
+                BotStateDBO.class
+        ).then();
+    }
+}
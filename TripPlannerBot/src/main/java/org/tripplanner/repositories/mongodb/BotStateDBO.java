@@ -0,0 +1,51 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.Date;
+
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+
+@Document(collection = "bot_state")
+public class BotStateDBO {
+
+    @Id
+    private String id;
+
+    private Long lastUpdateId;
+    private String resumeToken;
+    private Date updatedAt;
+
+    public BotStateDBO() {}
+
+    public String getId() {
+        return id;
+    }
+
+    public void setId(String id) {
+        this.id = id;
+    }
+
+    public Long getLastUpdateId() {
+        return lastUpdateId;
+    }
+
+    public void setLastUpdateId(Long lastUpdateId) {
+        this.lastUpdateId = lastUpdateId;
+    }
+
+    public String getResumeToken() {
+        return resumeToken;
+    }
+
+    public void setResumeToken(String resumeToken) {
+        this.resumeToken = resumeToken;
+    }
+
+    public Date getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setUpdatedAt(Date updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
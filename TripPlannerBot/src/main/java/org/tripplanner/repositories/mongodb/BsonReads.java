@@ -0,0 +1,117 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.types.ObjectId;
+
+/**
+ * Чтение значений для кодеков. Значение неожиданного типа пропускается и читается как
+ * отсутствующее — так же ведёт себя маппинг Spring Data на старых документах с null.
+ */
+final class BsonReads {
+
+    private BsonReads() {
+    }
+
+    static String string(BsonReader reader) {
+        if (reader.getCurrentBsonType() == BsonType.STRING) {
+            return reader.readString();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    static ObjectId objectId(BsonReader reader) {
+        if (reader.getCurrentBsonType() == BsonType.OBJECT_ID) {
+            return reader.readObjectId();
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    static Long int64(BsonReader reader) {
+        return switch (reader.getCurrentBsonType()) {
+            case INT64 -> reader.readInt64();
+            case INT32 -> (long) reader.readInt32();
+            case DOUBLE -> (long) reader.readDouble();
+            default -> {
+                reader.skipValue();
+                yield null;
+            }
+        };
+    }
+
+    static Integer int32(BsonReader reader) {
+        Long value = int64(reader);
+        return value != null ? value.intValue() : null;
+    }
+
+    static double float64(BsonReader reader) {
+        return switch (reader.getCurrentBsonType()) {
+            case DOUBLE -> reader.readDouble();
+            case INT32 -> reader.readInt32();
+            case INT64 -> reader.readInt64();
+            default -> {
+                reader.skipValue();
+                yield 0.0;
+            }
+        };
+    }
+
+    static boolean bool(BsonReader reader) {
+        if (reader.getCurrentBsonType() == BsonType.BOOLEAN) {
+            return reader.readBoolean();
+        }
+        reader.skipValue();
+        return false;
+    }
+
+    // Spring Data пишет LocalDate как полночь в часовом поясе JVM — читаем так же
+    static LocalDate localDate(BsonReader reader) {
+        if (reader.getCurrentBsonType() == BsonType.DATE_TIME) {
+            return LocalDate.ofInstant(Instant.ofEpochMilli(reader.readDateTime()), ZoneId.systemDefault());
+        }
+        reader.skipValue();
+        return null;
+    }
+
+    static List<String> strings(BsonReader reader) {
+        if (reader.getCurrentBsonType() != BsonType.ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        List<String> values = new ArrayList<>();
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            String value = string(reader);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        reader.readEndArray();
+        return values;
+    }
+
+    static List<ObjectId> objectIds(BsonReader reader) {
+        if (reader.getCurrentBsonType() != BsonType.ARRAY) {
+            reader.skipValue();
+            return null;
+        }
+        List<ObjectId> values = new ArrayList<>();
+        reader.readStartArray();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            ObjectId value = objectId(reader);
+            if (value != null) {
+                values.add(value);
+            }
+        }
+        reader.readEndArray();
+        return values;
+    }
+}
@@ -0,0 +1,74 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndReplaceOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+import org.tripplanner.domain.DialogSession;
+import org.tripplanner.repositories.DialogSessionDAO;
+
+import reactor.core.publisher.Mono;
+
+@Repository
+public class DialogSessionDAOImpl implements DialogSessionDAO {
+
+    private static final Logger logger = LoggerFactory.getLogger(DialogSessionDAOImpl.class);
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    public DialogSessionDAOImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @Override
+    public Mono<DialogSession> find(long chatId) {
+        // TTL-монитор Mongo удаляет раз в минуту, поэтому истёкшие фильтруем сами
+        Query query = Query.query(Criteria.where("_id").is(chatId).and("expiresAt").gt(new Date()));
+        return mongoTemplate.findOne(query, DialogSessionDBO.class)
+                .map(DialogSessionDAOImpl::fromDbo);
+    }
+
+    @Override
+    public Mono<Void> writeBatch(List<DialogSession> upserts, Collection<Long> deletes) {
+        if (upserts.isEmpty() && deletes.isEmpty()) {
+            return Mono.empty();
+        }
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, DialogSessionDBO.class);
+        Date now = new Date();
+        for (DialogSession session : upserts) {
+            bulk.replaceOne(Query.query(Criteria.where("_id").is(session.getChatId())),
+                    toDbo(session, now), FindAndReplaceOptions.options().upsert());
+        }
+        if (!deletes.isEmpty()) {
+            bulk.remove(Query.query(Criteria.where("_id").in(deletes)));
+        }
+        return bulk.execute().then();
+    }
+
+    private static DialogSessionDBO toDbo(DialogSession session, Date now) {
+        DialogSessionDBO dbo = new DialogSessionDBO();
+        dbo.setChatId(session.getChatId());
+        dbo.setCommand(session.getCommand());
+        dbo.setStep(session.getStep());
+        dbo.setData(session.getData());
+        dbo.setExpiresAt(Date.from(session.getExpiresAt()));
+        dbo.setUpdatedAt(now);
+        return dbo;
+    }
+
+    private static DialogSession fromDbo(DialogSessionDBO dbo) {
+        return new DialogSession(dbo.getChatId(), dbo.getCommand(), dbo.getStep(), dbo.getData(),
+                dbo.getExpiresAt().toInstant());
+    }
+}
@@ -0,0 +1,78 @@
+package org.tripplanner.repositories.mongodb;
+
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.dao.DataAccessException;
+import org.springframework.data.mongodb.core.MongoExceptionTranslator;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Component;
+
+import com.mongodb.reactivestreams.client.FindPublisher;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Чтения, которые декодируются кодеками из MongoConfig прямо в доменные объекты, минуя
+ * MappingMongoConverter и DBO. Запрос собирается тем же Query, что и для MongoTemplate,
+ * поэтому в фильтре допустимы только значения, которые не нужно конвертировать
+ * (ObjectId, строки, числа).
+ */
+@Component
+public class DomainReads {
+
+    private static final MongoExceptionTranslator EXCEPTION_TRANSLATOR = new MongoExceptionTranslator();
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final CodecRegistry codecs;
+
+    public DomainReads(ReactiveMongoTemplate mongoTemplate, @Qualifier("domainCodecRegistry") CodecRegistry codecs) {
+        this.mongoTemplate = mongoTemplate;
+        this.codecs = codecs;
+    }
+
+    public <T> Mono<T> findOne(Query query, Class<T> type, String collection) {
+        return collection(collection, type)
+                .flatMap(documents -> Mono.from(prepare(documents.find(query.getQueryObject()), query).first()))
+                .onErrorMap(RuntimeException.class, DomainReads::translate);
+    }
+
+    public <T> Flux<T> find(Query query, Class<T> type, String collection) {
+        return collection(collection, type)
+                .flatMapMany(documents -> prepare(documents.find(query.getQueryObject()), query))
+                .onErrorMap(RuntimeException.class, DomainReads::translate);
+    }
+
+    /**
+     * Копия коллекции шаблона со своим реестром: у самой коллекции, через которую пишет
+     * MongoTemplate, реестр не меняется, поэтому encode кодеков никогда не вызывается.
+     */
+    <T> Mono<MongoCollection<T>> collection(String name, Class<T> type) {
+        return mongoTemplate.getCollection(name)
+                .map(documents -> documents.withCodecRegistry(codecs).withDocumentClass(type));
+    }
+
+    private static <T> FindPublisher<T> prepare(FindPublisher<T> find, Query query) {
+        Document sort = query.getSortObject();
+        if (!sort.isEmpty()) {
+            find = find.sort(sort);
+        }
+        Document fields = query.getFieldsObject();
+        if (!fields.isEmpty()) {
+            find = find.projection(fields);
+        }
+        if (query.getLimit() > 0) {
+            find = find.limit(query.getLimit());
+        }
+        return find;
+    }
+
+    // Ошибки те же, что отдал бы MongoTemplate
+    private static Throwable translate(RuntimeException e) {
+        DataAccessException translated = EXCEPTION_TRANSLATOR.translateExceptionIfPossible(e);
+        return translated != null ? translated : e;
+    }
+}
@@ -0,0 +1,256 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.CompoundIndexDefinition;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.index.IndexField;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+import org.springframework.data.mongodb.core.index.PartialIndexFilter;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Все индексы бота в одном месте. При старте создаёт их параллельно и не блокируя запуск,
+ * затем сверяет со списком listIndexes: каких не хватает и какие лишние (префикс другого индекса).
+ * Отчёт отдаётся в /healthcheck; с mongo.indexes.require-for-readiness=true бот не считается
+ * готовым, пока нет критичных индексов.
+ */
+@Component
+public class IndexBootstrapper {
+
+    private static final Logger logger = LoggerFactory.getLogger(IndexBootstrapper.class);
+
+    /**
+     * Критичный индекс — тот, без которого горячий запрос превращается в сканирование коллекции.
+     */
+    public record RequiredIndex(Class<?> entity, String collection, Index index, boolean critical) {
+
+        public String name() {
+            return index.getIndexOptions().getString("name");
+        }
+
+        Document keys() {
+            return index.getIndexKeys();
+        }
+
+        boolean partial() {
+            return index.getIndexOptions().containsKey("partialFilterExpression");
+        }
+    }
+
+    public record IndexReport(boolean verified, List<String> missing, List<String> missingCritical,
+                              List<String> redundant, Map<String, String> errors) {
+
+        static final IndexReport PENDING = new IndexReport(false, List.of(), List.of(), List.of(), Map.of());
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> map = new LinkedHashMap<>();
+            map.put("verified", verified);
+            map.put("missing", missing);
+            map.put("missingCritical", missingCritical);
+            map.put("redundant", redundant);
+            if (!errors.isEmpty()) {
+                map.put("errors", errors);
+            }
+            return map;
+        }
+    }
+
+    static final List<RequiredIndex> REQUIRED = List.of(
+            // Каждый запрос пользователя начинается с поиска по chatId; unique заодно защищает getOrCreateUser от гонки
+            new RequiredIndex(UserDBO.class, "users", new Index()
+                    .on("chatId", Sort.Direction.ASC)
+                    .unique()
+                    .named("users_chat_id"), true),
+            new RequiredIndex(TripDBO.class, "trips", new Index()
+                    .on("ownerChatId", Sort.Direction.ASC)
+                    .on("status", Sort.Direction.ASC)
+                    .on("name", Sort.Direction.ASC)
+                    .named("trips_owner_status_name"), true),
+            new RequiredIndex(PointDBO.class, "points", new Index()
+                    .on("tripId", Sort.Direction.ASC)
+                    .on("name", Sort.Direction.ASC)
+                    .named("points_trip_name"), true),
+            // Частичный индекс хранит только непосещённые точки: он маленький и сам худеет по ходу поездки
+            new RequiredIndex(PointDBO.class, "points", new Index()
+                    .on("tripId", Sort.Direction.ASC)
+                    .partial(PartialIndexFilter.of(Criteria.where("visited").is(false)))
+                    .named("points_trip_unvisited"), false),
+            // Непосещённые точки поездки рядом с пользователем: $nearSphere на каждое обновление геопозиции
+            new RequiredIndex(PointDBO.class, "points", new CompoundIndexDefinition(
+                    new Document("tripId", 1).append("location", "2dsphere"))
+                    .partial(PartialIndexFilter.of(Criteria.where("visited").is(false)))
+                    .named("points_trip_location_unvisited"), true),
+            // Маршруты к точке: нужен при удалении точки и при сборке маршрутов поездки одним запросом
+            new RequiredIndex(RouteDBO.class, "routes", new Index()
+                    .on("pointTo", Sort.Direction.ASC)
+                    .named("routes_point_to"), false),
+            new RequiredIndex(DialogSessionDBO.class, "dialog_sessions", new Index()
+                    .on("expiresAt", Sort.Direction.ASC)
+                    .expire(Duration.ZERO)
+                    .named("dialog_sessions_ttl"), false));
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final boolean requireForReadiness;
+    private final Map<String, String> errors = new ConcurrentHashMap<>();
+    private volatile IndexReport report = IndexReport.PENDING;
+
+    public IndexBootstrapper(ReactiveMongoTemplate mongoTemplate,
+                             @Value("${mongo.indexes.require-for-readiness:false}") boolean requireForReadiness) {
+        this.mongoTemplate = mongoTemplate;
+        this.requireForReadiness = requireForReadiness;
+    }
+
+    @PostConstruct
+    public void start() {
+        bootstrap().subscribe(
+                report -> {
+                    if (report.missing().isEmpty()) {
+                        logger.info("All {} indexes are in place", REQUIRED.size());
+                    } else {
+                        logger.warn("Missing indexes: {} (critical: {})", report.missing(), report.missingCritical());
+                    }
+                    if (!report.redundant().isEmpty()) {
+                        logger.warn("Redundant indexes, consider dropping: {}", report.redundant());
+                    }
+                },
+                e -> logger.error("Index bootstrap failed: {}", e.getMessage()));
+    }
+
+    public Mono<IndexReport> bootstrap() {
+        // Ошибка одного индекса (например, дубли chatId мешают unique) не должна останавливать остальные
+        return Flux.fromIterable(REQUIRED)
+                .flatMap(required -> mongoTemplate.indexOps(required.entity())
+                        .ensureIndex(required.index())
+                        .doOnNext(name -> errors.remove(required.name()))
+                        .onErrorResume(e -> {
+                            logger.error("Failed to create index {} on {}: {}",
+                                    required.name(), required.collection(), e.getMessage());
+                            errors.put(required.name(), e.getMessage());
+                            return Mono.empty();
+                        }), REQUIRED.size())
+                .then(verify());
+    }
+
+    public Mono<IndexReport> verify() {
+        Set<String> collections = new LinkedHashSet<>();
+        REQUIRED.forEach(required -> collections.add(required.collection()));
+        return Flux.fromIterable(collections)
+                .flatMap(collection -> mongoTemplate.indexOps(collection).getIndexInfo()
+                        .collectList()
+                        .map(existing -> Map.entry(collection, existing)), collections.size())
+                .collectMap(Map.Entry::getKey, Map.Entry::getValue)
+                .map(existing -> analyse(REQUIRED, existing, Map.copyOf(errors)))
+                .doOnNext(verified -> report = verified);
+    }
+
+    /**
+     * Последний отчёт; пока чего-то не хватает — перепроверяет, вдруг индекс достроили вручную.
+     */
+    public Mono<IndexReport> currentReport() {
+        IndexReport current = report;
+        if (current.verified() && current.missing().isEmpty()) {
+            return Mono.just(current);
+        }
+        return verify().onErrorReturn(current);
+    }
+
+    public boolean isReady(IndexReport report) {
+        return !requireForReadiness || (report.verified() && report.missingCritical().isEmpty());
+    }
+
+    static IndexReport analyse(List<RequiredIndex> required, Map<String, List<IndexInfo>> existing,
+                               Map<String, String> errors) {
+        List<String> missing = new ArrayList<>();
+        List<String> missingCritical = new ArrayList<>();
+        for (RequiredIndex index : required) {
+            // Сверяем по ключам, а не по имени: тот же индекс мог быть создан руками под другим именем
+            String keys = signature(index.keys());
+            boolean present = existing.getOrDefault(index.collection(), List.of()).stream()
+                    .anyMatch(info -> signature(info).equals(keys)
+                            && (info.getPartialFilterExpression() != null) == index.partial());
+            if (!present) {
+                missing.add(index.collection() + "." + index.name());
+                if (index.critical()) {
+                    missingCritical.add(index.collection() + "." + index.name());
+                }
+            }
+        }
+        List<String> redundant = new ArrayList<>();
+        existing.forEach((collection, infos) -> redundant.addAll(redundant(collection, infos)));
+        return new IndexReport(true, missing, missingCritical, redundant, errors);
+    }
+
+    /**
+     * Индекс, ключи которого — начало ключей другого индекса той же коллекции, запросам не нужен,
+     * а на каждой записи стоит денег. Уникальные, частичные и TTL-индексы не трогаем: у них свой смысл.
+     */
+    static List<String> redundant(String collection, List<IndexInfo> infos) {
+        List<String> redundant = new ArrayList<>();
+        for (IndexInfo candidate : infos) {
+            if ("_id_".equals(candidate.getName()) || candidate.isUnique()
+                    || candidate.getPartialFilterExpression() != null || candidate.getExpireAfter().isPresent()) {
+                continue;
+            }
+            String prefix = signature(candidate);
+            for (IndexInfo other : infos) {
+                if (other == candidate || other.getPartialFilterExpression() != null) {
+                    continue;
+                }
+                String keys = signature(other);
+                boolean covers = keys.startsWith(prefix + ",")
+                        // Полный дубль помечаем только один раз
+                        || (keys.equals(prefix) && other.getName().compareTo(candidate.getName()) < 0);
+                if (covers) {
+                    redundant.add(collection + "." + candidate.getName() + " (covered by " + other.getName() + ")");
+                    break;
+                }
+            }
+        }
+        return redundant;
+    }
+
+    private static String signature(Document keys) {
+        List<String> parts = new ArrayList<>();
+        keys.forEach((key, value) -> parts.add(key + ":" + (value instanceof Number number
+                ? (number.intValue() < 0 ? "-1" : "1")
+                : ("2d".equals(value) || "2dsphere".equals(value) ? "geo" : String.valueOf(value)))));
+        return String.join(",", parts);
+    }
+
+    private static String signature(IndexInfo info) {
+        List<String> parts = new ArrayList<>();
+        for (IndexField field : info.getIndexFields()) {
+            String kind;
+            if (field.isGeo()) {
+                kind = "geo";
+            } else if (field.isHashed()) {
+                kind = "hashed";
+            } else if (field.isText()) {
+                kind = "text";
+            } else {
+                kind = field.getDirection() == Sort.Direction.DESC ? "-1" : "1";
+            }
+            parts.add(field.getKey() + ":" + kind);
+        }
+        return String.join(",", parts);
+    }
+}
@@ -0,0 +1,53 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.List;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+import org.tripplanner.domain.Point;
+
+/**
+ * Документ points сразу в {@link Point}, без PointDBO и рефлексии. Только для чтения:
+ * пишем по-прежнему через MongoTemplate.
+ */
+public class PointCodec implements Codec<Point> {
+
+    @Override
+    public Point decode(BsonReader reader, DecoderContext decoderContext) {
+        Point point = new Point();
+        List<String> notes = null;
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            switch (reader.readName()) {
+                case "_id" -> {
+                    ObjectId id = BsonReads.objectId(reader);
+                    point.setId(id != null ? id.toHexString() : null);
+                }
+                case "name" -> point.setName(BsonReads.string(reader));
+                case "latitude" -> point.setLatitude(BsonReads.float64(reader));
+                case "longitude" -> point.setLongitude(BsonReads.float64(reader));
+                case "visited" -> point.setVisited(BsonReads.bool(reader));
+                case "notes" -> notes = BsonReads.strings(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        point.setNotes(notes);
+        return point;
+    }
+
+    @Override
+    public void encode(BsonWriter writer, Point value, EncoderContext encoderContext) {
+        throw new UnsupportedOperationException("PointCodec is read-only, write points through PointDAO");
+    }
+
+    @Override
+    public Class<Point> getEncoderClass() {
+        return Point.class;
+    }
+}
@@ -1,12 +1,17 @@
 package org.tripplanner.repositories.mongodb;
 
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
+import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.BasicQuery;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
@@ -21,13 +26,17 @@ import reactor.core.publisher.Mono;
 public class PointDAOImpl implements PointDAO {
     private static final Logger logger = LoggerFactory.getLogger(PointDAOImpl.class);
 
+    private static final String COLLECTION = "points";
+
     private final ReactiveMongoTemplate mongoTemplate;
     private final PointMapper pointMapper;
+    private final DomainReads domainReads;
 
     @Autowired
-    public PointDAOImpl(ReactiveMongoTemplate mongoTemplate, PointMapper pointMapper) {
+    public PointDAOImpl(ReactiveMongoTemplate mongoTemplate, PointMapper pointMapper, DomainReads domainReads) {
         this.mongoTemplate = mongoTemplate;
         this.pointMapper = pointMapper;
+        this.domainReads = domainReads;
     }
 
     @Override
@@ -48,16 +57,9 @@ public class PointDAOImpl implements PointDAO {
             ObjectId id = new ObjectId(pointId);
             Query query = new Query(Criteria.where("_id").is(id));
             Update update = new Update().set("visited", true);
-            return mongoTemplate.findAndModify(query, update, PointDBO.class)
-                    .flatMap(pointDBO -> {
-                        if (pointDBO == null) {
-                            logger.error("Point not found: id={}", pointId);
-                            return Mono.error(new RuntimeException("Точка не найдена"));
-                        }
-                        logger.info("Found point to mark as visited: id={}, name={}", 
-                            pointDBO.getId(), pointDBO.getName());
-                        return Mono.just(pointMapper.fromDbo(pointDBO));
-                    });
+            return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), PointDBO.class)
+                    .switchIfEmpty(Mono.error(new RuntimeException("Точка не найдена")))
+                    .map(pointMapper::fromDbo);
         } catch (IllegalArgumentException e) {
             logger.error("Invalid point ID format: {}", pointId);
             return Mono.error(new RuntimeException("Неверный формат ID точки"));
@@ -70,35 +72,85 @@ public class PointDAOImpl implements PointDAO {
         Query query = Query.query(Criteria.where("_id").is(new ObjectId(pointId)));
         Update update = new Update().push("notes", note);
 
-        return mongoTemplate.findAndModify(query, update, PointDBO.class)
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), PointDBO.class)
                 .map(pointMapper::fromDbo)
                 .doOnNext(p -> logger.info("Added note to point: id={}, name={}", p.getId(), p.getName()));
     }
 
     @Override
     public Mono<Point> getPoint(String pointId) {
-        logger.info("Getting point: id={}", pointId);
-        return mongoTemplate.findOne(
-                Query.query(Criteria.where("_id").is(new ObjectId(pointId))),
-                PointDBO.class
-        ).map(pointMapper::fromDbo)
-         .doOnNext(p -> logger.info("Retrieved point: id={}, name={}", p.getId(), p.getName()));
+        logger.debug("Getting point: id={}", pointId);
+        return domainReads.findOne(Query.query(Criteria.where("_id").is(new ObjectId(pointId))), Point.class, COLLECTION);
+    }
+
+    @Override
+    public Flux<Point> getPoints(Collection<String> pointIds) {
+        List<ObjectId> ids = pointIds.stream()
+                .filter(ObjectId::isValid)
+                .distinct()
+                .map(ObjectId::new)
+                .toList();
+        if (ids.isEmpty()) {
+            return Flux.empty();
+        }
+        return domainReads.find(Query.query(Criteria.where("_id").in(ids)), Point.class, COLLECTION);
     }
 
     @Override
     public Flux<Point> getPointsByTripId(String tripId) {
-        logger.info("Getting points for trip: id={}", tripId);
+        logger.debug("Getting points for trip: id={}", tripId);
         try {
             ObjectId tripObjectId = new ObjectId(tripId);
             Query query = new Query(Criteria.where("tripId").is(tripObjectId));
-            return mongoTemplate.find(query, PointDBO.class)
-                    .doOnNext(dbo -> logger.info("Found point in DB: id={}, name={}", 
-                        dbo.getId(), dbo.getName()))
-                    .map(pointMapper::fromDbo)
-                    .doOnNext(p -> logger.info("Mapped point: id={}, name={}", p.getId(), p.getName()));
+            return domainReads.find(query, Point.class, COLLECTION);
         } catch (IllegalArgumentException e) {
             logger.error("Invalid trip ID format: {}", tripId);
             return Flux.error(new RuntimeException("Неверный формат ID поездки"));
         }
     }
+
+    @Override
+    public Mono<Point> findByTripAndName(String tripId, String name) {
+        if (!ObjectId.isValid(tripId)) {
+            logger.error("Invalid trip ID format: {}", tripId);
+            return Mono.error(new RuntimeException("Неверный формат ID поездки"));
+        }
+        return domainReads.findOne(byTripAndName(new ObjectId(tripId), name), Point.class, COLLECTION);
+    }
+
+    @Override
+    public Flux<Point> findUnvisitedByTrip(String tripId) {
+        if (!ObjectId.isValid(tripId)) {
+            logger.error("Invalid trip ID format: {}", tripId);
+            return Flux.error(new RuntimeException("Неверный формат ID поездки"));
+        }
+        return domainReads.find(unvisitedByTrip(new ObjectId(tripId)), Point.class, COLLECTION);
+    }
+
+    // Равенство по обоим полям индекса points_trip_name — одна точка без сканирования поездки
+    static Query byTripAndName(ObjectId tripId, String name) {
+        return Query.query(Criteria.where("tripId").is(tripId).and("name").is(name));
+    }
+
+    // visited=false в запросе обязателен, иначе планировщик не возьмёт частичный индекс
+    static Query unvisitedByTrip(ObjectId tripId) {
+        return Query.query(Criteria.where("tripId").is(tripId).and("visited").is(false));
+    }
+
+    @Override
+    public Flux<Point> findUnvisitedNear(String tripId, double latitude, double longitude, double radiusMeters) {
+        if (!ObjectId.isValid(tripId)) {
+            logger.error("Invalid trip ID format: {}", tripId);
+            return Flux.error(new RuntimeException("Неверный формат ID поездки"));
+        }
+        // Фильтр собран руками: DomainReads не прогоняет запрос через QueryMapper, а GeoJsonPoint
+        // в Criteria превращается в $geometry только там. С GeoJSON $maxDistance — в метрах.
+        Document near = new Document("$nearSphere", new Document("$geometry", new Document("type", "Point")
+                .append("coordinates", List.of(longitude, latitude)))
+                .append("$maxDistance", radiusMeters));
+        Document filter = new Document("tripId", new ObjectId(tripId))
+                .append("visited", false)
+                .append("location", near);
+        return domainReads.find(new BasicQuery(filter), Point.class, COLLECTION);
+    }
 }
@@ -4,6 +4,7 @@ import java.util.List;
 
 import org.bson.types.ObjectId;
 import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
 import org.springframework.data.mongodb.core.mapping.Document;
 
 @Document(collection = "points")
@@ -15,6 +16,8 @@ public class PointDBO {
     private String name;
     private double latitude;
     private double longitude;
+    // Те же координаты в GeoJSON ([долгота, широта]) под 2dsphere-индекс; latitude/longitude оставлены для чтения
+    private GeoJsonPoint location;
     private boolean visited;
     private List<String> notes;
     private ObjectId tripId;
@@ -26,6 +29,7 @@ public class PointDBO {
         this.name = name;
         this.latitude = latitude;
         this.longitude = longitude;
+        this.location = new GeoJsonPoint(longitude, latitude);
         this.visited = visited;
         this.notes = notes;
     }
@@ -63,6 +67,14 @@ public class PointDBO {
         this.longitude = longitude;
     }
 
+    public GeoJsonPoint getLocation() {
+        return location;
+    }
+
+    public void setLocation(GeoJsonPoint location) {
+        this.location = location;
+    }
+
     public boolean isVisited() {
         return visited;
     }
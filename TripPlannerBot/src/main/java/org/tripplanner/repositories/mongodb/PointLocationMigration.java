@@ -0,0 +1,54 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.List;
+
+import org.bson.Document;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Mono;
+
+/**
+ * Проставляет GeoJSON-поле location точкам, созданным до его появления. Один updateMany
+ * с конвейером: координаты берутся из latitude/longitude самого документа на сервере, без
+ * выгрузки точек в бота. Трогает только документы без location, так что повторный запуск
+ * ничего не меняет. Точки без location 2dsphere-индекс просто не видит, поэтому до конца
+ * миграции такие точки не находятся поиском рядом, но и ничего не ломают.
+ */
+@Component
+public class PointLocationMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(PointLocationMigration.class);
+    private static final String COLLECTION = "points";
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    public PointLocationMigration(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    @PostConstruct
+    public void start() {
+        migrate().subscribe(
+                migrated -> {
+                    if (migrated > 0) {
+                        logger.info("Set GeoJSON location on {} legacy points", migrated);
+                    }
+                },
+                e -> logger.error("Point location migration failed, will retry on next start: {}", e.getMessage()));
+    }
+
+    public Mono<Long> migrate() {
+        Document filter = new Document("location", new Document("$exists", false))
+                .append("latitude", new Document("$type", "number"))
+                .append("longitude", new Document("$type", "number"));
+        Document set = new Document("$set", new Document("location", new Document("type", "Point")
+                .append("coordinates", List.of("$longitude", "$latitude"))));
+        return mongoTemplate.getCollection(COLLECTION)
+                .flatMap(points -> Mono.from(points.updateMany(filter, List.of(set))))
+                .map(result -> result.getModifiedCount());
+    }
+}
@@ -3,6 +3,7 @@ package org.tripplanner.repositories.mongodb;
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.geo.GeoJsonPoint;
 import org.springframework.stereotype.Component;
 import org.tripplanner.domain.Point;
 
@@ -16,8 +17,6 @@ public class PointMapper {
             return null;
         }
 
-        logger.info("Mapping point from DBO: id={}, name={}, visited={}", 
-            dbo.getId(), dbo.getName(), dbo.isVisited());
 
         Point point = new Point(
                 dbo.getName(),
@@ -28,8 +27,10 @@ public class PointMapper {
         );
         point.setId(dbo.getId().toHexString());
         
-        logger.info("Mapped point: id={}, name={}, visited={}", 
-            point.getId(), point.getName(), point.isVisited());
+        // varargs-массив и боксинг — только если trace включён
+        if (logger.isTraceEnabled()) {
+            logger.trace("Mapped point: id={}, name={}, visited={}", point.getId(), point.getName(), point.isVisited());
+        }
         return point;
     }
 
@@ -39,8 +40,6 @@ public class PointMapper {
             return null;
         }
 
-        logger.info("Mapping point to DBO: id={}, name={}, visited={}", 
-            point.getId(), point.getName(), point.isVisited());
 
         PointDBO dbo = new PointDBO();
         if (point.getId() != null) {
@@ -51,11 +50,13 @@ public class PointMapper {
         dbo.setName(point.getName());
         dbo.setLatitude(point.getLatitude());
         dbo.setLongitude(point.getLongitude());
+        dbo.setLocation(new GeoJsonPoint(point.getLongitude(), point.getLatitude()));
         dbo.setVisited(point.isVisited());
         dbo.setNotes(point.getNotes());
 
-        logger.info("Mapped to DBO: id={}, name={}, visited={}", 
-            dbo.getId(), dbo.getName(), dbo.isVisited());
+        if (logger.isTraceEnabled()) {
+            logger.trace("Mapped to DBO: id={}, name={}, visited={}", dbo.getId(), dbo.getName(), dbo.isVisited());
+        }
         return dbo;
     }
 }
@@ -1,6 +1,10 @@
 package org.tripplanner.repositories.mongodb;
 
 import java.time.LocalDate;
+import java.util.List;
+import java.util.Objects;
+import java.util.Optional;
+import java.util.function.Function;
 
 import org.bson.types.ObjectId;
 import org.springframework.beans.factory.annotation.Autowired;
@@ -8,9 +12,12 @@ import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.stereotype.Repository;
+import org.tripplanner.domain.Point;
 import org.tripplanner.domain.Route;
+import org.tripplanner.repositories.PointDAO;
 import org.tripplanner.repositories.RouteDAO;
 
+import reactor.core.publisher.Flux;
 import reactor.core.publisher.Mono;
 
 @Repository
@@ -18,27 +25,30 @@ public class RouteDAOImpl implements RouteDAO {
 
     private final ReactiveMongoTemplate mongoTemplate;
     private final RouteMapper routeMapper;
+    private final PointDAO pointDAO;
 
     @Autowired
-    public RouteDAOImpl(ReactiveMongoTemplate mongoTemplate, RouteMapper routeMapper) {
+    public RouteDAOImpl(ReactiveMongoTemplate mongoTemplate, RouteMapper routeMapper, PointDAO pointDAO) {
         this.mongoTemplate = mongoTemplate;
         this.routeMapper = routeMapper;
+        this.pointDAO = pointDAO;
     }
 
     @Override
     public Mono<Route> createRoute(String pointToId, String startDate, String endDate) {
         ObjectId pointTo = new ObjectId(pointToId);
-        Route route = new Route(LocalDate.parse(startDate), LocalDate.parse(endDate), null); // pointTo будет добавлен маппером
+        Route route = new Route(LocalDate.parse(startDate), LocalDate.parse(endDate), null);
         RouteDBO dbo = routeMapper.toDbo(route, pointTo);
 
-        return mongoTemplate.insert(dbo)
-                .map(routeMapper::fromDbo);
+        // Точку читаем параллельно со вставкой: она нужна только для ответа
+        return Mono.zip(mongoTemplate.insert(dbo), pointTo(dbo))
+                .map(saved -> routeMapper.fromDbo(saved.getT1(), saved.getT2().orElse(null)));
     }
 
     @Override
     public Mono<Route> findById(String routeId) {
         return mongoTemplate.findById(new ObjectId(routeId), RouteDBO.class)
-                .map(routeMapper::fromDbo);
+                .flatMap(this::hydrate);
     }
 
     @Override
@@ -46,6 +56,48 @@ public class RouteDAOImpl implements RouteDAO {
         return mongoTemplate.findOne(
                 Query.query(Criteria.where("_id").is(new ObjectId(routeId))),
                 RouteDBO.class
-        ).map(routeMapper::fromDbo);
+        ).flatMap(this::hydrate);
+    }
+
+    @Override
+    public Flux<Route> getTripRoutes(String tripId) {
+        if (!ObjectId.isValid(tripId)) {
+            return Flux.empty();
+        }
+        Query tripQuery = Query.query(Criteria.where("_id").is(new ObjectId(tripId)));
+        tripQuery.fields().include("routes");
+        // Три запроса на поездку вместо 1 + 2N: маршруты и их точки — каждые одним $in
+        return mongoTemplate.findOne(tripQuery, TripDBO.class)
+                .mapNotNull(TripDBO::getRoutes)
+                .filter(routeIds -> !routeIds.isEmpty())
+                .flatMapMany(routeIds -> mongoTemplate
+                        .find(Query.query(Criteria.where("_id").in(routeIds)), RouteDBO.class)
+                        .collectList()
+                        .flatMapMany(dbos -> pointDAO.getPoints(pointIds(dbos))
+                                .collectMap(Point::getId, Function.identity())
+                                .flatMapIterable(points -> routeMapper.fromDbos(routeIds, dbos, points))));
+    }
+
+    private Mono<Route> hydrate(RouteDBO dbo) {
+        return pointTo(dbo).map(point -> routeMapper.fromDbo(dbo, point.orElse(null)));
+    }
+
+    // Маршрут к удалённой точке всё равно отдаём, просто без pointTo
+    private Mono<Optional<Point>> pointTo(RouteDBO dbo) {
+        if (dbo.getPointTo() == null) {
+            return Mono.just(Optional.empty());
+        }
+        return pointDAO.getPoint(dbo.getPointTo().toHexString())
+                .map(Optional::of)
+                .defaultIfEmpty(Optional.empty());
+    }
+
+    private static List<String> pointIds(List<RouteDBO> dbos) {
+        return dbos.stream()
+                .map(RouteDBO::getPointTo)
+                .filter(Objects::nonNull)
+                .map(ObjectId::toHexString)
+                .distinct()
+                .toList();
     }
 }
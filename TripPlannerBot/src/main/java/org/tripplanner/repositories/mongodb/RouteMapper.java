@@ -1,42 +1,56 @@
 package org.tripplanner.repositories.mongodb;
 
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
 import org.bson.types.ObjectId;
-import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.stereotype.Component;
+import org.tripplanner.domain.Point;
 import org.tripplanner.domain.Route;
-import org.tripplanner.repositories.PointDAO;
 
+/**
+ * Чистый маппер: точку назначения загружает DAO, сюда она приходит готовой.
+ */
 @Component
 public class RouteMapper {
 
-    private final PointDAO pointDAO;
-
-    @Autowired
-    public RouteMapper(PointDAO pointDAO) {
-        this.pointDAO = pointDAO;
-    }
-
-    public Route fromDbo(RouteDBO dbo) {
+    public Route fromDbo(RouteDBO dbo, Point pointTo) {
         if (dbo == null) return null;
 
-        Route route = new Route(
-                dbo.getStartDate(),
-                dbo.getEndDate(),
-                null
-        );
-
-        if (dbo.getPointTo() != null) {
-            return pointDAO.getPoint(dbo.getPointTo().toHexString())
-                    .map(point -> {
-                        route.setPointTo(point);
-                        return route;
-                    })
-                    .block();
+        Route route = new Route(dbo.getStartDate(), dbo.getEndDate(), pointTo);
+        if (dbo.getId() != null) {
+            route.setId(dbo.getId().toHexString());
         }
-
         return route;
     }
 
+    /**
+     * Маршруты в порядке order с точками из pointsById. Id без документа пропускаются,
+     * маршрут к удалённой точке остаётся с pointTo == null.
+     */
+    public List<Route> fromDbos(Collection<ObjectId> order, Collection<RouteDBO> dbos, Map<String, Point> pointsById) {
+        if (order == null || dbos == null || dbos.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<ObjectId, RouteDBO> byId = new HashMap<>(dbos.size() * 2);
+        for (RouteDBO dbo : dbos) {
+            byId.put(dbo.getId(), dbo);
+        }
+        List<Route> routes = new ArrayList<>(byId.size());
+        for (ObjectId id : order) {
+            RouteDBO dbo = byId.get(id);
+            if (dbo != null) {
+                Point pointTo = dbo.getPointTo() != null ? pointsById.get(dbo.getPointTo().toHexString()) : null;
+                routes.add(fromDbo(dbo, pointTo));
+            }
+        }
+        return routes;
+    }
+
     public RouteDBO toDbo(Route route, ObjectId pointToId) {
         if (route == null) return null;
 
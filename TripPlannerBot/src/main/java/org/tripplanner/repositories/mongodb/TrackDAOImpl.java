@@ -0,0 +1,103 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.time.Instant;
+import java.util.Date;
+import java.util.List;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.index.Index;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.stereotype.Repository;
+import org.tripplanner.domain.TrackSegment;
+import org.tripplanner.repositories.TrackDAO;
+
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+@Repository
+public class TrackDAOImpl implements TrackDAO {
+
+    private static final Logger logger = LoggerFactory.getLogger(TrackDAOImpl.class);
+    private static final Sort BY_TIME = Sort.by("hour", "start");
+
+    private final ReactiveMongoTemplate mongoTemplate;
+
+    @Autowired
+    public TrackDAOImpl(ReactiveMongoTemplate mongoTemplate) {
+        this.mongoTemplate = mongoTemplate;
+    }
+
+    // Time-series коллекцию нужно создать явно: первая вставка или ensureIndex создали бы обычную.
+    // Поэтому её индексы живут здесь, а не в IndexBootstrapper
+    @PostConstruct
+    public void start() {
+        mongoTemplate.collectionExists(TrackSegmentDBO.class)
+                .flatMap(exists -> exists ? Mono.empty() : mongoTemplate.createCollection(TrackSegmentDBO.class)
+                        .doOnNext(created -> logger.info("Created time-series collection trip_tracks")))
+                .then(Mono.when(
+                        mongoTemplate.indexOps(TrackSegmentDBO.class).ensureIndex(new Index()
+                                .on("meta.tripId", Sort.Direction.ASC)
+                                .on("hour", Sort.Direction.ASC)
+                                .named("trip_tracks_trip_hour")),
+                        mongoTemplate.indexOps(TrackSegmentDBO.class).ensureIndex(new Index()
+                                .on("meta.chatId", Sort.Direction.ASC)
+                                .on("hour", Sort.Direction.ASC)
+                                .named("trip_tracks_chat_hour"))))
+                .subscribe(null, e -> logger.error("Failed to prepare trip_tracks: {}", e.getMessage()));
+    }
+
+    @Override
+    public Mono<Void> insertSegments(List<TrackSegment> segments) {
+        if (segments.isEmpty()) {
+            return Mono.empty();
+        }
+        return mongoTemplate.insert(segments.stream().map(TrackDAOImpl::toDbo).toList(), TrackSegmentDBO.class)
+                .then();
+    }
+
+    @Override
+    public Flux<TrackSegment> findByTrip(String tripId) {
+        Query query = Query.query(Criteria.where("meta.tripId").is(tripId)).with(BY_TIME);
+        return mongoTemplate.find(query, TrackSegmentDBO.class)
+                .map(TrackDAOImpl::fromDbo)
+                .onErrorResume(e -> {
+                    logger.error("Error loading track of trip {}: {}", tripId, e.getMessage());
+                    return Flux.error(e);
+                });
+    }
+
+    @Override
+    public Flux<TrackSegment> findByChat(long chatId, Instant from, Instant to) {
+        Query query = Query.query(Criteria.where("meta.chatId").is(chatId)
+                        .and("hour").gte(Date.from(from)).lt(Date.from(to)))
+                .with(BY_TIME);
+        return mongoTemplate.find(query, TrackSegmentDBO.class)
+                .map(TrackDAOImpl::fromDbo)
+                .onErrorResume(e -> {
+                    logger.error("Error loading tracks of chat {}: {}", chatId, e.getMessage());
+                    return Flux.error(e);
+                });
+    }
+
+    private static TrackSegmentDBO toDbo(TrackSegment segment) {
+        TrackSegmentDBO dbo = new TrackSegmentDBO();
+        dbo.setHour(Date.from(segment.hour()));
+        dbo.setMeta(new TrackSegmentDBO.Meta(segment.tripId(), segment.chatId()));
+        dbo.setStart(Date.from(segment.start()));
+        dbo.setEnd(Date.from(segment.end()));
+        dbo.setCount(segment.count());
+        dbo.setPoints(segment.points());
+        return dbo;
+    }
+
+    private static TrackSegment fromDbo(TrackSegmentDBO dbo) {
+        return new TrackSegment(dbo.getMeta().getTripId(), dbo.getMeta().getChatId(), dbo.getHour().toInstant(),
+                dbo.getStart().toInstant(), dbo.getEnd().toInstant(), dbo.getCount(), dbo.getPoints());
+    }
+}
@@ -0,0 +1,116 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.Date;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+import org.springframework.data.mongodb.core.mapping.Document;
+import org.springframework.data.mongodb.core.mapping.TimeSeries;
+import org.springframework.data.mongodb.core.timeseries.Granularity;
+
+/**
+ * Кусок трека за час в time-series коллекции: hour — поле времени, meta — поездка и владелец.
+ * Mongo сама складывает такие документы в бакеты по meta, а мы кладём в каждый документ
+ * уже сжатый час трека, так что на поездку в час приходится один документ, а не один на точку.
+ */
+@Document(collection = "trip_tracks")
+@TimeSeries(collection = "trip_tracks", timeField = "hour", metaField = "meta", granularity = Granularity.HOURS)
+public class TrackSegmentDBO {
+
+    @Id
+    private ObjectId id;
+
+    private Date hour;
+    private Meta meta;
+    private Date start;
+    private Date end;
+    private int count;
+    private byte[] points;
+
+    public TrackSegmentDBO() {}
+
+    public static class Meta {
+
+        private String tripId;
+        private Long chatId;
+
+        public Meta() {}
+
+        public Meta(String tripId, Long chatId) {
+            this.tripId = tripId;
+            this.chatId = chatId;
+        }
+
+        public String getTripId() {
+            return tripId;
+        }
+
+        public void setTripId(String tripId) {
+            this.tripId = tripId;
+        }
+
+        public Long getChatId() {
+            return chatId;
+        }
+
+        public void setChatId(Long chatId) {
+            this.chatId = chatId;
+        }
+    }
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public void setId(ObjectId id) {
+        this.id = id;
+    }
+
+    public Date getHour() {
+        return hour;
+    }
+
+    public void setHour(Date hour) {
+        this.hour = hour;
+    }
+
+    public Meta getMeta() {
+        return meta;
+    }
+
+    public void setMeta(Meta meta) {
+        this.meta = meta;
+    }
+
+    public Date getStart() {
+        return start;
+    }
+
+    public void setStart(Date start) {
+        this.start = start;
+    }
+
+    public Date getEnd() {
+        return end;
+    }
+
+    public void setEnd(Date end) {
+        this.end = end;
+    }
+
+    public int getCount() {
+        return count;
+    }
+
+    public void setCount(int count) {
+        this.count = count;
+    }
+
+    public byte[] getPoints() {
+        return points;
+    }
+
+    public void setPoints(byte[] points) {
+        this.points = points;
+    }
+}
@@ -0,0 +1,83 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+import org.tripplanner.domain.Point;
+import org.tripplanner.domain.Route;
+import org.tripplanner.domain.Trip;
+
+/**
+ * Документ trips сразу в {@link Trip} — то же, что TripMapper.fromDbo(TripDBO), но без
+ * промежуточного DBO. Точки не загружаются, маршруты — заглушки с id.
+ */
+public class TripCodec implements Codec<Trip> {
+
+    @Override
+    public Trip decode(BsonReader reader, DecoderContext decoderContext) {
+        Trip trip = new Trip();
+        List<String> notes = null;
+        List<ObjectId> routes = null;
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            switch (reader.readName()) {
+                case "_id" -> {
+                    ObjectId id = BsonReads.objectId(reader);
+                    trip.setId(id != null ? id.toHexString() : null);
+                }
+                case "name" -> trip.setName(BsonReads.string(reader));
+                case "startDate" -> trip.setStartDate(BsonReads.localDate(reader));
+                case "endDate" -> trip.setEndDate(BsonReads.localDate(reader));
+                case "rating" -> trip.setRating(BsonReads.int32(reader));
+                case "status" -> trip.setStatus(BsonReads.string(reader));
+                case "startPoint" -> {
+                    ObjectId startPoint = BsonReads.objectId(reader);
+                    if (startPoint != null) {
+                        Point point = new Point();
+                        point.setId(startPoint.toHexString());
+                        trip.setStartPoint(point);
+                    }
+                }
+                case "routes" -> routes = BsonReads.objectIds(reader);
+                case "notes" -> notes = BsonReads.strings(reader);
+                default -> reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        trip.setNotes(notes != null ? notes : Collections.emptyList());
+        trip.setPoints(Collections.emptyList());
+        trip.setRoutes(stubs(routes));
+        return trip;
+    }
+
+    static List<Route> stubs(List<ObjectId> routeIds) {
+        if (routeIds == null || routeIds.isEmpty()) {
+            return Collections.emptyList();
+        }
+        List<Route> routes = new ArrayList<>(routeIds.size());
+        for (ObjectId routeId : routeIds) {
+            Route route = new Route();
+            route.setId(routeId.toHexString());
+            routes.add(route);
+        }
+        return routes;
+    }
+
+    @Override
+    public void encode(BsonWriter writer, Trip value, EncoderContext encoderContext) {
+        throw new UnsupportedOperationException("TripCodec is read-only, write trips through TripDAO");
+    }
+
+    @Override
+    public Class<Trip> getEncoderClass() {
+        return Trip.class;
+    }
+}
@@ -1,12 +1,17 @@
 package org.tripplanner.repositories.mongodb;
 
 import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.List;
 
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.domain.Sort;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
@@ -14,6 +19,7 @@ import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Component;
 import org.tripplanner.domain.Point;
 import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.TripStatus;
 import org.tripplanner.repositories.PointDAO;
 import org.tripplanner.repositories.RouteDAO;
 import org.tripplanner.repositories.TripDAO;
@@ -30,34 +36,42 @@ public class TripDAOImpl implements TripDAO {
     private final RouteMapper routeMapper;
     private final PointDAO pointDAO;
     private final RouteDAO routeDAO;
+    private final DomainReads domainReads;
+    private final TripOwnerMigration ownerMigration;
     private static final Logger logger = LoggerFactory.getLogger(TripDAOImpl.class);
+    private static final String COLLECTION = "trips";
+    private static final String[] LIFECYCLE_FIELDS = {"name", "startDate", "endDate", "rating", "status", "ownerChatId", "startPoint"};
     @Autowired
     public TripDAOImpl(ReactiveMongoTemplate mongoTemplate,
                        TripMapper tripMapper,
                        PointMapper pointMapper, RouteMapper routeMapper,
-                       PointDAO pointDAO, RouteDAO routeDAO) {
+                       PointDAO pointDAO, RouteDAO routeDAO, DomainReads domainReads,
+                       TripOwnerMigration ownerMigration) {
         this.mongoTemplate = mongoTemplate;
         this.tripMapper = tripMapper;
         this.pointMapper = pointMapper;
         this.routeMapper = routeMapper;
         this.pointDAO = pointDAO;
         this.routeDAO = routeDAO;
+        this.domainReads = domainReads;
+        this.ownerMigration = ownerMigration;
     }
 
-
     @Override
     public Mono<Trip> createTrip(Long chatId, String name, LocalDate startDate, LocalDate endDate) {
         Trip trip = new Trip(name, startDate, endDate, 0, null, Collections.emptyList(), Collections.emptyList());
         TripDBO dbo = tripMapper.toDbo(trip);
+        dbo.setOwnerChatId(chatId);
+        dbo.setStatus(TripStatus.PLANNED.name());
         return mongoTemplate.insert(dbo)
-                .doOnNext(savedTrip -> System.out.println("Created trip with ID: " + savedTrip.getId()))
+                .doOnNext(savedTrip -> logger.debug("Created trip {} for chat {}", savedTrip.getId(), chatId))
                 .flatMap(savedTrip -> {
                     // Update user's plannedTrips list
                     Query userQuery = Query.query(Criteria.where("chatId").is(chatId));
                     Update userUpdate = new Update().addToSet("plannedTrips", savedTrip.getId());
                     return mongoTemplate.findAndModify(userQuery, userUpdate, UserDBO.class)
-                            .doOnNext(user -> System.out.println("Updated user's planned trips. New count: " + 
-                                    (user.getPlannedTrips() != null ? user.getPlannedTrips().size() : 0)))
+                            .doOnNext(user -> logger.debug("Updated planned trips of chat {}, count: {}", chatId,
+                                    user.getPlannedTrips() != null ? user.getPlannedTrips().size() : 0))
                             .switchIfEmpty(Mono.error(new RuntimeException("User not found")))
                             .thenReturn(tripMapper.fromDbo(savedTrip));
                 });
@@ -72,8 +86,7 @@ public class TripDAOImpl implements TripDAO {
         Query query = Query.query(Criteria.where("_id").is(tripObjectId));
         Update update = new Update().addToSet("points", pointObjectId);
 
-        return mongoTemplate.findAndModify(query, update, TripDBO.class)
-                .map(tripMapper::fromDbo);
+        return modify(query, update);
         } catch (IllegalArgumentException e) {
             return Mono.error(new IllegalArgumentException("Invalid ObjectId format: " + e.getMessage()));
         }
@@ -105,8 +118,7 @@ public class TripDAOImpl implements TripDAO {
         Query query = Query.query(Criteria.where("_id").is(tripObjectId));
         Update update = new Update().addToSet("routes", routeObjectId);
 
-        return mongoTemplate.findAndModify(query, update, TripDBO.class)
-                .map(tripMapper::fromDbo);
+        return modify(query, update);
     }
 
 
@@ -121,8 +133,7 @@ public class TripDAOImpl implements TripDAO {
                     }
 
                     Query query = Query.query(Criteria.where("_id").in(trip.getPoints()));
-                    return mongoTemplate.find(query, PointDBO.class)
-                            .map(pointMapper::fromDbo);
+                    return domainReads.find(query, Point.class, "points");
                 });
     }
 
@@ -134,32 +145,76 @@ public class TripDAOImpl implements TripDAO {
         Query query = Query.query(Criteria.where("_id").is(tripObjectId));
         Update update = new Update().set("rating", rating);
 
-        return mongoTemplate.findAndModify(query, update, TripDBO.class)
-                .map(tripMapper::fromDbo);
+        return modify(query, update);
     }
 
 
     @Override
     public Mono<Trip> getTrip(String tripId) {
-        System.out.println("Looking for trip with ID: " + tripId);
-        return mongoTemplate.findOne(
-                        Query.query(Criteria.where("_id").is(new ObjectId(tripId))),
-                        TripDBO.class
-                )
-                .doOnNext(trip -> System.out.println("Found trip in DB: \"" + trip.getName() + "\" with ID: " + trip.getId()))
+        return domainReads.findOne(Query.query(Criteria.where("_id").is(new ObjectId(tripId))), Trip.class, COLLECTION)
                 .switchIfEmpty(Mono.error(new RuntimeException("Trip not found with ID: " + tripId)))
-                .map(trip -> {
-                    Trip mappedTrip = tripMapper.fromDbo(trip);
-                    System.out.println("Successfully mapped trip: " + mappedTrip.getName() + " with ID: " + mappedTrip.getId());
-                    return mappedTrip;
-                })
-                .doOnError(e -> System.out.println("Error in getTrip: " + e.getMessage()));
+                .doOnError(e -> logger.debug("Error in getTrip {}: {}", tripId, e.getMessage()));
+    }
+
+    @Override
+    public Flux<Trip> getTrips(Collection<ObjectId> tripIds) {
+        if (tripIds == null || tripIds.isEmpty()) {
+            return Flux.empty();
+        }
+        return domainReads.find(Query.query(Criteria.where("_id").in(tripIds)), Trip.class, COLLECTION)
+                .collectList()
+                .flatMapIterable(found -> tripMapper.inOrder(tripIds, found));
+    }
+
+    @Override
+    public Mono<Trip> findByOwnerAndName(Long chatId, String name, Collection<TripStatus> statuses) {
+        Query query = Query.query(Criteria.where("ownerChatId").is(chatId)
+                        .and("status").in(statuses.stream().map(TripStatus::name).toList())
+                        .and("name").is(name))
+                .with(Sort.by(Sort.Direction.DESC, "_id"));
+        Mono<Trip> found = domainReads.findOne(query, Trip.class, COLLECTION);
+        if (ownerMigration.isComplete()) {
+            return found;
+        }
+        // Миграция ещё идёт: у старых поездок нет ownerChatId, ищем по спискам пользователя
+        return found.switchIfEmpty(Mono.defer(() -> findLegacyByName(chatId, name, statuses)));
+    }
+
+    private Mono<Trip> findLegacyByName(Long chatId, String name, Collection<TripStatus> statuses) {
+        Query userQuery = Query.query(Criteria.where("chatId").is(chatId));
+        userQuery.fields().include("plannedTrips", "currentTrips", "tripHistory");
+        return mongoTemplate.findOne(userQuery, UserDBO.class)
+                .flatMap(user -> {
+                    List<ObjectId> tripIds = legacyTripIds(user, statuses);
+                    if (tripIds.isEmpty()) {
+                        return Mono.empty();
+                    }
+                    Query query = Query.query(Criteria.where("_id").in(tripIds)
+                                    .and("ownerChatId").exists(false)
+                                    .and("name").is(name))
+                            .with(Sort.by(Sort.Direction.DESC, "_id"));
+                    return domainReads.findOne(query, Trip.class, COLLECTION);
+                });
+    }
+
+    // Статус старой поездки — список пользователя, в котором она лежит
+    static List<ObjectId> legacyTripIds(UserDBO user, Collection<TripStatus> statuses) {
+        List<ObjectId> ids = new ArrayList<>();
+        if (statuses.contains(TripStatus.PLANNED) && user.getPlannedTrips() != null) {
+            ids.addAll(user.getPlannedTrips());
+        }
+        if (statuses.contains(TripStatus.ONGOING) && user.getCurrentTrips() != null) {
+            ids.addAll(user.getCurrentTrips());
+        }
+        if (statuses.contains(TripStatus.FINISHED) && user.getTripHistory() != null) {
+            ids.addAll(user.getTripHistory());
+        }
+        return ids;
     }
 
     @Override
     public Flux<Trip> getAllTrips() {
-        return mongoTemplate.findAll(TripDBO.class)
-                .map(tripMapper::fromDbo);
+        return domainReads.find(new Query(), Trip.class, COLLECTION);
     }
 
     public Mono<Trip> addNoteToTrip(String tripId, String note) {
@@ -168,9 +223,8 @@ public class TripDAOImpl implements TripDAO {
             Query query = new Query(Criteria.where("_id").is(id));
             Update update = new Update().push("notes", note);
             
-            return mongoTemplate.findAndModify(query, update, TripDBO.class)
+            return modify(query, update)
                     .switchIfEmpty(Mono.error(new RuntimeException("Trip not found with ID: " + tripId)))
-                    .map(tripMapper::fromDbo)
                     .onErrorResume(e -> {
                         logger.error("Error adding note to trip {}: {}", tripId, e.getMessage());
                         return Mono.error(e);
@@ -187,25 +241,9 @@ public class TripDAOImpl implements TripDAO {
             ObjectId id = new ObjectId(tripId);
             Query query = new Query(Criteria.where("_id").is(id));
             
-            // Сначала получаем текущую поездку
-            return mongoTemplate.findOne(query, TripDBO.class)
+            // Меняется только status; раньше здесь читали поездку и переписывали все её поля
+            return modify(query, new Update().set("status", status))
                     .switchIfEmpty(Mono.error(new RuntimeException("Trip not found with ID: " + tripId)))
-                    .flatMap(tripDBO -> {
-                        // Обновляем только статус, сохраняя все остальные данные
-                        Update update = new Update()
-                                .set("status", status)
-                                .set("name", tripDBO.getName())
-                                .set("startDate", tripDBO.getStartDate())
-                                .set("endDate", tripDBO.getEndDate())
-                                .set("rating", tripDBO.getRating())
-                                .set("notes", tripDBO.getNotes())
-                                .set("points", tripDBO.getPoints())
-                                .set("routes", tripDBO.getRoutes())
-                                .set("startPoint", tripDBO.getStartPoint());
-
-                        return mongoTemplate.findAndModify(query, update, TripDBO.class)
-                                .map(tripMapper::fromDbo);
-                    })
                     .onErrorResume(e -> {
                         logger.error("Error updating trip status for trip {}: {}", tripId, e.getMessage());
                         return Mono.error(e);
@@ -222,22 +260,24 @@ public class TripDAOImpl implements TripDAO {
             ObjectId tripObjectId = new ObjectId(tripId);
             ObjectId pointObjectId = new ObjectId(pointId);
 
-            // First get the point to mark it as visited
-            return mongoTemplate.findById(pointObjectId, PointDBO.class)
+            // Точка должна принадлежать поездке — это условие самого обновления, без предварительного чтения
+            Query query = Query.query(Criteria.where("_id").is(pointObjectId).and("tripId").is(tripObjectId));
+            return mongoTemplate.findAndModify(query, new Update().set("visited", true),
+                            FindAndModifyOptions.options().returnNew(true), PointDBO.class)
                     .switchIfEmpty(Mono.error(new RuntimeException("Point not found with ID: " + pointId)))
-                    .flatMap(pointDBO -> {
-                        // Update the point's visited status
-                        Query pointQuery = Query.query(Criteria.where("_id").is(pointObjectId));
-                        Update pointUpdate = new Update().set("visited", true);
-                        
-                        return mongoTemplate.findAndModify(pointQuery, pointUpdate, PointDBO.class)
-                                .map(pointMapper::fromDbo);
-                    });
+                    .map(pointMapper::fromDbo);
         } catch (IllegalArgumentException e) {
             logger.error("Invalid ObjectId format: {}", e.getMessage());
             return Mono.error(new RuntimeException("Invalid ObjectId format"));
         }
     }
 
+    // Один findAndModify: условие — в запросе, в ответ только поля без растущих массивов
+    private Mono<Trip> modify(Query query, Update update) {
+        query.fields().include(LIFECYCLE_FIELDS);
+        return mongoTemplate.findAndModify(query, update, FindAndModifyOptions.options().returnNew(true), TripDBO.class)
+                .map(tripMapper::fromDbo);
+    }
+
     // Остальные методы будут добавлены позже
 }
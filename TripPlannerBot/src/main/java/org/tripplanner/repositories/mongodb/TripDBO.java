@@ -14,6 +14,9 @@ public class TripDBO {
     @Id
     private ObjectId id;
 
+    // Владелец и статус — ведущая часть индекса (ownerChatId, status, name)
+    private Long ownerChatId;
+
     private String name;
     private LocalDate startDate;
     private LocalDate endDate;
@@ -53,6 +56,14 @@ public class TripDBO {
         this.id = id;
     }
 
+    public Long getOwnerChatId() {
+        return ownerChatId;
+    }
+
+    public void setOwnerChatId(Long ownerChatId) {
+        this.ownerChatId = ownerChatId;
+    }
+
     public String getName() {
         return name;
     }
@@ -1,10 +1,16 @@
 package org.tripplanner.repositories.mongodb;
 
+import java.util.ArrayList;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 import java.util.stream.Collectors;
 
 import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
 import org.springframework.stereotype.Component;
@@ -15,6 +21,8 @@ import org.tripplanner.domain.Trip;
 @Component
 public class TripMapper {
 
+    private static final Logger logger = LoggerFactory.getLogger(TripMapper.class);
+
     private final PointMapper pointMapper;
     private final RouteMapper routeMapper;
     private final ReactiveMongoTemplate mongoTemplate;
@@ -64,7 +72,7 @@ public class TripMapper {
 
     public Trip fromDbo(TripDBO dbo) {
         if (dbo == null) {
-            System.out.println("Cannot map null TripDBO");
+            logger.warn("Cannot map null TripDBO");
             return null;
         }
 
@@ -87,23 +95,10 @@ public class TripMapper {
         // Маппинг points - теперь мы не загружаем точки здесь, так как это будет сделано в TripHelperService
         trip.setPoints(Collections.emptyList());
 
-        // Маппинг routes
-        trip.setRoutes(dbo.getRoutes() != null ?
-                dbo.getRoutes().stream()
-                        .map(routeId -> {
-                            Route route = new Route();
-                            return route;
-                        })
-                        .collect(Collectors.toList()) :
-                Collections.emptyList());
+        // Маппинг routes: заглушки с id, сами маршруты грузит RouteDAO.getTripRoutes
+        trip.setRoutes(TripCodec.stubs(dbo.getRoutes()));
 
-        System.out.println("Mapped trip from DBO: " + trip.getName() + " with ID: " + trip.getId() + 
-                ", dates: " + trip.getStartDate() + " - " + trip.getEndDate() + 
-                ", rating: " + trip.getRating() +
-                ", points: " + trip.getPoints().size() +
-                ", routes: " + trip.getRoutes().size() +
-                ", status: " + trip.getStatus() +
-                ", notes: " + trip.getNotes().size());
+        logger.trace("Mapped trip {} ({}), status {}", trip.getName(), trip.getId(), trip.getStatus());
         return trip;
     }
 
@@ -113,13 +108,52 @@ public class TripMapper {
             trip.setStartPoint(startPoint);
             trip.setPoints(points != null ? points : Collections.emptyList());
             trip.setRoutes(routes != null ? routes : Collections.emptyList());
-            System.out.println("Mapped trip with related data: " + trip.getName() + " with ID: " + trip.getId() + 
-                    ", points: " + trip.getPoints().size() + 
-                    ", routes: " + trip.getRoutes().size() + 
-                    ", has start point: " + (trip.getStartPoint() != null) +
-                    ", dates: " + trip.getStartDate() + " - " + trip.getEndDate() +
-                    ", rating: " + trip.getRating());
+            logger.trace("Mapped trip {} with {} points and {} routes",
+                    trip.getName(), trip.getPoints().size(), trip.getRoutes().size());
         }
         return trip;
     }
+
+    /**
+     * Поездки в порядке order: Mongo по $in и $lookup возвращает их в произвольном порядке,
+     * а в списках пользователя порядок важен. Id без документа пропускаются.
+     */
+    public List<Trip> fromDbos(Collection<ObjectId> order, Collection<TripDBO> dbos) {
+        if (order == null || dbos == null || dbos.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<ObjectId, TripDBO> byId = new HashMap<>(dbos.size() * 2);
+        for (TripDBO dbo : dbos) {
+            byId.put(dbo.getId(), dbo);
+        }
+        List<Trip> trips = new ArrayList<>(byId.size());
+        for (ObjectId id : order) {
+            TripDBO dbo = byId.get(id);
+            if (dbo != null) {
+                trips.add(fromDbo(dbo));
+            }
+        }
+        return trips;
+    }
+
+    /**
+     * То же для поездок, уже декодированных {@link TripCodec}.
+     */
+    public List<Trip> inOrder(Collection<ObjectId> order, Collection<Trip> found) {
+        if (order == null || found == null || found.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<String, Trip> byId = new HashMap<>(found.size() * 2);
+        for (Trip trip : found) {
+            byId.put(trip.getId(), trip);
+        }
+        List<Trip> trips = new ArrayList<>(byId.size());
+        for (ObjectId id : order) {
+            Trip trip = byId.get(id.toHexString());
+            if (trip != null) {
+                trips.add(trip);
+            }
+        }
+        return trips;
+    }
 }
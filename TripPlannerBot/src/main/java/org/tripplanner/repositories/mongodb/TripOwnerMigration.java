@@ -0,0 +1,116 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.query.Criteria;
+import org.springframework.data.mongodb.core.query.Query;
+import org.springframework.data.mongodb.core.query.Update;
+import org.springframework.stereotype.Component;
+import org.tripplanner.domain.TripStatus;
+import org.tripplanner.repositories.cache.DomainCaches;
+
+import jakarta.annotation.PostConstruct;
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Проставляет ownerChatId и status поездкам, созданным до появления этих полей.
+ * Источник правды — списки пользователя. Трогает только документы без ownerChatId,
+ * поэтому повторный запуск ничего не меняет.
+ * <p>
+ * Старый deletePlannedTrip убирал поездку из списка, не удаляя документ, и такие сироты не
+ * лежат ни в одном списке. После прохода по пользователям им ставится ownerChatId: null и
+ * status DELETED: поле появляется, поэтому следующий старт останавливается на exists-запросе,
+ * а не перебирает всех пользователей заново. Поиск по владельцу их не находит.
+ * Миграция идёт в фоне после старта; пока она не закончилась, {@link TripDAOImpl} ищет
+ * поездки, не найденные по владельцу, ещё и по спискам пользователя.
+ */
+@Component
+public class TripOwnerMigration {
+
+    private static final Logger logger = LoggerFactory.getLogger(TripOwnerMigration.class);
+    private static final int CONCURRENCY = 8;
+
+    private final ReactiveMongoTemplate mongoTemplate;
+    private final DomainCaches caches;
+    private volatile boolean complete;
+
+    public TripOwnerMigration(ReactiveMongoTemplate mongoTemplate, DomainCaches caches) {
+        this.mongoTemplate = mongoTemplate;
+        this.caches = caches;
+    }
+
+    @PostConstruct
+    public void start() {
+        migrate().subscribe(
+                migrated -> {
+                    if (migrated > 0) {
+                        // Миграция пишет мимо DAO, а бот к этому моменту уже мог что-то прочитать
+                        caches.invalidateAll();
+                        logger.info("Set owner and status on {} legacy trips", migrated);
+                    }
+                    complete = true;
+                },
+                e -> logger.error("Trip owner migration failed, will retry on next start: {}", e.getMessage()));
+    }
+
+    /**
+     * true, когда у всех поездок есть ownerChatId. До этого поиск по владельцу может
+     * не найти старую поездку.
+     */
+    public boolean isComplete() {
+        return complete;
+    }
+
+    public Mono<Long> migrate() {
+        return mongoTemplate.exists(unowned(), TripDBO.class)
+                .filter(Boolean::booleanValue)
+                .flatMapMany(any -> mongoTemplate.findAll(UserDBO.class))
+                .flatMap(this::claimTrips, CONCURRENCY)
+                .reduce(0L, Long::sum)
+                // Сирот помечаем только после всех владельцев, иначе пометили бы и чужие поездки
+                .flatMap(claimed -> markOrphans().map(orphans -> claimed + orphans))
+                .defaultIfEmpty(0L);
+    }
+
+    private Mono<Long> markOrphans() {
+        return mongoTemplate.updateMulti(unowned(), orphaned(), TripDBO.class)
+                .map(result -> result.getModifiedCount())
+                .doOnNext(orphans -> {
+                    if (orphans > 0) {
+                        logger.info("Marked {} legacy trips that are in no user's list as deleted", orphans);
+                    }
+                });
+    }
+
+    static Update orphaned() {
+        return new Update().set("ownerChatId", null).set("status", TripStatus.DELETED.name());
+    }
+
+    // Поездка может оказаться в нескольких списках: ongoing важнее finished, finished важнее planned
+    private Mono<Long> claimTrips(UserDBO user) {
+        return Flux.concat(
+                        claim(user.getChatId(), user.getCurrentTrips(), TripStatus.ONGOING),
+                        claim(user.getChatId(), user.getTripHistory(), TripStatus.FINISHED),
+                        claim(user.getChatId(), user.getPlannedTrips(), TripStatus.PLANNED))
+                .reduce(0L, Long::sum);
+    }
+
+    private Mono<Long> claim(Long chatId, List<ObjectId> tripIds, TripStatus status) {
+        if (tripIds == null || tripIds.isEmpty()) {
+            return Mono.just(0L);
+        }
+        Query query = unowned().addCriteria(Criteria.where("_id").in(tripIds));
+        Update update = new Update().set("ownerChatId", chatId).set("status", status.name());
+        return mongoTemplate.updateMulti(query, update, TripDBO.class)
+                .map(result -> result.getModifiedCount());
+    }
+
+    static Query unowned() {
+        return Query.query(Criteria.where("ownerChatId").exists(false));
+    }
+}
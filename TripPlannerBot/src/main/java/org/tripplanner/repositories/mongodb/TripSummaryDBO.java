@@ -0,0 +1,53 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.time.LocalDate;
+
+import org.bson.types.ObjectId;
+import org.springframework.data.annotation.Id;
+
+/**
+ * Поля поездки, которые остаются после проекции {@link TripSummaryMapper#FIELDS}.
+ */
+public class TripSummaryDBO {
+
+    @Id
+    private ObjectId id;
+
+    private String name;
+    private LocalDate startDate;
+    private LocalDate endDate;
+
+    public TripSummaryDBO() {}
+
+    public ObjectId getId() {
+        return id;
+    }
+
+    public void setId(ObjectId id) {
+        this.id = id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public void setName(String name) {
+        this.name = name;
+    }
+
+    public LocalDate getStartDate() {
+        return startDate;
+    }
+
+    public void setStartDate(LocalDate startDate) {
+        this.startDate = startDate;
+    }
+
+    public LocalDate getEndDate() {
+        return endDate;
+    }
+
+    public void setEndDate(LocalDate endDate) {
+        this.endDate = endDate;
+    }
+}
@@ -0,0 +1,46 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.bson.types.ObjectId;
+import org.springframework.stereotype.Component;
+import org.tripplanner.domain.TripSummary;
+
+@Component
+public class TripSummaryMapper {
+
+    /**
+     * Поля, которые читаются из trips для списков; всё остальное отсекает проекция в Mongo.
+     */
+    public static final List<String> FIELDS = List.of("_id", "name", "startDate", "endDate");
+
+    public TripSummary fromDbo(TripSummaryDBO dbo) {
+        return new TripSummary(dbo.getId().toHexString(), dbo.getName(), dbo.getStartDate(), dbo.getEndDate());
+    }
+
+    /**
+     * Как {@link TripMapper#fromDbos}: в порядке order, id без документа пропускаются.
+     */
+    public List<TripSummary> fromDbos(Collection<ObjectId> order, Collection<TripSummaryDBO> dbos) {
+        if (order == null || dbos == null || dbos.isEmpty()) {
+            return Collections.emptyList();
+        }
+        Map<ObjectId, TripSummaryDBO> byId = new HashMap<>(dbos.size() * 2);
+        for (TripSummaryDBO dbo : dbos) {
+            byId.put(dbo.getId(), dbo);
+        }
+        List<TripSummary> summaries = new ArrayList<>(byId.size());
+        for (ObjectId id : order) {
+            TripSummaryDBO dbo = byId.get(id);
+            if (dbo != null) {
+                summaries.add(fromDbo(dbo));
+            }
+        }
+        return summaries;
+    }
+}
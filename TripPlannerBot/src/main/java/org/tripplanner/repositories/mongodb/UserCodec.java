@@ -0,0 +1,70 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.bson.BsonReader;
+import org.bson.BsonType;
+import org.bson.BsonWriter;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.EncoderContext;
+import org.bson.types.ObjectId;
+import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.User;
+
+/**
+ * Документ users сразу в {@link User}: поездки — заглушки с id, как в UserMapper.
+ */
+public class UserCodec implements Codec<User> {
+
+    @Override
+    public User decode(BsonReader reader, DecoderContext decoderContext) {
+        User user = new User();
+        reader.readStartDocument();
+        while (reader.readBsonType() != BsonType.END_OF_DOCUMENT) {
+            switch (reader.readName()) {
+                case "chatId" -> user.setChatId(BsonReads.int64(reader));
+                case "tripInPlanning" -> user.setTripInPlanning(stub(BsonReads.objectId(reader)));
+                case "ongoingTrip" -> user.setOngoingTrip(stub(BsonReads.objectId(reader)));
+                case "plannedTrips" -> user.setPlannedTrips(stubs(BsonReads.objectIds(reader)));
+                case "currentTrips" -> user.setCurrentTrips(stubs(BsonReads.objectIds(reader)));
+                case "tripHistory" -> user.setTripHistory(stubs(BsonReads.objectIds(reader)));
+                case "points" -> user.setPoints(BsonReads.objectIds(reader));
+                default -> reader.skipValue();
+            }
+        }
+        reader.readEndDocument();
+        return user;
+    }
+
+    private static Trip stub(ObjectId tripId) {
+        if (tripId == null) {
+            return null;
+        }
+        Trip trip = new Trip();
+        trip.setId(tripId.toHexString());
+        return trip;
+    }
+
+    private static List<Trip> stubs(List<ObjectId> tripIds) {
+        if (tripIds == null) {
+            return null;
+        }
+        List<Trip> trips = new ArrayList<>(tripIds.size());
+        for (ObjectId tripId : tripIds) {
+            trips.add(stub(tripId));
+        }
+        return trips;
+    }
+
+    @Override
+    public void encode(BsonWriter writer, User value, EncoderContext encoderContext) {
+        throw new UnsupportedOperationException("UserCodec is read-only, write users through UserDAO");
+    }
+
+    @Override
+    public Class<User> getEncoderClass() {
+        return User.class;
+    }
+}
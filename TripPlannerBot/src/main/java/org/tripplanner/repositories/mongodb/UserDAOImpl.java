@@ -1,18 +1,29 @@
 package org.tripplanner.repositories.mongodb;
 
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
 
+import org.bson.Document;
 import org.bson.types.ObjectId;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.data.mongodb.core.BulkOperations;
+import org.springframework.data.mongodb.core.FindAndModifyOptions;
+import org.springframework.data.mongodb.core.ReactiveBulkOperations;
 import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+import org.springframework.data.mongodb.core.aggregation.AggregationUpdate;
 import org.springframework.data.mongodb.core.query.Criteria;
 import org.springframework.data.mongodb.core.query.Query;
 import org.springframework.data.mongodb.core.query.Update;
 import org.springframework.stereotype.Repository;
 import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.TripStatus;
+import org.tripplanner.domain.TripSummary;
 import org.tripplanner.domain.User;
+import org.tripplanner.domain.UserLocation;
 import org.tripplanner.repositories.TripDAO;
 import org.tripplanner.repositories.UserDAO;
 
@@ -23,32 +34,44 @@ import reactor.core.publisher.Mono;
 public class UserDAOImpl implements UserDAO {
 
     private static final Logger logger = LoggerFactory.getLogger(UserDAOImpl.class);
+
+    // tripInPlanning -> конец tripHistory (если ещё не там), из plannedTrips убрать, само поле снять.
+    // $filter вместо $setDifference: порядок списков важен для /showplanned и /triphistory
+    static final AggregationUpdate FINISH_PLANNING = AggregationUpdate.from(List.of(
+            context -> new Document("$set", new Document()
+                    .append("tripHistory", new Document("$cond", List.of(
+                            new Document("$in", List.of("$tripInPlanning", ifEmpty("$tripHistory"))),
+                            ifEmpty("$tripHistory"),
+                            new Document("$concatArrays", List.of(ifEmpty("$tripHistory"), List.of("$tripInPlanning"))))))
+                    .append("plannedTrips", new Document("$filter", new Document()
+                            .append("input", ifEmpty("$plannedTrips"))
+                            .append("cond", new Document("$ne", List.of("$$this", "$tripInPlanning")))))),
+            context -> new Document("$unset", "tripInPlanning")));
+
+    private static final String COLLECTION = "users";
+
     private final ReactiveMongoTemplate mongoTemplate;
     private final UserMapper userMapper;
     private final TripDAO tripDAO;
+    private final TripMapper tripMapper;
+    private final TripSummaryMapper tripSummaryMapper;
+    private final DomainReads domainReads;
 
     @Autowired
-    public UserDAOImpl(ReactiveMongoTemplate mongoTemplate, UserMapper userMapper, TripDAO tripDAO) {
+    public UserDAOImpl(ReactiveMongoTemplate mongoTemplate, UserMapper userMapper, TripDAO tripDAO,
+                       TripMapper tripMapper, TripSummaryMapper tripSummaryMapper, DomainReads domainReads) {
         this.mongoTemplate = mongoTemplate;
         this.userMapper = userMapper;
         this.tripDAO = tripDAO;
-        
-        // Создаем уникальный индекс для chatId
-        mongoTemplate.indexOps(UserDBO.class)
-                .ensureIndex(new org.springframework.data.mongodb.core.index.Index()
-                        .on("chatId", org.springframework.data.domain.Sort.Direction.ASC)
-                        .unique())
-                .onErrorResume(e -> {
-                    logger.error("Failed to create index for chatId: {}", e.getMessage());
-                    return Mono.empty();
-                });
+        this.tripMapper = tripMapper;
+        this.tripSummaryMapper = tripSummaryMapper;
+        this.domainReads = domainReads;
     }
 
     @Override
     public Mono<User> getOrCreateUser(Long chatId) {
         Query query = Query.query(Criteria.where("chatId").is(chatId));
-        return mongoTemplate.findOne(query, UserDBO.class)
-                .flatMap(dbo -> Mono.just(userMapper.fromDbo(dbo)))
+        return domainReads.findOne(query, User.class, COLLECTION)
                 .switchIfEmpty(
                         mongoTemplate.insert(newUserDbo(chatId))
                                 .map(userMapper::fromDbo)
@@ -56,8 +79,7 @@ public class UserDAOImpl implements UserDAO {
                 .onErrorResume(e -> {
                     logger.error("Error in getOrCreateUser for chatId {}: {}", chatId, e.getMessage());
                     if (e.getMessage().contains("duplicate key error")) {
-                        return mongoTemplate.findOne(query, UserDBO.class)
-                                .map(userMapper::fromDbo);
+                        return domainReads.findOne(query, User.class, COLLECTION);
                     }
                     return Mono.error(e);
                 });
@@ -75,22 +97,7 @@ public class UserDAOImpl implements UserDAO {
 
     @Override
     public Flux<Trip> getAllPlannedTrips(Long chatId) {
-        return mongoTemplate.findOne(
-                Query.query(Criteria.where("chatId").is(chatId)),
-                UserDBO.class
-        )
-                .flatMapMany(user -> {
-                    if (user.getPlannedTrips() == null || user.getPlannedTrips().isEmpty()) {
-                        return Flux.empty();
-                    }
-                    return Flux.fromIterable(user.getPlannedTrips())
-                            .flatMap(tripId -> tripDAO.getTrip(tripId.toHexString())
-                                    .onErrorResume(e -> {
-                                        logger.error("Error getting trip {} for user {}: {}", 
-                                            tripId, chatId, e.getMessage());
-                                        return Mono.empty();
-                                    }));
-                })
+        return userTrips(chatId, "plannedTrips")
                 .onErrorResume(e -> {
                     logger.error("Error in getAllPlannedTrips for chatId {}: {}", chatId, e.getMessage());
                     return Flux.error(e);
@@ -120,36 +127,13 @@ public class UserDAOImpl implements UserDAO {
 
     @Override
     public Mono<Trip> finishPlanning(Long chatId) {
-        Query query = Query.query(Criteria.where("chatId").is(chatId));
-        return mongoTemplate.findOne(query, UserDBO.class)
-                .flatMap(user -> {
-                    ObjectId tripId = user.getTripInPlanning();
-                    if (tripId == null) {
-                        return Mono.error(new RuntimeException("No trip in planning"));
-                    }
-
-                    // Сначала получаем поездку, чтобы сохранить все данные
-                    return tripDAO.getTrip(tripId.toString())
-                            .flatMap(trip -> {
-                                // Обновляем статус поездки
-                                return tripDAO.updateTripStatus(tripId.toString(), "FINISHED")
-                                        .then(Mono.just(trip));
-                            })
-                            .flatMap(trip -> {
-                                // Обновляем пользователя: добавляем в историю и удаляем из планируемых
-                                Update update = new Update()
-                                        .addToSet("tripHistory", tripId)
-                                        .pull("plannedTrips", tripId)
-                                        .unset("tripInPlanning");
-
-                                return mongoTemplate.findAndModify(query, update, UserDBO.class)
-                                        .thenReturn(trip);
-                            })
-                            .onErrorResume(e -> {
-                                logger.error("Error finishing planning for user {}: {}", chatId, e.getMessage());
-                                return Mono.error(e);
-                            });
-                })
+        // Один findAndModify переносит tripInPlanning в историю прямо на сервере; старая версия
+        // документа (только tripInPlanning) нужна, чтобы узнать, какую поездку закрыли
+        Query query = Query.query(Criteria.where("chatId").is(chatId).and("tripInPlanning").exists(true));
+        query.fields().include("tripInPlanning");
+        return mongoTemplate.findAndModify(query, FINISH_PLANNING, FindAndModifyOptions.options().returnNew(false), UserDBO.class)
+                .switchIfEmpty(Mono.error(new RuntimeException("No trip in planning")))
+                .flatMap(user -> tripDAO.updateTripStatus(user.getTripInPlanning().toHexString(), TripStatus.FINISHED.name()))
                 .onErrorResume(e -> {
                     logger.error("Error in finishPlanning for chatId {}: {}", chatId, e.getMessage());
                     return Mono.error(e);
@@ -187,7 +171,8 @@ public class UserDAOImpl implements UserDAO {
         Update update = new Update().pull("plannedTrips", tripObjectId);
 
         return mongoTemplate.findAndModify(query, update, UserDBO.class)
-                .flatMap(user -> tripDAO.getTrip(tripId)
+                .flatMap(user -> setTripStatus(chatId, tripObjectId, TripStatus.DELETED)
+                        .then(tripDAO.getTrip(tripId))
                         .onErrorResume(e -> {
                             logger.error("Error getting trip after deletion for user {}: {}", 
                                 chatId, e.getMessage());
@@ -202,20 +187,7 @@ public class UserDAOImpl implements UserDAO {
 
     @Override
     public Flux<Trip> getCurrentTrips(Long chatId) {
-        Query query = new Query(Criteria.where("chatId").is(chatId));
-        return mongoTemplate.findOne(query, UserDBO.class)
-                .flatMapMany(userDBO -> {
-                    if (userDBO.getCurrentTrips() == null || userDBO.getCurrentTrips().isEmpty()) {
-                        return Flux.empty();
-                    }
-                    return Flux.fromIterable(userDBO.getCurrentTrips())
-                            .flatMap(tripId -> tripDAO.getTrip(tripId.toHexString())
-                                    .onErrorResume(e -> {
-                                        logger.error("Error getting current trip {} for user {}: {}", 
-                                            tripId, chatId, e.getMessage());
-                                        return Mono.empty();
-                                    }));
-                })
+        return userTrips(chatId, "currentTrips")
                 .onErrorResume(e -> {
                     logger.error("Error in getCurrentTrips for chatId {}: {}", chatId, e.getMessage());
                     return Flux.error(e);
@@ -224,26 +196,31 @@ public class UserDAOImpl implements UserDAO {
 
     @Override
     public Flux<Trip> getFinishedTrips(Long chatId) {
-        Query query = new Query(Criteria.where("chatId").is(chatId));
-        return mongoTemplate.findOne(query, UserDBO.class)
-                .flatMapMany(userDBO -> {
-                    if (userDBO.getTripHistory() == null || userDBO.getTripHistory().isEmpty()) {
-                        return Flux.empty();
-                    }
-                    return Flux.fromIterable(userDBO.getTripHistory())
-                            .flatMap(tripId -> tripDAO.getTrip(tripId.toHexString())
-                                    .onErrorResume(e -> {
-                                        logger.error("Error getting finished trip {} for user {}: {}", 
-                                            tripId, chatId, e.getMessage());
-                                        return Mono.empty();
-                                    }));
-                })
+        return userTrips(chatId, "tripHistory")
                 .onErrorResume(e -> {
                     logger.error("Error in getFinishedTrips for chatId {}: {}", chatId, e.getMessage());
                     return Flux.error(e);
                 });
     }
 
+    @Override
+    public Flux<TripSummary> getPlannedTripSummaries(Long chatId) {
+        return userTripSummaries(chatId, "plannedTrips")
+                .onErrorResume(e -> {
+                    logger.error("Error in getPlannedTripSummaries for chatId {}: {}", chatId, e.getMessage());
+                    return Flux.error(e);
+                });
+    }
+
+    @Override
+    public Flux<TripSummary> getFinishedTripSummaries(Long chatId) {
+        return userTripSummaries(chatId, "tripHistory")
+                .onErrorResume(e -> {
+                    logger.error("Error in getFinishedTripSummaries for chatId {}: {}", chatId, e.getMessage());
+                    return Flux.error(e);
+                });
+    }
+
     @Override
     public Mono<Void> updateUserLocation(Long chatId, double latitude, double longitude) {
         Query query = new Query(Criteria.where("chatId").is(chatId));
@@ -259,55 +236,120 @@ public class UserDAOImpl implements UserDAO {
     }
 
     @Override
-    public Mono<User> getUserByChatId(Long chatId) {
-        Query query = Query.query(Criteria.where("chatId").is(chatId));
-        return mongoTemplate.findOne(query, UserDBO.class)
-                .map(userMapper::fromDbo)
-                .onErrorResume(e -> {
-                    logger.error("Error in getUserByChatId for chatId {}: {}", chatId, e.getMessage());
-                    return Mono.error(e);
-                });
+    public Mono<Void> updateUserLocations(Collection<UserLocation> locations) {
+        if (locations.isEmpty()) {
+            return Mono.empty();
+        }
+        // Порядок не важен: у каждого чата в пачке одна, последняя позиция
+        ReactiveBulkOperations bulk = mongoTemplate.bulkOps(BulkOperations.BulkMode.UNORDERED, UserDBO.class);
+        for (UserLocation location : locations) {
+            bulk.updateOne(Query.query(Criteria.where("chatId").is(location.chatId())), new Update()
+                    .set("location.latitude", location.latitude())
+                    .set("location.longitude", location.longitude()));
+        }
+        return bulk.execute().then();
     }
 
     @Override
-    public Mono<Void> addToTripHistory(Long chatId, String tripId) {
+    public Mono<User> getUserByChatId(Long chatId) {
         Query query = Query.query(Criteria.where("chatId").is(chatId));
-        Update update = new Update().addToSet("tripHistory", new ObjectId(tripId));
-        return mongoTemplate.updateFirst(query, update, UserDBO.class)
-                .then()
+        return domainReads.findOne(query, User.class, COLLECTION)
                 .onErrorResume(e -> {
-                    logger.error("Error adding trip {} to history for user {}: {}", tripId, chatId, e.getMessage());
+                    logger.error("Error in getUserByChatId for chatId {}: {}", chatId, e.getMessage());
                     return Mono.error(e);
                 });
     }
 
     @Override
-    public Mono<Void> removeFromPlannedTrips(Long chatId, String tripId) {
-        Query query = Query.query(Criteria.where("chatId").is(chatId));
-        Update update = new Update().pull("plannedTrips", new ObjectId(tripId));
-        return mongoTemplate.updateFirst(query, update, UserDBO.class)
-                .then()
+    public Mono<Void> moveToTripHistory(Long chatId, String tripId) {
+        ObjectId id = new ObjectId(tripId);
+        // Пользователь и поездка — разные коллекции, поэтому два обновления, но параллельно
+        return Mono.when(
+                        mongoTemplate.updateFirst(Query.query(Criteria.where("chatId").is(chatId)), toHistory(id), UserDBO.class),
+                        setTripStatus(chatId, id, TripStatus.FINISHED))
                 .onErrorResume(e -> {
-                    logger.error("Error removing trip {} from planned trips for user {}: {}", tripId, chatId, e.getMessage());
+                    logger.error("Error moving trip {} to history for user {}: {}", tripId, chatId, e.getMessage());
                     return Mono.error(e);
                 });
     }
 
     @Override
     public Mono<Void> setOngoingTrip(Long chatId, String tripId) {
-        Query query = Query.query(Criteria.where("chatId").is(chatId));
-        Update update = new Update()
-                .set("ongoingTrip", new ObjectId(tripId))
-                .pull("plannedTrips", new ObjectId(tripId))
-                .addToSet("currentTrips", new ObjectId(tripId));
-        return mongoTemplate.updateFirst(query, update, UserDBO.class)
-                .then()
+        ObjectId id = new ObjectId(tripId);
+        return Mono.when(
+                        mongoTemplate.updateFirst(Query.query(Criteria.where("chatId").is(chatId)), toOngoing(id), UserDBO.class),
+                        setTripStatus(chatId, id, TripStatus.ONGOING))
                 .onErrorResume(e -> {
                     logger.error("Error setting ongoing trip {} for user {}: {}", tripId, chatId, e.getMessage());
                     return Mono.error(e);
                 });
     }
 
+    // Одно обновление пользователя: перенос между списками без чтения документа
+    static Update toHistory(ObjectId tripId) {
+        return new Update()
+                .addToSet("tripHistory", tripId)
+                .pull("plannedTrips", tripId);
+    }
+
+    static Update toOngoing(ObjectId tripId) {
+        return new Update()
+                .set("ongoingTrip", tripId)
+                .pull("plannedTrips", tripId)
+                .addToSet("currentTrips", tripId);
+    }
+
+    // Статус поездки повторяет список пользователя, в который её только что переложили
+    private Mono<Void> setTripStatus(Long chatId, ObjectId tripId, TripStatus status) {
+        return mongoTemplate.updateFirst(ownedTrip(chatId, tripId), new Update().set("status", status.name()), TripDBO.class)
+                .then();
+    }
+
+    // Условие на владельца: чужую поездку по ошибочному id не тронем
+    static Query ownedTrip(Long chatId, ObjectId tripId) {
+        return Query.query(Criteria.where("_id").is(tripId).and("ownerChatId").is(chatId));
+    }
+
+    /**
+     * Пользователь и поездки из одного его списка за один запрос ($lookup вместо
+     * getTrip на каждый id). Порядок — как в массиве пользователя.
+     */
+    private Flux<Trip> userTrips(Long chatId, String listField) {
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("chatId").is(chatId)),
+                Aggregation.project().and(listField).as("tripIds"),
+                Aggregation.lookup(mongoTemplate.getCollectionName(TripDBO.class), "tripIds", "_id", "trips"));
+        return mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(UserDBO.class), UserTripsDBO.class)
+                .next()
+                .flatMapIterable(joined -> tripMapper.fromDbos(joined.getTripIds(), joined.getTrips()));
+    }
+
+    /**
+     * Тот же $lookup, что в userTrips, но из поездок остаются только поля TripSummaryMapper.FIELDS:
+     * заметки, точки и маршруты не уходят по сети и не разбираются драйвером.
+     */
+    private Flux<TripSummary> userTripSummaries(Long chatId, String listField) {
+        Document projection = summaryProjection();
+        Aggregation aggregation = Aggregation.newAggregation(
+                Aggregation.match(Criteria.where("chatId").is(chatId)),
+                Aggregation.project().and(listField).as("tripIds"),
+                Aggregation.lookup(mongoTemplate.getCollectionName(TripDBO.class), "tripIds", "_id", "trips"),
+                context -> new Document("$project", projection));
+        return mongoTemplate.aggregate(aggregation, mongoTemplate.getCollectionName(UserDBO.class), UserTripSummariesDBO.class)
+                .next()
+                .flatMapIterable(joined -> tripSummaryMapper.fromDbos(joined.getTripIds(), joined.getTrips()));
+    }
+
+    static Document summaryProjection() {
+        Document projection = new Document("tripIds", 1);
+        TripSummaryMapper.FIELDS.forEach(field -> projection.append("trips." + field, 1));
+        return projection;
+    }
+
+    private static Document ifEmpty(String field) {
+        return new Document("$ifNull", List.of(field, List.of()));
+    }
+
     private UserDBO newUserDbo(Long chatId) {
         UserDBO dbo = new UserDBO();
         dbo.setChatId(chatId);
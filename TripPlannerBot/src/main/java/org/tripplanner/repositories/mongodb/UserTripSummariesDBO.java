@@ -0,0 +1,32 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.List;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Как {@link UserTripsDBO}, но поездки после проекции — только поля для списков.
+ */
+public class UserTripSummariesDBO {
+
+    private List<ObjectId> tripIds;
+    private List<TripSummaryDBO> trips;
+
+    public UserTripSummariesDBO() {}
+
+    public List<ObjectId> getTripIds() {
+        return tripIds;
+    }
+
+    public void setTripIds(List<ObjectId> tripIds) {
+        this.tripIds = tripIds;
+    }
+
+    public List<TripSummaryDBO> getTrips() {
+        return trips;
+    }
+
+    public void setTrips(List<TripSummaryDBO> trips) {
+        this.trips = trips;
+    }
+}
@@ -0,0 +1,32 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.List;
+
+import org.bson.types.ObjectId;
+
+/**
+ * Результат $lookup: список id поездок пользователя и сами поездки (в порядке Mongo).
+ */
+public class UserTripsDBO {
+
+    private List<ObjectId> tripIds;
+    private List<TripDBO> trips;
+
+    public UserTripsDBO() {}
+
+    public List<ObjectId> getTripIds() {
+        return tripIds;
+    }
+
+    public void setTripIds(List<ObjectId> tripIds) {
+        this.tripIds = tripIds;
+    }
+
+    public List<TripDBO> getTrips() {
+        return trips;
+    }
+
+    public void setTrips(List<TripDBO> trips) {
+        this.trips = trips;
+    }
+}
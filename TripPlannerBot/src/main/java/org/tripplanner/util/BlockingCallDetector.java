@@ -0,0 +1,195 @@
+package org.tripplanner.util;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import reactor.core.Disposable;
+import reactor.core.publisher.Flux;
+
+/**
+ * Ищет блокирующие вызовы на потоках, которые блокировать нельзя: event loop Netty,
+ * parallel-шедулер Reactor, колбэки драйвера Mongo. Раз в interval снимает стеки таких
+ * потоков и отмечает те, что стоят в block(), sleep, Future.get или синхронном чтении сокета.
+ * <p>
+ * Это выборка, а не агент вроде BlockHound: короткую блокировку можно пропустить, зато
+ * работает без инструментирования JDK и годится для стейджинга. Место вызова — первый
+ * кадр нашего кода над блокирующим.
+ */
+@Component
+public class BlockingCallDetector implements StatsSource {
+
+    private static final Logger logger = LoggerFactory.getLogger(BlockingCallDetector.class);
+    private static final int MAX_SITES = 50;
+    private static final int LOGGED_FRAMES = 12;
+
+    private static final List<String> BLOCKING_FRAMES = List.of(
+            "reactor.core.publisher.BlockingSingleSubscriber.blockingGet",
+            "reactor.core.publisher.BlockingIterable",
+            "java.lang.Thread.sleep",
+            "java.util.concurrent.CompletableFuture.get",
+            "java.util.concurrent.CompletableFuture.join",
+            "java.util.concurrent.FutureTask.get",
+            "java.util.concurrent.CountDownLatch.await",
+            "sun.nio.ch.NioSocketImpl.read");
+
+    private static final List<String> FOREIGN_PACKAGES = List.of("java.", "jdk.", "sun.", "reactor.", "io.netty.", "com.mongodb.");
+
+    private final boolean enabled;
+    private final String[] threadPrefixes;
+    private final Duration interval;
+
+    private final Map<String, LongAdder> sites = new ConcurrentHashMap<>();
+    // Поток -> место, на котором он стоял в прошлой выборке: одна долгая блокировка считается один раз
+    private final Map<Long, String> blockedNow = new HashMap<>();
+    private final LongAdder samples = new LongAdder();
+    private final LongAdder violations = new LongAdder();
+    private Disposable sampler;
+
+    public BlockingCallDetector(@Value("${blocking.detector.enabled:false}") boolean enabled,
+                                @Value("${blocking.detector.thread-prefixes:reactor-http-,nioEventLoopGroup-,epollEventLoopGroup-,parallel-}") String[] threadPrefixes,
+                                @Value("${blocking.detector.interval-ms:100}") long intervalMs) {
+        this.enabled = enabled;
+        this.threadPrefixes = threadPrefixes;
+        this.interval = Duration.ofMillis(intervalMs);
+    }
+
+    @PostConstruct
+    public synchronized void start() {
+        if (enabled && sampler == null) {
+            sampler = Flux.interval(interval)
+                    .onBackpressureDrop()
+                    .subscribe(tick -> sample());
+            logger.info("Blocking call detector watches threads {} every {} ms", List.of(threadPrefixes), interval.toMillis());
+        }
+    }
+
+    /**
+     * Одна выборка. Возвращает места новых блокировок.
+     */
+    public synchronized List<String> sample() {
+        samples.increment();
+        List<String> found = new ArrayList<>();
+        Map<Long, String> blocked = new HashMap<>();
+        for (Map.Entry<Thread, StackTraceElement[]> entry : Thread.getAllStackTraces().entrySet()) {
+            Thread thread = entry.getKey();
+            if (!watched(thread.getName())) {
+                continue;
+            }
+            String site = blockingSite(entry.getValue());
+            if (site == null) {
+                continue;
+            }
+            blocked.put(thread.threadId(), site);
+            if (site.equals(blockedNow.get(thread.threadId()))) {
+                continue;
+            }
+            violations.increment();
+            found.add(site);
+            LongAdder count = sites.get(site);
+            if (count == null && sites.size() < MAX_SITES) {
+                count = sites.computeIfAbsent(site, s -> new LongAdder());
+                logger.warn("Blocking call on non-blocking thread {} at {}\n{}", thread.getName(), site, describe(entry.getValue()));
+            }
+            if (count != null) {
+                count.increment();
+            }
+        }
+        blockedNow.clear();
+        blockedNow.putAll(blocked);
+        return found;
+    }
+
+    public Map<String, Long> violations() {
+        Map<String, Long> result = new LinkedHashMap<>();
+        sites.forEach((site, count) -> result.put(site, count.sum()));
+        return result;
+    }
+
+    private boolean watched(String name) {
+        for (String prefix : threadPrefixes) {
+            if (name.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Стек идёт от вершины: сначала ищем блокирующий кадр, над ним — первый кадр нашего кода
+    static String blockingSite(StackTraceElement[] stack) {
+        for (int i = 0; i < stack.length; i++) {
+            if (!isBlocking(stack[i])) {
+                continue;
+            }
+            for (int j = i + 1; j < stack.length; j++) {
+                if (!isForeign(stack[j].getClassName())) {
+                    return stack[j].toString();
+                }
+            }
+            return stack[i].toString();
+        }
+        return null;
+    }
+
+    private static boolean isBlocking(StackTraceElement frame) {
+        String name = frame.getClassName() + "." + frame.getMethodName();
+        for (String blocking : BLOCKING_FRAMES) {
+            if (name.startsWith(blocking)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static boolean isForeign(String className) {
+        for (String prefix : FOREIGN_PACKAGES) {
+            if (className.startsWith(prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static String describe(StackTraceElement[] stack) {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < Math.min(stack.length, LOGGED_FRAMES); i++) {
+            builder.append("\tat ").append(stack[i]).append('\n');
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String statsName() {
+        return "blockingCalls";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("enabled", enabled);
+        stats.put("samples", samples.sum());
+        stats.put("violations", violations.sum());
+        stats.put("sites", violations());
+        return stats;
+    }
+
+    @PreDestroy
+    public synchronized void stop() {
+        if (sampler != null) {
+            sampler.dispose();
+            sampler = null;
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.tripplanner.util;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.IntSupplier;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+/**
+ * Плавная остановка: сначала перестаём принимать новые апдейты, потом ждём, пока
+ * обнулятся все счётчики незавершённой работы (апдейты, исходящие сообщения, записи
+ * в Mongo, отложенные записи диалогов), но не дольше дедлайна. В простое остановка занимает миллисекунды.
+ */
+@Component
+public class DrainCoordinator implements StatsSource {
+
+    public static final String UPDATES = "updates";
+    public static final String OUTBOUND = "outbound";
+    public static final String MONGO_WRITES = "mongoWrites";
+    public static final String DIALOG_SESSIONS = "dialogSessions";
+    public static final String LOCATIONS = "locations";
+    public static final String LIVE_LOCATIONS = "liveLocations";
+    public static final String TRACKS = "tracks";
+
+    private static final Logger logger = LoggerFactory.getLogger(DrainCoordinator.class);
+    private static final long POLL_NANOS = TimeUnit.MILLISECONDS.toNanos(20);
+
+    private final Duration deadline;
+    private final Map<String, IntSupplier> pending = new ConcurrentHashMap<>();
+    private final List<Runnable> intakeStoppers = new CopyOnWriteArrayList<>();
+    private volatile boolean accepting = true;
+    // Момент, до которого вся остановка должна уложиться; 0 — остановка ещё не началась
+    private volatile long deadlineAt;
+    private volatile long lastDrainMillis = -1;
+
+    public DrainCoordinator(@Value("${shutdown.drain.deadline-ms:25000}") long deadlineMs) {
+        this.deadline = Duration.ofMillis(deadlineMs);
+    }
+
+    /**
+     * Регистрирует счётчик незавершённой работы. Счётчик читается только во время остановки.
+     */
+    public void registerPending(String name, IntSupplier counter) {
+        pending.put(name, counter);
+    }
+
+    /**
+     * Действие, которое перекрывает поступление новых апдейтов (остановка поллинга и т.п.).
+     */
+    public void onStopIntake(Runnable stopper) {
+        intakeStoppers.add(stopper);
+    }
+
+    public boolean isAccepting() {
+        return accepting;
+    }
+
+    /**
+     * Останавливает приём и ждёт, пока работа не закончится или не истечёт дедлайн.
+     * Возвращает true, если к моменту выхода всё было завершено.
+     */
+    public boolean drain() {
+        long started = System.nanoTime();
+        deadlineAt = started + deadline.toNanos();
+        stopIntake();
+        Map<String, Integer> left = snapshot();
+        while (total(left) > 0 && System.nanoTime() < deadlineAt) {
+            LockSupport.parkNanos(POLL_NANOS);
+            left = snapshot();
+        }
+        lastDrainMillis = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+        if (total(left) > 0) {
+            logger.warn("Drain deadline {} ms passed with unfinished work: {}", deadline.toMillis(), left);
+            return false;
+        }
+        logger.info("Drained in {} ms", lastDrainMillis);
+        return true;
+    }
+
+    /**
+     * Сколько осталось до дедлайна остановки. Компоненты, которые ждут своей работы уже
+     * при закрытии контекста, ждут не дольше этого, чтобы вся остановка уложилась в один
+     * дедлайн. До начала остановки — дедлайн целиком.
+     */
+    public Duration remaining() {
+        long at = deadlineAt;
+        if (at == 0) {
+            return deadline;
+        }
+        return Duration.ofNanos(Math.max(0, at - System.nanoTime()));
+    }
+
+    private void stopIntake() {
+        if (!accepting) {
+            return;
+        }
+        accepting = false;
+        for (Runnable stopper : intakeStoppers) {
+            try {
+                stopper.run();
+            } catch (RuntimeException e) {
+                logger.error("Failed to stop intake: {}", e.getMessage());
+            }
+        }
+    }
+
+    private Map<String, Integer> snapshot() {
+        Map<String, Integer> values = new LinkedHashMap<>();
+        pending.forEach((name, counter) -> values.put(name, counter.getAsInt()));
+        return values;
+    }
+
+    private static int total(Map<String, Integer> values) {
+        int sum = 0;
+        for (int value : values.values()) {
+            sum += value;
+        }
+        return sum;
+    }
+
+    @Override
+    public String statsName() {
+        return "drain";
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("accepting", accepting);
+        stats.put("pending", snapshot());
+        stats.put("deadlineMs", deadline.toMillis());
+        stats.put("lastDrainMs", lastDrainMillis);
+        return stats;
+    }
+}
@@ -0,0 +1,222 @@
+package org.tripplanner.util;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.BinaryOperator;
+import java.util.function.LongSupplier;
+
+/**
+ * Кэш с ограничением размера (LRU внутри страйпа) и сроком жизни от момента записи:
+ * в отличие от {@link ExpiringLongMap}, чтение запись не продлевает, поэтому значение
+ * не бывает старше ttl даже для горячих ключей.
+ * <p>
+ * Чтобы загрузка, начатая до инвалидации, не положила в кэш старое значение, перед
+ * загрузкой берётся {@link #stamp}, а {@link #put} с устаревшей отметкой игнорируется.
+ * Если ключ до загрузки неизвестен, используется отметка всего кэша {@link #stamp()}.
+ * <p>
+ * Значения не копируются: {@link #get} отдаёт всем читателям один и тот же объект. Кэшировать
+ * можно только то, что после записи в кэш никто не меняет.
+ */
+public final class ExpiringCache<K, V> {
+
+    private record Entry<V>(V value, long writtenAt) {
+    }
+
+    private final Stripe<K, V>[] stripes;
+    private final int stripeMask;
+    private final long ttlNanos;
+    private final LongSupplier clock;
+    private final AtomicLong generation = new AtomicLong();
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder invalidations = new LongAdder();
+    private final LongAdder staleLoads = new LongAdder();
+
+    public ExpiringCache(int stripes, int maxEntries, long ttlNanos) {
+        this(stripes, maxEntries, ttlNanos, System::nanoTime);
+    }
+
+    ExpiringCache(int stripes, int maxEntries, long ttlNanos, LongSupplier clock) {
+        int count = stripes <= 1 ? 1 : Integer.highestOneBit(stripes - 1) << 1;
+        int maxPerStripe = Math.max(1, (maxEntries + count - 1) / count);
+        this.stripes = newStripes(count);
+        this.stripeMask = count - 1;
+        this.ttlNanos = ttlNanos;
+        this.clock = clock;
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe<>(maxPerStripe, evictions);
+        }
+    }
+
+    public V get(K key) {
+        Stripe<K, V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            Entry<V> entry = stripe.get(key);
+            if (entry == null) {
+                misses.increment();
+                return null;
+            }
+            if (clock.getAsLong() - entry.writtenAt() > ttlNanos) {
+                stripe.remove(key);
+                expirations.increment();
+                misses.increment();
+                return null;
+            }
+            hits.increment();
+            return entry.value();
+        }
+    }
+
+    /**
+     * Отметка, которую нужно взять до похода в базу и передать в {@link #put}.
+     */
+    public long stamp(K key) {
+        Stripe<K, V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            return stripe.generation;
+        }
+    }
+
+    /**
+     * Отметка всего кэша: меняется при любой инвалидации.
+     */
+    public long stamp() {
+        return generation.get();
+    }
+
+    /**
+     * Кладёт значение, если с момента stamp в страйпе не было инвалидаций.
+     */
+    public void put(K key, V value, long stamp) {
+        Stripe<K, V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            if (stripe.generation != stamp) {
+                staleLoads.increment();
+                return;
+            }
+            stripe.put(key, new Entry<>(value, clock.getAsLong()));
+        }
+    }
+
+    /**
+     * Как {@link #put}, но с отметкой всего кэша из {@link #stamp()}.
+     */
+    public void putUnlessInvalidated(K key, V value, long cacheStamp) {
+        Stripe<K, V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            if (generation.get() != cacheStamp) {
+                staleLoads.increment();
+                return;
+            }
+            stripe.put(key, new Entry<>(value, clock.getAsLong()));
+        }
+    }
+
+    /**
+     * Объединяет значение с уже лежащим по ключу. Срок жизни считается от первой записи,
+     * иначе часто дополняемое значение не истекало бы никогда.
+     */
+    public void merge(K key, V value, long stamp, BinaryOperator<V> remapping) {
+        Stripe<K, V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            if (stripe.generation != stamp) {
+                staleLoads.increment();
+                return;
+            }
+            long now = clock.getAsLong();
+            Entry<V> old = stripe.get(key);
+            if (old != null && now - old.writtenAt() <= ttlNanos) {
+                stripe.put(key, new Entry<>(remapping.apply(old.value(), value), old.writtenAt()));
+            } else {
+                stripe.put(key, new Entry<>(value, now));
+            }
+        }
+    }
+
+    public void invalidate(K key) {
+        Stripe<K, V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            generation.incrementAndGet();
+            stripe.generation++;
+            stripe.remove(key);
+        }
+        invalidations.increment();
+    }
+
+    public void invalidateAll() {
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                stripe.generation++;
+                stripe.clear();
+            }
+        }
+        generation.incrementAndGet();
+        invalidations.increment();
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe<K, V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size();
+            }
+        }
+        return size;
+    }
+
+    public Map<String, Object> stats() {
+        long hitCount = hits.sum();
+        long missCount = misses.sum();
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("size", size());
+        stats.put("hits", hitCount);
+        stats.put("misses", missCount);
+        stats.put("hitRate", hitCount + missCount == 0 ? 0.0 : (double) hitCount / (hitCount + missCount));
+        stats.put("expirations", expirations.sum());
+        stats.put("evictions", evictions.sum());
+        stats.put("invalidations", invalidations.sum());
+        stats.put("staleLoads", staleLoads.sum());
+        return stats;
+    }
+
+    // Массив параметризованного типа не создать, непроверенное приведение только здесь
+    @SuppressWarnings("unchecked")
+    private static <K, V> Stripe<K, V>[] newStripes(int count) {
+        return (Stripe<K, V>[]) new Stripe<?, ?>[count];
+    }
+
+    private Stripe<K, V> stripeOf(K key) {
+        int h = key.hashCode();
+        return stripes[(h ^ (h >>> 16)) & stripeMask];
+    }
+
+    private static final class Stripe<K, V> extends LinkedHashMap<K, Entry<V>> {
+
+        // Страйп не сериализуется, но LinkedHashMap требует поле
+        private static final long serialVersionUID = 1L;
+
+        private final int maxEntries;
+        private final LongAdder evictions;
+        private long generation;
+
+        Stripe(int maxEntries, LongAdder evictions) {
+            super(16, 0.75f, true);
+            this.maxEntries = maxEntries;
+            this.evictions = evictions;
+        }
+
+        @Override
+        protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+            if (size() > maxEntries) {
+                evictions.increment();
+                return true;
+            }
+            return false;
+        }
+    }
+}
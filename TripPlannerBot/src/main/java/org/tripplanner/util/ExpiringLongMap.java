@@ -0,0 +1,334 @@
+package org.tripplanner.util;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongFunction;
+import java.util.function.LongSupplier;
+
+/**
+ * Потокобезопасная мапа с примитивным long-ключом, истечением по простою и жёстким
+ * лимитом размера. Ключи разложены по страйпам, каждый страйп — открытая адресация
+ * с линейным пробированием на трёх параллельных массивах, без боксинга и узлов.
+ * Протухшие записи удаляются лениво при чтении и пачкой в {@link #sweep()}; при
+ * переполнении вытесняется самая давно использованная из случайной выборки.
+ */
+public final class ExpiringLongMap<V> {
+
+    // Chat id в Telegram никогда не бывает Long.MIN_VALUE
+    private static final long EMPTY = Long.MIN_VALUE;
+    private static final int MIN_CAPACITY = 16;
+    private static final int EVICTION_SAMPLES = 8;
+
+    private final Stripe<V>[] stripes;
+    private final int stripeMask;
+    private final long ttlNanos;
+    private final int maxPerStripe;
+    private final LongSupplier clock;
+
+    private final LongAdder expirations = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    public ExpiringLongMap(int stripes, int maxEntries, long ttlNanos) {
+        this(stripes, maxEntries, ttlNanos, System::nanoTime);
+    }
+
+    ExpiringLongMap(int stripes, int maxEntries, long ttlNanos, LongSupplier clock) {
+        int count = Integer.highestOneBit(Math.max(1, stripes - 1)) << 1;
+        this.stripes = newStripes(count);
+        this.stripeMask = count - 1;
+        this.ttlNanos = ttlNanos;
+        this.maxPerStripe = Math.max(1, (maxEntries + count - 1) / count);
+        this.clock = clock;
+        for (int i = 0; i < count; i++) {
+            this.stripes[i] = new Stripe<>();
+        }
+    }
+
+    // Массив параметризованного типа не создать, непроверенное приведение только здесь
+    @SuppressWarnings("unchecked")
+    private static <V> Stripe<V>[] newStripes(int count) {
+        return (Stripe<V>[]) new Stripe<?>[count];
+    }
+
+    /**
+     * Значение по ключу с продлением срока жизни, null — если нет или протухло.
+     */
+    public V get(long key) {
+        long now = clock.getAsLong();
+        Stripe<V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            int index = stripe.find(key);
+            if (index < 0) {
+                return null;
+            }
+            if (now - stripe.accessed[index] > ttlNanos) {
+                stripe.removeAt(index);
+                stripe.shrinkIfSparse();
+                expirations.increment();
+                return null;
+            }
+            stripe.accessed[index] = now;
+            return stripe.value(index);
+        }
+    }
+
+    public void put(long key, V value) {
+        long now = clock.getAsLong();
+        Stripe<V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            int index = stripe.find(key);
+            if (index >= 0) {
+                stripe.values[index] = value;
+                stripe.accessed[index] = now;
+                return;
+            }
+            if (stripe.size >= maxPerStripe) {
+                evictOne(stripe, now);
+            }
+            stripe.insert(key, value, now);
+        }
+    }
+
+    /**
+     * Значение по ключу с продлением срока жизни; если его нет — создаёт под локом страйпа,
+     * так что два конкурентных вызова получат один и тот же объект.
+     */
+    public V computeIfAbsent(long key, LongFunction<V> factory) {
+        long now = clock.getAsLong();
+        Stripe<V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            int index = stripe.find(key);
+            if (index >= 0) {
+                if (now - stripe.accessed[index] <= ttlNanos) {
+                    stripe.accessed[index] = now;
+                    return stripe.value(index);
+                }
+                stripe.removeAt(index);
+                expirations.increment();
+            }
+            V value = factory.apply(key);
+            if (stripe.size >= maxPerStripe) {
+                evictOne(stripe, now);
+            }
+            stripe.insert(key, value, now);
+            return value;
+        }
+    }
+
+    public V remove(long key) {
+        Stripe<V> stripe = stripeOf(key);
+        synchronized (stripe) {
+            int index = stripe.find(key);
+            if (index < 0) {
+                return null;
+            }
+            V value = stripe.value(index);
+            stripe.removeAt(index);
+            stripe.shrinkIfSparse();
+            return value;
+        }
+    }
+
+    /**
+     * Удаляет все протухшие записи. Возвращает их количество.
+     */
+    public int sweep() {
+        long now = clock.getAsLong();
+        int removed = 0;
+        for (Stripe<V> stripe : stripes) {
+            synchronized (stripe) {
+                int index = 0;
+                while (index < stripe.keys.length) {
+                    if (stripe.keys[index] != EMPTY && now - stripe.accessed[index] > ttlNanos) {
+                        // Сдвиг назад мог поставить сюда другой ключ, поэтому индекс не двигаем
+                        stripe.removeAt(index);
+                        removed++;
+                    } else {
+                        index++;
+                    }
+                }
+                stripe.shrinkIfSparse();
+            }
+        }
+        expirations.add(removed);
+        return removed;
+    }
+
+    public int size() {
+        int size = 0;
+        for (Stripe<V> stripe : stripes) {
+            synchronized (stripe) {
+                size += stripe.size;
+            }
+        }
+        return size;
+    }
+
+    public long getExpirations() {
+        return expirations.sum();
+    }
+
+    public long getEvictions() {
+        return evictions.sum();
+    }
+
+    /**
+     * Сколько байт занимают сами таблицы (ключи, ссылки, отметки времени) без значений.
+     */
+    public long tableBytes() {
+        long slots = 0;
+        for (Stripe<V> stripe : stripes) {
+            synchronized (stripe) {
+                slots += stripe.keys.length;
+            }
+        }
+        // long ключ + long время + сжатая ссылка
+        return slots * (Long.BYTES + Long.BYTES + Integer.BYTES);
+    }
+
+    private void evictOne(Stripe<V> stripe, long now) {
+        int mask = stripe.keys.length - 1;
+        int index = ThreadLocalRandom.current().nextInt(stripe.keys.length);
+        int victim = -1;
+        for (int seen = 0, probes = 0; seen < EVICTION_SAMPLES && probes <= mask; probes++, index = (index + 1) & mask) {
+            if (stripe.keys[index] == EMPTY) {
+                continue;
+            }
+            seen++;
+            if (victim < 0 || stripe.accessed[index] - stripe.accessed[victim] < 0) {
+                victim = index;
+            }
+        }
+        if (victim < 0) {
+            return;
+        }
+        if (now - stripe.accessed[victim] > ttlNanos) {
+            expirations.increment();
+        } else {
+            evictions.increment();
+        }
+        stripe.removeAt(victim);
+    }
+
+    private Stripe<V> stripeOf(long key) {
+        return stripes[(int) (mix(key) >>> 32) & stripeMask];
+    }
+
+    static long mix(long key) {
+        // Финализатор MurmurHash3: соседние chat id расходятся по разным слотам
+        long h = key;
+        h ^= h >>> 33;
+        h *= 0xff51afd7ed558ccdL;
+        h ^= h >>> 33;
+        h *= 0xc4ceb9fe1a85ec53L;
+        h ^= h >>> 33;
+        return h;
+    }
+
+    private static final class Stripe<V> {
+        private long[] keys = emptyKeys(MIN_CAPACITY);
+        private Object[] values = new Object[MIN_CAPACITY];
+        private long[] accessed = new long[MIN_CAPACITY];
+        private int size;
+
+        private int find(long key) {
+            int mask = keys.length - 1;
+            int index = (int) mix(key) & mask;
+            while (true) {
+                long current = keys[index];
+                if (current == key) {
+                    return index;
+                }
+                if (current == EMPTY) {
+                    return -1;
+                }
+                index = (index + 1) & mask;
+            }
+        }
+
+        @SuppressWarnings("unchecked")
+        private V value(int index) {
+            return (V) values[index];
+        }
+
+        private void insert(long key, Object value, long now) {
+            // Заполненность не выше 1/2, чтобы цепочки пробирования оставались короткими
+            if ((size + 1) * 2 > keys.length) {
+                resize(keys.length * 2);
+            }
+            int mask = keys.length - 1;
+            int index = (int) mix(key) & mask;
+            while (keys[index] != EMPTY) {
+                index = (index + 1) & mask;
+            }
+            keys[index] = key;
+            values[index] = value;
+            accessed[index] = now;
+            size++;
+        }
+
+        // Удаление со сдвигом назад: без надгробий, цепочки не деградируют
+        private void removeAt(int index) {
+            int mask = keys.length - 1;
+            int hole = index;
+            int next = index;
+            while (true) {
+                next = (next + 1) & mask;
+                long key = keys[next];
+                if (key == EMPTY) {
+                    break;
+                }
+                int home = (int) mix(key) & mask;
+                // Элемент можно сдвинуть в дыру, если его домашний слот не лежит в (hole, next]
+                boolean between = hole <= next
+                        ? hole < home && home <= next
+                        : hole < home || home <= next;
+                if (!between) {
+                    keys[hole] = key;
+                    values[hole] = values[next];
+                    accessed[hole] = accessed[next];
+                    hole = next;
+                }
+            }
+            keys[hole] = EMPTY;
+            values[hole] = null;
+            size--;
+        }
+
+        // Отдельно от removeAt, чтобы sweep мог удалять на месте, не теряя позицию
+        private void shrinkIfSparse() {
+            if (keys.length > MIN_CAPACITY && size * 8 < keys.length) {
+                resize(keys.length / 2);
+            }
+        }
+
+        private void resize(int capacity) {
+            long[] oldKeys = keys;
+            Object[] oldValues = values;
+            long[] oldAccessed = accessed;
+            keys = emptyKeys(capacity);
+            values = new Object[capacity];
+            accessed = new long[capacity];
+            int mask = capacity - 1;
+            for (int i = 0; i < oldKeys.length; i++) {
+                if (oldKeys[i] == EMPTY) {
+                    continue;
+                }
+                int index = (int) mix(oldKeys[i]) & mask;
+                while (keys[index] != EMPTY) {
+                    index = (index + 1) & mask;
+                }
+                keys[index] = oldKeys[i];
+                values[index] = oldValues[i];
+                accessed[index] = oldAccessed[i];
+            }
+        }
+
+        private static long[] emptyKeys(int capacity) {
+            long[] keys = new long[capacity];
+            Arrays.fill(keys, EMPTY);
+            return keys;
+        }
+    }
+}
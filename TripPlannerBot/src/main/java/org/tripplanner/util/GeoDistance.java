@@ -0,0 +1,25 @@
+package org.tripplanner.util;
+
+/**
+ * Расстояния на сфере радиусом {@link #EARTH_RADIUS_METERS} — тем же, которым считает
+ * $nearSphere для GeoJSON, поэтому расстояния в памяти совпадают с расстояниями в базе.
+ */
+public final class GeoDistance {
+
+    public static final double EARTH_RADIUS_METERS = 6_378_100;
+    public static final double METERS_PER_DEGREE = EARTH_RADIUS_METERS * Math.PI / 180;
+
+    private GeoDistance() {
+    }
+
+    /**
+     * Расстояние по большому кругу (гаверсинус) между двумя точками в градусах.
+     */
+    public static double meters(double lat1, double lon1, double lat2, double lon2) {
+        double dLat = Math.toRadians(lat2 - lat1);
+        double dLon = Math.toRadians(lon2 - lon1);
+        double a = Math.sin(dLat / 2) * Math.sin(dLat / 2)
+                + Math.cos(Math.toRadians(lat1)) * Math.cos(Math.toRadians(lat2)) * Math.sin(dLon / 2) * Math.sin(dLon / 2);
+        return EARTH_RADIUS_METERS * 2 * Math.atan2(Math.sqrt(a), Math.sqrt(1 - a));
+    }
+}
@@ -0,0 +1,13 @@
+package org.tripplanner.util;
+
+import java.util.Map;
+
+/**
+ * Компонент, который публикует свои метрики на /admin/metrics.
+ */
+public interface StatsSource {
+
+    String statsName();
+
+    Map<String, Object> stats();
+}
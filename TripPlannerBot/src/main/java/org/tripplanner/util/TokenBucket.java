@@ -0,0 +1,78 @@
+package org.tripplanner.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Классический token bucket на System.nanoTime() или переданных часах. Поддерживает принудительную паузу
+ * (например, retry_after от Telegram).
+ */
+public final class TokenBucket {
+
+    private final double capacity;
+    private final double tokensPerNano;
+    private final LongSupplier clock;
+    private double tokens;
+    private long lastRefill;
+    private long pausedUntil;
+
+    public TokenBucket(double ratePerSecond, double burst) {
+        this(ratePerSecond, burst, System::nanoTime);
+    }
+
+    public TokenBucket(double ratePerSecond, double burst, LongSupplier clock) {
+        this.clock = clock;
+        this.capacity = Math.max(1, burst);
+        this.tokensPerNano = ratePerSecond / TimeUnit.SECONDS.toNanos(1);
+        this.tokens = capacity;
+        this.lastRefill = clock.getAsLong();
+        this.pausedUntil = lastRefill;
+    }
+
+    /**
+     * Сколько наносекунд ждать до появления токена (0 — токен есть). Токен не списывается.
+     */
+    public synchronized long nanosUntilAvailable(long now) {
+        refill(now);
+        if (now - pausedUntil < 0) {
+            return pausedUntil - now;
+        }
+        if (tokens >= 1) {
+            return 0;
+        }
+        return (long) Math.ceil((1 - tokens) / tokensPerNano);
+    }
+
+    /**
+     * Списывает токен, если он есть. Иначе возвращает время ожидания и ничего не меняет.
+     */
+    public synchronized long tryAcquire(long now) {
+        long wait = nanosUntilAvailable(now);
+        if (wait == 0) {
+            tokens -= 1;
+        }
+        return wait;
+    }
+
+    public synchronized void pauseFor(long nanos) {
+        long now = clock.getAsLong();
+        refill(now);
+        tokens = 0;
+        if (now + nanos - pausedUntil > 0) {
+            pausedUntil = now + nanos;
+        }
+    }
+
+    public synchronized boolean isFull(long now) {
+        refill(now);
+        return tokens >= capacity && now - pausedUntil >= 0;
+    }
+
+    private void refill(long now) {
+        long elapsed = now - lastRefill;
+        if (elapsed > 0) {
+            tokens = Math.min(capacity, tokens + elapsed * tokensPerNano);
+            lastRefill = now;
+        }
+    }
+}
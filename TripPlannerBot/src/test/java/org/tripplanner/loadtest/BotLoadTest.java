@@ -0,0 +1,145 @@
+package org.tripplanner.loadtest;
+
+import java.time.Duration;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Tag;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.tripplanner.modules.connections.OutboundMessageQueue;
+import org.tripplanner.modules.connections.ReactorNettyBotApiTransport;
+import org.tripplanner.modules.connections.TelegramUpdateDecoder;
+import org.tripplanner.modules.connections.UpdateCheckpointer;
+import org.tripplanner.modules.connections.UpdateDispatcher;
+import org.tripplanner.modules.connections.UpdatePoller;
+import org.tripplanner.modules.connections.UpdateProcessor;
+import org.tripplanner.modules.dialog.CommandRouter;
+import org.tripplanner.modules.dialog.DialogSessionBackend;
+import org.tripplanner.modules.dialog.DialogSessionStore;
+import org.tripplanner.modules.dialog.DialogState;
+import org.tripplanner.modules.dialog.HelpCommands;
+import org.tripplanner.modules.dialog.TelegramBotController;
+import org.tripplanner.modules.plannedtrips.PlannedTripsCommands;
+import org.tripplanner.modules.plannedtrips.PlannedTripsController;
+import org.tripplanner.modules.plannedtrips.PlannedTripsService;
+import org.tripplanner.modules.triphelper.LiveLocationDebouncer;
+import org.tripplanner.modules.triphelper.LocationWriteBehind;
+import org.tripplanner.modules.triphelper.TrackRecorder;
+import org.tripplanner.modules.triphelper.TripHelperCommands;
+import org.tripplanner.modules.triphelper.TripHelperController;
+import org.tripplanner.modules.triphelper.TripHelperService;
+import org.tripplanner.modules.triphistory.TripHistoryCommands;
+import org.tripplanner.modules.triphistory.TripHistoryController;
+import org.tripplanner.modules.triphistory.TripHistoryService;
+import org.tripplanner.repositories.cache.ActivePointIndex;
+import org.tripplanner.util.BlockingCallDetector;
+import org.tripplanner.util.DrainCoordinator;
+
+/**
+ * Сквозной прогон бота: поддельный Bot API, настоящий пайплайн (поллер, диспетчер,
+ * очередь исходящих, чекпоинты, контроллеры) и база в памяти вместо Mongo.
+ * Не входит в обычный test, запускается через {@code gradle loadTest}.
+ * Параметры: -Dloadtest.chats, -Dloadtest.think-ms, -Dloadtest.db-round-trip-ms.
+ */
+@Tag("load")
+public class BotLoadTest {
+
+    private static final Logger logger = LoggerFactory.getLogger(BotLoadTest.class);
+    private static final String TOKEN = "42:load";
+
+    private final int chats = Integer.getInteger("loadtest.chats", 2000);
+    private final long thinkMs = Long.getLong("loadtest.think-ms", 0);
+    private final long dbRoundTripMs = Long.getLong("loadtest.db-round-trip-ms", 1);
+
+    private FakeBotApiServer api;
+    private DrainCoordinator drainCoordinator;
+    private LocationWriteBehind locations;
+    private TrackRecorder tracks;
+    private UpdateDispatcher dispatcher;
+    private OutboundMessageQueue outbound;
+    private UpdateCheckpointer checkpointer;
+    private ReactorNettyBotApiTransport transport;
+    private UpdatePoller poller;
+    private DialogSessionStore sessions;
+    private LoadGenerator generator;
+    private BlockingCallDetector blockingCalls;
+
+    @BeforeEach
+    public void startBot() {
+        blockingCalls = new BlockingCallDetector(true, new String[] {"reactor-http-", "parallel-"}, 50);
+        blockingCalls.start();
+        generator = new LoadGenerator(chats, Duration.ofMillis(thinkMs), Duration.ofSeconds(30));
+        api = new FakeBotApiServer(TOKEN, generator).start();
+        generator.attach(api);
+
+        InMemoryDatabase db = new InMemoryDatabase(Duration.ofMillis(dbRoundTripMs));
+        sessions = new DialogSessionStore(1_800_000, 100_000, 60_000, 16, DialogSessionBackend.LOCAL, 5000, 2000);
+        drainCoordinator = new DrainCoordinator(10_000);
+        locations = new LocationWriteBehind(db.users(), 500, 1000, "", 65_536, drainCoordinator);
+        locations.start();
+        tracks = new TrackRecorder(db.tracks(), true, 10, 64, 60_000, 10_000, "", 262_144, drainCoordinator);
+        tracks.start();
+        PlannedTripsService plannedTripsService = new PlannedTripsService(db.users(), db.trips(), db.points(), db.routes());
+        TripHelperService tripHelperService = new TripHelperService(db.users(), db.trips(), db.points(),
+                new ActivePointIndex(true, 600_000, 100_000), locations, tracks);
+        DialogState dialogState = new DialogState(sessions);
+        PlannedTripsController plannedTrips = new PlannedTripsController(plannedTripsService, db.trips());
+        TripHelperController tripHelper = new TripHelperController(tripHelperService,
+                new LiveLocationDebouncer(tripHelperService, 3000, 20, 30_000, 1_800_000, 100_000, drainCoordinator));
+        CommandRouter router = new CommandRouter(List.of(
+                new PlannedTripsCommands(plannedTrips, db.users()),
+                new TripHelperCommands(tripHelper),
+                new TripHistoryCommands(new TripHistoryController(new TripHistoryService(db.users(), db.trips()))),
+                new HelpCommands()), dialogState);
+        TelegramBotController controller = new TelegramBotController(router, tripHelper, dialogState);
+
+        dispatcher = new UpdateDispatcher(256, 50, 30_000, drainCoordinator);
+        // Лимиты Telegram здесь не нужны: меряем сам бот, а не троттлинг
+        outbound = new OutboundMessageQueue(100_000, 32, 1_000_000, 1_000_000, 1_000_000, false, 3, 63,
+                drainCoordinator);
+        checkpointer = new UpdateCheckpointer(db.botState(), "loadtest", 100, 1000, 4096);
+        UpdateProcessor processor = new UpdateProcessor(controller, dispatcher, outbound, checkpointer);
+        transport = new ReactorNettyBotApiTransport(new TelegramUpdateDecoder(), TOKEN, api.baseUrl(),
+                64, 10_000, 1, 100, new String[] {"message", "edited_message"});
+        poller = new UpdatePoller(processor, checkpointer, 100);
+
+        outbound.start(transport);
+        poller.start(transport, checkpointer.restoreOffset());
+    }
+
+    @AfterEach
+    public void stopBot() {
+        drainCoordinator.onStopIntake(poller::stop);
+        drainCoordinator.drain();
+        outbound.stop();
+        checkpointer.stop();
+        locations.stop();
+        tracks.stop();
+        dispatcher.shutdown();
+        transport.shutdown();
+        api.stop();
+        blockingCalls.stop();
+    }
+
+    @Test
+    public void testScriptedChats() throws InterruptedException {
+        LoadGenerator.Report report = generator.run();
+
+        logger.info("Load test report: {}", report.toMap());
+        logger.info("Dispatcher: {}", dispatcher.stats());
+        logger.info("Outbound: {}", outbound.stats());
+        logger.info("Dialog sessions: {}", sessions.stats());
+        logger.info("Poller: {}, fake API getUpdates calls: {}", poller.stats(), api.getUpdatesCalls());
+        logger.info("Blocking calls: {}", blockingCalls.stats());
+
+        assertEquals(0, report.timeouts(), "some chats did not get a reply in time");
+        assertEquals(report.sent(), report.replies());
+        assertEquals(0, report.unexpected(), "some replies did not match the script");
+        assertTrue(blockingCalls.violations().isEmpty(), "blocking calls on event loops: " + blockingCalls.violations());
+    }
+}
@@ -0,0 +1,178 @@
+package org.tripplanner.loadtest;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+import reactor.netty.http.server.HttpServerRequest;
+import reactor.netty.http.server.HttpServerResponse;
+
+/**
+ * Поддельный Telegram Bot API на Reactor Netty. getUpdates работает как настоящий long poll:
+ * отдаёт накопившиеся апдейты или висит до прихода новых/таймаута. Каждый sendMessage
+ * передаётся в {@link ReplyListener} в момент получения запроса.
+ */
+public class FakeBotApiServer {
+
+    public interface ReplyListener {
+        void onReply(long chatId, String text, long receivedAtNanos);
+    }
+
+    private static final ObjectMapper objectMapper = new ObjectMapper();
+    private static final String OK_TRUE = "{\"ok\":true,\"result\":true}";
+
+    private final String token;
+    private final ReplyListener listener;
+    // update_id -> JSON апдейта; подтверждённые (id < offset) удаляются при следующем getUpdates
+    private final ConcurrentSkipListMap<Long, String> pending = new ConcurrentSkipListMap<>();
+    private final AtomicLong nextUpdateId = new AtomicLong(1);
+    private final AtomicLong messageIds = new AtomicLong();
+    // Последний выданный update_id; replay, чтобы подписавшийся после проверки очереди не пропустил сигнал
+    private final Sinks.Many<Long> arrivals = Sinks.many().replay().latest();
+    private final LongAdder getUpdatesCalls = new LongAdder();
+    private final LongAdder sendMessageCalls = new LongAdder();
+    private DisposableServer server;
+
+    public FakeBotApiServer(String token, ReplyListener listener) {
+        this.token = token;
+        this.listener = listener;
+    }
+
+    public FakeBotApiServer start() {
+        server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/bot" + token + "/{method}", this::handle))
+                .bindNow();
+        return this;
+    }
+
+    public String baseUrl() {
+        return "http://localhost:" + server.port();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.disposeNow();
+        }
+    }
+
+    public long pushText(long chatId, String text) {
+        return push(chatId, message -> message.put("text", text));
+    }
+
+    public long pushLocation(long chatId, double latitude, double longitude) {
+        return push(chatId, message -> message.putObject("location")
+                .put("latitude", latitude)
+                .put("longitude", longitude));
+    }
+
+    private synchronized long push(long chatId, Consumer<ObjectNode> body) {
+        long updateId = nextUpdateId.getAndIncrement();
+        ObjectNode update = objectMapper.createObjectNode();
+        update.put("update_id", updateId);
+        ObjectNode message = update.putObject("message");
+        message.put("message_id", updateId);
+        message.put("date", System.currentTimeMillis() / 1000);
+        message.putObject("chat").put("id", chatId).put("type", "private");
+        message.putObject("from").put("id", chatId).put("is_bot", false).put("first_name", "load");
+        body.accept(message);
+        pending.put(updateId, update.toString());
+        // Под монитором push, поэтому значения приходят в sink по порядку и без гонок эмиссии
+        arrivals.tryEmitNext(updateId);
+        return updateId;
+    }
+
+    public long getUpdatesCalls() {
+        return getUpdatesCalls.sum();
+    }
+
+    public long sendMessageCalls() {
+        return sendMessageCalls.sum();
+    }
+
+    private Mono<Void> handle(HttpServerRequest request, HttpServerResponse response) {
+        String method = request.param("method");
+        return request.receive().aggregate().asString(StandardCharsets.UTF_8)
+                .defaultIfEmpty("{}")
+                .flatMap(body -> switch (method) {
+                    case "getUpdates" -> getUpdates(read(body));
+                    case "sendMessage" -> Mono.fromSupplier(() -> sendMessage(read(body)));
+                    default -> Mono.just(OK_TRUE);
+                })
+                .flatMap(answer -> response.header("Content-Type", "application/json")
+                        .sendString(Mono.just(answer))
+                        .then());
+    }
+
+    private Mono<String> getUpdates(JsonNode request) {
+        getUpdatesCalls.increment();
+        long offset = request.path("offset").asLong(0);
+        int limit = request.path("limit").asInt(100);
+        Duration timeout = Duration.ofSeconds(request.path("timeout").asLong(0));
+        pending.headMap(offset).clear();
+
+        long seen = lastPushed();
+        List<String> batch = collect(offset, limit);
+        if (!batch.isEmpty() || timeout.isZero()) {
+            return Mono.just(result(batch));
+        }
+        return arrivals.asFlux()
+                .filter(id -> id > seen)
+                .next()
+                .timeout(timeout, Mono.empty())
+                .then(Mono.fromSupplier(() -> result(collect(offset, limit))));
+    }
+
+    // Под тем же монитором, что и push: всё до возвращённого id уже лежит в pending
+    private synchronized long lastPushed() {
+        return nextUpdateId.get() - 1;
+    }
+
+    private List<String> collect(long offset, int limit) {
+        List<String> batch = new ArrayList<>();
+        for (Map.Entry<Long, String> entry : pending.tailMap(offset).entrySet()) {
+            if (batch.size() >= limit) {
+                break;
+            }
+            batch.add(entry.getValue());
+        }
+        return batch;
+    }
+
+    private String sendMessage(JsonNode request) {
+        long receivedAt = System.nanoTime();
+        sendMessageCalls.increment();
+        long chatId = request.path("chat_id").asLong();
+        listener.onReply(chatId, request.path("text").asText(), receivedAt);
+        return "{\"ok\":true,\"result\":{\"message_id\":" + messageIds.incrementAndGet()
+                + ",\"chat\":{\"id\":" + chatId + ",\"type\":\"private\"},\"date\":0}}";
+    }
+
+    private static String result(List<String> updates) {
+        return "{\"ok\":true,\"result\":[" + String.join(",", updates) + "]}";
+    }
+
+    private static JsonNode read(String body) {
+        try {
+            return objectMapper.readTree(body);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+}
@@ -0,0 +1,629 @@
+package org.tripplanner.loadtest;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+import org.bson.types.ObjectId;
+import org.tripplanner.domain.Point;
+import org.tripplanner.domain.Route;
+import org.tripplanner.domain.TrackSegment;
+import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.TripStatus;
+import org.tripplanner.domain.TripSummary;
+import org.tripplanner.domain.User;
+import org.tripplanner.domain.UserLocation;
+import org.tripplanner.repositories.BotStateDAO;
+import org.tripplanner.repositories.PointDAO;
+import org.tripplanner.repositories.RouteDAO;
+import org.tripplanner.repositories.TrackDAO;
+import org.tripplanner.repositories.TripDAO;
+import org.tripplanner.repositories.UserDAO;
+import org.tripplanner.util.GeoDistance;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+/**
+ * Замена Mongo для нагрузочных прогонов: те же DAO-интерфейсы поверх мап в памяти.
+ * Каждое обращение можно задержать на roundTrip, чтобы приблизиться к сетевой базе.
+ * Наружу всегда отдаются копии, как после чтения из БД.
+ */
+public class InMemoryDatabase {
+
+    private final Duration roundTrip;
+    private final Map<Long, UserRow> users = new ConcurrentHashMap<>();
+    // Аналог индекса (ownerChatId, status, name): поездки по владельцу в порядке создания
+    private final Map<Long, List<String>> tripsByOwner = new ConcurrentHashMap<>();
+    private final Map<String, TripRow> trips = new ConcurrentHashMap<>();
+    private final Map<String, PointRow> points = new ConcurrentHashMap<>();
+    private final Map<String, Route> routes = new ConcurrentHashMap<>();
+    private final Map<String, Long> botState = new ConcurrentHashMap<>();
+    private final Map<String, String> resumeTokens = new ConcurrentHashMap<>();
+    private final List<TrackSegment> trackSegments = new CopyOnWriteArrayList<>();
+
+    private final UserDAO userDAO = new Users();
+    private final TripDAO tripDAO = new Trips();
+    private final PointDAO pointDAO = new Points();
+    private final RouteDAO routeDAO = new Routes();
+    private final BotStateDAO botStateDAO = new BotState();
+    private final TrackDAO trackDAO = new Tracks();
+
+    public InMemoryDatabase(Duration roundTrip) {
+        this.roundTrip = roundTrip;
+    }
+
+    public UserDAO users() {
+        return userDAO;
+    }
+
+    public TripDAO trips() {
+        return tripDAO;
+    }
+
+    public PointDAO points() {
+        return pointDAO;
+    }
+
+    public RouteDAO routes() {
+        return routeDAO;
+    }
+
+    public BotStateDAO botState() {
+        return botStateDAO;
+    }
+
+    public TrackDAO tracks() {
+        return trackDAO;
+    }
+
+    public int tripCount() {
+        return trips.size();
+    }
+
+    public int pointCount() {
+        return points.size();
+    }
+
+    private <T> Mono<T> io(Mono<T> operation) {
+        return roundTrip.isZero() ? operation : operation.delaySubscription(roundTrip);
+    }
+
+    private <T> Flux<T> io(Flux<T> operation) {
+        return roundTrip.isZero() ? operation : operation.delaySubscription(roundTrip);
+    }
+
+    private static String newId() {
+        return new ObjectId().toHexString();
+    }
+
+    // Как $in/$lookup в Mongo: одним обращением, в порядке id, без пропавших поездок
+    private List<Trip> rows(List<String> tripIds) {
+        List<Trip> result = new ArrayList<>(tripIds.size());
+        for (String id : tripIds) {
+            TripRow trip = trips.get(id);
+            if (trip != null) {
+                result.add(trip.toTrip());
+            }
+        }
+        return result;
+    }
+
+    private Flux<Trip> joined(Long chatId, Function<UserRow, List<String>> list) {
+        return io(Mono.fromSupplier(() -> users.get(chatId)))
+                .flatMapIterable(user -> rows(List.copyOf(list.apply(user))));
+    }
+
+    private static TripSummary summary(Trip trip) {
+        return new TripSummary(trip.getId(), trip.getName(), trip.getStartDate(), trip.getEndDate());
+    }
+
+    private void setStatus(String tripId, TripStatus status) {
+        TripRow trip = trips.get(tripId);
+        if (trip != null) {
+            trip.status = status.name();
+        }
+    }
+
+    private static Trip ref(String tripId) {
+        Trip trip = new Trip();
+        trip.setId(tripId);
+        return trip;
+    }
+
+    private static List<Trip> refs(List<String> tripIds) {
+        List<Trip> result = new ArrayList<>(tripIds.size());
+        for (String id : tripIds) {
+            result.add(ref(id));
+        }
+        return result;
+    }
+
+    private static final class UserRow {
+        final long chatId;
+        final List<String> plannedTrips = new CopyOnWriteArrayList<>();
+        final List<String> currentTrips = new CopyOnWriteArrayList<>();
+        final List<String> tripHistory = new CopyOnWriteArrayList<>();
+        volatile String tripInPlanning;
+        volatile String ongoingTrip;
+        volatile double latitude;
+        volatile double longitude;
+
+        UserRow(long chatId) {
+            this.chatId = chatId;
+        }
+
+        // Так же, как UserMapper: вместо поездок только ссылки с id
+        User toUser() {
+            User user = new User(chatId,
+                    tripInPlanning != null ? ref(tripInPlanning) : null,
+                    refs(plannedTrips), refs(currentTrips),
+                    ongoingTrip != null ? ref(ongoingTrip) : null,
+                    refs(tripHistory));
+            user.setPoints(Collections.emptyList());
+            return user;
+        }
+    }
+
+    private static final class TripRow {
+        final String id;
+        final String name;
+        final LocalDate startDate;
+        final LocalDate endDate;
+        final List<String> points = new CopyOnWriteArrayList<>();
+        final List<String> routes = new CopyOnWriteArrayList<>();
+        final List<String> notes = new CopyOnWriteArrayList<>();
+        volatile int rating;
+        volatile String status;
+        volatile String startPoint;
+
+        TripRow(String id, String name, LocalDate startDate, LocalDate endDate) {
+            this.id = id;
+            this.name = name;
+            this.startDate = startDate;
+            this.endDate = endDate;
+        }
+
+        Trip toTrip() {
+            Trip trip = new Trip(name, startDate, endDate, rating, null,
+                    Collections.emptyList(), Collections.emptyList());
+            trip.setId(id);
+            trip.setStatus(status);
+            trip.setNotes(List.copyOf(notes));
+            if (startPoint != null) {
+                Point point = new Point();
+                point.setId(startPoint);
+                trip.setStartPoint(point);
+            }
+            return trip;
+        }
+    }
+
+    private static final class PointRow {
+        final String id;
+        final String tripId;
+        final String name;
+        final double latitude;
+        final double longitude;
+        final List<String> notes = new CopyOnWriteArrayList<>();
+        volatile boolean visited;
+
+        PointRow(String id, String tripId, String name, double latitude, double longitude) {
+            this.id = id;
+            this.tripId = tripId;
+            this.name = name;
+            this.latitude = latitude;
+            this.longitude = longitude;
+        }
+
+        Point toPoint() {
+            Point point = new Point(name, latitude, longitude, visited, List.copyOf(notes));
+            point.setId(id);
+            return point;
+        }
+    }
+
+    private final class Users implements UserDAO {
+
+        @Override
+        public Mono<User> getOrCreateUser(Long chatId) {
+            return io(Mono.fromSupplier(() -> users.computeIfAbsent(chatId, UserRow::new).toUser()));
+        }
+
+        @Override
+        public Flux<User> getAllUsers() {
+            return io(Flux.defer(() -> Flux.fromIterable(List.copyOf(users.values())).map(UserRow::toUser)));
+        }
+
+        @Override
+        public Flux<Trip> getAllPlannedTrips(Long chatId) {
+            return joined(chatId, user -> user.plannedTrips);
+        }
+
+        @Override
+        public Mono<Trip> getTripInPlanning(Long chatId) {
+            return io(Mono.fromSupplier(() -> users.get(chatId)))
+                    .flatMap(user -> Mono.justOrEmpty(user.tripInPlanning))
+                    .flatMap(tripDAO::getTrip);
+        }
+
+        @Override
+        public Mono<Trip> finishPlanning(Long chatId) {
+            return io(Mono.fromSupplier(() -> users.get(chatId)))
+                    .flatMap(user -> {
+                        String tripId = user.tripInPlanning;
+                        if (tripId == null) {
+                            return Mono.error(new RuntimeException("No trip in planning"));
+                        }
+                        return tripDAO.updateTripStatus(tripId, "FINISHED")
+                                .doOnNext(trip -> {
+                                    user.tripHistory.add(tripId);
+                                    user.plannedTrips.remove(tripId);
+                                    user.tripInPlanning = null;
+                                });
+                    });
+        }
+
+        @Override
+        public Mono<Trip> cancelPlanning(Long chatId) {
+            return io(Mono.fromSupplier(() -> users.get(chatId)))
+                    .flatMap(user -> {
+                        String tripId = user.tripInPlanning;
+                        user.tripInPlanning = null;
+                        return tripId == null ? Mono.empty() : tripDAO.getTrip(tripId);
+                    });
+        }
+
+        @Override
+        public Mono<Trip> deletePlannedTrip(Long chatId, String tripId) {
+            return io(Mono.fromSupplier(() -> users.get(chatId)))
+                    .doOnNext(user -> {
+                        user.plannedTrips.remove(tripId);
+                        setStatus(tripId, TripStatus.DELETED);
+                    })
+                    .flatMap(user -> tripDAO.getTrip(tripId));
+        }
+
+        @Override
+        public Flux<Trip> getCurrentTrips(Long chatId) {
+            return joined(chatId, user -> user.currentTrips);
+        }
+
+        @Override
+        public Flux<Trip> getFinishedTrips(Long chatId) {
+            return joined(chatId, user -> user.tripHistory);
+        }
+
+        @Override
+        public Flux<TripSummary> getPlannedTripSummaries(Long chatId) {
+            return joined(chatId, user -> user.plannedTrips).map(InMemoryDatabase::summary);
+        }
+
+        @Override
+        public Flux<TripSummary> getFinishedTripSummaries(Long chatId) {
+            return joined(chatId, user -> user.tripHistory).map(InMemoryDatabase::summary);
+        }
+
+        @Override
+        public Mono<Void> updateUserLocation(Long chatId, double latitude, double longitude) {
+            return io(Mono.fromRunnable(() -> {
+                UserRow user = users.get(chatId);
+                if (user != null) {
+                    user.latitude = latitude;
+                    user.longitude = longitude;
+                }
+            }));
+        }
+
+        @Override
+        public Mono<Void> updateUserLocations(Collection<UserLocation> locations) {
+            return io(Mono.fromRunnable(() -> locations.forEach(location -> {
+                UserRow user = users.get(location.chatId());
+                if (user != null) {
+                    user.latitude = location.latitude();
+                    user.longitude = location.longitude();
+                }
+            })));
+        }
+
+        @Override
+        public Mono<User> getUserByChatId(Long chatId) {
+            return io(Mono.fromSupplier(() -> users.get(chatId)).map(UserRow::toUser));
+        }
+
+        @Override
+        public Mono<Void> moveToTripHistory(Long chatId, String tripId) {
+            return io(Mono.fromRunnable(() -> {
+                UserRow user = users.get(chatId);
+                if (user != null) {
+                    user.plannedTrips.remove(tripId);
+                    if (!user.tripHistory.contains(tripId)) {
+                        user.tripHistory.add(tripId);
+                    }
+                }
+                setStatus(tripId, TripStatus.FINISHED);
+            }));
+        }
+
+        @Override
+        public Mono<Void> setOngoingTrip(Long chatId, String tripId) {
+            return io(Mono.fromRunnable(() -> {
+                UserRow user = users.get(chatId);
+                if (user != null) {
+                    user.ongoingTrip = tripId;
+                    user.plannedTrips.remove(tripId);
+                    if (!user.currentTrips.contains(tripId)) {
+                        user.currentTrips.add(tripId);
+                    }
+                }
+                setStatus(tripId, TripStatus.ONGOING);
+            }));
+        }
+    }
+
+    private final class Trips implements TripDAO {
+
+        @Override
+        public Mono<Trip> createTrip(Long chatId, String name, LocalDate startDate, LocalDate endDate) {
+            return io(Mono.defer(() -> {
+                UserRow user = users.get(chatId);
+                if (user == null) {
+                    return Mono.error(new RuntimeException("User not found"));
+                }
+                TripRow trip = new TripRow(newId(), name, startDate, endDate);
+                trip.status = TripStatus.PLANNED.name();
+                trips.put(trip.id, trip);
+                tripsByOwner.computeIfAbsent(chatId, id -> new CopyOnWriteArrayList<>()).add(trip.id);
+                user.plannedTrips.add(trip.id);
+                return Mono.just(trip.toTrip());
+            }));
+        }
+
+        @Override
+        public Mono<Trip> addPoint(String tripId, String pointId) {
+            return update(tripId, trip -> {
+                if (!trip.points.contains(pointId)) {
+                    trip.points.add(pointId);
+                }
+            });
+        }
+
+        @Override
+        public Mono<Trip> setStartPoint(String tripId, String pointId) {
+            return update(tripId, trip -> trip.startPoint = pointId);
+        }
+
+        @Override
+        public Mono<Trip> addRoute(String tripId, String routeId) {
+            return update(tripId, trip -> trip.routes.add(routeId));
+        }
+
+        @Override
+        public Flux<Point> getAllPoints(String tripId) {
+            return io(Mono.fromSupplier(() -> trips.get(tripId)))
+                    .flatMapMany(trip -> Flux.fromIterable(trip.points))
+                    .flatMap(pointId -> Mono.justOrEmpty(points.get(pointId)))
+                    .map(PointRow::toPoint);
+        }
+
+        @Override
+        public Mono<Trip> setTripRating(String tripId, int rating) {
+            return update(tripId, trip -> trip.rating = rating);
+        }
+
+        @Override
+        public Mono<Trip> getTrip(String tripId) {
+            return io(Mono.fromSupplier(() -> trips.get(tripId)))
+                    .switchIfEmpty(Mono.error(new RuntimeException("Trip not found with ID: " + tripId)))
+                    .map(TripRow::toTrip);
+        }
+
+        @Override
+        public Flux<Trip> getTrips(Collection<ObjectId> tripIds) {
+            return io(Mono.fromSupplier(() -> rows(tripIds.stream().map(ObjectId::toHexString).toList())))
+                    .flatMapIterable(rows -> rows);
+        }
+
+        @Override
+        public Mono<Trip> findByOwnerAndName(Long chatId, String name, Collection<TripStatus> statuses) {
+            return io(Mono.fromSupplier(() -> {
+                List<String> owned = tripsByOwner.getOrDefault(chatId, List.of());
+                for (int i = owned.size() - 1; i >= 0; i--) {
+                    TripRow trip = trips.get(owned.get(i));
+                    if (trip != null && trip.name.equals(name) && trip.status != null
+                            && statuses.contains(TripStatus.valueOf(trip.status))) {
+                        return trip.toTrip();
+                    }
+                }
+                return null;
+            }));
+        }
+
+        @Override
+        public Flux<Trip> getAllTrips() {
+            return io(Flux.defer(() -> Flux.fromIterable(List.copyOf(trips.values())).map(TripRow::toTrip)));
+        }
+
+        @Override
+        public Mono<Trip> addNoteToTrip(String tripId, String note) {
+            return update(tripId, trip -> trip.notes.add(note))
+                    .switchIfEmpty(Mono.error(new RuntimeException("Trip not found with ID: " + tripId)));
+        }
+
+        @Override
+        public Mono<Trip> updateTripStatus(String tripId, String status) {
+            return update(tripId, trip -> trip.status = status)
+                    .switchIfEmpty(Mono.error(new RuntimeException("Trip not found with ID: " + tripId)));
+        }
+
+        @Override
+        public Mono<Point> markPointVisited(String tripId, String pointId) {
+            return io(Mono.fromSupplier(() -> points.get(pointId)))
+                    .filter(point -> tripId.equals(point.tripId))
+                    .doOnNext(point -> point.visited = true)
+                    .map(PointRow::toPoint)
+                    .switchIfEmpty(Mono.error(new RuntimeException("Point not found with ID: " + pointId)));
+        }
+
+        private Mono<Trip> update(String tripId, Consumer<TripRow> change) {
+            return io(Mono.fromSupplier(() -> trips.get(tripId)))
+                    .doOnNext(change)
+                    .map(TripRow::toTrip);
+        }
+    }
+
+    private final class Points implements PointDAO {
+
+        @Override
+        public Mono<Point> createPoint(Long chatId, String tripId, String name, double latitude, double longitude) {
+            return io(Mono.fromSupplier(() -> {
+                PointRow point = new PointRow(newId(), tripId, name, latitude, longitude);
+                points.put(point.id, point);
+                return point.toPoint();
+            }));
+        }
+
+        @Override
+        public Mono<Point> markPointVisited(String pointId) {
+            return io(Mono.fromSupplier(() -> points.get(pointId)))
+                    .doOnNext(point -> point.visited = true)
+                    .map(PointRow::toPoint);
+        }
+
+        @Override
+        public Mono<Point> addNoteToPoint(String pointId, String note) {
+            return io(Mono.fromSupplier(() -> points.get(pointId)))
+                    .doOnNext(point -> point.notes.add(note))
+                    .map(PointRow::toPoint);
+        }
+
+        @Override
+        public Mono<Point> getPoint(String pointId) {
+            return io(Mono.fromSupplier(() -> points.get(pointId)).map(PointRow::toPoint));
+        }
+
+        @Override
+        public Flux<Point> getPoints(Collection<String> pointIds) {
+            return io(Flux.defer(() -> Flux.fromIterable(List.copyOf(pointIds))))
+                    .distinct()
+                    .flatMap(pointId -> Mono.justOrEmpty(points.get(pointId)))
+                    .map(PointRow::toPoint);
+        }
+
+        @Override
+        public Flux<Point> getPointsByTripId(String tripId) {
+            return io(Flux.defer(() -> Flux.fromIterable(List.copyOf(points.values()))))
+                    .filter(point -> tripId.equals(point.tripId))
+                    .map(PointRow::toPoint);
+        }
+
+        @Override
+        public Mono<Point> findByTripAndName(String tripId, String name) {
+            return io(Flux.defer(() -> Flux.fromIterable(List.copyOf(points.values()))))
+                    .filter(point -> tripId.equals(point.tripId) && name.equals(point.name))
+                    .next()
+                    .map(PointRow::toPoint);
+        }
+
+        @Override
+        public Flux<Point> findUnvisitedByTrip(String tripId) {
+            return getPointsByTripId(tripId).filter(point -> !point.isVisited());
+        }
+
+        @Override
+        public Flux<Point> findUnvisitedNear(String tripId, double latitude, double longitude, double radiusMeters) {
+            // Как $nearSphere: сфера радиусом 6378.1 км, ближайшие первыми
+            return findUnvisitedByTrip(tripId)
+                    .map(point -> Map.entry(GeoDistance.meters(latitude, longitude, point.getLatitude(), point.getLongitude()), point))
+                    .filter(entry -> entry.getKey() <= radiusMeters)
+                    .sort(Map.Entry.comparingByKey())
+                    .map(Map.Entry::getValue);
+        }
+    }
+
+
+    private final class Routes implements RouteDAO {
+
+        @Override
+        public Mono<Route> createRoute(String pointToId, String startDate, String endDate) {
+            return pointDAO.getPoint(pointToId)
+                    .map(point -> new Route(LocalDate.parse(startDate), LocalDate.parse(endDate), point))
+                    .doOnNext(route -> {
+                        route.setId(newId());
+                        routes.put(route.getId(), route);
+                    });
+        }
+
+        @Override
+        public Mono<Route> findById(String routeId) {
+            return io(Mono.fromSupplier(() -> routes.get(routeId)));
+        }
+
+        @Override
+        public Mono<Route> getRoute(String routeId) {
+            return findById(routeId);
+        }
+
+        @Override
+        public Flux<Route> getTripRoutes(String tripId) {
+            return io(Mono.fromSupplier(() -> trips.get(tripId)))
+                    .flatMapMany(trip -> Flux.fromIterable(trip.routes))
+                    .flatMapSequential(routeId -> Mono.justOrEmpty(routes.get(routeId)));
+        }
+    }
+
+    // Та же семантика $max, что и в BotStateDAOImpl
+    private final class BotState implements BotStateDAO {
+
+        @Override
+        public Mono<Long> getLastUpdateId(String botId) {
+            return io(Mono.fromSupplier(() -> botState.get(botId)));
+        }
+
+        @Override
+        public Mono<Void> saveLastUpdateId(String botId, long updateId) {
+            return io(Mono.fromRunnable(() -> botState.merge(botId, updateId, Math::max)));
+        }
+
+        @Override
+        public Mono<String> getResumeToken(String streamId) {
+            return io(Mono.fromSupplier(() -> resumeTokens.get(streamId)));
+        }
+
+        @Override
+        public Mono<Void> saveResumeToken(String streamId, String resumeToken) {
+            return io(Mono.fromRunnable(() -> resumeTokens.put(streamId, resumeToken)));
+        }
+    }
+
+    // Как time-series коллекция: только вставка и выборка по поездке или по владельцу и часу
+    private final class Tracks implements TrackDAO {
+
+        @Override
+        public Mono<Void> insertSegments(List<TrackSegment> segments) {
+            return io(Mono.fromRunnable(() -> trackSegments.addAll(segments)));
+        }
+
+        @Override
+        public Flux<TrackSegment> findByTrip(String tripId) {
+            return io(Flux.defer(() -> Flux.fromStream(trackSegments.stream()
+                    .filter(segment -> segment.tripId().equals(tripId)))));
+        }
+
+        @Override
+        public Flux<TrackSegment> findByChat(long chatId, Instant from, Instant to) {
+            return io(Flux.defer(() -> Flux.fromStream(trackSegments.stream()
+                    .filter(segment -> segment.chatId() == chatId
+                            && !segment.hour().isBefore(from) && segment.hour().isBefore(to)))));
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package org.tripplanner.loadtest;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+import org.tripplanner.util.LatencyRecorder;
+
+/**
+ * Гоняет N чатов по сценариям пользователя через {@link FakeBotApiServer}. Каждый чат —
+ * отдельный виртуальный поток: шлёт сообщение, ждёт ответ бота и только потом идёт дальше,
+ * как живой пользователь. Задержка ответа меряется от появления апдейта в getUpdates
+ * до прихода sendMessage для этого чата.
+ */
+public class LoadGenerator implements FakeBotApiServer.ReplyListener {
+
+    public static final long FIRST_CHAT_ID = 1_000_000L;
+
+    private final int chats;
+    private final Duration thinkTime;
+    private final Duration replyTimeout;
+    private final Map<Long, BlockingQueue<Reply>> inboxes = new ConcurrentHashMap<>();
+    private final LatencyRecorder latency = new LatencyRecorder();
+    private final LongAdder sent = new LongAdder();
+    private final LongAdder replies = new LongAdder();
+    private final LongAdder timeouts = new LongAdder();
+    private final LongAdder unexpected = new LongAdder();
+    private FakeBotApiServer api;
+
+    public LoadGenerator(int chats, Duration thinkTime, Duration replyTimeout) {
+        this.chats = chats;
+        this.thinkTime = thinkTime;
+        this.replyTimeout = replyTimeout;
+        for (int i = 0; i < chats; i++) {
+            inboxes.put(FIRST_CHAT_ID + i, new LinkedBlockingQueue<>());
+        }
+    }
+
+    public void attach(FakeBotApiServer api) {
+        this.api = api;
+    }
+
+    @Override
+    public void onReply(long chatId, String text, long receivedAtNanos) {
+        BlockingQueue<Reply> inbox = inboxes.get(chatId);
+        if (inbox != null) {
+            inbox.add(new Reply(text, receivedAtNanos));
+        }
+    }
+
+    /**
+     * Прогоняет все чаты и возвращает отчёт. Блокирует до завершения всех сценариев.
+     */
+    public Report run() throws InterruptedException {
+        long started = System.nanoTime();
+        try (ExecutorService users = Executors.newThreadPerTaskExecutor(
+                Thread.ofVirtual().name("load-chat-", 0).factory())) {
+            for (int i = 0; i < chats; i++) {
+                long chatId = FIRST_CHAT_ID + i;
+                users.execute(() -> runScript(chatId, script(chatId)));
+            }
+            users.shutdown();
+            users.awaitTermination(1, TimeUnit.HOURS);
+        }
+        long elapsedNanos = System.nanoTime() - started;
+        return new Report(chats, sent.sum(), replies.sum(), timeouts.sum(), unexpected.sum(),
+                elapsedNanos, latency);
+    }
+
+    // Типичная сессия: регистрация, диалог /plantrip, диалог /addpoint, просмотр и геопозиция
+    static List<Step> script(long chatId) {
+        String trip = "Trip " + chatId;
+        LocalDate start = LocalDate.now().plusDays(1 + chatId % 30);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        double latitude = 40 + random.nextDouble(20);
+        double longitude = 20 + random.nextDouble(40);
+
+        List<Step> steps = new ArrayList<>();
+        steps.add(Step.text("/start", "Добро пожаловать"));
+        steps.add(Step.text("/plantrip", null));
+        steps.add(Step.text(trip, null));
+        steps.add(Step.text(start.toString(), null));
+        steps.add(Step.text(start.plusDays(7).toString(), "Поездка успешно создана"));
+        steps.add(Step.text("/addpoint", null));
+        steps.add(Step.text(trip, null));
+        steps.add(Step.text("Point " + chatId, null));
+        steps.add(Step.text(Double.toString(latitude), null));
+        steps.add(Step.text(Double.toString(longitude), "добавлена"));
+        steps.add(Step.text("/showplanned", trip));
+        steps.add(Step.location(latitude, longitude, "Геопозиция принята"));
+        return steps;
+    }
+
+    private void runScript(long chatId, List<Step> steps) {
+        BlockingQueue<Reply> inbox = inboxes.get(chatId);
+        try {
+            for (Step step : steps) {
+                long pushedAt = System.nanoTime();
+                if (step.text != null) {
+                    api.pushText(chatId, step.text);
+                } else {
+                    api.pushLocation(chatId, step.latitude, step.longitude);
+                }
+                sent.increment();
+                Reply reply = inbox.poll(replyTimeout.toNanos(), TimeUnit.NANOSECONDS);
+                if (reply == null) {
+                    // Сценарий дальше не имеет смысла: диалог рассинхронизирован
+                    timeouts.increment();
+                    return;
+                }
+                replies.increment();
+                latency.recordNanos(reply.receivedAtNanos - pushedAt);
+                if (step.expect != null && !reply.text.contains(step.expect)) {
+                    unexpected.increment();
+                }
+                if (!thinkTime.isZero()) {
+                    Thread.sleep(thinkTime.toMillis());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    record Step(String text, double latitude, double longitude, String expect) {
+
+        static Step text(String text, String expect) {
+            return new Step(text, 0, 0, expect);
+        }
+
+        static Step location(double latitude, double longitude, String expect) {
+            return new Step(null, latitude, longitude, expect);
+        }
+    }
+
+    private record Reply(String text, long receivedAtNanos) {
+    }
+
+    public record Report(int chats, long sent, long replies, long timeouts, long unexpected,
+                         long elapsedNanos, LatencyRecorder latency) {
+
+        public double throughputPerSecond() {
+            return replies * 1e9 / Math.max(1, elapsedNanos);
+        }
+
+        public Map<String, Object> toMap() {
+            Map<String, Object> report = new LinkedHashMap<>();
+            report.put("chats", chats);
+            report.put("sent", sent);
+            report.put("replies", replies);
+            report.put("timeouts", timeouts);
+            report.put("unexpected", unexpected);
+            report.put("elapsedMs", TimeUnit.NANOSECONDS.toMillis(elapsedNanos));
+            report.put("repliesPerSecond", Math.round(throughputPerSecond()));
+            report.put("latency", latency.snapshot());
+            return report;
+        }
+    }
+}
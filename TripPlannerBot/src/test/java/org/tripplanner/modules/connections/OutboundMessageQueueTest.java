@@ -0,0 +1,192 @@
+package org.tripplanner.modules.connections;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.util.DrainCoordinator;
+
+import reactor.core.publisher.Mono;
+
+public class OutboundMessageQueueTest {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final FakeTransport transport = new FakeTransport();
+    private OutboundMessageQueue queue;
+
+    @AfterEach
+    public void stop() {
+        queue.stop();
+    }
+
+    // Воркеров нет: очередь крутит тест через processReady, время двигает руками
+    private void start(double globalRate, double perChatRate, double perChatBurst, boolean coalesce, int maxAttempts) {
+        queue = new OutboundMessageQueue(100, 0, globalRate, perChatRate, perChatBurst, coalesce, maxAttempts,
+            100, new DrainCoordinator(1000), clock::get);
+        queue.start(transport);
+    }
+
+    private void drainReady() {
+        while (queue.processReady()) {
+            // обрабатываем всё, что готово к текущему моменту
+        }
+    }
+
+    private void advanceMillis(long millis) {
+        clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(millis));
+    }
+
+    @Test
+    public void testRetryAfterPausesChatUntilItExpires() {
+        start(100, 100, 100, false, 3);
+        transport.failures.add(new BotApiException(429, "Too Many Requests", 2));
+        queue.enqueue(1L, "hello");
+
+        drainReady();
+        assertEquals(1, transport.sent.size());
+        assertEquals(1L, queue.stats().get("rateLimited"));
+        assertEquals(1, queue.getQueueDepth());
+
+        advanceMillis(1999);
+        assertFalse(queue.processReady());
+        advanceMillis(1);
+        drainReady();
+        assertEquals(List.of("1:hello", "1:hello"), transport.sent);
+        assertEquals(1L, queue.stats().get("sent"));
+        assertEquals(0, queue.getQueueDepth());
+    }
+
+    @Test
+    public void testRateLimitedMessageIsDroppedAfterMaxAttempts() {
+        start(100, 100, 100, false, 2);
+        transport.failures.add(new BotApiException(429, "Too Many Requests", 1));
+        transport.failures.add(new BotApiException(429, "Too Many Requests", 1));
+        queue.enqueue(1L, "hello");
+
+        drainReady();
+        advanceMillis(1000);
+        drainReady();
+
+        assertEquals(2, transport.sent.size());
+        assertEquals(1L, queue.stats().get("droppedAfterRetries"));
+        assertEquals(0, queue.getQueueDepth());
+    }
+
+    @Test
+    public void testOtherErrorsAreNotRetried() {
+        start(100, 100, 100, false, 3);
+        transport.failures.add(new BotApiException(403, "Forbidden: bot was blocked by the user", 0));
+        queue.enqueue(1L, "hello");
+        queue.enqueue(1L, "again");
+
+        drainReady();
+
+        assertEquals(List.of("1:hello", "1:again"), transport.sent);
+        assertEquals(1L, queue.stats().get("failed"));
+        assertEquals(1L, queue.stats().get("sent"));
+    }
+
+    @Test
+    public void testPerChatBucketDoesNotSlowOtherChats() {
+        start(100, 1, 1, false, 3);
+        queue.enqueue(1L, "a");
+        queue.enqueue(1L, "b");
+        queue.enqueue(2L, "c");
+
+        drainReady();
+        assertEquals(List.of("1:a", "2:c"), transport.sent);
+
+        advanceMillis(999);
+        assertFalse(queue.processReady());
+        advanceMillis(1);
+        drainReady();
+        assertEquals(List.of("1:a", "2:c", "1:b"), transport.sent);
+    }
+
+    @Test
+    public void testGlobalBucketLimitsAllChats() {
+        start(2, 100, 100, false, 3);
+        for (long chatId = 1; chatId <= 4; chatId++) {
+            queue.enqueue(chatId, "m");
+        }
+
+        drainReady();
+        assertEquals(2, transport.sent.size());
+
+        advanceMillis(500);
+        drainReady();
+        assertEquals(3, transport.sent.size());
+        advanceMillis(500);
+        drainReady();
+        assertEquals(4, transport.sent.size());
+    }
+
+    @Test
+    public void testCoalescesQueuedMessagesOfOneChat() {
+        start(100, 100, 100, true, 3);
+        queue.enqueue(1L, "a");
+        queue.enqueue(1L, "b");
+        queue.enqueue(1L, "c");
+        queue.enqueue(2L, "d");
+
+        drainReady();
+
+        assertEquals(List.of("1:a\n\nb\n\nc", "2:d"), transport.sent);
+        assertEquals(4L, queue.stats().get("sent"));
+        assertEquals(2L, queue.stats().get("coalesced"));
+    }
+
+    @Test
+    public void testCoalescingRespectsTelegramTextLimit() {
+        start(100, 100, 100, true, 3);
+        String long1 = "x".repeat(3000);
+        String long2 = "y".repeat(3000);
+        queue.enqueue(1L, long1);
+        queue.enqueue(1L, long2);
+
+        drainReady();
+
+        assertEquals(List.of("1:" + long1, "1:" + long2), transport.sent);
+        assertEquals(0L, queue.stats().get("coalesced"));
+    }
+
+    @Test
+    public void testFullQueueDropsMessage() {
+        start(100, 100, 100, false, 3);
+        for (int i = 0; i < 100; i++) {
+            assertTrue(queue.enqueue(i, "m"));
+        }
+        assertFalse(queue.enqueue(100, "m"));
+        assertEquals(1L, queue.stats().get("droppedQueueFull"));
+    }
+
+    private static final class FakeTransport implements BotApiTransport {
+        private final List<String> sent = new ArrayList<>();
+        private final Deque<BotApiException> failures = new ArrayDeque<>();
+
+        @Override
+        public Mono<Void> sendMessage(long chatId, String text) {
+            sent.add(chatId + ":" + text);
+            BotApiException failure = failures.poll();
+            return failure != null ? Mono.error(failure) : Mono.empty();
+        }
+
+        @Override
+        public Mono<Void> setWebhook(String url, String secretToken, List<String> allowedUpdates) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<Void> deleteWebhook(boolean dropPendingUpdates) {
+            return Mono.empty();
+        }
+    }
+}
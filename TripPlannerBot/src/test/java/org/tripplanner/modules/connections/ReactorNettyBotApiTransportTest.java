@@ -0,0 +1,138 @@
+package org.tripplanner.modules.connections;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.PropertiesPropertySource;
+
+import reactor.core.publisher.Flux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.server.HttpServer;
+
+public class ReactorNettyBotApiTransportTest {
+
+    private static final String TOKEN = "123:test";
+
+    // Тела запросов, которые получил поддельный Bot API, по имени метода
+    private final Map<String, String> requests = new ConcurrentHashMap<>();
+    private final Map<String, String> responses = new ConcurrentHashMap<>();
+    private DisposableServer server;
+    private ReactorNettyBotApiTransport transport;
+
+    @BeforeEach
+    public void startServer() {
+        server = HttpServer.create()
+                .port(0)
+                .route(routes -> routes.post("/bot" + TOKEN + "/{method}", (request, response) -> {
+                    String method = request.param("method");
+                    return request.receive().aggregate().asString(StandardCharsets.UTF_8)
+                            .flatMap(body -> {
+                                requests.put(method, body);
+                                String answer = responses.getOrDefault(method, "{\"ok\":true,\"result\":true}");
+                                // Отдаём ответ несколькими чанками, как делает настоящий сервер
+                                return response.header("Content-Type", "application/json")
+                                        .sendString(Flux.fromArray(answer.split("(?<=\\G.{16})")))
+                                        .then();
+                            });
+                }))
+                .bindNow();
+        transport = new ReactorNettyBotApiTransport(new TelegramUpdateDecoder(), TOKEN,
+                "http://localhost:" + server.port(), 4, 5000, 1, 50, new String[] {"message", "edited_message"});
+    }
+
+    @AfterEach
+    public void stopServer() {
+        transport.shutdown();
+        server.disposeNow();
+    }
+
+    @Test
+    public void testGetUpdates() {
+        responses.put("getUpdates", "{\"ok\":true,\"result\":["
+                + "{\"update_id\":10,\"message\":{\"chat\":{\"id\":1},\"text\":\"/start\"}},"
+                + "{\"update_id\":11,\"message\":{\"chat\":{\"id\":2},\"sticker\":{\"file_id\":\"x\"}}},"
+                + "{\"update_id\":12,\"message\":{\"chat\":{\"id\":3},\"location\":{\"latitude\":1.5,\"longitude\":2.5}}}]}");
+
+        UpdateBatch batch = transport.getUpdates(10).block(Duration.ofSeconds(10));
+
+        assertEquals(List.of(IncomingUpdate.text(10, 1, "/start"),
+                IncomingUpdate.location(12, 3, 1.5, 2.5, false)), batch.updates());
+        // Стикер не обрабатываем, но offset должен сдвинуться и за него
+        assertEquals(12, batch.lastUpdateId());
+        String request = requests.get("getUpdates");
+        assertTrue(request.contains("\"offset\":10"), request);
+        assertTrue(request.contains("\"limit\":50"), request);
+        assertTrue(request.contains("\"timeout\":1"), request);
+        assertTrue(request.contains("\"allowed_updates\":[\"message\",\"edited_message\"]"), request);
+    }
+
+    @Test
+    public void testEmptyGetUpdates() {
+        responses.put("getUpdates", "{\"ok\":true,\"result\":[]}");
+
+        UpdateBatch batch = transport.getUpdates(0).block(Duration.ofSeconds(10));
+
+        assertTrue(batch.isEmpty());
+        assertTrue(batch.updates().isEmpty());
+    }
+
+    @Test
+    public void testSendMessage() {
+        responses.put("sendMessage", "{\"ok\":true,\"result\":{\"message_id\":7,\"chat\":{\"id\":42},"
+                + "\"text\":\"Привет\",\"reply_to_message\":{\"message\":{\"text\":\"x\"}}}}");
+
+        transport.sendMessage(42, "Привет").block(Duration.ofSeconds(10));
+
+        assertEquals("{\"chat_id\":42,\"text\":\"Привет\"}", requests.get("sendMessage"));
+    }
+
+    @Test
+    public void testRateLimitError() {
+        responses.put("sendMessage", "{\"ok\":false,\"error_code\":429,"
+                + "\"description\":\"Too Many Requests: retry after 3\",\"parameters\":{\"retry_after\":3}}");
+
+        BotApiException e = assertThrows(BotApiException.class,
+                () -> transport.sendMessage(42, "x").block(Duration.ofSeconds(10)));
+
+        assertTrue(e.isRateLimited());
+        assertEquals(429, e.getErrorCode());
+        assertEquals(3, e.getRetryAfter());
+    }
+
+    @Test
+    public void testMalformedResponse() {
+        responses.put("deleteWebhook", "<html>Bad Gateway</html>");
+
+        assertThrows(BotApiException.class, () -> transport.deleteWebhook(true).block(Duration.ofSeconds(10)));
+    }
+
+    @Test
+    public void testBeanIsCreatedOnlyForReactorTransport() {
+        assertFalse(hasTransportBean("telegrambots"));
+        assertTrue(hasTransportBean("reactor-netty"));
+    }
+
+    private static boolean hasTransportBean(String transportType) {
+        Properties props = new Properties();
+        props.setProperty("telegram.bot.token", TOKEN);
+        props.setProperty("telegram.bot.transport", transportType);
+        try (AnnotationConfigApplicationContext context = new AnnotationConfigApplicationContext()) {
+            context.getEnvironment().getPropertySources().addFirst(new PropertiesPropertySource("test", props));
+            context.register(TelegramUpdateDecoder.class, ReactorNettyBotApiTransport.class);
+            context.refresh();
+            return context.getBeanNamesForType(ReactorNettyBotApiTransport.class).length > 0;
+        }
+    }
+}
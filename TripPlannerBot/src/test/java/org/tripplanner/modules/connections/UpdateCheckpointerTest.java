@@ -0,0 +1,106 @@
+package org.tripplanner.modules.connections;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.repositories.BotStateDAO;
+
+import reactor.core.publisher.Mono;
+
+public class UpdateCheckpointerTest {
+
+    // Хранилище в памяти с той же семантикой $max, что и в Mongo
+    private final Map<String, Long> saved = new ConcurrentHashMap<>();
+    private final BotStateDAO botStateDAO = new BotStateDAO() {
+        @Override
+        public Mono<Long> getLastUpdateId(String botId) {
+            return Mono.justOrEmpty(saved.get(botId));
+        }
+
+        @Override
+        public Mono<Void> saveLastUpdateId(String botId, long updateId) {
+            return Mono.fromRunnable(() -> saved.merge(botId, updateId, Math::max));
+        }
+
+        @Override
+        public Mono<String> getResumeToken(String streamId) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<Void> saveResumeToken(String streamId, String resumeToken) {
+            return Mono.empty();
+        }
+    };
+
+    private UpdateCheckpointer checkpointer;
+
+    @AfterEach
+    public void stop() {
+        checkpointer.stop();
+    }
+
+    @Test
+    public void testWatermarkWaitsForOldestInFlight() {
+        checkpointer = new UpdateCheckpointer(botStateDAO, "bot", 1000, 60_000, 64);
+        assertEquals(0, checkpointer.restoreOffset());
+
+        assertTrue(checkpointer.begin(10));
+        assertTrue(checkpointer.begin(11));
+        assertTrue(checkpointer.begin(12));
+        checkpointer.complete(12);
+        checkpointer.complete(10);
+        // 11 ещё в работе: сохранять можно только 10
+        assertEquals(10, checkpointer.watermark());
+
+        checkpointer.complete(11);
+        checkpointer.observe(15);
+        checkpointer.flush().block(Duration.ofSeconds(5));
+        assertEquals(15L, saved.get("updates:bot"));
+    }
+
+    @Test
+    public void testDuplicatesAreSkipped() {
+        checkpointer = new UpdateCheckpointer(botStateDAO, "bot", 1000, 60_000, 64);
+        checkpointer.restoreOffset();
+
+        assertTrue(checkpointer.begin(100));
+        assertFalse(checkpointer.begin(100));
+        checkpointer.complete(100);
+        assertFalse(checkpointer.begin(100));
+        assertEquals(2L, checkpointer.stats().get("duplicates"));
+    }
+
+    @Test
+    public void testResumesFromSavedCheckpoint() {
+        saved.put("updates:bot", 41L);
+        checkpointer = new UpdateCheckpointer(botStateDAO, "bot", 1000, 60_000, 64);
+
+        assertEquals(42, checkpointer.restoreOffset());
+        // Повторная доставка уже обработанного до рестарта апдейта
+        assertFalse(checkpointer.begin(41));
+        assertTrue(checkpointer.begin(42));
+    }
+
+    @Test
+    public void testFlushesEveryBatch() {
+        checkpointer = new UpdateCheckpointer(botStateDAO, "bot", 3, 60_000, 64);
+        checkpointer.restoreOffset();
+
+        for (long id = 1; id <= 2; id++) {
+            checkpointer.begin(id);
+            checkpointer.complete(id);
+        }
+        assertFalse(saved.containsKey("updates:bot"));
+
+        checkpointer.begin(3);
+        checkpointer.complete(3);
+        assertEquals(3L, saved.get("updates:bot"));
+    }
+}
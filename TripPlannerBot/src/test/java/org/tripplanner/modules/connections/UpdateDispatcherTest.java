@@ -0,0 +1,142 @@
+package org.tripplanner.modules.connections;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.util.DrainCoordinator;
+
+import reactor.core.publisher.Mono;
+
+public class UpdateDispatcherTest {
+
+    private UpdateDispatcher dispatcher;
+
+    @AfterEach
+    public void stop() {
+        dispatcher.shutdown();
+    }
+
+    @Test
+    public void testChatIsProcessedInOrder() throws InterruptedException {
+        dispatcher = new UpdateDispatcher(8, 100, 5000, new DrainCoordinator(5000));
+        List<Integer> seen = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(50);
+        for (int i = 0; i < 50; i++) {
+            int n = i;
+            // Ранние задачи медленнее поздних: без полосы порядок бы перемешался
+            assertTrue(dispatcher.dispatch(1L, () -> Mono.just(n).delayElement(Duration.ofMillis((50 - n) % 5)),
+                    result -> {
+                        seen.add(result);
+                        done.countDown();
+                    }));
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 50; i++) {
+            assertEquals(i, seen.get(i));
+        }
+    }
+
+    @Test
+    public void testChatsRunInParallel() throws InterruptedException {
+        dispatcher = new UpdateDispatcher(8, 100, 5000, new DrainCoordinator(5000));
+        // Каждая задача ждёт, пока стартуют все: пройдёт, только если чаты идут одновременно
+        CountDownLatch allStarted = new CountDownLatch(4);
+        CountDownLatch done = new CountDownLatch(4);
+        AtomicInteger together = new AtomicInteger();
+        for (long chatId = 1; chatId <= 4; chatId++) {
+            dispatcher.dispatch(chatId, () -> Mono.fromCallable(() -> {
+                allStarted.countDown();
+                return allStarted.await(5, TimeUnit.SECONDS);
+            }), met -> {
+                if (met) {
+                    together.incrementAndGet();
+                }
+                done.countDown();
+            });
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(4, together.get());
+    }
+
+    @Test
+    public void testConcurrencyIsCapped() throws InterruptedException {
+        dispatcher = new UpdateDispatcher(2, 100, 5000, new DrainCoordinator(5000));
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        CountDownLatch done = new CountDownLatch(10);
+        for (long chatId = 1; chatId <= 10; chatId++) {
+            dispatcher.dispatch(chatId, () -> Mono.fromCallable(() -> {
+                maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+                Thread.sleep(20);
+                running.decrementAndGet();
+                return true;
+            }), result -> done.countDown());
+        }
+        assertTrue(done.await(10, TimeUnit.SECONDS));
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    public void testTimedOutTaskDoesNotBlockLane() throws InterruptedException {
+        dispatcher = new UpdateDispatcher(4, 100, 100, new DrainCoordinator(5000));
+        List<String> results = new CopyOnWriteArrayList<>();
+        CountDownLatch done = new CountDownLatch(1);
+        dispatcher.dispatch(1L, Mono::<String>never, results::add);
+        dispatcher.dispatch(1L, () -> Mono.just("next"), result -> {
+            results.add(result);
+            done.countDown();
+        });
+
+        assertTrue(done.await(5, TimeUnit.SECONDS));
+        assertEquals(List.of("next"), results);
+        assertEquals(1L, dispatcher.stats().get("failed"));
+        assertEquals(1L, dispatcher.stats().get("processed"));
+    }
+
+    @Test
+    public void testShutdownDropsRestOfLaneWithinDrainDeadline() throws InterruptedException {
+        // Одно разрешение: первая задача держит его полсекунды и не реагирует на прерывание,
+        // остальные три ждут разрешения в полосе другого чата
+        dispatcher = new UpdateDispatcher(1, 100, 60_000, new DrainCoordinator(200));
+        CountDownLatch started = new CountDownLatch(1);
+        dispatcher.dispatch(1L, () -> Mono.fromCallable(() -> {
+            started.countDown();
+            long until = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(500);
+            while (System.nanoTime() < until) {
+                LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(5));
+            }
+            return -1;
+        }), result -> { });
+        assertTrue(started.await(5, TimeUnit.SECONDS));
+        List<Integer> results = new CopyOnWriteArrayList<>();
+        for (int i = 0; i < 3; i++) {
+            int n = i;
+            dispatcher.dispatch(2L, () -> Mono.just(n), results::add);
+        }
+
+        long startedAt = System.nanoTime();
+        dispatcher.shutdown();
+        long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - startedAt);
+        // Дедлайн остановки 200 мс, а не таймаут задачи в минуту
+        assertTrue(tookMs < 5000, "shutdown took " + tookMs + " ms");
+
+        long waitUntil = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while ((dispatcher.getQueueDepth() > 0 || dispatcher.getRunning() > 0) && System.nanoTime() < waitUntil) {
+            Thread.sleep(10);
+        }
+        assertEquals(0, dispatcher.getQueueDepth());
+        assertEquals(0, dispatcher.getRunning());
+        assertTrue(results.isEmpty());
+        assertEquals(1L, dispatcher.stats().get("processed"));
+        assertEquals(3L, dispatcher.stats().get("failed"));
+    }
+}
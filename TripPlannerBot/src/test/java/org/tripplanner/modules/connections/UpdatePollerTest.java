@@ -0,0 +1,197 @@
+package org.tripplanner.modules.connections;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.repositories.BotStateDAO;
+
+import reactor.core.publisher.Mono;
+
+public class UpdatePollerTest {
+
+    private final Map<String, Long> saved = new ConcurrentHashMap<>();
+    private final BotStateDAO botStateDAO = new BotStateDAO() {
+        @Override
+        public Mono<Long> getLastUpdateId(String botId) {
+            return Mono.justOrEmpty(saved.get(botId));
+        }
+
+        @Override
+        public Mono<Void> saveLastUpdateId(String botId, long updateId) {
+            return Mono.fromRunnable(() -> saved.merge(botId, updateId, Math::max));
+        }
+
+        @Override
+        public Mono<String> getResumeToken(String streamId) {
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<Void> saveResumeToken(String streamId, String resumeToken) {
+            return Mono.empty();
+        }
+    };
+
+    private final FakeTelegram telegram = new FakeTelegram();
+    private final List<UpdatePoller> pollers = new ArrayList<>();
+    private final List<UpdateCheckpointer> checkpointers = new ArrayList<>();
+
+    @AfterEach
+    public void stop() {
+        pollers.forEach(UpdatePoller::stop);
+        checkpointers.forEach(UpdateCheckpointer::stop);
+    }
+
+    @Test
+    public void testUnfinishedUpdateIsDeliveredAgainAfterRestart() throws InterruptedException {
+        telegram.add(101, 102, 103);
+        // Первый инстанс: 102 зависает в обработке, 101 и 103 завершаются
+        UpdateCheckpointer first = checkpointer();
+        Recorder firstBot = new Recorder(first, Set.of(102L));
+        UpdatePoller poller = poller(firstBot, first);
+        poller.start(telegram, first.restoreOffset());
+
+        awaitTrue(() -> firstBot.processed.containsAll(List.of(101L, 103L)));
+        awaitTrue(() -> telegram.offsets.size() >= 3);
+        // 101 подтверждён, 102 — нет: Telegram продолжает его отдавать, а бот не обрабатывает дважды
+        assertEquals(102L, telegram.offsets.get(telegram.offsets.size() - 1));
+        assertEquals(List.of(101L, 102L, 103L), firstBot.started);
+
+        // Падение: опрос остановлен, чекпоинт сохранил только то, что обработано
+        poller.stop();
+        first.flush().block(Duration.ofSeconds(5));
+        assertEquals(101L, saved.get("updates:bot"));
+
+        UpdateCheckpointer second = checkpointer();
+        Recorder secondBot = new Recorder(second, Set.of());
+        poller(secondBot, second).start(telegram, second.restoreOffset());
+
+        awaitTrue(() -> secondBot.processed.contains(102L));
+        // 103 был обработан до падения, но он за чекпоинтом: повтор допустим, потеря — нет
+        assertEquals(List.of(102L, 103L), secondBot.started);
+    }
+
+    @Test
+    public void testOffsetFollowsWatermark() throws InterruptedException {
+        telegram.add(1, 2, 3);
+        UpdateCheckpointer checkpointer = checkpointer();
+        Recorder bot = new Recorder(checkpointer, Set.of());
+        UpdatePoller poller = poller(bot, checkpointer);
+        poller.start(telegram, checkpointer.restoreOffset());
+
+        awaitTrue(() -> bot.processed.size() == 3);
+        awaitTrue(() -> telegram.offsets.contains(4L));
+        assertEquals(List.of(1L, 2L, 3L), bot.started);
+        assertEquals(4L, poller.getOffset());
+    }
+
+    @Test
+    public void testStuckUpdateDoesNotCapIntake() throws InterruptedException {
+        // 1 завис, за ним 250 апдейтов других чатов — больше двух полных ответов по limit
+        telegram.add(1);
+        for (long id = 2; id <= 251; id++) {
+            telegram.add(id);
+        }
+        UpdateCheckpointer checkpointer = checkpointer();
+        Recorder bot = new Recorder(checkpointer, Set.of(1L));
+        UpdatePoller poller = poller(bot, checkpointer);
+        poller.start(telegram, checkpointer.restoreOffset());
+
+        awaitTrue(() -> bot.processed.size() == 250);
+        awaitTrue(() -> telegram.offsets.contains(252L));
+        assertEquals(1, bot.started.stream().filter(id -> id == 1L).count());
+        // Повторы не скачиваются по кругу: на 251 апдейт — считанные запросы
+        assertTrue(telegram.offsets.size() < 10, "getUpdates calls: " + telegram.offsets);
+        // Прочная позиция по-прежнему перед зависшим апдейтом
+        assertEquals(0L, checkpointer.watermark());
+        assertTrue((Long) poller.stats().get("aheadOfWatermark") > 0);
+    }
+
+    private UpdateCheckpointer checkpointer() {
+        UpdateCheckpointer checkpointer = new UpdateCheckpointer(botStateDAO, "bot", 1000, 60_000, 64);
+        checkpointers.add(checkpointer);
+        return checkpointer;
+    }
+
+    private UpdatePoller poller(UpdateProcessor processor, UpdateCheckpointer checkpointer) {
+        UpdatePoller poller = new UpdatePoller(processor, checkpointer, FakeTelegram.LIMIT);
+        pollers.add(poller);
+        return poller;
+    }
+
+    private static void awaitTrue(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "condition not met in 5 s");
+            Thread.sleep(10);
+        }
+    }
+
+    // Обработчик без диспетчера: завершает апдейт сразу, кроме тех, что «зависли»
+    private static final class Recorder extends UpdateProcessor {
+        private final UpdateCheckpointer checkpointer;
+        private final Set<Long> stuck;
+        private final List<Long> started = new CopyOnWriteArrayList<>();
+        private final List<Long> processed = new CopyOnWriteArrayList<>();
+
+        private Recorder(UpdateCheckpointer checkpointer, Set<Long> stuck) {
+            super(null, null, null, checkpointer);
+            this.checkpointer = checkpointer;
+            this.stuck = stuck;
+        }
+
+        @Override
+        public void process(IncomingUpdate update) {
+            if (!checkpointer.begin(update.updateId())) {
+                return;
+            }
+            started.add(update.updateId());
+            if (!stuck.contains(update.updateId())) {
+                processed.add(update.updateId());
+                checkpointer.complete(update.updateId());
+            }
+        }
+    }
+
+    // getUpdates как у Telegram: отдаёт до LIMIT апдейтов с id >= offset и забывает те, что ниже
+    private static final class FakeTelegram implements UpdateSource {
+        static final int LIMIT = 100;
+        private final List<Long> pending = new CopyOnWriteArrayList<>();
+        private final List<Long> offsets = new CopyOnWriteArrayList<>();
+
+        void add(long... ids) {
+            for (long id : ids) {
+                pending.add(id);
+            }
+        }
+
+        @Override
+        public Mono<UpdateBatch> getUpdates(long offset) {
+            offsets.add(offset);
+            pending.removeIf(id -> id < offset);
+            if (pending.isEmpty()) {
+                // Пустой long poll
+                return Mono.delay(Duration.ofMillis(20)).thenReturn(UpdateBatch.EMPTY);
+            }
+            List<IncomingUpdate> updates = new ArrayList<>();
+            for (long id : pending) {
+                if (updates.size() == LIMIT) {
+                    break;
+                }
+                updates.add(IncomingUpdate.text(id, id, "/help"));
+            }
+            return Mono.just(new UpdateBatch(updates, updates.get(updates.size() - 1).updateId()));
+        }
+    }
+}
@@ -0,0 +1,126 @@
+package org.tripplanner.modules.connections;
+
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.server.reactive.ReactorHttpHandlerAdapter;
+import org.springframework.web.reactive.function.server.RouterFunctions;
+import org.tripplanner.util.DrainCoordinator;
+
+import io.netty.buffer.Unpooled;
+import reactor.core.publisher.Flux;
+import reactor.netty.DisposableServer;
+import reactor.netty.http.client.HttpClient;
+import reactor.netty.http.server.HttpServer;
+
+public class WebhookControllerTest {
+
+    private static final String SECRET = "test-secret";
+
+    private final List<IncomingUpdate> received = new CopyOnWriteArrayList<>();
+    private DisposableServer server;
+
+    @BeforeEach
+    public void startServer() {
+        UpdateProcessor processor = new UpdateProcessor(null, null, null, null) {
+            @Override
+            public void process(IncomingUpdate update) {
+                received.add(update);
+            }
+        };
+        WebhookController controller = new WebhookController(new TelegramUpdateDecoder(), processor,
+                new DrainCoordinator(1000), true, SECRET);
+        server = HttpServer.create()
+                .port(0)
+                .handle(new ReactorHttpHandlerAdapter(RouterFunctions.toHttpHandler(
+                        RouterFunctions.route()
+                                .POST("/telegram/webhook", controller::handleUpdate)
+                                .build())))
+                .bindNow();
+    }
+
+    @AfterEach
+    public void stopServer() {
+        server.disposeNow();
+    }
+
+    @Test
+    public void testTextUpdateSplitAcrossChunks() {
+        String body = "{\"update_id\":1001,\"message\":{\"message_id\":5,\"from\":{\"id\":42,\"is_bot\":false,"
+                + "\"first_name\":\"Петя\"},\"chat\":{\"id\":42,\"type\":\"private\"},\"date\":1700000000,"
+                + "\"text\":\"/start\",\"entities\":[{\"offset\":0,\"length\":6,\"type\":\"bot_command\"}]}}";
+
+        assertEquals(200, post(SECRET, chunks(body, 7)));
+        assertEquals(List.of(IncomingUpdate.text(1001, 42, "/start")), received);
+    }
+
+    @Test
+    public void testLocationAndEditedMessage() {
+        String location = "{\"update_id\":7,\"message\":{\"chat\":{\"id\":-100500},"
+                + "\"location\":{\"latitude\":55.75,\"longitude\":37.61}}}";
+        String edited = "{\"update_id\":8,\"edited_message\":{\"chat\":{\"id\":-100500},"
+                + "\"location\":{\"longitude\":37.62,\"latitude\":55.76,\"live_period\":60}}}";
+
+        assertEquals(200, post(SECRET, chunks(location, 5)));
+        assertEquals(200, post(SECRET, chunks(edited, 3)));
+        assertEquals(List.of(
+                IncomingUpdate.location(7, -100500, 55.75, 37.61, false),
+                IncomingUpdate.location(8, -100500, 55.76, 37.62, true)), received);
+    }
+
+    @Test
+    public void testRejectsWrongSecret() {
+        assertEquals(401, post("wrong", chunks("{\"update_id\":1}", 4)));
+        assertEquals(401, post(null, chunks("{\"update_id\":1}", 4)));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void testMalformedBody() {
+        assertEquals(400, post(SECRET, chunks("{\"update_id\":1,\"message\":{", 4)));
+        assertTrue(received.isEmpty());
+    }
+
+    @Test
+    public void testWebhookRefusesToStartWithoutSecret() {
+        UpdateProcessor processor = new UpdateProcessor(null, null, null, null);
+        assertThrows(IllegalStateException.class, () -> new WebhookController(new TelegramUpdateDecoder(),
+                processor, new DrainCoordinator(1000), true, ""));
+        assertThrows(IllegalStateException.class, () -> new WebhookController(new TelegramUpdateDecoder(),
+                processor, new DrainCoordinator(1000), true, "  "));
+        // В режиме long polling секрет не нужен
+        new WebhookController(new TelegramUpdateDecoder(), processor, new DrainCoordinator(1000), false, "");
+    }
+
+    // Фейковый Telegram: шлёт тело кусками, как это бывает при chunked-передаче
+    private int post(String secret, Flux<byte[]> body) {
+        return HttpClient.create()
+                .headers(headers -> {
+                    if (secret != null) {
+                        headers.set(WebhookController.SECRET_HEADER, secret);
+                    }
+                    headers.set("Content-Type", "application/json");
+                })
+                .post()
+                .uri("http://localhost:" + server.port() + "/telegram/webhook")
+                .send(body.map(Unpooled::wrappedBuffer))
+                .response()
+                .map(response -> response.status().code())
+                .block(Duration.ofSeconds(10));
+    }
+
+    private static Flux<byte[]> chunks(String json, int size) {
+        byte[] bytes = json.getBytes(StandardCharsets.UTF_8);
+        return Flux.range(0, (bytes.length + size - 1) / size)
+                .map(i -> Arrays.copyOfRange(bytes, i * size, Math.min(bytes.length, (i + 1) * size)));
+    }
+}
@@ -0,0 +1,92 @@
+package org.tripplanner.modules.dialog;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.modules.dialog.DialogState.Command;
+import org.tripplanner.modules.dialog.DialogState.Slot;
+import org.tripplanner.modules.dialog.DialogState.Step;
+
+import reactor.core.publisher.Mono;
+
+public class CommandRouterTest {
+
+    private static final long CHAT = 42L;
+
+    private final DialogState dialogState = new DialogState(
+            new DialogSessionStore(60_000, 1000, 60_000, 4, DialogSessionBackend.LOCAL, 0, 1000));
+    private final AtomicReference<String> completed = new AtomicReference<>();
+
+    private final CommandRouter router = new CommandRouter(List.of(registry -> registry
+            .command("/finisheddetails", (chatId, text, args) ->
+                    Mono.just("details:" + CommandRouter.firstArgument(text, args)))
+            .command("/plan", (chatId, text, args) -> Mono.just("plan"))
+            .dialog("/plantrip", Command.PLAN_TRIP, (chatId, state) -> {
+                completed.set(state.text(Slot.NAME) + " " + state.text(Slot.START_DATE) + " " + state.text(Slot.END_DATE));
+                return Mono.just("created");
+            }, Step.WAITING_NAME, Step.WAITING_START_DATE, Step.WAITING_END_DATE)
+            .dialog("/addpoint", Command.ADD_POINT, (chatId, state) ->
+                    Mono.just(state.number(Slot.LATITUDE) + ";" + state.number(Slot.LONGITUDE)),
+                    Step.WAITING_LATITUDE, Step.WAITING_LONGITUDE)), dialogState);
+
+    @Test
+    public void testRoutesCommandsIgnoringCaseAndWhitespace() {
+        assertEquals("plan", route("/plan"));
+        assertEquals("plan", route("  /PLAN\t"));
+        assertEquals("details:abc", route("/finisheddetails   abc  def"));
+        assertEquals("details:null", route("/finisheddetails"));
+
+        assertEquals("Неизвестная команда: /pla", route("/pla"));
+        assertEquals("Неизвестная команда: /plans", route("/Plans now"));
+        assertEquals("Неизвестная команда: /план", route("/план"));
+        assertEquals("Неизвестная команда: ", route("   "));
+    }
+
+    @Test
+    public void testDialogFollowsCompiledTransitions() {
+        assertEquals(Step.WAITING_NAME.prompt, route("/plantrip"));
+        assertEquals(Step.WAITING_START_DATE, router.nextStep(Command.PLAN_TRIP, Step.WAITING_NAME));
+        assertNull(router.nextStep(Command.PLAN_TRIP, Step.WAITING_END_DATE));
+
+        assertEquals("Название должно содержать только латинские буквы, цифры и пробелы", answer("Париж"));
+        assertEquals(Step.WAITING_START_DATE.prompt, answer("Paris"));
+        assertEquals("Неверный формат даты. Используйте формат YYYY-MM-DD", answer("tomorrow"));
+        assertEquals(Step.WAITING_END_DATE.prompt, answer("2025-06-01"));
+        assertEquals("created", answer("2025-06-10"));
+
+        assertEquals("Paris 2025-06-01 2025-06-10", completed.get());
+        assertFalse(dialogState.isInDialog(CHAT));
+    }
+
+    @Test
+    public void testSlotsAreTyped() {
+        route("/addpoint");
+        assertEquals("Широта должна быть от -90 до 90 градусов", answer("91"));
+        answer("55.75");
+        assertEquals("55.75;37.62", answer("37.62"));
+    }
+
+    @Test
+    public void testRejectsConflictingDeclarations() {
+        assertThrows(IllegalArgumentException.class, () -> new CommandRouter(List.of(registry -> registry
+                .command("/help", (chatId, text, args) -> Mono.just("a"))
+                .command("/HELP", (chatId, text, args) -> Mono.just("b"))), dialogState));
+        assertThrows(IllegalStateException.class, () -> new CommandRouter(List.of(registry -> registry
+                .startDialog("/startontrip", Command.SET_ONGOING, (chatId, text, args) -> Mono.just("a"))), dialogState));
+        assertTrue(router.commandCount() > 0);
+    }
+
+    private String route(String text) {
+        return router.route(CHAT, text).block();
+    }
+
+    private String answer(String input) {
+        return router.continueDialog(CHAT, dialogState.getState(CHAT), input).block();
+    }
+}
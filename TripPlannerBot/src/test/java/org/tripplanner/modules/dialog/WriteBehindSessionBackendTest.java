@@ -0,0 +1,117 @@
+package org.tripplanner.modules.dialog;
+
+import java.time.Instant;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.domain.DialogSession;
+import org.tripplanner.repositories.DialogSessionDAO;
+import org.tripplanner.util.DrainCoordinator;
+
+import reactor.core.publisher.Mono;
+
+public class WriteBehindSessionBackendTest {
+
+    private final FakeDialogSessionDAO dao = new FakeDialogSessionDAO();
+
+    @Test
+    public void testChangesAreCoalescedPerChat() {
+        WriteBehindSessionBackend backend = newBackend();
+        backend.save(session(1, "WAITING_NAME"));
+        backend.save(session(1, "WAITING_START_DATE"));
+        backend.save(session(1, "WAITING_END_DATE"));
+        backend.save(session(2, "WAITING_NAME"));
+        backend.delete(3);
+        assertTrue(backend.hasPending(1));
+
+        backend.flush().block();
+
+        assertEquals(1, dao.batches.get());
+        assertEquals("WAITING_END_DATE", dao.rows.get(1L).getStep());
+        assertEquals(2, dao.rows.size());
+        assertFalse(backend.hasPending(1));
+        assertEquals(2L, backend.stats().get("coalesced"));
+    }
+
+    @Test
+    public void testFailedBatchIsRetried() {
+        WriteBehindSessionBackend backend = newBackend();
+        dao.failuresLeft.set(1);
+        backend.save(session(1, "WAITING_NAME"));
+
+        backend.flush().block();
+        assertTrue(backend.hasPending(1));
+        assertNull(dao.rows.get(1L));
+
+        backend.flush().block();
+        assertFalse(backend.hasPending(1));
+        assertEquals("WAITING_NAME", dao.rows.get(1L).getStep());
+    }
+
+    @Test
+    public void testDialogContinuesOnAnotherReplica() {
+        WriteBehindSessionBackend backendA = newBackend();
+        WriteBehindSessionBackend backendB = newBackend();
+        // near-cache 0: каждая реплика перечитывает сессию, если у неё нет своих незаписанных изменений
+        DialogState replicaA = new DialogState(new DialogSessionStore(60_000, 1000, 60_000, 4, backendA, 0, 1000));
+        DialogState replicaB = new DialogState(new DialogSessionStore(60_000, 1000, 60_000, 4, backendB, 0, 1000));
+
+        replicaA.startDialog(7L, DialogState.Command.PLAN_TRIP, DialogState.Step.WAITING_NAME);
+        DialogState.CommandState started = replicaA.getState(7L);
+        started.set(DialogState.Slot.NAME, "Alps");
+        started.currentStep = DialogState.Step.WAITING_START_DATE;
+        replicaA.update(7L, started);
+        assertFalse(replicaB.isInDialog(7L));
+        backendA.flush().block();
+
+        DialogState.CommandState state = replicaB.getState(7L);
+        assertEquals(DialogState.Command.PLAN_TRIP, state.command);
+        assertEquals(DialogState.Step.WAITING_START_DATE, state.currentStep);
+        assertEquals("Alps", state.text(DialogState.Slot.NAME));
+
+        replicaB.endDialog(7L);
+        backendB.flush().block();
+        assertFalse(replicaA.isInDialog(7L));
+    }
+
+    private WriteBehindSessionBackend newBackend() {
+        // Таймер не запускаем: flush вызывается тестом явно
+        return new WriteBehindSessionBackend(dao, true, 1000, 60_000, new DrainCoordinator(1000));
+    }
+
+    private static DialogSession session(long chatId, String step) {
+        return new DialogSession(chatId, "PLAN_TRIP", step, Map.of(), Instant.now().plusSeconds(60));
+    }
+
+    private static class FakeDialogSessionDAO implements DialogSessionDAO {
+        final Map<Long, DialogSession> rows = new ConcurrentHashMap<>();
+        final AtomicInteger batches = new AtomicInteger();
+        final AtomicInteger failuresLeft = new AtomicInteger();
+
+        @Override
+        public Mono<DialogSession> find(long chatId) {
+            return Mono.fromSupplier(() -> rows.get(chatId));
+        }
+
+        @Override
+        public Mono<Void> writeBatch(List<DialogSession> upserts, Collection<Long> deletes) {
+            return Mono.defer(() -> {
+                if (failuresLeft.getAndDecrement() > 0) {
+                    return Mono.error(new IllegalStateException("mongo is down"));
+                }
+                batches.incrementAndGet();
+                upserts.forEach(session -> rows.put(session.getChatId(), session));
+                deletes.forEach(rows::remove);
+                return Mono.empty();
+            });
+        }
+    }
+}
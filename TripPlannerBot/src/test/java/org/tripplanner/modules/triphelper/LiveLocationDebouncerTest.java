@@ -0,0 +1,96 @@
+package org.tripplanner.modules.triphelper;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.domain.Point;
+import org.tripplanner.util.DrainCoordinator;
+
+import reactor.core.publisher.Mono;
+
+public class LiveLocationDebouncerTest {
+
+    private final List<String> checks = new CopyOnWriteArrayList<>();
+    private final List<String> saves = new CopyOnWriteArrayList<>();
+
+    // Сервис без базы: только записывает, что у него попросили
+    private final TripHelperService service = new TripHelperService(null, null, null, null, null, null) {
+        @Override
+        public Mono<Point> checkProximity(Long chatId, double latitude, double longitude) {
+            checks.add(chatId + ":" + latitude + "," + longitude);
+            return Mono.empty();
+        }
+
+        @Override
+        public Mono<Void> saveLocation(Long chatId, double latitude, double longitude) {
+            saves.add(chatId + ":" + latitude + "," + longitude);
+            return Mono.empty();
+        }
+    };
+
+    private final DrainCoordinator drainCoordinator = new DrainCoordinator(5000);
+    private final LiveLocationDebouncer debouncer =
+            new LiveLocationDebouncer(service, 50, 20, 400, 60_000, 1000, drainCoordinator);
+
+    @Test
+    public void testChecksOnlyLatestPingInWindowPerChat() {
+        debouncer.offer(1, 55.7500, 37.6100);
+        debouncer.offer(1, 55.7510, 37.6110);
+        debouncer.offer(1, 55.7520, 37.6120);
+        debouncer.offer(2, 59.9300, 30.3300);
+
+        sleep(150);
+
+        assertEquals(2, checks.size());
+        assertTrue(checks.contains("1:55.752,37.612"));
+        assertTrue(checks.contains("2:59.93,30.33"));
+        assertEquals(2L, debouncer.stats().get("coalesced"));
+    }
+
+    @Test
+    public void testDropsPingsThatBarelyMovedAndSavesLatestPositionOnce() {
+        debouncer.offer(1, 55.7500, 37.6100);
+        sleep(100);
+        // ~5 м от проверенной точки — не проверяется
+        debouncer.offer(1, 55.75004, 37.61004);
+        sleep(100);
+        // ~150 м — проверяется
+        debouncer.offer(1, 55.7513, 37.6100);
+        sleep(600);
+
+        assertEquals(List.of("1:55.75,37.61", "1:55.7513,37.61"), checks);
+        assertEquals(1L, debouncer.stats().get("tooClose"));
+        // За интервал записи — одна запись, и в ней последняя проверенная позиция
+        assertEquals(List.of("1:55.7513,37.61"), saves);
+    }
+
+    @Test
+    public void testDrainSavesTrailingPositionWithoutWaitingForInterval() {
+        debouncer.start();
+        debouncer.offer(1, 55.7500, 37.6100);
+        sleep(100);
+        assertEquals(List.of("1:55.75,37.61"), checks);
+        assertTrue(saves.isEmpty());
+
+        // Запись запланирована через 400 мс, остановка её не ждёт
+        long startedAt = System.nanoTime();
+        assertTrue(drainCoordinator.drain());
+        assertTrue(System.nanoTime() - startedAt < Duration.ofMillis(300).toNanos());
+        assertEquals(List.of("1:55.75,37.61"), saves);
+
+        // Проверенная во время остановки позиция тоже пишется сразу, а таймер ничего не повторяет
+        debouncer.offer(1, 55.7600, 37.6100);
+        sleep(600);
+        debouncer.stop();
+        assertEquals(List.of("1:55.75,37.61", "1:55.76,37.61"), saves);
+        assertEquals(0, debouncer.stats().get("unsaved"));
+    }
+
+    private static void sleep(long millis) {
+        Mono.delay(Duration.ofMillis(millis)).block();
+    }
+}
@@ -0,0 +1,165 @@
+package org.tripplanner.modules.triphelper;
+
+import java.io.IOException;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tripplanner.domain.UserLocation;
+import org.tripplanner.repositories.UserDAO;
+import org.tripplanner.util.DrainCoordinator;
+
+import reactor.core.publisher.Mono;
+
+public class LocationWriteBehindTest {
+
+    @TempDir
+    Path dir;
+
+    private final Map<Long, UserLocation> rows = new ConcurrentHashMap<>();
+    private final AtomicInteger batches = new AtomicInteger();
+    private final AtomicInteger failuresLeft = new AtomicInteger();
+
+    @Test
+    public void testLatestPositionPerChatIsWrittenInOneBatch() {
+        LocationWriteBehind locations = newWriteBehind(journal(), 65_536);
+        locations.enqueue(1, 55.0, 37.0);
+        locations.enqueue(1, 55.1, 37.1);
+        locations.enqueue(2, 48.8, 2.3);
+
+        locations.flush().block();
+
+        assertEquals(1, batches.get());
+        assertEquals(new UserLocation(1, 55.1, 37.1), rows.get(1L));
+        assertEquals(2, rows.size());
+        assertEquals(1L, locations.stats().get("coalesced"));
+        assertEquals(0, locations.stats().get("depth"));
+        locations.stop();
+    }
+
+    @Test
+    public void testFailedBatchIsRetried() {
+        LocationWriteBehind locations = newWriteBehind(journal(), 65_536);
+        failuresLeft.set(1);
+        locations.enqueue(1, 55.0, 37.0);
+
+        locations.flush().block();
+        assertTrue(rows.isEmpty());
+        assertEquals(1, locations.stats().get("depth"));
+
+        locations.flush().block();
+        assertEquals(new UserLocation(1, 55.0, 37.0), rows.get(1L));
+        locations.stop();
+    }
+
+    @Test
+    public void testUnwrittenPositionsAreReplayedAfterCrash() {
+        String journal = journal();
+        LocationWriteBehind crashed = newWriteBehind(journal, 65_536);
+        crashed.enqueue(1, 55.0, 37.0);
+        crashed.flush().block();
+        crashed.enqueue(1, 55.2, 37.2);
+        crashed.enqueue(2, 48.8, 2.3);
+        // stop() не зовём: процесс упал, в базе только первая позиция
+
+        LocationWriteBehind restarted = newWriteBehind(journal, 65_536);
+        assertEquals(2, restarted.stats().get("depth"));
+        restarted.flush().block();
+
+        assertEquals(new UserLocation(1, 55.2, 37.2), rows.get(1L));
+        assertEquals(new UserLocation(2, 48.8, 2.3), rows.get(2L));
+        restarted.stop();
+
+        // Всё записано — журнал пуст, повторно ничего не проигрывается
+        LocationWriteBehind clean = newWriteBehind(journal, 65_536);
+        assertEquals(0, clean.stats().get("depth"));
+        clean.stop();
+    }
+
+    @Test
+    public void testFullJournalIsCompactedToOnePositionPerChat() {
+        String journal = journal();
+        LocationWriteBehind locations = newWriteBehind(journal, 4);
+        for (int i = 0; i < 10; i++) {
+            locations.enqueue(i % 2, 55.0 + i, 37.0);
+        }
+        @SuppressWarnings("unchecked")
+        Map<String, Object> stats = (Map<String, Object>) locations.stats().get("journal");
+        assertTrue((Long) stats.get("compactions") > 0);
+        assertEquals(0L, stats.get("unjournaled"));
+
+        LocationWriteBehind restarted = newWriteBehind(journal, 4);
+        restarted.flush().block();
+        assertEquals(new UserLocation(0, 63.0, 37.0), rows.get(0L));
+        assertEquals(new UserLocation(1, 64.0, 37.0), rows.get(1L));
+        locations.stop();
+        restarted.stop();
+    }
+
+    @Test
+    public void testTornAndStaleRecordsAreNotReplayed() throws IOException {
+        Path path = dir.resolve("torn.journal");
+        try (MappedJournal<UserLocation> journal = MappedJournal.open(path, 8, LocationWriteBehind.JOURNAL_FORMAT)) {
+            journal.append(new UserLocation(1, 1, 1));
+            journal.append(new UserLocation(5, 5, 5));
+            journal.append(new UserLocation(6, 6, 6));
+            journal.reset();
+            journal.append(new UserLocation(2, 2, 2));
+            journal.append(new UserLocation(3, 3, 3));
+        }
+        // Запись третьей позиции оборвалась до эпохи
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.WRITE)) {
+            channel.write(ByteBuffer.allocate(Long.BYTES), 32 + LocationWriteBehind.JOURNAL_FORMAT.recordBytes() + 24);
+        }
+
+        try (MappedJournal<UserLocation> journal = MappedJournal.open(path, 8, LocationWriteBehind.JOURNAL_FORMAT)) {
+            assertEquals(List.of(new UserLocation(2, 2, 2)), journal.replay());
+            assertEquals(1, journal.size());
+            assertTrue(journal.append(new UserLocation(4, 4, 4)));
+            assertEquals(List.of(new UserLocation(2, 2, 2), new UserLocation(4, 4, 4)), journal.replay());
+        }
+    }
+
+    private String journal() {
+        return dir.resolve("locations.journal").toString();
+    }
+
+    private LocationWriteBehind newWriteBehind(String journal, int capacity) {
+        LocationWriteBehind locations = new LocationWriteBehind(userDAO(), 1000, 60_000, journal, capacity,
+                new DrainCoordinator(1000));
+        locations.start();
+        return locations;
+    }
+
+    // Из UserDAO нужна только пакетная запись геопозиций
+    @SuppressWarnings("unchecked")
+    private UserDAO userDAO() {
+        return (UserDAO) Proxy.newProxyInstance(UserDAO.class.getClassLoader(), new Class<?>[] {UserDAO.class},
+                (proxy, method, args) -> {
+                    if (!method.getName().equals("updateUserLocations")) {
+                        throw new UnsupportedOperationException(method.getName());
+                    }
+                    List<UserLocation> batch = new ArrayList<>((Collection<UserLocation>) args[0]);
+                    return Mono.defer(() -> {
+                        if (failuresLeft.getAndDecrement() > 0) {
+                            return Mono.error(new IllegalStateException("mongo is down"));
+                        }
+                        batches.incrementAndGet();
+                        batch.forEach(location -> rows.put(location.chatId(), location));
+                        return Mono.empty();
+                    });
+                });
+    }
+}
@@ -0,0 +1,86 @@
+package org.tripplanner.modules.triphelper;
+
+import java.time.Instant;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.domain.TrackSegment;
+
+public class TrackEncodingTest {
+
+    private static final long HOUR = Instant.parse("2026-10-18T10:00:00Z").getEpochSecond();
+    // Пешеход на север: 14 м за 10 секунд
+    private static final double STEP = 14 / 111_318.8;
+
+    @Test
+    public void testPointsSurviveRoundTrip() {
+        TrackEncoding.Writer writer = new TrackEncoding.Writer(HOUR, 16);
+        writer.append(HOUR + 5, TrackEncoding.toFixed(-33.868820), TrackEncoding.toFixed(151.209296));
+        writer.append(HOUR + 15, TrackEncoding.toFixed(-33.868700), TrackEncoding.toFixed(151.209100));
+        writer.append(HOUR + 3599, TrackEncoding.toFixed(-33.9), TrackEncoding.toFixed(-179.999999));
+
+        TrackEncoding.Points points = new TrackEncoding.Points(1);
+        TrackEncoding.decode(writer.toByteArray(), writer.count(), HOUR, points);
+
+        assertEquals(3, points.size);
+        assertEquals(HOUR + 15, points.seconds[1]);
+        assertEquals(-33.8687, TrackEncoding.toDegrees(points.latitudes[1]), 1e-9);
+        assertEquals(-179.999999, TrackEncoding.toDegrees(points.longitudes[2]), 1e-9);
+    }
+
+    @Test
+    public void testWalkingCostsAFewBytesPerPoint() {
+        TrackEncoding.Writer writer = new TrackEncoding.Writer(HOUR, 16);
+        for (int i = 0; i < 300; i++) {
+            writer.append(HOUR + i * 10L, TrackEncoding.toFixed(55.75 + i * STEP), TrackEncoding.toFixed(37.61));
+        }
+        assertTrue(writer.toByteArray().length < 300 * 5, "bytes: " + writer.toByteArray().length);
+    }
+
+    @Test
+    public void testStraightWalkCollapsesToFewPoints() {
+        TrackEncoding.Writer writer = new TrackEncoding.Writer(HOUR, 16);
+        TrackSimplifier simplifier = new TrackSimplifier(5, 64);
+        for (int i = 0; i < 200; i++) {
+            simplifier.add(HOUR + i * 10L, TrackEncoding.toFixed(55.75 + i * STEP), TrackEncoding.toFixed(37.61), writer);
+        }
+        simplifier.finish(writer);
+
+        Track track = Track.of(List.of(segment(writer)));
+        assertTrue(track.size() <= 5, "kept: " + track.size());
+        assertEquals(199 * 14, track.distanceMeters(), 199 * 14 * 0.01);
+        assertEquals(1990, track.movingSeconds());
+    }
+
+    @Test
+    public void testStopSurvivesSimplification() {
+        TrackEncoding.Writer writer = new TrackEncoding.Writer(HOUR, 16);
+        TrackSimplifier simplifier = new TrackSimplifier(5, 64);
+        long second = HOUR;
+        double latitude = 55.75;
+        for (int i = 0; i < 60; i++, second += 10, latitude += STEP) {
+            simplifier.add(second, TrackEncoding.toFixed(latitude), TrackEncoding.toFixed(37.61), writer);
+        }
+        // Полчаса на месте, геопозиция продолжает приходить
+        for (int i = 0; i < 180; i++, second += 10) {
+            simplifier.add(second, TrackEncoding.toFixed(latitude), TrackEncoding.toFixed(37.61), writer);
+        }
+        for (int i = 0; i < 60; i++, second += 10, latitude += STEP) {
+            simplifier.add(second, TrackEncoding.toFixed(latitude), TrackEncoding.toFixed(37.61), writer);
+        }
+        simplifier.finish(writer);
+
+        Track track = Track.of(List.of(segment(writer)));
+        assertTrue(track.size() < 20, "kept: " + track.size());
+        // 119 шагов пешком, стоянка не в счёт
+        assertEquals(1190, track.movingSeconds(), 20);
+        assertEquals(119 * 14, track.distanceMeters(), 119 * 14 * 0.01);
+    }
+
+    private static TrackSegment segment(TrackEncoding.Writer writer) {
+        return new TrackSegment("trip", 1, Instant.ofEpochSecond(HOUR), Instant.ofEpochSecond(HOUR),
+                Instant.ofEpochSecond(writer.lastSecond()), writer.count(), writer.toByteArray());
+    }
+}
@@ -0,0 +1,165 @@
+package org.tripplanner.modules.triphelper;
+
+import java.nio.file.Path;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.ZoneOffset;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.tripplanner.domain.TrackSegment;
+import org.tripplanner.repositories.TrackDAO;
+import org.tripplanner.util.DrainCoordinator;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+
+public class TrackRecorderTest {
+
+    @TempDir
+    Path dir;
+
+    private static final long START = Instant.parse("2026-10-18T10:30:00Z").getEpochSecond();
+    private static final double STEP = 14 / 111_318.8;
+
+    private final FakeTrackDAO dao = new FakeTrackDAO();
+
+    @Test
+    public void testEachHourBecomesOneSegment() {
+        TrackRecorder tracks = newRecorder();
+        walk(tracks, "trip", 7, START, 360);
+
+        tracks.sealFinishedHours(START + 70 * 60);
+        tracks.flush().block();
+        assertEquals(1, dao.segments.size());
+        assertEquals(Instant.parse("2026-10-18T10:00:00Z"), dao.segments.get(0).hour());
+
+        // Записанный час и незакрытый склеиваются в один трек
+        Track live = tracks.tripTrack("trip").block();
+        assertEquals(Instant.ofEpochSecond(START), live.start());
+        assertEquals(Instant.ofEpochSecond(START + 3590), live.end());
+        assertEquals(359 * 14, live.distanceMeters(), 359 * 14 * 0.01);
+
+        tracks.stop();
+        assertEquals(2, dao.segments.size());
+        Track stored = tracks.tripTrack("trip").block();
+        // В живом чтении хвост окна ещё не упрощён, поэтому точек там больше
+        assertTrue(stored.size() <= live.size());
+        assertEquals(live.end(), stored.end());
+        assertEquals(live.distanceMeters(), stored.distanceMeters(), live.distanceMeters() * 0.01);
+        assertEquals(3590, stored.movingSeconds());
+    }
+
+    @Test
+    public void testDayTrackIsCutAtMidnight() {
+        TrackRecorder tracks = newRecorder();
+        long beforeMidnight = Instant.parse("2026-10-18T23:50:00Z").getEpochSecond();
+        walk(tracks, "trip", 7, beforeMidnight, 120);
+        walk(tracks, "other", 8, beforeMidnight, 120);
+        tracks.record("trip", 7, 55.0, 37.0, beforeMidnight * 1000);
+        tracks.sealFinishedHours(beforeMidnight + 3600);
+        tracks.flush().block();
+
+        Track day = tracks.dayTrack(7, LocalDate.of(2026, 10, 18), ZoneOffset.UTC).block();
+        assertEquals(Instant.ofEpochSecond(beforeMidnight), day.start());
+        assertTrue(day.end().isBefore(Instant.parse("2026-10-19T00:00:00Z")));
+        assertEquals(590, day.movingSeconds(), 20);
+        assertEquals(1L, tracks.stats().get("outOfOrder"));
+        tracks.stop();
+    }
+
+    @Test
+    public void testFailedBatchIsRetried() {
+        TrackRecorder tracks = newRecorder();
+        dao.failuresLeft.set(1);
+        walk(tracks, "trip", 7, START, 10);
+        tracks.sealFinishedHours(START + 3600);
+
+        tracks.flush().block();
+        assertTrue(dao.segments.isEmpty());
+        assertEquals(1, tracks.stats().get("pendingSegments"));
+
+        tracks.flush().block();
+        assertEquals(1, dao.segments.size());
+        assertEquals(0, tracks.stats().get("pendingSegments"));
+        tracks.stop();
+    }
+
+    @Test
+    public void testOpenHourIsReplayedFromJournalAfterCrash() {
+        String journal = dir.resolve("tracks.journal").toString();
+        TrackRecorder crashed = newRecorder(journal);
+        walk(crashed, "trip", 7, START, 100);
+        Track before = crashed.tripTrack("trip").block();
+
+        // Процесс упал: stop не вызывался, в базе ничего нет
+        TrackRecorder restarted = newRecorder(journal);
+        assertEquals(100L, journalStats(restarted).get("replayed"));
+        Track replayed = restarted.tripTrack("trip").block();
+        assertEquals(before.start(), replayed.start());
+        assertEquals(before.end(), replayed.end());
+        assertEquals(before.distanceMeters(), replayed.distanceMeters(), before.distanceMeters() * 0.01);
+
+        // Штатная остановка всё записывает и обнуляет журнал
+        restarted.stop();
+        assertEquals(1, dao.segments.size());
+        TrackRecorder next = newRecorder(journal);
+        assertEquals(0L, journalStats(next).get("replayed"));
+        next.stop();
+    }
+
+    private TrackRecorder newRecorder() {
+        return newRecorder("");
+    }
+
+    private TrackRecorder newRecorder(String journal) {
+        // Таймер раз в минуту: куски закрывает и сбрасывает тест
+        TrackRecorder tracks = new TrackRecorder(dao, true, 5, 16, 60_000, 100, journal, 1024, new DrainCoordinator(1000));
+        tracks.start();
+        return tracks;
+    }
+
+    @SuppressWarnings("unchecked")
+    private static Map<String, Object> journalStats(TrackRecorder tracks) {
+        return (Map<String, Object>) tracks.stats().get("journal");
+    }
+
+    private static void walk(TrackRecorder tracks, String tripId, long chatId, long from, int points) {
+        for (int i = 0; i < points; i++) {
+            tracks.record(tripId, chatId, 55.75 + i * STEP, 37.61, (from + i * 10L) * 1000);
+        }
+    }
+
+    private static class FakeTrackDAO implements TrackDAO {
+        final List<TrackSegment> segments = new CopyOnWriteArrayList<>();
+        final AtomicInteger failuresLeft = new AtomicInteger();
+
+        @Override
+        public Mono<Void> insertSegments(List<TrackSegment> batch) {
+            return Mono.defer(() -> {
+                if (failuresLeft.getAndDecrement() > 0) {
+                    return Mono.error(new IllegalStateException("mongo is down"));
+                }
+                segments.addAll(batch);
+                return Mono.empty();
+            });
+        }
+
+        @Override
+        public Flux<TrackSegment> findByTrip(String tripId) {
+            return Flux.fromStream(() -> segments.stream().filter(segment -> segment.tripId().equals(tripId)));
+        }
+
+        @Override
+        public Flux<TrackSegment> findByChat(long chatId, Instant from, Instant to) {
+            return Flux.fromStream(() -> segments.stream().filter(segment -> segment.chatId() == chatId
+                    && !segment.hour().isBefore(from) && segment.hour().isBefore(to)));
+        }
+    }
+}
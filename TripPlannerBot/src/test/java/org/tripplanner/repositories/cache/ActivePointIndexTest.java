@@ -0,0 +1,108 @@
+package org.tripplanner.repositories.cache;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.domain.Point;
+
+import reactor.core.publisher.Flux;
+import reactor.core.publisher.Mono;
+import reactor.core.publisher.Sinks;
+
+public class ActivePointIndexTest {
+
+    private final ActivePointIndex index = new ActivePointIndex(true, 60_000, 100);
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    public void testFindsNearestPointWithinRadiusAndLoadsTripOnce() {
+        // Колизей и Форум в ~400 м друг от друга, Ватикан в 4 км
+        List<Point> points = List.of(point("colosseum", 41.8902, 12.4922),
+                point("forum", 41.8925, 12.4853), point("vatican", 41.9029, 12.4534));
+
+        assertEquals("colosseum", nearest(points, 41.8905, 12.4925, 100));
+        assertEquals("forum", nearest(points, 41.8924, 12.4855, 100));
+        assertNull(nearest(points, 41.8960, 12.4800, 100));
+        // Далеко от всех точек — отсекается прямоугольником поездки
+        assertNull(nearest(points, 55.7558, 37.6173, 100));
+
+        assertEquals(1, loads.get());
+        assertEquals(1L, index.stats().get("boxRejects"));
+    }
+
+    @Test
+    public void testMatchesBruteForceAcrossCellBorders() {
+        List<Point> points = List.of(point("a", 59.9999, 30.0001), point("b", 60.0001, 29.9999),
+                point("c", 60.0004, 30.0004));
+        // Точки по разные стороны границ ячеек сетки: ближайшую всё равно находит
+        assertEquals("a", nearest(points, 59.99995, 30.00005, 50));
+        assertEquals("b", nearest(points, 60.00005, 29.99995, 50));
+        assertEquals("c", nearest(points, 60.0004, 30.0004, 200));
+    }
+
+    @Test
+    public void testWritesDropTripAndChat() {
+        List<Point> points = List.of(point("colosseum", 41.8902, 12.4922));
+        assertEquals("colosseum", nearest(points, 41.8902, 12.4922, 100));
+
+        index.invalidatePoint("colosseum");
+        assertNull(nearest(List.of(), 41.8902, 12.4922, 100));
+        assertEquals(2, loads.get());
+
+        AtomicInteger userLookups = new AtomicInteger();
+        Mono<String> ongoing = index.ongoingTrip(1L, () -> {
+            userLookups.incrementAndGet();
+            return Mono.empty();
+        });
+        assertNull(ongoing.block());
+        assertNull(ongoing.block());
+        assertEquals(1, userLookups.get());
+
+        index.invalidateChat(1L);
+        assertNull(ongoing.block());
+        assertEquals(2, userLookups.get());
+    }
+
+    @Test
+    public void testInvalidationDiscardsOnlyLoadsOfItsTrip() {
+        Point colosseum = point("colosseum", 41.8902, 12.4922);
+        // Загрузки обеих поездок в полёте, пока инвалидируют другую поездку
+        Sinks.One<List<Point>> romeLoad = Sinks.one();
+        Sinks.One<List<Point>> parisLoad = Sinks.one();
+        Mono<Point> rome = index.nearest("rome", 41.8902, 12.4922, 100,
+                () -> romeLoad.asMono().flatMapMany(Flux::fromIterable)).cache();
+        Mono<Point> paris = index.nearest("paris", 41.8902, 12.4922, 100,
+                () -> parisLoad.asMono().flatMapMany(Flux::fromIterable)).cache();
+        rome.subscribe();
+        paris.subscribe();
+
+        index.invalidateTrip("milan");
+        romeLoad.tryEmitValue(List.of(colosseum));
+        assertEquals("colosseum", rome.block().getId());
+        assertEquals(0L, index.stats().get("staleLoads"));
+
+        index.invalidateTrip("paris");
+        parisLoad.tryEmitValue(List.of());
+        assertNull(paris.block());
+        assertEquals(1L, index.stats().get("staleLoads"));
+        // rome осталась в индексе, paris — нет
+        assertEquals(1, index.stats().get("trips"));
+    }
+
+    private String nearest(List<Point> points, double latitude, double longitude, double radius) {
+        Point found = index.nearest("trip", latitude, longitude, radius, () -> {
+            loads.incrementAndGet();
+            return Flux.fromIterable(points);
+        }).block();
+        return found != null ? found.getId() : null;
+    }
+
+    private static Point point(String id, double latitude, double longitude) {
+        Point point = new Point(id, latitude, longitude, false, List.of());
+        point.setId(id);
+        return point;
+    }
+}
@@ -0,0 +1,59 @@
+package org.tripplanner.repositories.cache;
+
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.bson.BsonObjectId;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.User;
+
+public class ChangeStreamInvalidatorTest {
+
+    private final DomainCaches caches = new DomainCaches(false, 60_000, 100, 100, 100, new ActivePointIndex(true, 60_000, 100));
+    private final ChangeStreamInvalidator invalidator =
+            new ChangeStreamInvalidator(null, caches, null, null, true, "test", 1000);
+
+    @Test
+    public void testUserIsInvalidatedByChatIdFromFullDocument() {
+        caches.users.put(1L, new User(), caches.users.stamp(1L));
+        caches.users.put(2L, new User(), caches.users.stamp(2L));
+
+        invalidator.apply("update", "users", new BsonObjectId(new ObjectId()), new Document("chatId", 1L));
+
+        assertNull(caches.users.get(1L));
+        assertNotNull(caches.users.get(2L));
+    }
+
+    @Test
+    public void testTripChangeDropsTripAndOwnerNames() {
+        ObjectId tripId = new ObjectId();
+        caches.trips.put(tripId.toHexString(), new Trip(), caches.trips.stamp(tripId.toHexString()));
+        caches.tripNames.put(7L, Map.of("1:Рим", tripId.toHexString()), caches.tripNames.stamp(7L));
+        caches.tripNames.put(8L, Map.of("1:Париж", "other"), caches.tripNames.stamp(8L));
+
+        invalidator.apply("update", "trips", new BsonObjectId(tripId), new Document("ownerChatId", 7L));
+
+        assertNull(caches.trips.get(tripId.toHexString()));
+        assertNull(caches.tripNames.get(7L));
+        assertNotNull(caches.tripNames.get(8L));
+
+        // Удалённая поездка: владельца не узнать, поиск по названиям сбрасывается у всех
+        invalidator.apply("delete", "trips", new BsonObjectId(tripId), null);
+        assertNull(caches.tripNames.get(8L));
+    }
+
+    @Test
+    public void testDropDatabaseClearsEverything() {
+        caches.users.put(1L, new User(), caches.users.stamp(1L));
+
+        invalidator.apply("dropDatabase", null, null, null);
+
+        assertNull(caches.users.get(1L));
+        assertEquals(1L, ((Map<?, ?>) invalidator.stats().get("events")).get("dropDatabase"));
+    }
+}
@@ -0,0 +1,122 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.nio.ByteBuffer;
+import java.time.LocalDate;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.bson.BsonBinaryReader;
+import org.bson.BsonBinaryWriter;
+import org.bson.Document;
+import org.bson.codecs.Codec;
+import org.bson.codecs.DecoderContext;
+import org.bson.codecs.DocumentCodec;
+import org.bson.codecs.EncoderContext;
+import org.bson.io.BasicOutputBuffer;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.convert.MappingMongoConverter;
+import org.springframework.data.mongodb.core.convert.MongoCustomConversions;
+import org.springframework.data.mongodb.core.convert.NoOpDbRefResolver;
+import org.springframework.data.mongodb.core.mapping.MongoMappingContext;
+import org.tripplanner.domain.Point;
+import org.tripplanner.domain.Route;
+import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.User;
+
+/**
+ * Кодеки должны давать то же, что MappingMongoConverter + маппер на документах,
+ * записанных самим Spring Data.
+ */
+public class DomainCodecsTest {
+
+    private final MappingMongoConverter converter = converter();
+
+    @Test
+    public void testTripMatchesConverterAndMapper() {
+        TripDBO dbo = new TripDBO("Рим", LocalDate.of(2025, 6, 1), LocalDate.of(2025, 6, 10), 4,
+                new ObjectId(), List.of(new ObjectId()), List.of(new ObjectId(), new ObjectId()));
+        dbo.setId(new ObjectId());
+        dbo.setOwnerChatId(42L);
+        dbo.setStatus("PLANNED");
+        dbo.setNotes(List.of("билеты", "отель"));
+        Document stored = write(dbo);
+
+        Trip expected = new TripMapper(null, null, null).fromDbo(converter.read(TripDBO.class, stored));
+        Trip actual = decode(new TripCodec(), stored);
+
+        assertEquals(expected.getId(), actual.getId());
+        assertEquals(expected.getName(), actual.getName());
+        assertEquals(expected.getStartDate(), actual.getStartDate());
+        assertEquals(expected.getEndDate(), actual.getEndDate());
+        assertEquals(expected.getRating(), actual.getRating());
+        assertEquals(expected.getStatus(), actual.getStatus());
+        assertEquals(expected.getNotes(), actual.getNotes());
+        assertEquals(expected.getStartPoint().getId(), actual.getStartPoint().getId());
+        assertEquals(expected.getPoints(), actual.getPoints());
+        assertEquals(expected.getRoutes().stream().map(Route::getId).toList(),
+                actual.getRoutes().stream().map(Route::getId).toList());
+    }
+
+    @Test
+    public void testPointAndUserMatchConverterAndMapper() {
+        PointDBO point = new PointDBO("Колизей", 41.89, 12.49, true, List.of("рано утром"));
+        point.setId(new ObjectId());
+        point.setTripId(new ObjectId());
+        Document storedPoint = write(point);
+
+        Point expectedPoint = new PointMapper().fromDbo(converter.read(PointDBO.class, storedPoint));
+        Point actualPoint = decode(new PointCodec(), storedPoint);
+        assertEquals(expectedPoint.getId(), actualPoint.getId());
+        assertEquals(expectedPoint.getName(), actualPoint.getName());
+        assertEquals(expectedPoint.getLatitude(), actualPoint.getLatitude());
+        assertEquals(expectedPoint.getLongitude(), actualPoint.getLongitude());
+        assertEquals(expectedPoint.isVisited(), actualPoint.isVisited());
+        assertEquals(expectedPoint.getNotes(), actualPoint.getNotes());
+
+        UserDBO user = new UserDBO();
+        user.setId(new ObjectId());
+        user.setChatId(7L);
+        user.setTripInPlanning(new ObjectId());
+        user.setPlannedTrips(List.of(new ObjectId(), new ObjectId()));
+        user.setTripHistory(List.of());
+        Document storedUser = write(user);
+
+        User expectedUser = new UserMapper().fromDbo(converter.read(UserDBO.class, storedUser));
+        User actualUser = decode(new UserCodec(), storedUser);
+        assertEquals(expectedUser.getChatId(), actualUser.getChatId());
+        assertEquals(expectedUser.getTripInPlanning().getId(), actualUser.getTripInPlanning().getId());
+        assertNull(actualUser.getOngoingTrip());
+        assertEquals(ids(expectedUser.getPlannedTrips()), ids(actualUser.getPlannedTrips()));
+        assertEquals(ids(expectedUser.getTripHistory()), ids(actualUser.getTripHistory()));
+    }
+
+    private Document write(Object dbo) {
+        Document document = new Document();
+        converter.write(dbo, document);
+        return document;
+    }
+
+    private static <T> T decode(Codec<T> codec, Document document) {
+        BasicOutputBuffer buffer = new BasicOutputBuffer();
+        new DocumentCodec().encode(new BsonBinaryWriter(buffer), document, EncoderContext.builder().build());
+        return codec.decode(new BsonBinaryReader(ByteBuffer.wrap(buffer.toByteArray())), DecoderContext.builder().build());
+    }
+
+    private static List<String> ids(List<Trip> trips) {
+        return trips == null ? null : trips.stream().map(Trip::getId).toList();
+    }
+
+    private static MappingMongoConverter converter() {
+        // Как в приложении: LocalDate пишется датой через конвертеры, а не разбирается рефлексией
+        MongoCustomConversions conversions = new MongoCustomConversions(List.of());
+        MongoMappingContext context = new MongoMappingContext();
+        context.setSimpleTypeHolder(conversions.getSimpleTypeHolder());
+        context.afterPropertiesSet();
+        MappingMongoConverter converter = new MappingMongoConverter(NoOpDbRefResolver.INSTANCE, context);
+        converter.setCustomConversions(conversions);
+        converter.afterPropertiesSet();
+        return converter;
+    }
+}
@@ -0,0 +1,60 @@
+package org.tripplanner.repositories.mongodb;
+
+import static org.junit.jupiter.api.Assertions.assertInstanceOf;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import org.bson.Document;
+import org.bson.codecs.configuration.CodecConfigurationException;
+import org.bson.codecs.configuration.CodecRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.ReactiveMongoTemplate;
+import org.tripplanner.config.MongoConfig;
+import org.tripplanner.domain.Point;
+import org.tripplanner.domain.Trip;
+import org.tripplanner.domain.User;
+
+import com.mongodb.event.CommandListener;
+import com.mongodb.reactivestreams.client.MongoClient;
+import com.mongodb.reactivestreams.client.MongoClients;
+import com.mongodb.reactivestreams.client.MongoCollection;
+
+/**
+ * Доменные кодеки только читают: их реестр не должен попасть ни в клиента, ни в коллекции,
+ * через которые пишет MongoTemplate. Клиент создаётся без подключения к базе.
+ */
+public class DomainReadsTest {
+
+    private final MongoClient client = MongoClients.create(
+            MongoConfig.clientSettings("mongodb://localhost:27017", new CommandListener() { }));
+    private final ReactiveMongoTemplate template = new ReactiveMongoTemplate(client, "tripplanner");
+    private final DomainReads reads = new DomainReads(template, new MongoConfig().domainCodecRegistry());
+
+    @AfterEach
+    public void close() {
+        client.close();
+    }
+
+    @Test
+    public void testClientRegistryHasNoDomainCodecs() {
+        assertNoDomainCodecs(MongoConfig.clientSettings("mongodb://localhost:27017", new CommandListener() { })
+                .getCodecRegistry());
+    }
+
+    @Test
+    public void testDomainCodecsStayOnReadCopy() {
+        MongoCollection<Trip> trips = reads.collection("trips", Trip.class).block();
+        assertInstanceOf(TripCodec.class, trips.getCodecRegistry().get(Trip.class));
+        assertInstanceOf(UserCodec.class, trips.getCodecRegistry().get(User.class));
+        assertInstanceOf(PointCodec.class, trips.getCodecRegistry().get(Point.class));
+
+        // Коллекция, через которую пишет шаблон, осталась со стандартным реестром
+        MongoCollection<Document> written = template.getCollection("trips").block();
+        assertNoDomainCodecs(written.getCodecRegistry());
+    }
+
+    private static void assertNoDomainCodecs(CodecRegistry registry) {
+        assertThrows(CodecConfigurationException.class, () -> registry.get(Trip.class));
+        assertThrows(CodecConfigurationException.class, () -> registry.get(User.class));
+        assertThrows(CodecConfigurationException.class, () -> registry.get(Point.class));
+    }
+}
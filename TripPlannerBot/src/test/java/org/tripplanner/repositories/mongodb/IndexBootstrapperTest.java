@@ -0,0 +1,74 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.index.IndexInfo;
+
+public class IndexBootstrapperTest {
+
+    @Test
+    public void testMatchesIndexesByKeysNotNames() {
+        Map<String, List<IndexInfo>> existing = Map.of(
+                "users", infos(index("_id_", new Document("_id", 1)),
+                        // Создан руками под именем по умолчанию
+                        index("chatId_1", new Document("chatId", 1)).append("unique", true)),
+                "points", infos(index("points_trip_name", new Document("tripId", 1).append("name", 1)),
+                        // Те же ключи, но без partialFilterExpression — это другой индекс
+                        index("tripId_1", new Document("tripId", 1))));
+
+        IndexBootstrapper.IndexReport report = IndexBootstrapper.analyse(IndexBootstrapper.REQUIRED, existing, Map.of());
+
+        assertTrue(report.verified());
+        assertTrue(report.missing().contains("points.points_trip_unvisited"));
+        assertTrue(report.missingCritical().contains("trips.trips_owner_status_name"));
+        assertFalse(report.missing().contains("users.users_chat_id"));
+        assertFalse(report.missing().contains("points.points_trip_name"));
+        assertEquals(List.of("points.tripId_1 (covered by points_trip_name)"), report.redundant());
+    }
+
+    @Test
+    public void testKeepsUniquePartialAndExactIndexes() {
+        List<IndexInfo> infos = infos(
+                index("_id_", new Document("_id", 1)),
+                index("owner_unique", new Document("ownerChatId", 1)).append("unique", true),
+                index("owner_status", new Document("ownerChatId", 1).append("status", 1)),
+                index("owner_desc", new Document("ownerChatId", -1)),
+                index("open_only", new Document("ownerChatId", 1)).append("partialFilterExpression", new Document("status", "PLANNED")),
+                index("dup_a", new Document("name", 1)),
+                index("dup_b", new Document("name", 1)));
+
+        // Направление важно, а из двух полных дублей лишним считается только один
+        assertEquals(List.of("trips.dup_b (covered by dup_a)"), IndexBootstrapper.redundant("trips", infos));
+    }
+
+    @Test
+    public void testRecognisesGeoIndexBuiltByHand() {
+        Map<String, List<IndexInfo>> existing = Map.of(
+                "points", infos(index("trip_geo", new Document("tripId", 1).append("location", "2dsphere"))
+                        .append("partialFilterExpression", new Document("visited", false))));
+
+        IndexBootstrapper.IndexReport report = IndexBootstrapper.analyse(IndexBootstrapper.REQUIRED, existing, Map.of());
+
+        assertFalse(report.missing().contains("points.points_trip_location_unvisited"));
+
+        // Без partialFilterExpression индекс видит и посещённые точки — это не тот индекс
+        existing = Map.of("points", infos(index("trip_geo", new Document("tripId", 1).append("location", "2dsphere"))));
+        report = IndexBootstrapper.analyse(IndexBootstrapper.REQUIRED, existing, Map.of());
+
+        assertTrue(report.missingCritical().contains("points.points_trip_location_unvisited"));
+    }
+
+    private static List<IndexInfo> infos(Document... indexes) {
+        return List.of(indexes).stream().map(IndexInfo::indexInfoOf).toList();
+    }
+
+    private static Document index(String name, Document keys) {
+        return new Document("name", name).append("key", keys).append("v", 2);
+    }
+}
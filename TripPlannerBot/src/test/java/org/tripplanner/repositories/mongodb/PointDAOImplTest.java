@@ -0,0 +1,39 @@
+package org.tripplanner.repositories.mongodb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+
+public class PointDAOImplTest {
+
+    private final ObjectId tripId = new ObjectId();
+
+    @Test
+    public void testLookupByNameUsesBothIndexFields() {
+        Document filter = PointDAOImpl.byTripAndName(tripId, "Colosseum").getQueryObject();
+
+        assertEquals(new Document("tripId", tripId).append("name", "Colosseum"), filter);
+        // Равенство по всем ключам points_trip_name, в том же порядке
+        assertEquals(requiredIndex("points_trip_name").keys().keySet(), filter.keySet());
+    }
+
+    @Test
+    public void testUnvisitedQueryRepeatsPartialIndexFilter() {
+        Document filter = PointDAOImpl.unvisitedByTrip(tripId).getQueryObject();
+        IndexBootstrapper.RequiredIndex index = requiredIndex("points_trip_unvisited");
+
+        assertEquals(new Document("tripId", tripId).append("visited", false), filter);
+        // Планировщик возьмёт частичный индекс, только если запрос содержит его фильтр
+        Document partial = index.index().getIndexOptions().get("partialFilterExpression", Document.class);
+        partial.forEach((field, value) -> assertEquals(value, filter.get(field)));
+        index.keys().keySet().forEach(field -> assertEquals(tripId, filter.get(field)));
+    }
+
+    private static IndexBootstrapper.RequiredIndex requiredIndex(String name) {
+        return IndexBootstrapper.REQUIRED.stream()
+                .filter(index -> index.name().equals(name))
+                .findFirst()
+                .orElseThrow();
+    }
+}
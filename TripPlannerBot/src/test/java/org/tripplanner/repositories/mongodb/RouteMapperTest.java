@@ -0,0 +1,47 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.time.LocalDate;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.domain.Point;
+import org.tripplanner.domain.Route;
+
+public class RouteMapperTest {
+
+    private final RouteMapper mapper = new RouteMapper();
+
+    @Test
+    public void testJoinsPointsInTripOrder() {
+        Point louvre = point("Лувр");
+        RouteDBO first = route(louvre.getId(), 1);
+        RouteDBO second = route(louvre.getId(), 2);
+        // Точку удалили, маршрут остался
+        RouteDBO orphan = route(new ObjectId().toHexString(), 3);
+
+        List<Route> routes = mapper.fromDbos(List.of(second.getId(), orphan.getId(), new ObjectId(), first.getId()),
+                List.of(first, second, orphan), Map.of(louvre.getId(), louvre));
+
+        assertEquals(List.of(second.getId().toHexString(), orphan.getId().toHexString(), first.getId().toHexString()),
+                routes.stream().map(Route::getId).toList());
+        assertEquals("Лувр", routes.get(0).getPointTo().getName());
+        assertNull(routes.get(1).getPointTo());
+        assertEquals(LocalDate.of(2025, 6, 1), routes.get(2).getStartDate());
+    }
+
+    private static RouteDBO route(String pointId, int day) {
+        RouteDBO dbo = new RouteDBO(LocalDate.of(2025, 6, day), LocalDate.of(2025, 6, day), new ObjectId(pointId));
+        dbo.setId(new ObjectId());
+        return dbo;
+    }
+
+    private static Point point(String name) {
+        Point point = new Point(name, 48.86, 2.34, false, List.of());
+        point.setId(new ObjectId().toHexString());
+        return point;
+    }
+}
@@ -0,0 +1,36 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.EnumSet;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.domain.TripStatus;
+
+public class TripDAOImplTest {
+
+    @Test
+    public void testLegacyLookupFollowsUserLists() {
+        ObjectId planned = new ObjectId();
+        ObjectId ongoing = new ObjectId();
+        ObjectId finished = new ObjectId();
+        UserDBO user = new UserDBO();
+        user.setPlannedTrips(List.of(planned));
+        user.setCurrentTrips(List.of(ongoing));
+        user.setTripHistory(List.of(finished));
+
+        assertEquals(List.of(planned), TripDAOImpl.legacyTripIds(user, EnumSet.of(TripStatus.PLANNED)));
+        assertEquals(List.of(planned, ongoing),
+                TripDAOImpl.legacyTripIds(user, EnumSet.of(TripStatus.PLANNED, TripStatus.ONGOING)));
+        assertEquals(List.of(finished), TripDAOImpl.legacyTripIds(user, EnumSet.of(TripStatus.FINISHED)));
+        // Удалённых поездок в списках нет
+        assertTrue(TripDAOImpl.legacyTripIds(user, EnumSet.of(TripStatus.DELETED)).isEmpty());
+    }
+
+    @Test
+    public void testLegacyLookupSkipsMissingLists() {
+        assertTrue(TripDAOImpl.legacyTripIds(new UserDBO(), EnumSet.allOf(TripStatus.class)).isEmpty());
+    }
+}
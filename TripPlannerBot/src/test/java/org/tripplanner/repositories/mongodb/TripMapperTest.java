@@ -0,0 +1,37 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.time.LocalDate;
+import java.util.List;
+
+import org.bson.types.ObjectId;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.domain.Trip;
+
+public class TripMapperTest {
+
+    private final TripMapper mapper = new TripMapper(null, null, null);
+
+    @Test
+    public void testBatchKeepsUserOrderAndSkipsMissing() {
+        TripDBO alps = trip("Alps");
+        TripDBO rome = trip("Rome");
+        TripDBO oslo = trip("Oslo");
+        ObjectId deleted = new ObjectId();
+
+        // $in и $lookup возвращают документы в порядке коллекции, а не списка пользователя
+        List<Trip> trips = mapper.fromDbos(List.of(oslo.getId(), deleted, alps.getId(), rome.getId()),
+                List.of(alps, rome, oslo));
+
+        assertEquals(List.of("Oslo", "Alps", "Rome"), trips.stream().map(Trip::getName).toList());
+        assertTrue(mapper.fromDbos(null, List.of(alps)).isEmpty());
+        assertTrue(mapper.fromDbos(List.of(alps.getId()), null).isEmpty());
+    }
+
+    private static TripDBO trip(String name) {
+        TripDBO dbo = new TripDBO(name, LocalDate.of(2025, 6, 1), LocalDate.of(2025, 6, 10), 0, null, null, null);
+        dbo.setId(new ObjectId());
+        return dbo;
+    }
+}
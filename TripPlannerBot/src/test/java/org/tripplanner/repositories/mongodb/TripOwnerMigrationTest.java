@@ -0,0 +1,22 @@
+package org.tripplanner.repositories.mongodb;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.bson.Document;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.domain.TripStatus;
+
+public class TripOwnerMigrationTest {
+
+    @Test
+    public void testMarkedOrphanIsNoLongerUnowned() {
+        assertEquals(new Document("ownerChatId", new Document("$exists", false)),
+                TripOwnerMigration.unowned().getQueryObject());
+        // Поле появляется со значением null, и exists(false) сироту больше не находит
+        Document set = TripOwnerMigration.orphaned().getUpdateObject().get("$set", Document.class);
+        assertTrue(set.containsKey("ownerChatId"));
+        assertNull(set.get("ownerChatId"));
+        assertEquals(TripStatus.DELETED.name(), set.get("status"));
+    }
+}
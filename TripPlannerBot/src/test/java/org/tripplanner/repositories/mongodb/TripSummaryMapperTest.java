@@ -0,0 +1,65 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.time.LocalDate;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.tripplanner.domain.TripSummary;
+
+public class TripSummaryMapperTest {
+
+    private final TripSummaryMapper mapper = new TripSummaryMapper();
+
+    @Test
+    public void testBatchKeepsUserOrderAndSkipsMissing() {
+        TripSummaryDBO alps = summary("Alps");
+        TripSummaryDBO rome = summary("Rome");
+
+        List<TripSummary> summaries = mapper.fromDbos(List.of(rome.getId(), new ObjectId(), alps.getId()),
+                List.of(alps, rome));
+
+        assertEquals(List.of("Rome", "Alps"), summaries.stream().map(TripSummary::getName).toList());
+        assertEquals(rome.getId().toHexString(), summaries.get(0).getId());
+        assertEquals(LocalDate.of(2025, 6, 1), summaries.get(0).getStartDate());
+        assertEquals(LocalDate.of(2025, 6, 10), summaries.get(0).getEndDate());
+        assertTrue(mapper.fromDbos(null, List.of(alps)).isEmpty());
+        assertTrue(mapper.fromDbos(List.of(alps.getId()), List.of()).isEmpty());
+    }
+
+    @Test
+    public void testProjectionReadsExactlySummaryFields() {
+        // Каждое поле DBO должно прийти из проекции, иначе в списке окажется null
+        Set<String> dboFields = new HashSet<>();
+        for (Field field : TripSummaryDBO.class.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                dboFields.add("id".equals(field.getName()) ? "_id" : field.getName());
+            }
+        }
+        assertEquals(dboFields, Set.copyOf(TripSummaryMapper.FIELDS));
+
+        Document expected = new Document("tripIds", 1)
+                .append("trips._id", 1)
+                .append("trips.name", 1)
+                .append("trips.startDate", 1)
+                .append("trips.endDate", 1);
+        // Заметки, точки и маршруты поездки по сети не идут
+        assertEquals(expected, UserDAOImpl.summaryProjection());
+    }
+
+    private static TripSummaryDBO summary(String name) {
+        TripSummaryDBO dbo = new TripSummaryDBO();
+        dbo.setId(new ObjectId());
+        dbo.setName(name);
+        dbo.setStartDate(LocalDate.of(2025, 6, 1));
+        dbo.setEndDate(LocalDate.of(2025, 6, 10));
+        return dbo;
+    }
+}
@@ -0,0 +1,63 @@
+package org.tripplanner.repositories.mongodb;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import org.bson.Document;
+import org.bson.types.ObjectId;
+import org.junit.jupiter.api.Test;
+import org.springframework.data.mongodb.core.aggregation.Aggregation;
+
+public class UserDAOImplTest {
+
+    private final ObjectId tripId = new ObjectId();
+
+    @Test
+    public void testMoveToHistoryIsOneUserUpdate() {
+        assertEquals(new Document()
+                        .append("$addToSet", new Document("tripHistory", tripId))
+                        .append("$pull", new Document("plannedTrips", tripId)),
+                UserDAOImpl.toHistory(tripId).getUpdateObject());
+    }
+
+    @Test
+    public void testSetOngoingIsOneUserUpdate() {
+        assertEquals(new Document()
+                        .append("$set", new Document("ongoingTrip", tripId))
+                        .append("$pull", new Document("plannedTrips", tripId))
+                        .append("$addToSet", new Document("currentTrips", tripId)),
+                UserDAOImpl.toOngoing(tripId).getUpdateObject());
+    }
+
+    @Test
+    public void testTripStatusIsConditionalOnOwner() {
+        assertEquals(new Document("_id", tripId).append("ownerChatId", 42L),
+                UserDAOImpl.ownedTrip(42L, tripId).getQueryObject());
+    }
+
+    @Test
+    public void testFinishPlanningMovesTripOnServer() {
+        List<Document> pipeline = UserDAOImpl.FINISH_PLANNING.toPipeline(Aggregation.DEFAULT_CONTEXT);
+        assertEquals(2, pipeline.size());
+
+        Document set = pipeline.get(0).get("$set", Document.class);
+        Document history = set.get("tripHistory", Document.class);
+        // Дописываем в конец, только если поездки там ещё нет: повтор не задвоит историю
+        List<?> cond = history.getList("$cond", Object.class);
+        assertEquals(new Document("$in", List.of("$tripInPlanning", ifNull("$tripHistory"))), cond.get(0));
+        assertEquals(ifNull("$tripHistory"), cond.get(1));
+        assertEquals(new Document("$concatArrays", List.of(ifNull("$tripHistory"), List.of("$tripInPlanning"))),
+                cond.get(2));
+
+        // $filter сохраняет порядок оставшихся запланированных поездок
+        assertEquals(new Document("$filter", new Document()
+                        .append("input", ifNull("$plannedTrips"))
+                        .append("cond", new Document("$ne", List.of("$$this", "$tripInPlanning")))),
+                set.get("plannedTrips"));
+        assertEquals(new Document("$unset", "tripInPlanning"), pipeline.get(1));
+    }
+
+    private static Document ifNull(String field) {
+        return new Document("$ifNull", List.of(field, List.of()));
+    }
+}
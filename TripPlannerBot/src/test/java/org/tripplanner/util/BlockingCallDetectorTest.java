@@ -0,0 +1,46 @@
+package org.tripplanner.util;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+import reactor.core.publisher.Mono;
+
+public class BlockingCallDetectorTest {
+
+    @Test
+    public void testFlagsBlockOnWatchedThreadOnce() throws Exception {
+        BlockingCallDetector detector = new BlockingCallDetector(true, new String[] {"detector-test-"}, 100);
+        // Простаивающий пул тоже ждёт в park, но это не блокировка
+        ExecutorService idle = Executors.newSingleThreadExecutor(task -> new Thread(task, "detector-test-idle"));
+        idle.submit(() -> { }).get();
+        Thread blocked = new Thread(() -> {
+            try {
+                Mono.delay(Duration.ofSeconds(10)).block();
+            } catch (RuntimeException e) {
+                // прерван в конце теста
+            }
+        }, "detector-test-blocked");
+        blocked.start();
+        try {
+            while (blocked.getState() != Thread.State.WAITING) {
+                Thread.sleep(5);
+            }
+
+            List<String> found = detector.sample();
+            assertEquals(1, found.size());
+            assertTrue(found.get(0).contains("BlockingCallDetectorTest"), found.get(0));
+            // Та же блокировка в следующей выборке не считается новой
+            assertTrue(detector.sample().isEmpty());
+            assertEquals(1L, detector.stats().get("violations"));
+        } finally {
+            blocked.interrupt();
+            idle.shutdownNow();
+        }
+    }
+}
@@ -0,0 +1,76 @@
+package org.tripplanner.util;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class DrainCoordinatorTest {
+
+    @Test
+    public void testReturnsImmediatelyWhenNothingInFlight() {
+        DrainCoordinator coordinator = new DrainCoordinator(10_000);
+        List<String> events = new CopyOnWriteArrayList<>();
+        coordinator.onStopIntake(() -> events.add("intake stopped"));
+        coordinator.registerPending(DrainCoordinator.UPDATES, () -> 0);
+        coordinator.registerPending(DrainCoordinator.OUTBOUND, () -> 0);
+
+        long started = System.nanoTime();
+        assertTrue(coordinator.drain());
+        long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        // Дедлайн десять секунд, но ждать нечего
+        assertTrue(tookMs < 1000, "drain took " + tookMs + " ms");
+        assertFalse(coordinator.isAccepting());
+        assertEquals(List.of("intake stopped"), events);
+    }
+
+    @Test
+    public void testWaitsUntilWorkFinishes() {
+        DrainCoordinator coordinator = new DrainCoordinator(10_000);
+        AtomicInteger left = new AtomicInteger(3);
+        // Каждый опрос счётчика завершает одну задачу
+        coordinator.registerPending(DrainCoordinator.UPDATES, () -> Math.max(0, left.getAndDecrement()));
+
+        assertTrue(coordinator.drain());
+        assertTrue(left.get() <= 0);
+    }
+
+    @Test
+    public void testGivesUpAtDeadline() {
+        DrainCoordinator coordinator = new DrainCoordinator(200);
+        coordinator.registerPending(DrainCoordinator.MONGO_WRITES, () -> 1);
+
+        long started = System.nanoTime();
+        assertFalse(coordinator.drain());
+        long tookMs = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - started);
+
+        assertTrue(tookMs >= 200 && tookMs < 2000, "drain took " + tookMs + " ms");
+        assertEquals(0, coordinator.remaining().toMillis());
+    }
+
+    @Test
+    public void testRemainingIsWholeDeadlineBeforeDrain() {
+        DrainCoordinator coordinator = new DrainCoordinator(25_000);
+        assertEquals(25_000, coordinator.remaining().toMillis());
+        assertTrue(coordinator.isAccepting());
+    }
+
+    @Test
+    public void testFailingStopperDoesNotBreakDrain() {
+        DrainCoordinator coordinator = new DrainCoordinator(1000);
+        List<String> events = new CopyOnWriteArrayList<>();
+        coordinator.onStopIntake(() -> {
+            throw new IllegalStateException("poller is gone");
+        });
+        coordinator.onStopIntake(() -> events.add("webhook closed"));
+
+        assertTrue(coordinator.drain());
+        assertEquals(List.of("webhook closed"), events);
+    }
+}
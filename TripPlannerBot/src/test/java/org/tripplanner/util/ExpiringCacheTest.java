@@ -0,0 +1,66 @@
+package org.tripplanner.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import org.junit.jupiter.api.Test;
+
+public class ExpiringCacheTest {
+
+    private static final long TTL = TimeUnit.SECONDS.toNanos(10);
+
+    @Test
+    public void testTtlCountsFromWriteNotFromRead() {
+        AtomicLong clock = new AtomicLong();
+        ExpiringCache<String, String> cache = new ExpiringCache<>(1, 10, TTL, clock::get);
+        cache.put("a", "1", cache.stamp("a"));
+
+        clock.set(TimeUnit.SECONDS.toNanos(6));
+        assertEquals("1", cache.get("a"));
+        // Чтение на 6-й секунде срок не продлило
+        clock.set(TimeUnit.SECONDS.toNanos(11));
+        assertNull(cache.get("a"));
+    }
+
+    @Test
+    public void testEvictsLeastRecentlyUsed() {
+        ExpiringCache<Integer, String> cache = new ExpiringCache<>(1, 2, TTL, () -> 0L);
+        cache.put(1, "one", cache.stamp(1));
+        cache.put(2, "two", cache.stamp(2));
+        cache.get(1);
+        cache.put(3, "three", cache.stamp(3));
+
+        assertEquals("one", cache.get(1));
+        assertNull(cache.get(2));
+        assertEquals(2, cache.size());
+    }
+
+    @Test
+    public void testLoadStartedBeforeInvalidationIsDropped() {
+        ExpiringCache<String, String> cache = new ExpiringCache<>(4, 10, TTL, () -> 0L);
+        long stamp = cache.stamp("a");
+        long cacheStamp = cache.stamp();
+        cache.invalidate("a");
+
+        cache.put("a", "stale", stamp);
+        cache.putUnlessInvalidated("b", "stale", cacheStamp);
+        assertNull(cache.get("a"));
+        assertNull(cache.get("b"));
+        assertEquals(2L, cache.stats().get("staleLoads"));
+    }
+
+    @Test
+    public void testMergeKeepsFirstWriteTime() {
+        AtomicLong clock = new AtomicLong();
+        ExpiringCache<String, String> cache = new ExpiringCache<>(1, 10, TTL, clock::get);
+        cache.merge("a", "x", cache.stamp("a"), String::concat);
+        clock.set(TimeUnit.SECONDS.toNanos(8));
+        cache.merge("a", "y", cache.stamp("a"), String::concat);
+
+        assertEquals("xy", cache.get("a"));
+        clock.set(TimeUnit.SECONDS.toNanos(11));
+        assertNull(cache.get("a"));
+    }
+}
@@ -0,0 +1,83 @@
+package org.tripplanner.util;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class ExpiringLongMapTest {
+
+    private static final long TTL = TimeUnit.MINUTES.toNanos(30);
+
+    private final AtomicLong now = new AtomicLong();
+
+    @Test
+    public void testIdleEntriesExpire() {
+        ExpiringLongMap<String> map = new ExpiringLongMap<>(4, 100, TTL, now::get);
+        map.put(1, "a");
+        map.put(2, "b");
+
+        now.addAndGet(TTL / 2);
+        // Чтение продлевает жизнь записи
+        assertEquals("a", map.get(1));
+        now.addAndGet(TTL / 2 + 1);
+
+        assertNull(map.get(2));
+        assertEquals("a", map.get(1));
+        now.addAndGet(TTL + 1);
+        assertEquals(1, map.sweep());
+        assertEquals(0, map.size());
+        assertEquals(2, map.getExpirations());
+    }
+
+    @Test
+    public void testComputeIfAbsentKeepsLiveValueAndReplacesExpired() {
+        ExpiringLongMap<String> map = new ExpiringLongMap<>(4, 100, TTL, now::get);
+        assertEquals("a", map.computeIfAbsent(1, key -> "a"));
+        assertEquals("a", map.computeIfAbsent(1, key -> "b"));
+
+        now.addAndGet(TTL + 1);
+        assertEquals("c", map.computeIfAbsent(1, key -> "c"));
+        assertEquals(1, map.getExpirations());
+    }
+
+    @Test
+    public void testSizeIsBounded() {
+        ExpiringLongMap<Long> map = new ExpiringLongMap<>(4, 1000, TTL, now::get);
+        for (long chatId = 1; chatId <= 10_000; chatId++) {
+            now.incrementAndGet();
+            map.put(chatId, chatId);
+        }
+        assertTrue(map.size() <= 1000, "size " + map.size());
+        assertEquals(10_000 - map.size(), map.getEvictions());
+        // Свежие записи вытесняются последними
+        assertEquals(10_000L, map.get(10_000));
+    }
+
+    @Test
+    public void testMatchesHashMapUnderRandomOperations() {
+        ExpiringLongMap<Long> map = new ExpiringLongMap<>(2, 1_000_000, TTL, now::get);
+        Map<Long, Long> expected = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 200_000; i++) {
+            // Небольшой диапазон ключей, включая отрицательные id групповых чатов, — много коллизий и удалений
+            long key = random.nextInt(2000) - 1000;
+            switch (random.nextInt(3)) {
+                case 0 -> {
+                    map.put(key, (long) i);
+                    expected.put(key, (long) i);
+                }
+                case 1 -> assertEquals(expected.remove(key), map.remove(key));
+                default -> assertEquals(expected.get(key), map.get(key));
+            }
+        }
+        assertEquals(expected.size(), map.size());
+        expected.forEach((key, value) -> assertEquals(value, map.get(key)));
+    }
+}
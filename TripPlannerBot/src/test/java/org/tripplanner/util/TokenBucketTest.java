@@ -0,0 +1,58 @@
+package org.tripplanner.util;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import org.junit.jupiter.api.Test;
+
+public class TokenBucketTest {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testBurstThenRate() {
+        TokenBucket bucket = new TokenBucket(2, 3, () -> 0L);
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(0));
+        // Два токена в секунду: следующий через полсекунды
+        assertEquals(SECOND / 2, bucket.tryAcquire(0));
+        assertEquals(0, bucket.tryAcquire(SECOND / 2));
+    }
+
+    @Test
+    public void testRefillIsCappedByBurst() {
+        TokenBucket bucket = new TokenBucket(10, 2, () -> 0L);
+        bucket.tryAcquire(0);
+        bucket.tryAcquire(0);
+        assertTrue(bucket.isFull(60 * SECOND));
+        assertEquals(0, bucket.tryAcquire(60 * SECOND));
+        assertEquals(0, bucket.tryAcquire(60 * SECOND));
+        assertTrue(bucket.tryAcquire(60 * SECOND) > 0);
+    }
+
+    @Test
+    public void testPauseOverridesAvailableTokens() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(100, 100, clock::get);
+        clock.set(SECOND);
+        bucket.pauseFor(3 * SECOND);
+
+        assertEquals(3 * SECOND, bucket.nanosUntilAvailable(SECOND));
+        assertFalse(bucket.isFull(2 * SECOND));
+        assertEquals(0, bucket.tryAcquire(4 * SECOND));
+    }
+
+    @Test
+    public void testShorterPauseDoesNotCutLongerOne() {
+        AtomicLong clock = new AtomicLong();
+        TokenBucket bucket = new TokenBucket(100, 100, clock::get);
+        bucket.pauseFor(5 * SECOND);
+        bucket.pauseFor(0);
+
+        assertEquals(5 * SECOND, bucket.nanosUntilAvailable(0));
+    }
+}